@@ -0,0 +1,136 @@
+package com.dantsu.printerthermal_escpos_bluetooth.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.dantsu.printerthermal_escpos_bluetooth.ArrayPrinterImageSource;
+import com.dantsu.printerthermal_escpos_bluetooth.Printer;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterBuffer;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterConnection;
+import com.dantsu.printerthermal_escpos_bluetooth.flowcontrol.PrinterFlowControl;
+import com.dantsu.printerthermal_escpos_bluetooth.textparser.PrinterTextParserImg;
+import com.dantsu.printerthermal_escpos_bluetooth.transport.MemoryPrinterTransport;
+
+/**
+ * Printers, images and formatted texts shared by the benchmarks.
+ */
+public class BenchmarkReceipts {
+
+    public static final int PRINTER_DPI = 203;
+    public static final float PRINTING_WIDTH_MM = 48f;
+    public static final int NBR_CHARACTERS_PER_LINE = 32;
+
+    /**
+     * Send the whole buffer at once, without waiting for the printer.
+     */
+    public static class DirectFlowControl extends PrinterFlowControl {
+        @Override
+        public void send(PrinterBuffer buffer, OutputStream outputStream, InputStream inputStream, int packetSize) throws IOException {
+            buffer.writeTo(outputStream, 0, buffer.size(), packetSize);
+        }
+    }
+
+    /**
+     * Create a printer without connection, for the parsing and rendering benchmarks.
+     *
+     * @return Printer
+     */
+    public static Printer createPrinter() {
+        return new Printer(BenchmarkReceipts.PRINTER_DPI, BenchmarkReceipts.PRINTING_WIDTH_MM, BenchmarkReceipts.NBR_CHARACTERS_PER_LINE);
+    }
+
+    /**
+     * Create a printer connected to a transport that only counts the bytes it receives.
+     *
+     * @return Printer
+     */
+    public static Printer createNullPrinter() {
+        PrinterConnection connection = new PrinterConnection(new MemoryPrinterTransport().setRecording(false))
+            .setFlowControl(new BenchmarkReceipts.DirectFlowControl());
+        return new Printer(connection, BenchmarkReceipts.PRINTER_DPI, BenchmarkReceipts.PRINTING_WIDTH_MM, BenchmarkReceipts.NBR_CHARACTERS_PER_LINE);
+    }
+
+    /**
+     * Create a gray image with a gradient, a grid and some noise, to give the dithering and the compaction of the
+     * image commands a realistic amount of work.
+     *
+     * @param width  Image width in dots
+     * @param height Image height in dots
+     * @return ArrayPrinterImageSource
+     */
+    public static ArrayPrinterImageSource createImage(int width, int height) {
+        int[] pixels = new int[width * height];
+        int seed = 12345;
+        for (int y = 0, i = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, i++) {
+                seed = seed * 1103515245 + 12345;
+                int level = ((x * 255 / width + y) & 0xff) ^ ((seed >>> 16) & 0x0f);
+                if ((x / 16 + y / 16) % 5 == 0) {
+                    level = 0xff;
+                }
+                pixels[i] = 0xff000000 | (level * 0x010101);
+            }
+        }
+        return new ArrayPrinterImageSource(pixels, width, height);
+    }
+
+    /**
+     * Get a receipt with a logo, a header, nbrItems items, the totals, a barcode and a QR code.
+     *
+     * @param printer  Printer used to convert the logo
+     * @param nbrItems Number of item lines
+     * @return Formatted text
+     */
+    public static String receipt(Printer printer, int nbrItems) {
+        StringBuilder text = new StringBuilder()
+            .append("[C]<img>")
+            .append(PrinterTextParserImg.bitmapToHexadecimalString(printer, BenchmarkReceipts.createImage(300, 120)))
+            .append("</img>\n")
+            .append("[L]\n")
+            .append("[C]<u><font size='big'>ORDER N\u00B0045</font></u>\n")
+            .append("[L]\n")
+            .append("[C]================================\n")
+            .append("[L]\n");
+
+        for (int i = 0; i < nbrItems; i++) {
+            text
+                .append("[L]<b>ITEM ").append(i + 1).append("</b>[R]").append(i % 50).append('.').append(10 + i % 90).append("e\n")
+                .append("[L]  + Size : ").append(i % 2 == 0 ? "S" : "57/58").append('\n');
+        }
+
+        return text
+            .append("[C]--------------------------------\n")
+            .append("[R]TOTAL PRICE :[R]34.98e\n")
+            .append("[R]TAX :[R]4.23e\n")
+            .append("[L]\n")
+            .append("[C]================================\n")
+            .append("[L]\n")
+            .append("[L]<font size='tall'>Customer :</font>\n")
+            .append("[L]Raymond DUPONT\n")
+            .append("[L]5 rue des girafes\n")
+            .append("[L]31547 PERPETES\n")
+            .append("[C]<font size='wide'>Tel</font> : <b>+3380<u>1201</u>456</b>\n")
+            .append("[L]\n")
+            .append("[C]<barcode type='ean13' height='10'>831254784551</barcode>\n")
+            .append("[C]<qrcode size='20'>http://www.developpeur-web.dantsu.com/</qrcode>")
+            .toString();
+    }
+
+    /**
+     * Get a report of text lines only, with columns and formatting tags.
+     *
+     * @param nbrLines Number of lines of the report
+     * @return Formatted text
+     */
+    public static String report(int nbrLines) {
+        StringBuilder text = new StringBuilder("[C]<b><font size='tall'>DAILY REPORT</font></b>\n");
+        for (int i = 1; i < nbrLines; i++) {
+            text
+                .append("[L]").append(i).append(" <b>REF-").append(1000 + i).append("</b>")
+                .append("[C]x").append(1 + i % 9)
+                .append("[R]").append(i % 300).append('.').append(10 + i % 90).append("e\n");
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,69 @@
+package com.dantsu.printerthermal_escpos_bluetooth.benchmark;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.dantsu.printerthermal_escpos_bluetooth.ArrayPrinterImageSource;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterImageDithering;
+
+/**
+ * Conversion of images at the printing widths of 58mm (384 dots), 80mm (576 dots) and 104mm (832 dots) printers,
+ * with the threshold, the Bayer and the Floyd-Steinberg dithering, in the calling thread or in parallel stripes.
+ * <p>
+ * The parallel mode uses one stripe and one thread by available processor, whatever the size of the image. It
+ * converts in the calling thread the images dithered by error diffusion, and every image when the machine has a
+ * single processor. Compare both modes on a multi-core machine to set PrinterCommands.IMAGE_PARALLEL_MIN_PIXELS
+ * and IMAGE_PARALLEL_MIN_STRIPE_HEIGHT, which keep the parallel conversion off until then.
+ */
+@State(Scope.Benchmark)
+public class BitmapToBytesBenchmark {
+
+    @Param({"384", "576", "832"})
+    public int width;
+
+    @Param({"128", "256", "1024"})
+    public int height;
+
+    @Param({"0", "1", "2"})
+    public int dithering;
+
+    @Param({"sequential", "parallel"})
+    public String mode;
+
+    private ArrayPrinterImageSource image;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        this.image = BenchmarkReceipts.createImage(this.width, this.height);
+        if (this.mode.equals("parallel")) {
+            this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (this.executor != null) {
+            this.executor.shutdownNow();
+            this.executor = null;
+        }
+    }
+
+    @Benchmark
+    public byte[] bitmapToBytes() {
+        return PrinterCommands.bitmapToBytes(
+            this.image,
+            this.dithering == PrinterCommands.IMAGE_DITHERING_NONE ? null : new PrinterImageDithering(this.dithering),
+            this.executor,
+            Runtime.getRuntime().availableProcessors()
+        );
+    }
+}
@@ -0,0 +1,47 @@
+package com.dantsu.printerthermal_escpos_bluetooth.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.dantsu.printerthermal_escpos_bluetooth.Printer;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterBuffer;
+
+/**
+ * Whole jobs, from the formatted text to the bytes sent : printFormattedText into a transport that only counts the
+ * bytes, and renderFormattedText without connection. The image cache is disabled when cache is false, so the logo
+ * and the QR code are converted at each job.
+ */
+@State(Scope.Benchmark)
+public class PrintFormattedTextBenchmark {
+
+    @Param({"2", "200"})
+    public int nbrItems;
+
+    @Param({"true", "false"})
+    public boolean cache;
+
+    private Printer printer;
+    private String formattedText;
+
+    @Setup
+    public void setup() {
+        this.printer = BenchmarkReceipts.createNullPrinter();
+        if (!this.cache) {
+            this.printer.setImageCache(null);
+        }
+        this.formattedText = BenchmarkReceipts.receipt(this.printer, this.nbrItems);
+    }
+
+    @Benchmark
+    public Printer printFormattedText() {
+        return this.printer.printFormattedText(this.formattedText);
+    }
+
+    @Benchmark
+    public PrinterBuffer renderFormattedText() {
+        return this.printer.renderFormattedText(this.formattedText);
+    }
+}
@@ -0,0 +1,48 @@
+package com.dantsu.printerthermal_escpos_bluetooth.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.dantsu.printerthermal_escpos_bluetooth.Printer;
+import com.dantsu.printerthermal_escpos_bluetooth.textparser.PrinterTextParser;
+import com.dantsu.printerthermal_escpos_bluetooth.textparser.PrinterTextParserLine;
+
+/**
+ * Parsing of formatted texts : a short receipt with a logo, a barcode and a QR code, and text reports of 200 and
+ * 5000 lines. Images and QR codes are converted once, then read from the image cache.
+ */
+@State(Scope.Benchmark)
+public class PrinterTextParserBenchmark {
+
+    @Param({"receipt", "report200", "report5000"})
+    public String text;
+
+    private Printer printer;
+    private String formattedText;
+
+    @Setup
+    public void setup() {
+        this.printer = BenchmarkReceipts.createPrinter();
+        switch (this.text) {
+            case "report200":
+                this.formattedText = BenchmarkReceipts.report(200);
+                break;
+            case "report5000":
+                this.formattedText = BenchmarkReceipts.report(5000);
+                break;
+            default:
+                this.formattedText = BenchmarkReceipts.receipt(this.printer, 2);
+                break;
+        }
+    }
+
+    @Benchmark
+    public PrinterTextParserLine[] parse() {
+        return new PrinterTextParser(this.printer)
+            .setFormattedText(this.formattedText)
+            .parse();
+    }
+}
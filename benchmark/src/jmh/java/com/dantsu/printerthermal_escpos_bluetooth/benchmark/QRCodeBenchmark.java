@@ -0,0 +1,38 @@
+package com.dantsu.printerthermal_escpos_bluetooth.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+
+/**
+ * Conversion of QR codes to raster images : a short code, an URL, a payment payload and a large text, printed 40mm
+ * wide at 203 dpi.
+ */
+@State(Scope.Benchmark)
+public class QRCodeBenchmark {
+
+    @Param({"8", "64", "256", "1024"})
+    public int dataLength;
+
+    private String data;
+    private int size;
+
+    @Setup
+    public void setup() {
+        StringBuilder data = new StringBuilder();
+        for (int i = 0; i < this.dataLength; i++) {
+            data.append((char) ('A' + (i * 7) % 26));
+        }
+        this.data = data.toString();
+        this.size = Math.round(40f * BenchmarkReceipts.PRINTER_DPI / 25.4f);
+    }
+
+    @Benchmark
+    public byte[] QRCodeDataToBytes() {
+        return PrinterCommands.QRCodeDataToBytes(this.data, this.size);
+    }
+}
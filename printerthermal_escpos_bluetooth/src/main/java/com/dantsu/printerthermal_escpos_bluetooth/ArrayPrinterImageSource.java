@@ -0,0 +1,74 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+/**
+ * Pixels stored in an array, as ARGB colors or as gray levels.
+ * <p>
+ * On a JVM, a java.awt.image.BufferedImage is read with
+ * new ArrayPrinterImageSource(image.getRGB(0, 0, width, height, null, 0, width), width, height).
+ */
+public class ArrayPrinterImageSource implements PrinterImageSource {
+    
+    private int[] colors;
+    private byte[] grayLevels;
+    private int width;
+    private int height;
+    
+    /**
+     * Create a new instance of ArrayPrinterImageSource from ARGB colors.
+     *
+     * @param colors ARGB colors of the pixels, line after line
+     * @param width  Image width in pixels
+     * @param height Image height in pixels
+     */
+    public ArrayPrinterImageSource(int[] colors, int width, int height) {
+        if (colors.length < width * height) {
+            throw new IllegalArgumentException("The array contains less than width * height colors.");
+        }
+        this.colors = colors;
+        this.width = width;
+        this.height = height;
+    }
+    
+    /**
+     * Create a new instance of ArrayPrinterImageSource from gray levels.
+     *
+     * @param grayLevels Gray levels of the pixels, line after line, from 0 (black) to 255 (white)
+     * @param width      Image width in pixels
+     * @param height     Image height in pixels
+     */
+    public ArrayPrinterImageSource(byte[] grayLevels, int width, int height) {
+        if (grayLevels.length < width * height) {
+            throw new IllegalArgumentException("The array contains less than width * height gray levels.");
+        }
+        this.grayLevels = grayLevels;
+        this.width = width;
+        this.height = height;
+    }
+    
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+    
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+    
+    @Override
+    public void readLine(int posY, int[] pixels) {
+        int offset = posY * this.width;
+        if (this.colors != null) {
+            System.arraycopy(this.colors, offset, pixels, 0, this.width);
+            return;
+        }
+        for (int posX = 0; posX < this.width; posX++) {
+            pixels[posX] = 0xFF000000 | ((this.grayLevels[offset + posX] & 0xFF) * 0x010101);
+        }
+    }
+    
+    @Override
+    public ArrayPrinterImageSource copy() {
+        return this;
+    }
+}
@@ -0,0 +1,45 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import android.graphics.Bitmap;
+
+/**
+ * Pixels of an Android Bitmap.
+ */
+public class BitmapPrinterImageSource implements PrinterImageSource {
+    
+    private Bitmap bitmap;
+    
+    /**
+     * Create a new instance of BitmapPrinterImageSource.
+     *
+     * @param bitmap Instance of Bitmap
+     */
+    public BitmapPrinterImageSource(Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+    
+    public Bitmap getBitmap() {
+        return this.bitmap;
+    }
+    
+    @Override
+    public int getWidth() {
+        return this.bitmap.getWidth();
+    }
+    
+    @Override
+    public int getHeight() {
+        return this.bitmap.getHeight();
+    }
+    
+    @Override
+    public void readLine(int posY, int[] pixels) {
+        int width = this.bitmap.getWidth();
+        this.bitmap.getPixels(pixels, 0, width, 0, posY, width, 1);
+    }
+    
+    @Override
+    public BitmapPrinterImageSource copy() {
+        return this;
+    }
+}
@@ -4,9 +4,15 @@ import android.graphics.Bitmap;
 
 import com.dantsu.printerthermal_escpos_bluetooth.bluetooth.BluetoothPrinterSocketConnection;
 import com.dantsu.printerthermal_escpos_bluetooth.textparser.PrinterTextParser;
-import com.dantsu.printerthermal_escpos_bluetooth.textparser.PrinterTextParserColumn;
-import com.dantsu.printerthermal_escpos_bluetooth.textparser.PrinterTextParserElement;
+import com.dantsu.printerthermal_escpos_bluetooth.textparser.PrinterTextParserImg;
 import com.dantsu.printerthermal_escpos_bluetooth.textparser.PrinterTextParserLine;
+import com.dantsu.printerthermal_escpos_bluetooth.textparser.PrinterTextParserTemplate;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 
 public class Printer {
     
@@ -19,8 +25,24 @@ public class Printer {
     private int charSizeWidthPx;
     
     
-    private BluetoothPrinterSocketConnection bluetoothPrinter = null;
+    private PrinterConnection printerConnection = null;
+    private ExecutorService imageExecutor = null;
+    private int imageDithering = PrinterCommands.IMAGE_DITHERING_NONE;
+    private PrinterProfile profile = new PrinterProfile();
+    private PrinterImageCache imageCache = PrinterImageCache.getDefaultCache();
+    
     
+    /**
+     * Create a new instance of Printer without connection, to render ESC/POS jobs with the render... methods and
+     * send them later with printRenderedJob.
+     *
+     * @param printerDpi DPI of the printer
+     * @param printingWidthMM Printing width in millimeters
+     * @param nbrCharactersPerLine The maximum number of characters that can be printed on a line.
+     */
+    public Printer(int printerDpi, float printingWidthMM, int nbrCharactersPerLine) {
+        this((PrinterConnection) null, printerDpi, printingWidthMM, nbrCharactersPerLine);
+    }
     
     /**
      * Create a new instance of Printer.
@@ -31,8 +53,20 @@ public class Printer {
      * @param nbrCharactersPerLine The maximum number of characters that can be printed on a line.
      */
     public Printer(BluetoothPrinterSocketConnection printer, int printerDpi, float printingWidthMM, int nbrCharactersPerLine) {
+        this(printer == null ? null : printer.getPrinterConnection(), printerDpi, printingWidthMM, nbrCharactersPerLine);
+    }
+    
+    /**
+     * Create a new instance of Printer.
+     *
+     * @param printer Instance of the connection with the printer (Bluetooth, TCP...)
+     * @param printerDpi DPI of the connected printer
+     * @param printingWidthMM Printing width in millimeters
+     * @param nbrCharactersPerLine The maximum number of characters that can be printed on a line.
+     */
+    public Printer(PrinterConnection printer, int printerDpi, float printingWidthMM, int nbrCharactersPerLine) {
         if (printer != null && (printer.isConnected() || (!printer.isConnected() && printer.connect()))) {
-            this.bluetoothPrinter = printer;
+            this.printerConnection = printer;
         }
         this.printerDpi = printerDpi;
         this.printingWidthMM = printingWidthMM;
@@ -45,14 +79,14 @@ public class Printer {
     }
     
     /**
-     * Close the Bluetooth connection with the printer.
+     * Close the connection with the printer.
      *
      * @return Fluent interface
      */
-    public Printer disconnectPrinter() {
-        if (this.bluetoothPrinter != null) {
-            this.bluetoothPrinter.disconnect();
-            this.bluetoothPrinter = null;
+    public synchronized Printer disconnectPrinter() {
+        if (this.printerConnection != null) {
+            this.printerConnection.disconnect();
+            this.printerConnection = null;
         }
         return this;
     }
@@ -102,6 +136,104 @@ public class Printer {
         return this.charSizeWidthPx;
     }
     
+    /**
+     * Set the profile describing the commands supported by the printer model.
+     *
+     * @param profile Instance of PrinterProfile
+     * @return Fluent interface
+     */
+    public Printer setProfile(PrinterProfile profile) {
+        this.profile = profile;
+        return this;
+    }
+    
+    /**
+     * Get the profile describing the commands supported by the printer model.
+     *
+     * @return PrinterProfile
+     */
+    public PrinterProfile getProfile() {
+        return this.profile;
+    }
+    
+    /**
+     * Set the cache of the images and QR codes converted from formatted text. By default, all the Printer instances
+     * share PrinterImageCache.getDefaultCache().
+     *
+     * @param imageCache Instance of PrinterImageCache, null to disable the cache
+     * @return Fluent interface
+     */
+    public Printer setImageCache(PrinterImageCache imageCache) {
+        this.imageCache = imageCache;
+        return this;
+    }
+    
+    /**
+     * Get the cache of the images and QR codes converted from formatted text.
+     *
+     * @return PrinterImageCache, null if the cache is disabled
+     */
+    public PrinterImageCache getImageCache() {
+        return this.imageCache;
+    }
+    
+    /**
+     * Set the executor used to convert large images in parallel stripes. By default, images are converted in the
+     * calling thread. Only the images of PrinterCommands.IMAGE_PARALLEL_MIN_PIXELS pixels or more are split, which
+     * keeps the parallel conversion off until it is measured on multi-core devices. Do not use an executor that runs
+     * the parsing of formatted text, like the PrinterQueue one : a parsing task waiting for the stripes would take the
+     * thread they need.
+     *
+     * @param imageExecutor Executor running the conversion stripes, null to disable the parallel conversion
+     * @return Fluent interface
+     */
+    public Printer setImageExecutor(ExecutorService imageExecutor) {
+        this.imageExecutor = imageExecutor;
+        return this;
+    }
+    
+    /**
+     * Get the executor used to convert large images in parallel stripes.
+     *
+     * @return ExecutorService, null if images are converted in the calling thread
+     */
+    public ExecutorService getImageExecutor() {
+        return this.imageExecutor;
+    }
+    
+    /**
+     * Set how the gray levels of the images are printed. By default, pixels are printed if one of their channels is
+     * darker than PrinterCommands.IMAGE_WHITE_THRESHOLD, which suits logos and text but prints photos as dark areas.
+     *
+     * @param imageDithering Dithering mode. Use PrinterCommands.IMAGE_DITHERING_... constants
+     * @return Fluent interface
+     */
+    public Printer setImageDithering(int imageDithering) {
+        this.imageDithering = imageDithering;
+        return this;
+    }
+    
+    /**
+     * Get how the gray levels of the images are printed.
+     *
+     * @return int, PrinterCommands.IMAGE_DITHERING_NONE if the images are not dithered
+     */
+    public int getImageDithering() {
+        return this.imageDithering;
+    }
+    
+    /**
+     * Create the dithering of a new image, with the gamma of the printer profile.
+     *
+     * @return PrinterImageDithering, null if the images are not dithered
+     */
+    private PrinterImageDithering createImageDithering() {
+        if (this.imageDithering == PrinterCommands.IMAGE_DITHERING_NONE) {
+            return null;
+        }
+        return new PrinterImageDithering(this.imageDithering, this.profile.getImageGamma());
+    }
+    
     /**
      * Convert from millimeters to dot the mmSize variable.
      *
@@ -119,64 +251,358 @@ public class Printer {
      * @return Fluent interface
      */
     public Printer printFormattedText(String text) {
-        if (this.bluetoothPrinter == null || this.nbrCharactersPerLine == 0) {
+        return this.printFormattedText(text, null);
+    }
+    
+    /**
+     * Print a formatted text with the images referenced by &lt;img ref='name'&gt;&lt;/img&gt;.
+     *
+     * @param text        Formatted text to be printed.
+     * @param attachments Images by name : byte[] returned by bitmapToBytes, or PrinterImageSource.
+     * @return Fluent interface
+     */
+    public Printer printFormattedText(String text, Map<String, ?> attachments) {
+        if (this.printerConnection == null || this.nbrCharactersPerLine == 0) {
             return this;
         }
-        
-        PrinterTextParser textParser = new PrinterTextParser(this);
-        PrinterTextParserLine[] linesParsed = textParser
+        return this.printFormattedText(this.parseFormattedText(text, attachments));
+    }
+    
+    /**
+     * Parse a formatted text without printing it. Images and QR codes are converted during the parsing, so this method
+     * can be called from any thread to prepare the next job while the printer is busy.
+     *
+     * @param text Formatted text to be parsed.
+     * @return Lines parsed, to be printed with printFormattedText(PrinterTextParserLine[])
+     */
+    public PrinterTextParserLine[] parseFormattedText(String text) {
+        return this.parseFormattedText(text, null);
+    }
+    
+    /**
+     * Parse a formatted text with the images referenced by &lt;img ref='name'&gt;&lt;/img&gt;, without printing it.
+     *
+     * @param text        Formatted text to be parsed.
+     * @param attachments Images by name : byte[] returned by bitmapToBytes, or PrinterImageSource.
+     * @return Lines parsed, to be printed with printFormattedText(PrinterTextParserLine[])
+     */
+    public PrinterTextParserLine[] parseFormattedText(String text, Map<String, ?> attachments) {
+        return new PrinterTextParser(this)
+            .setAttachments(attachments)
             .setFormattedText(text)
             .parse();
+    }
+    
+    /**
+     * Print a formatted text already parsed by parseFormattedText.
+     *
+     * @param linesParsed Lines returned by parseFormattedText
+     * @return Fluent interface
+     */
+    public synchronized Printer printFormattedText(PrinterTextParserLine[] linesParsed) {
+        if (this.printerConnection == null || this.nbrCharactersPerLine == 0) {
+            return this;
+        }
+        
+        Printer.writeFormattedText(this.printerConnection.startJob(), linesParsed).endJob();
+        return this;
+    }
+    
+    /**
+     * Print a formatted text already parsed by parseFormattedText, throwing the transmission errors. Used by
+     * PrinterQueue to report the jobs that have not been sent.
+     *
+     * @param linesParsed Lines returned by parseFormattedText
+     * @return Fluent interface
+     * @throws IOException if the printer is not connected or cannot be reached
+     */
+    synchronized Printer sendFormattedText(PrinterTextParserLine[] linesParsed) throws IOException {
+        if (this.printerConnection == null) {
+            throw new IOException("The printer is not connected.");
+        }
+        
+        Printer.writeFormattedText(this.printerConnection.startJob(), linesParsed).sendJob();
+        return this;
+    }
+    
+    /**
+     * Render a formatted text to the ESC/POS commands of a whole print job, without printer connection. The Printer
+     * instance is not locked, jobs can be rendered in parallel from any thread.
+     * <p>
+     * The job is rendered for an unknown printer : stored images (&lt;img key='..'&gt;) are printed from the NV
+     * graphics area, those of the download graphics area need a job printed by printFormattedText.
+     *
+     * @param text Formatted text to be rendered.
+     * @return Commands of the job, to be sent with printRenderedJob. Use toByteArray or toByteBuffer to get the bytes.
+     */
+    public PrinterBuffer renderFormattedText(String text) {
+        return this.renderFormattedText(text, null);
+    }
+    
+    /**
+     * Render a formatted text with the images referenced by &lt;img ref='name'&gt;&lt;/img&gt;, without printer
+     * connection. Read renderFormattedText(String).
+     *
+     * @param text        Formatted text to be rendered.
+     * @param attachments Images by name : byte[] returned by bitmapToBytes, or PrinterImageSource.
+     * @return Commands of the job, to be sent with printRenderedJob
+     */
+    public PrinterBuffer renderFormattedText(String text, Map<String, ?> attachments) {
+        return this.renderFormattedText(this.parseFormattedText(text, attachments));
+    }
+    
+    /**
+     * Render a formatted text already parsed by parseFormattedText, without printer connection.
+     *
+     * @param linesParsed Lines returned by parseFormattedText
+     * @return Commands of the job, to be sent with printRenderedJob
+     */
+    public PrinterBuffer renderFormattedText(PrinterTextParserLine[] linesParsed) {
+        return Printer.writeFormattedText(PrinterConnection.startRenderJob(), linesParsed).endJobWithoutSending();
+    }
+    
+    /**
+     * Print a job rendered by renderFormattedText or renderTemplate.
+     *
+     * @param job Commands of the job
+     * @return Fluent interface
+     */
+    public synchronized Printer printRenderedJob(PrinterBuffer job) {
+        if (this.printerConnection == null) {
+            return this;
+        }
+        
+        this.printerConnection
+            .startJob()
+            .write(job)
+            .endJob();
         
+        return this;
+    }
+    
+    /**
+     * Write the lines of a formatted text and the paper feed that ends each job.
+     */
+    private static PrinterConnection writeFormattedText(PrinterConnection connection, PrinterTextParserLine[] linesParsed) {
         for (PrinterTextParserLine line : linesParsed) {
-            PrinterTextParserColumn[] columns = line.getColumns();
-            
-            for (PrinterTextParserColumn column : columns) {
-                PrinterTextParserElement[] elements = column.getElements();
-                for (PrinterTextParserElement element : elements) {
-                    element.print(this.bluetoothPrinter);
-                }
-            }
-            this.bluetoothPrinter.newLine();
+            line.print(connection);
         }
         
-        this.bluetoothPrinter
+        return connection
             .newLine()
             .newLine()
             .newLine()
             .newLine();
+    }
+    
+    /**
+     * Compile a formatted text containing {{name}} placeholders, to print it many times with different values.
+     *
+     * @param text Formatted text with placeholders. Read PrinterTextParserTemplate for the syntax.
+     * @return Template to be printed with printTemplate
+     */
+    public PrinterTextParserTemplate compileTemplate(String text) {
+        return new PrinterTextParserTemplate(this, text);
+    }
+    
+    /**
+     * Compile a formatted text containing {{name}} placeholders and &lt;img ref='name'&gt; images.
+     *
+     * @param text        Formatted text with placeholders. Read PrinterTextParserTemplate for the syntax.
+     * @param attachments Images by name : byte[] returned by bitmapToBytes, or PrinterImageSource.
+     * @return Template to be printed with printTemplate
+     */
+    public PrinterTextParserTemplate compileTemplate(String text, Map<String, ?> attachments) {
+        return new PrinterTextParserTemplate(this, text, attachments);
+    }
+    
+    /**
+     * Print a compiled template with values.
+     *
+     * @param template Template returned by compileTemplate
+     * @param values   Values of the placeholders and blocks
+     * @return Fluent interface
+     */
+    public synchronized Printer printTemplate(PrinterTextParserTemplate template, Map<String, ?> values) {
+        if (this.printerConnection == null || this.nbrCharactersPerLine == 0) {
+            return this;
+        }
+        
+        template.print(this.printerConnection.startJob(), values);
+        
+        this.printerConnection
+            .newLine()
+            .newLine()
+            .newLine()
+            .newLine()
+            .endJob();
         
         return this;
     }
     
     /**
-     * Convert Bitmap object to ESC/POS image.
+     * Render a compiled template with values to the ESC/POS commands of a whole print job, without printer connection.
+     * Like renderFormattedText, stored images are printed from the NV graphics area.
      *
-     * @param bitmap Instance of Bitmap
-     * @return Bytes contain the image in ESC/POS command
+     * @param template Template returned by compileTemplate
+     * @param values   Values of the placeholders and blocks
+     * @return Commands of the job, to be sent with printRenderedJob
      */
-    public byte[] bitmapToBytes(Bitmap bitmap) {
-        boolean isSizeEdit = false;
-        int bitmapWidth = bitmap.getWidth(),
-            bitmapHeight = bitmap.getHeight(),
-            maxWidth = this.getPrintingWidthPx(),
-            maxHeight = 256;
+    public PrinterBuffer renderTemplate(PrinterTextParserTemplate template, Map<String, ?> values) {
+        return PrinterConnection.startRenderJob()
+            .write(template.render(values))
+            .newLine()
+            .newLine()
+            .newLine()
+            .newLine()
+            .endJobWithoutSending();
+    }
+    
+    /**
+     * Store a bitmap in the printer memory, to print it with the formatted text &lt;img key='..'&gt;&lt;/img&gt;.
+     * Nothing is sent if the same image is known to be stored with this key.
+     *
+     * @param key           Two characters from 32 to 126 identifying the image
+     * @param bitmap        Instance of Bitmap
+     * @param isNonVolatile true to store the image in the NV graphics area, kept when the printer is turned off but
+     *                      supporting a limited number of writes. false to store it in the download graphics area.
+     * @return Fluent interface
+     */
+    public Printer storeImage(String key, Bitmap bitmap, boolean isNonVolatile) {
+        return this.storeImage(key, new BitmapPrinterImageSource(bitmap), isNonVolatile);
+    }
+    
+    /**
+     * Store an image in the printer memory, to print it with the formatted text &lt;img key='..'&gt;&lt;/img&gt;.
+     * Nothing is sent if the same image is known to be stored with this key.
+     *
+     * @param key           Two characters from 32 to 126 identifying the image
+     * @param source        Pixels of the image
+     * @param isNonVolatile true to store the image in the NV graphics area, kept when the printer is turned off but
+     *                      supporting a limited number of writes. false to store it in the download graphics area.
+     * @return Fluent interface
+     */
+    public synchronized Printer storeImage(String key, PrinterImageSource source, boolean isNonVolatile) {
+        if (this.printerConnection == null) {
+            return this;
+        }
         
-        if (bitmapWidth > maxWidth) {
-            bitmapHeight = Math.round(((float) bitmapHeight) * ((float) maxWidth) / ((float) bitmapWidth));
-            bitmapWidth = maxWidth;
-            isSizeEdit = true;
+        byte[] image = PrinterCommands.bitmapToBytes(new PrinterImageScaler(source, this.printingWidthPx), this.createImageDithering());
+        if (!this.printerConnection.isImageStored(key, image)) {
+            this.printerConnection.storeImage(key, image, isNonVolatile);
         }
-        if (bitmapHeight > maxHeight) {
-            bitmapWidth = Math.round(((float) bitmapWidth) * ((float) maxHeight) / ((float) bitmapHeight));
-            bitmapHeight = maxHeight;
-            isSizeEdit = true;
+        return this;
+    }
+    
+    /**
+     * Print a bitmap of any height. The bitmap is converted by bands of PrinterCommands.IMAGE_BAND_HEIGHT lines in a
+     * background thread, and each band is sent as soon as it is converted, so the conversion of the next band overlaps
+     * the transmission of the current one and only a few bands are kept in memory.
+     *
+     * @param bitmap Instance of Bitmap
+     * @param align  Image alignment. Use PrinterTextParser.TAGS_ALIGN_... constants
+     * @return Fluent interface
+     */
+    public Printer printBitmap(Bitmap bitmap, String align) {
+        return this.printBitmap(new BitmapPrinterImageSource(bitmap), align);
+    }
+    
+    /**
+     * Print an image of any height. The image is converted by bands of PrinterCommands.IMAGE_BAND_HEIGHT lines in a
+     * background thread, and each band is sent as soon as it is converted. If the conversion fails, the bands already
+     * converted are printed and the exception or error of the conversion is thrown in the calling thread.
+     *
+     * @param source Pixels of the image
+     * @param align  Image alignment. Use PrinterTextParser.TAGS_ALIGN_... constants
+     * @return Fluent interface
+     */
+    public synchronized Printer printBitmap(PrinterImageSource source, String align) {
+        if (this.printerConnection == null) {
+            return this;
         }
         
-        if (isSizeEdit) {
-            bitmap = Bitmap.createScaledBitmap(bitmap, bitmapWidth, bitmapHeight, false);
+        final PrinterImageScaler image = new PrinterImageScaler(source, this.printingWidthPx);
+        final int nbrWhiteBytesToInsert = PrinterTextParserImg.getNbrWhiteByteToInsert(this, align, (image.getWidth() + 7) >> 3);
+        final PrinterProfile profile = this.profile;
+        final float feedUnitsByImageLine = profile.getFeedUnitsByImageLine(this.printerDpi);
+        final BlockingQueue<byte[]> bands = new ArrayBlockingQueue<byte[]>(1);
+        final PrinterImageDithering dithering = this.createImageDithering();
+        // Written by the converter before the end of the bands, so it is read after taking the last band.
+        final Throwable[] failure = new Throwable[1];
+        
+        Thread converter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                boolean isCallerWaiting = true;
+                try {
+                    for (int posY = 0, height = image.getHeight(); posY < height; posY += PrinterCommands.IMAGE_BAND_HEIGHT) {
+                        byte[] band = PrinterCommands.bitmapToBytes(image, posY, Math.min(PrinterCommands.IMAGE_BAND_HEIGHT, height - posY), nbrWhiteBytesToInsert, dithering);
+                        if (profile.isImageCompacted()) {
+                            // The width is kept, it would move the band horizontally.
+                            band = PrinterCommands.compactImageCommands(band, false, feedUnitsByImageLine);
+                        }
+                        if (band.length > 0) {
+                            bands.put(band);
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    // The caller stopped taking the bands.
+                    isCallerWaiting = false;
+                } catch (Throwable e) {
+                    failure[0] = e;
+                } finally {
+                    if (isCallerWaiting) {
+                        try {
+                            bands.put(new byte[0]);
+                        } catch (InterruptedException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                }
+            }
+        });
+        converter.start();
+        
+        try {
+            byte[] band;
+            while ((band = bands.take()).length > 0) {
+                this.printerConnection.printImage(band);
+            }
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            Thread.currentThread().interrupt();
+        } finally {
+            converter.interrupt();
         }
         
-        return PrinterCommands.bitmapToBytes(bitmap);
+        if (failure[0] instanceof Error) {
+            throw (Error) failure[0];
+        }
+        if (failure[0] instanceof RuntimeException) {
+            throw (RuntimeException) failure[0];
+        }
+        return this;
+    }
+    
+    /**
+     * Convert Bitmap object to ESC/POS image. Bitmaps wider than the printing width are shrunk line by line while they
+     * are converted. Images taller than PrinterCommands.IMAGE_BAND_HEIGHT are split in several raster image commands.
+     *
+     * @param bitmap Instance of Bitmap
+     * @return Bytes contain the image in ESC/POS command
+     */
+    public byte[] bitmapToBytes(Bitmap bitmap) {
+        return this.bitmapToBytes(new BitmapPrinterImageSource(bitmap));
+    }
+    
+    /**
+     * Convert an image to ESC/POS image. Images wider than the printing width are shrunk line by line while they are
+     * converted. Images taller than PrinterCommands.IMAGE_BAND_HEIGHT are split in several raster image commands.
+     *
+     * @param source Pixels of the image
+     * @return Bytes contain the image in ESC/POS command
+     */
+    public byte[] bitmapToBytes(PrinterImageSource source) {
+        return PrinterCommands.bitmapToBytes(new PrinterImageScaler(source, this.printingWidthPx), this.createImageDithering(), this.imageExecutor);
     }
 }
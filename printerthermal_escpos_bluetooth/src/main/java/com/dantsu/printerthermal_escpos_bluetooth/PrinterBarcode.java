@@ -0,0 +1,362 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import com.google.zxing.oned.CodaBarWriter;
+import com.google.zxing.oned.Code128Writer;
+import com.google.zxing.oned.Code39Writer;
+import com.google.zxing.oned.Code93Writer;
+import com.google.zxing.oned.EAN13Writer;
+import com.google.zxing.oned.EAN8Writer;
+import com.google.zxing.oned.ITFWriter;
+import com.google.zxing.oned.UPCEWriter;
+
+/**
+ * A barcode validated for the GS k command. The code is checked and completed once, on a char array : UPC-A, EAN-13,
+ * EAN-8 and odd length ITF codes get their check digit, CODABAR codes their start and stop characters, and CODE128
+ * codes are split in code sets.
+ */
+public class PrinterBarcode {
+
+    /**
+     * Get the GS1 check digit of the digits, the rightmost digit being weighted 3.
+     *
+     * @param digits Digits, from '0' to '9'
+     * @param length Number of digits to be checked, from the start of the array
+     * @return Check digit, from '0' to '9'
+     */
+    public static char getCheckDigit(char[] digits, int length) {
+        int sum = 0;
+        for (int i = length - 1, weight = 3; i >= 0; i--, weight = 4 - weight) {
+            sum += weight * (digits[i] - '0');
+        }
+        return (char) ('0' + (10 - sum % 10) % 10);
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isCodabarStartStop(char c) {
+        return c >= 'A' && c <= 'D';
+    }
+
+    private static final int QUIET_ZONE_MODULES = 10;
+
+    private static void checkDigits(char[] code, int length, String name) {
+        for (int i = 0; i < length; i++) {
+            if (!PrinterBarcode.isDigit(code[i])) {
+                throw new IllegalArgumentException(name + " barcode must only contain digits : " + new String(code));
+            }
+        }
+    }
+
+
+    private int type;
+    private String text;
+    private byte[] data;
+
+    /**
+     * Create a new instance of PrinterBarcode.
+     *
+     * @param type Barcode type. Use PrinterCommands.BARCODE_... constants
+     * @param code Code to be encoded. UPC-A, UPC-E, EAN-13 and EAN-8 codes are truncated to their length without check
+     *             digit, the check digit being computed.
+     * @throws IllegalArgumentException if the code cannot be encoded with this type
+     */
+    public PrinterBarcode(int type, String code) {
+        this.type = type;
+        char[] chars = code.toCharArray();
+
+        switch (type) {
+            case PrinterCommands.BARCODE_UPCA:
+                this.initProductCode(chars, 11, "UPC-A");
+                break;
+            case PrinterCommands.BARCODE_EAN13:
+                this.initProductCode(chars, 12, "EAN-13");
+                break;
+            case PrinterCommands.BARCODE_EAN8:
+                this.initProductCode(chars, 7, "EAN-8");
+                break;
+            case PrinterCommands.BARCODE_UPCE:
+                this.initUPCE(chars);
+                break;
+            case PrinterCommands.BARCODE_ITF:
+                this.initITF(chars);
+                break;
+            case PrinterCommands.BARCODE_CODE39:
+                this.initCode39(chars);
+                break;
+            case PrinterCommands.BARCODE_CODABAR:
+                this.initCodabar(chars);
+                break;
+            case PrinterCommands.BARCODE_CODE93:
+                this.initCode93(chars);
+                break;
+            case PrinterCommands.BARCODE_CODE128:
+                this.initCode128(chars);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown barcode type : " + type);
+        }
+
+        if (this.data.length == 0 || this.data.length > 255) {
+            throw new IllegalArgumentException("Barcode must be 1 to 255 bytes long : " + code);
+        }
+    }
+
+    private void initProductCode(char[] code, int length, String name) {
+        if (code.length < length) {
+            throw new IllegalArgumentException(name + " barcode must contain " + length + " digits : " + new String(code));
+        }
+        PrinterBarcode.checkDigits(code, length, name);
+        char[] chars = new char[length + 1];
+        System.arraycopy(code, 0, chars, 0, length);
+        chars[length] = PrinterBarcode.getCheckDigit(chars, length);
+        this.setText(chars);
+    }
+
+    private void initUPCE(char[] code) {
+        if (code.length < 6) {
+            throw new IllegalArgumentException("UPC-E barcode must contain 6 digits : " + new String(code));
+        }
+        char[] chars = new char[6];
+        if (code[0] == '0' || code[0] == '1') {
+            System.arraycopy(code, 0, chars, 0, 6);
+        } else {
+            chars[0] = '0';
+            System.arraycopy(code, 0, chars, 1, 5);
+        }
+        PrinterBarcode.checkDigits(chars, 6, "UPC-E");
+        this.setText(chars);
+    }
+
+    private void initITF(char[] code) {
+        PrinterBarcode.checkDigits(code, code.length, "ITF");
+        if (code.length % 2 == 0) {
+            this.setText(code);
+            return;
+        }
+        char[] chars = new char[code.length + 1];
+        System.arraycopy(code, 0, chars, 0, code.length);
+        chars[code.length] = PrinterBarcode.getCheckDigit(code, code.length);
+        this.setText(chars);
+    }
+
+    private void initCode39(char[] code) {
+        int start = 0, end = code.length;
+        if (end >= 2 && code[0] == '*' && code[end - 1] == '*') {
+            start++;
+            end--;
+        }
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            char c = code[i];
+            if (c >= 'a' && c <= 'z') {
+                c -= 'a' - 'A';
+            }
+            if (!PrinterBarcode.isDigit(c) && (c < 'A' || c > 'Z') && "$%+-./ ".indexOf(c) == -1) {
+                throw new IllegalArgumentException("CODE39 barcode cannot contain '" + code[i] + "' : " + new String(code));
+            }
+            chars[i - start] = c;
+        }
+        this.setText(chars);
+    }
+
+    private void initCodabar(char[] code) {
+        char[] chars = new char[code.length];
+        for (int i = 0; i < code.length; i++) {
+            char c = code[i];
+            chars[i] = c >= 'a' && c <= 'd' ? (char) (c - ('a' - 'A')) : c;
+        }
+
+        int length = chars.length;
+        boolean
+            hasStart = length > 0 && PrinterBarcode.isCodabarStartStop(chars[0]),
+            hasStop = length > 1 && PrinterBarcode.isCodabarStartStop(chars[length - 1]);
+        if (hasStart != hasStop) {
+            throw new IllegalArgumentException("CODABAR barcode must have both start and stop characters : " + new String(code));
+        }
+        for (int i = hasStart ? 1 : 0, end = hasStop ? length - 1 : length; i < end; i++) {
+            if (!PrinterBarcode.isDigit(chars[i]) && "$+-./:".indexOf(chars[i]) == -1) {
+                throw new IllegalArgumentException("CODABAR barcode cannot contain '" + code[i] + "' : " + new String(code));
+            }
+        }
+
+        if (!hasStart) {
+            char[] delimitedChars = new char[length + 2];
+            System.arraycopy(chars, 0, delimitedChars, 1, length);
+            delimitedChars[0] = 'A';
+            delimitedChars[length + 1] = 'A';
+            chars = delimitedChars;
+        }
+        this.setText(chars);
+    }
+
+    private void initCode93(char[] code) {
+        for (int i = 0; i < code.length; i++) {
+            if (code[i] > 0x7F) {
+                throw new IllegalArgumentException("CODE93 barcode cannot contain '" + code[i] + "' : " + new String(code));
+            }
+        }
+        this.setText(code);
+    }
+
+    /**
+     * Split a CODE128 code in code sets, each starting with {A, {B or {C. Runs of 4 digits or more are packed by pairs
+     * in code C, control characters use code A and other characters code B. A '{' is sent twice in code B.
+     */
+    private void initCode128(char[] code) {
+        int length = code.length;
+        byte[] data = new byte[length * 4 + 2];
+        int offset = 0, i = 0;
+        char codeSet = 0;
+
+        while (i < length) {
+            int nbrDigits = 0;
+            while (i + nbrDigits < length && PrinterBarcode.isDigit(code[i + nbrDigits])) {
+                nbrDigits++;
+            }
+
+            if (nbrDigits >= 4) {
+                if ((nbrDigits & 1) == 1) {
+                    // The odd digit is printed before the pairs, in the current code set.
+                    if (codeSet != 'A' && codeSet != 'B') {
+                        codeSet = 'B';
+                        data[offset++] = '{';
+                        data[offset++] = 'B';
+                    }
+                    data[offset++] = (byte) code[i++];
+                    nbrDigits--;
+                }
+                if (codeSet != 'C') {
+                    codeSet = 'C';
+                    data[offset++] = '{';
+                    data[offset++] = 'C';
+                }
+                for (int end = i + nbrDigits; i < end; i += 2) {
+                    data[offset++] = (byte) ((code[i] - '0') * 10 + code[i + 1] - '0');
+                }
+                continue;
+            }
+
+            char c = code[i];
+            if (c > 0x7F) {
+                throw new IllegalArgumentException("CODE128 barcode cannot contain '" + c + "' : " + new String(code));
+            }
+            char requiredCodeSet = c < 0x20 ? 'A' : (c >= 0x60 || (codeSet != 'A' && codeSet != 'B') ? 'B' : codeSet);
+            if (codeSet != requiredCodeSet) {
+                codeSet = requiredCodeSet;
+                data[offset++] = '{';
+                data[offset++] = (byte) codeSet;
+            }
+            data[offset++] = (byte) c;
+            if (c == '{') {
+                data[offset++] = '{';
+            }
+            i++;
+        }
+
+        this.text = new String(code);
+        this.data = new byte[offset];
+        System.arraycopy(data, 0, this.data, 0, offset);
+    }
+
+    private void setText(char[] chars) {
+        this.text = new String(chars);
+        this.data = new byte[chars.length];
+        for (int i = 0; i < chars.length; i++) {
+            this.data[i] = (byte) chars[i];
+        }
+    }
+
+    public int getType() {
+        return this.type;
+    }
+
+    /**
+     * Get the encoded code, with its computed check digit or start and stop characters, as printed under the bars.
+     *
+     * @return String
+     */
+    public String getText() {
+        return this.text;
+    }
+
+    /**
+     * Get the GS k command printing the barcode. Types 0 to 6 are sent NUL terminated, types 65 to 73 with their
+     * length.
+     *
+     * @return Bytes contain the barcode in ESC/POS command
+     */
+    public byte[] getCommand() {
+        int length = this.data.length, offset = 3;
+        byte[] command = new byte[length + 4];
+        command[0] = 0x1D;
+        command[1] = 0x6B;
+        command[2] = (byte) this.type;
+        if (this.type >= 65) {
+            command[offset++] = (byte) length;
+        }
+        System.arraycopy(this.data, 0, command, offset, length);
+        return command;
+    }
+
+    /**
+     * Get the bars and spaces of the barcode, with its quiet zones, for printers that do not support its type.
+     *
+     * @return One boolean by module, true for a bar
+     * @throws IllegalArgumentException if the code cannot be drawn
+     */
+    public boolean[] getModules() {
+        boolean[] bars;
+        switch (this.type) {
+            case PrinterCommands.BARCODE_UPCA:
+                bars = new EAN13Writer().encode("0" + this.text);
+                break;
+            case PrinterCommands.BARCODE_EAN13:
+                bars = new EAN13Writer().encode(this.text);
+                break;
+            case PrinterCommands.BARCODE_EAN8:
+                bars = new EAN8Writer().encode(this.text);
+                break;
+            case PrinterCommands.BARCODE_UPCE:
+                bars = new UPCEWriter().encode("0" + this.text);
+                break;
+            case PrinterCommands.BARCODE_ITF:
+                bars = new ITFWriter().encode(this.text);
+                break;
+            case PrinterCommands.BARCODE_CODE39:
+                bars = new Code39Writer().encode(this.text);
+                break;
+            case PrinterCommands.BARCODE_CODABAR:
+                bars = new CodaBarWriter().encode(this.text);
+                break;
+            case PrinterCommands.BARCODE_CODE93:
+                bars = new Code93Writer().encode(this.text);
+                break;
+            default:
+                bars = new Code128Writer().encode(this.text);
+                break;
+        }
+        boolean[] modules = new boolean[bars.length + 2 * PrinterBarcode.QUIET_ZONE_MODULES];
+        System.arraycopy(bars, 0, modules, PrinterBarcode.QUIET_ZONE_MODULES, bars.length);
+        return modules;
+    }
+
+    /**
+     * Convert the barcode to a raster image, for printers that do not support its type.
+     *
+     * @param moduleWidth Width of the narrowest bar in dots, reduced to fit maxWidth
+     * @param heightPx    Height of the bars in dots
+     * @param maxWidth    Maximum width in dots
+     * @return Bytes contain the image in ESC/POS command
+     * @throws IllegalArgumentException if the code cannot be drawn in maxWidth dots
+     */
+    public byte[] toImageBytes(int moduleWidth, int heightPx, int maxWidth) {
+        boolean[] modules = this.getModules();
+        moduleWidth = Math.min(moduleWidth, maxWidth / modules.length);
+        if (moduleWidth < 1) {
+            throw new IllegalArgumentException("Barcode of " + modules.length + " modules is wider than " + maxWidth + " dots : " + this.text);
+        }
+        return PrinterCommands.barcodeModulesToBytes(modules, moduleWidth, heightPx);
+    }
+}
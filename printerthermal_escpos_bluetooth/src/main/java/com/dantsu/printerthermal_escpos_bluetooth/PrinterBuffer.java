@@ -0,0 +1,253 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+public class PrinterBuffer {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    private byte[] bytes;
+    private int size = 0;
+    private int[] markOffsets = new int[16];
+    private int[] markWaitingTimes = new int[16];
+    private int marksCount = 0;
+
+    /**
+     * Create a new instance of PrinterBuffer.
+     */
+    public PrinterBuffer() {
+        this(PrinterBuffer.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Create a new instance of PrinterBuffer.
+     *
+     * @param capacity Initial number of bytes that the buffer can contain before growing
+     */
+    public PrinterBuffer(int capacity) {
+        this.bytes = new byte[Math.max(capacity, 16)];
+    }
+
+    /**
+     * Make sure the buffer can receive minCapacity bytes, growing it by half of its size at least.
+     *
+     * @param minCapacity Number of bytes needed
+     */
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity <= this.bytes.length) {
+            return;
+        }
+        int newCapacity = this.bytes.length + (this.bytes.length >> 1);
+        if (newCapacity < minCapacity) {
+            newCapacity = minCapacity;
+        }
+        byte[] newBytes = new byte[newCapacity];
+        System.arraycopy(this.bytes, 0, newBytes, 0, this.size);
+        this.bytes = newBytes;
+    }
+
+    /**
+     * Append one byte to the buffer.
+     *
+     * @param b Byte to be appended
+     * @return Fluent interface
+     */
+    public PrinterBuffer write(byte b) {
+        this.ensureCapacity(this.size + 1);
+        this.bytes[this.size++] = b;
+        return this;
+    }
+
+    /**
+     * Append bytes to the buffer.
+     *
+     * @param bytes Bytes to be appended
+     * @return Fluent interface
+     */
+    public PrinterBuffer write(byte[] bytes) {
+        return this.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Append a part of a byte array to the buffer.
+     *
+     * @param bytes  Bytes to be appended
+     * @param offset Index of the first byte to append
+     * @param length Number of bytes to append
+     * @return Fluent interface
+     */
+    public PrinterBuffer write(byte[] bytes, int offset, int length) {
+        this.ensureCapacity(this.size + length);
+        System.arraycopy(bytes, offset, this.bytes, this.size, length);
+        this.size += length;
+        return this;
+    }
+
+    /**
+     * Append the bytes and the marks of another buffer.
+     *
+     * @param buffer Buffer to be appended
+     * @return Fluent interface
+     */
+    public PrinterBuffer write(PrinterBuffer buffer) {
+        int offset = this.size;
+        this.write(buffer.bytes, 0, buffer.size);
+        for (int i = 0; i < buffer.marksCount; i++) {
+            this.addMark(offset + buffer.markOffsets[i], buffer.markWaitingTimes[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Mark the current position of the buffer as the end of a command, where the printer needs waitingTime
+     * milliseconds to process the previous bytes. Flow controls only insert their own commands on marks, and the
+     * waiting times are used by flow controls that cannot get feedback from the printer.
+     *
+     * @param waitingTime Time in milliseconds, 0 to only mark the end of a command
+     * @return Fluent interface
+     */
+    public PrinterBuffer mark(int waitingTime) {
+        return this.addMark(this.size, waitingTime);
+    }
+
+    private PrinterBuffer addMark(int offset, int waitingTime) {
+        if (waitingTime < 0) {
+            return this;
+        }
+        if (this.marksCount > 0 && this.markOffsets[this.marksCount - 1] == offset) {
+            this.markWaitingTimes[this.marksCount - 1] += waitingTime;
+            return this;
+        }
+        if (this.marksCount == this.markOffsets.length) {
+            int[] newMarkOffsets = new int[this.marksCount * 2], newMarkWaitingTimes = new int[this.marksCount * 2];
+            System.arraycopy(this.markOffsets, 0, newMarkOffsets, 0, this.marksCount);
+            System.arraycopy(this.markWaitingTimes, 0, newMarkWaitingTimes, 0, this.marksCount);
+            this.markOffsets = newMarkOffsets;
+            this.markWaitingTimes = newMarkWaitingTimes;
+        }
+        this.markOffsets[this.marksCount] = offset;
+        this.markWaitingTimes[this.marksCount] = waitingTime;
+        this.marksCount++;
+        return this;
+    }
+
+    /**
+     * Get the number of marks set in the buffer.
+     *
+     * @return int
+     */
+    public int getMarksCount() {
+        return this.marksCount;
+    }
+
+    /**
+     * Get the buffer position of a mark.
+     *
+     * @param index Index of the mark
+     * @return int
+     */
+    public int getMarkOffset(int index) {
+        return this.markOffsets[index];
+    }
+
+    /**
+     * Get the waiting time in milliseconds of a mark.
+     *
+     * @param index Index of the mark
+     * @return int
+     */
+    public int getMarkWaitingTime(int index) {
+        return this.markWaitingTimes[index];
+    }
+
+    /**
+     * Get a byte of the buffer.
+     *
+     * @param index Index of the byte
+     * @return byte
+     */
+    public byte get(int index) {
+        return this.bytes[index];
+    }
+
+    /**
+     * Get the number of bytes contained in the buffer.
+     *
+     * @return int
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Check if the buffer contains no byte.
+     *
+     * @return true if the buffer is empty
+     */
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Get a copy of the bytes contained in the buffer.
+     *
+     * @return byte[]
+     */
+    public byte[] toByteArray() {
+        byte[] bytes = new byte[this.size];
+        System.arraycopy(this.bytes, 0, bytes, 0, this.size);
+        return bytes;
+    }
+
+    /**
+     * Get a read-only view of the bytes contained in the buffer, without copying them. The view shares the bytes of
+     * the buffer : do not write in the buffer or reset it while the view is used.
+     *
+     * @return ByteBuffer
+     */
+    public ByteBuffer toByteBuffer() {
+        return ByteBuffer.wrap(this.bytes, 0, this.size).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Get a copy of the buffer, with its marks.
+     *
+     * @return PrinterBuffer
+     */
+    public PrinterBuffer copy() {
+        return new PrinterBuffer(this.size).write(this);
+    }
+
+    /**
+     * Remove all the bytes of the buffer. The allocated memory is kept to be reused by the next job.
+     *
+     * @return Fluent interface
+     */
+    public PrinterBuffer reset() {
+        this.size = 0;
+        this.marksCount = 0;
+        return this;
+    }
+
+    /**
+     * Write a part of the buffer in the output stream, in packets of packetSize bytes.
+     *
+     * @param outputStream Stream where the bytes are written
+     * @param offset       Index of the first byte to write
+     * @param length       Number of bytes to write
+     * @param packetSize   Maximum number of bytes written by call to OutputStream.write, 0 to write all in one call
+     * @return Fluent interface
+     * @throws IOException if the stream cannot be written
+     */
+    public PrinterBuffer writeTo(OutputStream outputStream, int offset, int length, int packetSize) throws IOException {
+        if (packetSize < 1) {
+            packetSize = length;
+        }
+        for (int end = offset + length; offset < end; offset += packetSize) {
+            outputStream.write(this.bytes, offset, Math.min(packetSize, end - offset));
+        }
+        return this;
+    }
+}
@@ -9,14 +9,39 @@ import com.google.zxing.qrcode.encoder.ByteMatrix;
 import com.google.zxing.qrcode.encoder.Encoder;
 import com.google.zxing.qrcode.encoder.QRCode;
 
+import java.util.ArrayList;
 import java.util.EnumMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 public class PrinterCommands {
     public static final int TIME_BETWEEN_TWO_PRINT = 150;
 
+    public static final int IMAGE_WHITE_THRESHOLD = 160;
+    public static final int IMAGE_BAND_HEIGHT = 256;
+    // The parallel conversion is off : its speedup has not been measured on a multi-core device yet. Compare the
+    // sequential and parallel modes of BitmapToBytesBenchmark on such a device before lowering these thresholds.
+    public static final int IMAGE_PARALLEL_MIN_PIXELS = Integer.MAX_VALUE;
+    public static final int IMAGE_PARALLEL_MIN_STRIPE_HEIGHT = 64;
+
+    public static final int IMAGE_DITHERING_NONE = 0;
+    public static final int IMAGE_DITHERING_BAYER = 1;
+    public static final int IMAGE_DITHERING_FLOYD_STEINBERG = 2;
+    public static final int IMAGE_DITHERING_ATKINSON = 3;
+
     public static final byte[] WESTERN_EUROPE_ENCODING = new byte[]{0x1B, 0x74, 0x06};
 
     public static final byte LF = 0x0A;
+    public static final byte[] FEED_PAPER = new byte[]{0x1B, 0x4A};
+
+    public static final byte XON = 0x11;
+    public static final byte XOFF = 0x13;
+
+    public static final byte[] STATUS_REAL_TIME_PRINTER = new byte[]{0x10, 0x04, 0x01};
+    public static final byte[] STATUS_TRANSMIT_PAPER_SENSOR = new byte[]{0x1D, 0x72, 0x01};
 
     public static final byte[] TEXT_ALIGN_LEFT = new byte[]{0x1B, 0x61, 0x00};
     public static final byte[] TEXT_ALIGN_CENTER = new byte[]{0x1B, 0x61, 0x01};
@@ -43,61 +68,612 @@ public class PrinterCommands {
     public static final int BARCODE_UPCE = 1;
     public static final int BARCODE_EAN13 = 2;
     public static final int BARCODE_EAN8 = 3;
+    public static final int BARCODE_CODE39 = 4;
     public static final int BARCODE_ITF = 5;
+    public static final int BARCODE_CODABAR = 6;
+    public static final int BARCODE_CODE93 = 72;
+    public static final int BARCODE_CODE128 = 73;
+
+    public static final int BARCODE_WIDTH_DEFAULT = 3;
+
+    public static final int BARCODE_TEXT_POSITION_NONE = 0;
+    public static final int BARCODE_TEXT_POSITION_ABOVE = 1;
+    public static final int BARCODE_TEXT_POSITION_BELOW = 2;
+    public static final int BARCODE_TEXT_POSITION_BOTH = 3;
 
 
     public static final int QRCODE_1 = 49;
     public static final int QRCODE_2 = 50;
 
+    public static final int QRCODE_ERROR_CORRECTION_AUTO = 0;
+    public static final int QRCODE_ERROR_CORRECTION_L = 48;
+    public static final int QRCODE_ERROR_CORRECTION_M = 49;
+    public static final int QRCODE_ERROR_CORRECTION_Q = 50;
+    public static final int QRCODE_ERROR_CORRECTION_H = 51;
+
+    public static final int QRCODE_MODE_NUMERIC = 1;
+    public static final int QRCODE_MODE_ALPHANUMERIC = 2;
+    public static final int QRCODE_MODE_BYTE = 4;
+
+    /**
+     * Dots of the groups of 8 QR code modules, by module size. Read getQRCodeModulePatterns.
+     */
+    private static byte[][] qrCodeModulePatterns = new byte[0][];
+
+
+    /**
+     * Write the GS v 0 raster image command header in dest.
+     *
+     * @return Offset following the header
+     */
+    private static int writeImageCommand(byte[] dest, int offset, int bytesByLine, int bitmapHeight) {
+        dest[offset] = 0x1D;
+        dest[offset + 1] = 0x76;
+        dest[offset + 2] = 0x30;
+        dest[offset + 3] = 0x00;
+        dest[offset + 4] = (byte) bytesByLine;
+        dest[offset + 5] = (byte) (bytesByLine >> 8);
+        dest[offset + 6] = (byte) bitmapHeight;
+        dest[offset + 7] = (byte) (bitmapHeight >> 8);
+        return offset + 8;
+    }
 
     private static byte[] initImageCommand(int bytesByLine, int bitmapHeight) {
         byte[] imageBytes = new byte[8 + bytesByLine * bitmapHeight];
-        System.arraycopy(new byte[]{0x1D, 0x76, 0x30, 0x00, (byte) bytesByLine, 0x00, (byte) bitmapHeight, 0x00}, 0, imageBytes, 0, 8);
+        PrinterCommands.writeImageCommand(imageBytes, 0, bytesByLine, bitmapHeight);
         return imageBytes;
     }
 
     /**
-     * Convert Bitmap instance to a byte array compatible with ESC/POS printer.
+     * Get the number of bytes of a raster image command line.
+     *
+     * @param image  Bytes contain images in ESC/POS command
+     * @param offset Index of the command first byte
+     * @return int
+     */
+    public static int getImageCommandBytesByLine(byte[] image, int offset) {
+        return (image[offset + 4] & 0xFF) | ((image[offset + 5] & 0xFF) << 8);
+    }
+
+    /**
+     * Get the number of lines of a raster image command.
+     *
+     * @param image  Bytes contain images in ESC/POS command
+     * @param offset Index of the command first byte
+     * @return int
+     */
+    public static int getImageCommandHeight(byte[] image, int offset) {
+        return (image[offset + 6] & 0xFF) | ((image[offset + 7] & 0xFF) << 8);
+    }
+
+    /**
+     * Check if bytes contain a raster image command header at offset.
+     *
+     * @param image  Bytes contain images in ESC/POS command
+     * @param offset Index of the command first byte
+     * @return true if it is a GS v 0 command
+     */
+    public static boolean isImageCommand(byte[] image, int offset) {
+        return offset + 8 <= image.length && image[offset] == 0x1D && image[offset + 1] == 0x76 && image[offset + 2] == 0x30;
+    }
+
+    /**
+     * Check if bytes contain a paper feed command at offset.
+     *
+     * @param image  Bytes contain images in ESC/POS command
+     * @param offset Index of the command first byte
+     * @return true if it is a ESC J command
+     */
+    public static boolean isFeedCommand(byte[] image, int offset) {
+        return offset + 3 <= image.length && image[offset] == PrinterCommands.FEED_PAPER[0] && image[offset + 1] == PrinterCommands.FEED_PAPER[1];
+    }
+
+    /**
+     * Get the number of white bytes at the start (or at the end) of an image line, bytesByLine if the line is blank.
+     */
+    private static int countWhiteBytes(byte[] image, int lineOffset, int bytesByLine, boolean fromEnd) {
+        int i = 0;
+        while (i < bytesByLine && image[fromEnd ? lineOffset + bytesByLine - 1 - i : lineOffset + i] == 0) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Write paper feed commands skipping feedUnits motion units.
+     */
+    private static void writeFeedCommands(PrinterBuffer buffer, int feedUnits) {
+        while (feedUnits > 0) {
+            int units = Math.min(255, feedUnits);
+            buffer.write(PrinterCommands.FEED_PAPER).write((byte) units);
+            feedUnits -= units;
+        }
+    }
+
+    /**
+     * Reduce the size of raster image commands : the white margins on the left and on the right are removed, and the
+     * blank lines are replaced by paper feed commands (ESC J). Images are split around the blank lines when the feed
+     * command is shorter than the lines it replaces.
+     *
+     * @param image           Bytes contain images and paper feed commands, as returned by bitmapToBytes
+     * @param isWidthTrimmed  false to keep the image width, when the image must keep its horizontal position
+     * @param feedUnitsByLine Number of vertical motion units of the printer by image line
+     * @return Bytes contain images and paper feed commands, or image if it contains other commands
+     */
+    public static byte[] compactImageCommands(byte[] image, boolean isWidthTrimmed, float feedUnitsByLine) {
+        int leftWhiteBytes = Integer.MAX_VALUE, rightWhiteBytes = Integer.MAX_VALUE, offset = 0;
+
+        while (offset < image.length) {
+            if (PrinterCommands.isFeedCommand(image, offset)) {
+                offset += 3;
+                continue;
+            }
+            if (!PrinterCommands.isImageCommand(image, offset)) {
+                return image;
+            }
+            int
+                    bytesByLine = PrinterCommands.getImageCommandBytesByLine(image, offset),
+                    height = PrinterCommands.getImageCommandHeight(image, offset);
+            offset += 8;
+            if (offset + bytesByLine * height > image.length) {
+                return image;
+            }
+            for (int y = 0; y < height; y++, offset += bytesByLine) {
+                int left = PrinterCommands.countWhiteBytes(image, offset, bytesByLine, false);
+                if (left < bytesByLine) {
+                    leftWhiteBytes = Math.min(leftWhiteBytes, left);
+                    rightWhiteBytes = Math.min(rightWhiteBytes, PrinterCommands.countWhiteBytes(image, offset, bytesByLine, true));
+                }
+            }
+        }
+
+        if (!isWidthTrimmed || leftWhiteBytes == Integer.MAX_VALUE) {
+            leftWhiteBytes = 0;
+            rightWhiteBytes = 0;
+        }
+
+        PrinterBuffer buffer = new PrinterBuffer(image.length);
+        int feedLines = 0, feedUnits = 0;
+        offset = 0;
+
+        while (offset < image.length) {
+            if (PrinterCommands.isFeedCommand(image, offset)) {
+                feedUnits += image[offset + 2] & 0xFF;
+                offset += 3;
+                continue;
+            }
+
+            int
+                    bytesByLine = PrinterCommands.getImageCommandBytesByLine(image, offset),
+                    height = PrinterCommands.getImageCommandHeight(image, offset),
+                    newBytesByLine = bytesByLine - leftWhiteBytes - rightWhiteBytes,
+                    segmentStart = -1,
+                    segmentEnd = 0;
+            offset += 8;
+
+            for (int y = 0; y <= height; y++) {
+                boolean isEnd = y == height;
+                if (!isEnd && PrinterCommands.countWhiteBytes(image, offset + y * bytesByLine, bytesByLine, false) == bytesByLine) {
+                    continue;
+                }
+                // Blank lines inside the image are kept if an image command and a feed command are longer.
+                if (segmentStart != -1 && (isEnd || (y - segmentEnd) * newBytesByLine > 11)) {
+                    PrinterCommands.writeFeedCommands(buffer, Math.round(feedLines * feedUnitsByLine) + feedUnits);
+                    feedLines = 0;
+                    feedUnits = 0;
+
+                    byte[] header = new byte[8];
+                    PrinterCommands.writeImageCommand(header, 0, newBytesByLine, segmentEnd - segmentStart);
+                    buffer.write(header);
+                    for (int i = segmentStart; i < segmentEnd; i++) {
+                        buffer.write(image, offset + i * bytesByLine + leftWhiteBytes, newBytesByLine);
+                    }
+                    segmentStart = -1;
+                }
+                if (isEnd) {
+                    feedLines += height - segmentEnd;
+                    break;
+                }
+                if (segmentStart == -1) {
+                    feedLines += y - segmentEnd;
+                    segmentStart = y;
+                }
+                segmentEnd = y + 1;
+            }
+            offset += bytesByLine * height;
+        }
+
+        PrinterCommands.writeFeedCommands(buffer, Math.round(feedLines * feedUnitsByLine) + feedUnits);
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Check if a key can identify an image stored in the printer memory : two characters from 32 to 126.
+     *
+     * @param key Key of the image
+     * @return true if the key is valid
+     */
+    public static boolean isStoredImageKey(String key) {
+        return key != null && key.length() == 2 &&
+                key.charAt(0) >= 32 && key.charAt(0) <= 126 &&
+                key.charAt(1) >= 32 && key.charAt(1) <= 126;
+    }
+
+    /**
+     * Convert raster image commands to a command storing the image in the printer memory (GS ( L or GS 8 L).
+     *
+     * @param key           Key of the image, checked by isStoredImageKey
+     * @param image         Bytes contain the image in ESC/POS command, as returned by bitmapToBytes
+     * @param isNonVolatile true to store the image in the NV graphics area, false in the download graphics area
+     * @return Bytes contain the command, or null if image contains other commands than raster images of the same width
+     */
+    public static byte[] storeImageCommand(String key, byte[] image, boolean isNonVolatile) {
+        int bytesByLine = -1, height = 0, offset = 0;
+        while (offset < image.length) {
+            if (!PrinterCommands.isImageCommand(image, offset)) {
+                return null;
+            }
+            int commandBytesByLine = PrinterCommands.getImageCommandBytesByLine(image, offset);
+            if (bytesByLine != -1 && bytesByLine != commandBytesByLine) {
+                return null;
+            }
+            bytesByLine = commandBytesByLine;
+            height += PrinterCommands.getImageCommandHeight(image, offset);
+            offset += 8 + bytesByLine * PrinterCommands.getImageCommandHeight(image, offset);
+        }
+        if (bytesByLine < 1 || height < 1 || offset != image.length) {
+            return null;
+        }
+
+        int
+                widthPx = bytesByLine * 8,
+                dataLength = 11 + bytesByLine * height,
+                headerLength = dataLength > 0xFFFF ? 7 : 5;
+
+        byte[] command = new byte[headerLength + dataLength];
+        if (headerLength == 5) {
+            System.arraycopy(new byte[]{0x1D, 0x28, 0x4C, (byte) dataLength, (byte) (dataLength >> 8)}, 0, command, 0, 5);
+        } else {
+            System.arraycopy(new byte[]{0x1D, 0x38, 0x4C, (byte) dataLength, (byte) (dataLength >> 8), (byte) (dataLength >> 16), (byte) (dataLength >> 24)}, 0, command, 0, 7);
+        }
+        System.arraycopy(
+                new byte[]{
+                        0x30, (byte) (isNonVolatile ? 67 : 83), 0x30, (byte) key.charAt(0), (byte) key.charAt(1), 0x01,
+                        (byte) widthPx, (byte) (widthPx >> 8), (byte) height, (byte) (height >> 8), 0x31
+                },
+                0, command, headerLength, 11
+        );
+
+        int i = headerLength + 11;
+        offset = 0;
+        while (offset < image.length) {
+            int commandLength = bytesByLine * PrinterCommands.getImageCommandHeight(image, offset);
+            System.arraycopy(image, offset + 8, command, i, commandLength);
+            i += commandLength;
+            offset += 8 + commandLength;
+        }
+        return command;
+    }
+
+    /**
+     * Get the command printing an image stored in the printer memory.
+     *
+     * @param key           Key of the image, checked by isStoredImageKey
+     * @param isNonVolatile true if the image is stored in the NV graphics area, false in the download graphics area
+     * @return Bytes contain the command
+     */
+    public static byte[] printStoredImageCommand(String key, boolean isNonVolatile) {
+        return new byte[]{0x1D, 0x28, 0x4C, 0x06, 0x00, 0x30, (byte) (isNonVolatile ? 69 : 85), (byte) key.charAt(0), (byte) key.charAt(1), 0x01, 0x01};
+    }
+
+    /**
+     * Get the command deleting an image stored in the printer memory.
+     *
+     * @param key           Key of the image, checked by isStoredImageKey
+     * @param isNonVolatile true if the image is stored in the NV graphics area, false in the download graphics area
+     * @return Bytes contain the command
+     */
+    public static byte[] deleteStoredImageCommand(String key, boolean isNonVolatile) {
+        return new byte[]{0x1D, 0x28, 0x4C, 0x04, 0x00, 0x30, (byte) (isNonVolatile ? 66 : 82), (byte) key.charAt(0), (byte) key.charAt(1)};
+    }
+
+    /**
+     * Check if a pixel is printed. A pixel stays white only if its red, green and blue channels are all lighter than
+     * IMAGE_WHITE_THRESHOLD.
+     *
+     * @param color ARGB color of the pixel
+     * @return 1 if the pixel is printed, 0 otherwise
+     */
+    public static int pixelToBit(int color) {
+        return (
+            ((color >> 16) & 0xff) > PrinterCommands.IMAGE_WHITE_THRESHOLD &&
+            ((color >> 8) & 0xff) > PrinterCommands.IMAGE_WHITE_THRESHOLD &&
+            (color & 0xff) > PrinterCommands.IMAGE_WHITE_THRESHOLD
+        ) ? 0 : 1;
+    }
+
+    /**
+     * Convert Bitmap instance to a byte array compatible with ESC/POS printer. Images taller than IMAGE_BAND_HEIGHT
+     * are split in several raster image commands of IMAGE_BAND_HEIGHT lines.
      *
      * @param bitmap Bitmap to be convert
      * @return Bytes contain the image in ESC/POS command
      */
     public static byte[] bitmapToBytes(Bitmap bitmap) {
+        return PrinterCommands.bitmapToBytes(bitmap, (PrinterImageDithering) null);
+    }
+
+    /**
+     * Convert Bitmap instance to a byte array compatible with ESC/POS printer, rendering the gray levels with
+     * dithering. Images taller than IMAGE_BAND_HEIGHT are split in several raster image commands of IMAGE_BAND_HEIGHT
+     * lines.
+     *
+     * @param bitmap    Bitmap to be convert
+     * @param dithering Dithering starting a new image, null to print the pixels darker than IMAGE_WHITE_THRESHOLD
+     * @return Bytes contain the image in ESC/POS command
+     */
+    public static byte[] bitmapToBytes(Bitmap bitmap, PrinterImageDithering dithering) {
+        return PrinterCommands.bitmapToBytes(new BitmapPrinterImageSource(bitmap), dithering);
+    }
+
+    /**
+     * Convert a PrinterImageSource instance to a byte array compatible with ESC/POS printer, rendering the
+     * gray levels with dithering. Images taller than IMAGE_BAND_HEIGHT are split in several raster image commands of
+     * IMAGE_BAND_HEIGHT lines.
+     *
+     * @param image     Pixels of the image
+     * @param dithering Dithering starting a new image, null to print the pixels darker than IMAGE_WHITE_THRESHOLD
+     * @return Bytes contain the image in ESC/POS command
+     */
+    public static byte[] bitmapToBytes(PrinterImageSource image, PrinterImageDithering dithering) {
+        byte[] imageBytes = PrinterCommands.initBandedImageCommands(image.getWidth(), image.getHeight());
+        PrinterCommands.bitmapStripeToBytes(image, 0, image.getHeight(), imageBytes, dithering);
+        return imageBytes;
+    }
+
+    /**
+     * Convert Bitmap instance to a byte array compatible with ESC/POS printer, splitting the lines in stripes converted
+     * in parallel by executor. Images smaller than IMAGE_PARALLEL_MIN_PIXELS are converted in the calling thread,
+     * the cost of the tasks being higher than the conversion.
+     * Do not use an executor whose threads may be waiting for this method, it would deadlock.
+     *
+     * @param bitmap   Bitmap to be convert
+     * @param executor Executor running the stripes conversion, null to convert in the calling thread
+     * @return Bytes contain the image in ESC/POS command
+     * @throws CancellationException if the calling thread is interrupted while the stripes are converted
+     */
+    public static byte[] bitmapToBytes(Bitmap bitmap, ExecutorService executor) {
+        return PrinterCommands.bitmapToBytes(bitmap, null, executor);
+    }
+
+    /**
+     * Convert Bitmap instance to a byte array compatible with ESC/POS printer, rendering the gray levels with
+     * dithering and splitting the lines in stripes converted in parallel by executor. Images dithered by error
+     * diffusion are converted in the calling thread, each line depending on the previous ones.
+     * Do not use an executor whose threads may be waiting for this method, it would deadlock.
+     *
+     * @param bitmap    Bitmap to be convert
+     * @param dithering Dithering starting a new image, null to print the pixels darker than IMAGE_WHITE_THRESHOLD
+     * @param executor  Executor running the stripes conversion, null to convert in the calling thread
+     * @return Bytes contain the image in ESC/POS command
+     * @throws CancellationException if the calling thread is interrupted while the stripes are converted
+     */
+    public static byte[] bitmapToBytes(Bitmap bitmap, PrinterImageDithering dithering, ExecutorService executor) {
+        return PrinterCommands.bitmapToBytes(new BitmapPrinterImageSource(bitmap), dithering, executor);
+    }
+
+    /**
+     * Convert a PrinterImageSource instance to a byte array compatible with ESC/POS printer, rendering the
+     * gray levels with dithering and splitting the lines in stripes converted in parallel by executor, each stripe
+     * reading the lines with a copy of image. Images smaller than IMAGE_PARALLEL_MIN_PIXELS are converted in the
+     * calling thread.
+     * Do not use an executor whose threads may be waiting for this method, it would deadlock.
+     *
+     * @param image     Pixels of the image
+     * @param dithering Dithering starting a new image, null to print the pixels darker than IMAGE_WHITE_THRESHOLD
+     * @param executor  Executor running the stripes conversion, null to convert in the calling thread
+     * @return Bytes contain the image in ESC/POS command
+     * @throws CancellationException if the calling thread is interrupted while the stripes are converted
+     */
+    public static byte[] bitmapToBytes(PrinterImageSource image, PrinterImageDithering dithering, ExecutorService executor) {
+        if ((long) image.getWidth() * image.getHeight() < PrinterCommands.IMAGE_PARALLEL_MIN_PIXELS) {
+            return PrinterCommands.bitmapToBytes(image, dithering);
+        }
+        return PrinterCommands.bitmapToBytes(image, dithering, executor, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Convert a PrinterImageSource instance to a byte array compatible with ESC/POS printer, in at most maxNbrStripes
+     * stripes of IMAGE_PARALLEL_MIN_STRIPE_HEIGHT lines or more converted in parallel by executor, whatever the size
+     * of the image. Used to measure the parallel conversion. Images dithered by error diffusion are converted in the
+     * calling thread, and so are all images if executor rejects a stripe.
+     * Do not use an executor whose threads may be waiting for this method, it would deadlock.
+     *
+     * @param image         Pixels of the image
+     * @param dithering     Dithering starting a new image, null to print the pixels darker than IMAGE_WHITE_THRESHOLD
+     * @param executor      Executor running the stripes conversion, null to convert in the calling thread
+     * @param maxNbrStripes Maximum number of stripes
+     * @return Bytes contain the image in ESC/POS command
+     * @throws CancellationException if the calling thread is interrupted while the stripes are converted
+     */
+    public static byte[] bitmapToBytes(final PrinterImageSource image, final PrinterImageDithering dithering, ExecutorService executor, int maxNbrStripes) {
         int
-                bitmapWidth = bitmap.getWidth(),
-                bitmapHeight = bitmap.getHeight(),
-                bytesByLine = (int) Math.ceil(((float) bitmapWidth) / 8f);
+                bitmapWidth = image.getWidth(),
+                bitmapHeight = image.getHeight(),
+                nbrStripes = Math.min(maxNbrStripes, bitmapHeight / PrinterCommands.IMAGE_PARALLEL_MIN_STRIPE_HEIGHT);
 
-        byte[] imageBytes = PrinterCommands.initImageCommand(bytesByLine, bitmapHeight);
+        if (executor == null || nbrStripes < 2 || (dithering != null && dithering.isErrorDiffusion())) {
+            return PrinterCommands.bitmapToBytes(image, dithering);
+        }
 
-        int i = 8;
-        for (int posY = 0; posY < bitmapHeight; posY++) {
-            for (int j = 0; j < bitmapWidth; j += 8) {
-                StringBuilder stringBinary = new StringBuilder();
-                for (int k = 0; k < 8; k++) {
-                    int posX = j + k;
-                    if (posX < bitmapWidth) {
-                        int color = bitmap.getPixel(posX, posY),
-                                r = (color >> 16) & 0xff,
-                                g = (color >> 8) & 0xff,
-                                b = color & 0xff;
-
-                        if (r > 160 && g > 160 && b > 160) {
-                            stringBinary.append("0");
-                        } else {
-                            stringBinary.append("1");
-                        }
-                    } else {
-                        stringBinary.append("0");
+        final byte[] imageBytes = PrinterCommands.initBandedImageCommands(bitmapWidth, bitmapHeight);
+        ArrayList<Future<?>> stripes = new ArrayList<Future<?>>(nbrStripes);
+
+        try {
+            for (int i = 0; i < nbrStripes; i++) {
+                final int
+                        startY = bitmapHeight * i / nbrStripes,
+                        endY = bitmapHeight * (i + 1) / nbrStripes;
+                stripes.add(executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        PrinterCommands.bitmapStripeToBytes(image.copy(), startY, endY, imageBytes, dithering == null ? null : dithering.copy());
                     }
-                }
-                imageBytes[i++] = (byte) Integer.parseInt(stringBinary.toString(), 2);
+                }));
+            }
+            for (Future<?> stripe : stripes) {
+                stripe.get();
+            }
+        } catch (RejectedExecutionException e) {
+            e.printStackTrace();
+            PrinterCommands.cancelStripes(stripes);
+            return PrinterCommands.bitmapToBytes(image, dithering);
+        } catch (ExecutionException e) {
+            PrinterCommands.cancelStripes(stripes);
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
             }
+            throw (RuntimeException) e.getCause();
+        } catch (InterruptedException e) {
+            PrinterCommands.cancelStripes(stripes);
+            Thread.currentThread().interrupt();
+            throw (CancellationException) new CancellationException("The image conversion has been interrupted.").initCause(e);
+        }
+
+        return imageBytes;
+    }
+
+    private static void cancelStripes(ArrayList<Future<?>> stripes) {
+        for (Future<?> stripe : stripes) {
+            stripe.cancel(true);
         }
+    }
+
+    /**
+     * Create the byte array of an image split in bands of IMAGE_BAND_HEIGHT lines, with the header of each band.
+     */
+    private static byte[] initBandedImageCommands(int bitmapWidth, int bitmapHeight) {
+        int
+                bytesByLine = (bitmapWidth + 7) >> 3,
+                nbrBands = Math.max(1, (bitmapHeight + PrinterCommands.IMAGE_BAND_HEIGHT - 1) / PrinterCommands.IMAGE_BAND_HEIGHT);
+
+        byte[] imageBytes = new byte[8 * nbrBands + bytesByLine * bitmapHeight];
+
+        int posY = 0;
+        do {
+            int bandHeight = Math.min(PrinterCommands.IMAGE_BAND_HEIGHT, bitmapHeight - posY);
+            PrinterCommands.writeImageCommand(imageBytes, PrinterCommands.getBandedLineOffset(posY, bytesByLine) - 8, bytesByLine, bandHeight);
+            posY += bandHeight;
+        } while (posY < bitmapHeight);
 
         return imageBytes;
     }
 
+    /**
+     * Get the index of the first byte of a line in the byte array created by initBandedImageCommands.
+     */
+    private static int getBandedLineOffset(int posY, int bytesByLine) {
+        return 8 * (posY / PrinterCommands.IMAGE_BAND_HEIGHT + 1) + bytesByLine * posY;
+    }
+
+    /**
+     * Convert the lines startY to endY of an image in the byte array created by initBandedImageCommands.
+     */
+    private static void bitmapStripeToBytes(PrinterImageSource image, int startY, int endY, byte[] dest, PrinterImageDithering dithering) {
+        int
+                bitmapWidth = image.getWidth(),
+                bytesByLine = (bitmapWidth + 7) >> 3;
+        int[] pixels = new int[bitmapWidth];
+
+        while (startY < endY) {
+            int nbrLines = Math.min(endY, (startY / PrinterCommands.IMAGE_BAND_HEIGHT + 1) * PrinterCommands.IMAGE_BAND_HEIGHT) - startY;
+            PrinterCommands.bitmapLinesToBytes(image, pixels, startY, nbrLines, dest, PrinterCommands.getBandedLineOffset(startY, bytesByLine), bytesByLine, 0, dithering);
+            startY += nbrLines;
+        }
+    }
+
+    /**
+     * Convert a band of lines of a Bitmap instance to a raster image command.
+     *
+     * @param bitmap                Bitmap to be convert
+     * @param posY                  First line of the band
+     * @param bandHeight            Number of lines of the band
+     * @param nbrWhiteBytesToInsert Number of white bytes inserted on the left of each line, to align the image
+     * @return Bytes contain the band in ESC/POS command
+     */
+    public static byte[] bitmapToBytes(Bitmap bitmap, int posY, int bandHeight, int nbrWhiteBytesToInsert) {
+        return PrinterCommands.bitmapToBytes(bitmap, posY, bandHeight, nbrWhiteBytesToInsert, null);
+    }
+
+    /**
+     * Convert a band of lines of a Bitmap instance to a raster image command, rendering the gray levels with
+     * dithering. The bands of an image must be converted in order with the same PrinterImageDithering instance.
+     *
+     * @param bitmap                Bitmap to be convert
+     * @param posY                  First line of the band
+     * @param bandHeight            Number of lines of the band
+     * @param nbrWhiteBytesToInsert Number of white bytes inserted on the left of each line, to align the image
+     * @param dithering             Dithering of the image, null to print the pixels darker than IMAGE_WHITE_THRESHOLD
+     * @return Bytes contain the band in ESC/POS command
+     */
+    public static byte[] bitmapToBytes(Bitmap bitmap, int posY, int bandHeight, int nbrWhiteBytesToInsert, PrinterImageDithering dithering) {
+        return PrinterCommands.bitmapToBytes(new BitmapPrinterImageSource(bitmap), posY, bandHeight, nbrWhiteBytesToInsert, dithering);
+    }
+
+    /**
+     * Convert a band of lines of a PrinterImageSource instance to a raster image command, rendering the gray levels
+     * with dithering. The bands of an image must be converted in order with the same PrinterImageDithering instance.
+     *
+     * @param image                 Pixels of the image
+     * @param posY                  First line of the band
+     * @param bandHeight            Number of lines of the band
+     * @param nbrWhiteBytesToInsert Number of white bytes inserted on the left of each line, to align the image
+     * @param dithering             Dithering of the image, null to print the pixels darker than IMAGE_WHITE_THRESHOLD
+     * @return Bytes contain the band in ESC/POS command
+     */
+    public static byte[] bitmapToBytes(PrinterImageSource image, int posY, int bandHeight, int nbrWhiteBytesToInsert, PrinterImageDithering dithering) {
+        int
+                bitmapWidth = image.getWidth(),
+                bytesByLine = ((bitmapWidth + 7) >> 3) + nbrWhiteBytesToInsert;
+
+        byte[] imageBytes = PrinterCommands.initImageCommand(bytesByLine, bandHeight);
+        PrinterCommands.bitmapLinesToBytes(image, new int[bitmapWidth], posY, bandHeight, imageBytes, 8, bytesByLine, nbrWhiteBytesToInsert, dithering);
+        return imageBytes;
+    }
+
+    /**
+     * Pack the pixels of image lines in dest, one bit per pixel.
+     *
+     * @return Offset following the last line
+     */
+    private static int bitmapLinesToBytes(PrinterImageSource image, int[] pixels, int posY, int nbrLines, byte[] dest, int offset, int bytesByLine, int nbrWhiteBytesToInsert, PrinterImageDithering dithering) {
+        int
+                bitmapWidth = pixels.length,
+                lastBitsShift = (8 - (bitmapWidth & 7)) & 7;
+
+        for (int endY = posY + nbrLines; posY < endY; posY++) {
+            image.readLine(posY, pixels);
+            if (dithering != null) {
+                dithering.lineToBytes(pixels, posY, dest, offset + nbrWhiteBytesToInsert);
+                offset += bytesByLine;
+                continue;
+            }
+            int i = offset + nbrWhiteBytesToInsert, bits = 0;
+            for (int posX = 0; posX < bitmapWidth; posX++) {
+                bits = (bits << 1) | PrinterCommands.pixelToBit(pixels[posX]);
+                if ((posX & 7) == 7) {
+                    dest[i++] = (byte) bits;
+                    bits = 0;
+                }
+            }
+            if (lastBitsShift != 0) {
+                dest[i] = (byte) (bits << lastBitsShift);
+            }
+            offset += bytesByLine;
+        }
+        return offset;
+    }
+
     /**
      * Convert a string to QR Code byte array compatible with ESC/POS printer.
      *
@@ -105,6 +681,18 @@ public class PrinterCommands {
      * @return Bytes contain the image in ESC/POS command
      */
     public static byte[] QRCodeDataToBytes(String data, int size) {
+        return PrinterCommands.QRCodeDataToBytes(data, size, PrinterCommands.QRCODE_ERROR_CORRECTION_L);
+    }
+
+    /**
+     * Convert a string to QR Code byte array compatible with ESC/POS printer.
+     *
+     * @param data            String data to convert in QR Code
+     * @param size            QR code width in dots
+     * @param errorCorrection Error correction level. Use PrinterCommands.QRCODE_ERROR_CORRECTION_... constants
+     * @return Bytes contain the image in ESC/POS command
+     */
+    public static byte[] QRCodeDataToBytes(String data, int size, int errorCorrection) {
 
         ByteMatrix byteMatrix = null;
 
@@ -112,7 +700,7 @@ public class PrinterCommands {
             EnumMap<EncodeHintType, Object> hints = new EnumMap<EncodeHintType, Object>(EncodeHintType.class);
             hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
 
-            QRCode code = Encoder.encode(data, ErrorCorrectionLevel.L, hints);
+            QRCode code = Encoder.encode(data, PrinterCommands.getQRCodeErrorCorrectionLevel(errorCorrection), hints);
             byteMatrix = code.getMatrix();
 
         } catch (WriterException e) {
@@ -123,44 +711,154 @@ public class PrinterCommands {
             return PrinterCommands.initImageCommand(0, 0);
         }
 
+        // A QR code smaller than its number of modules is printed with 1 dot by module rather than not printed.
+        return PrinterCommands.QRCodeMatrixToBytes(byteMatrix, Math.max(1, Math.round((float) size / (float) byteMatrix.getWidth())));
+    }
+
+    /**
+     * Convert a string to QR Code byte array compatible with ESC/POS printer, with the encoding chosen by a
+     * PrinterQRCodePlan.
+     *
+     * @param plan Encoding of the QR code
+     * @return Bytes contain the image in ESC/POS command
+     * @throws IllegalArgumentException if the data is too long for a QR code
+     */
+    public static byte[] QRCodeDataToBytes(PrinterQRCodePlan plan) {
+        if (!plan.isEncodable()) {
+            throw new IllegalArgumentException(plan.toString());
+        }
+        try {
+            EnumMap<EncodeHintType, Object> hints = new EnumMap<EncodeHintType, Object>(EncodeHintType.class);
+            if (!plan.getCharacterSet().equals("ISO-8859-1")) {
+                hints.put(EncodeHintType.CHARACTER_SET, plan.getCharacterSet());
+            }
+            hints.put(EncodeHintType.QR_VERSION, plan.getVersion());
+
+            QRCode code = Encoder.encode(plan.getData(), PrinterCommands.getQRCodeErrorCorrectionLevel(plan.getErrorCorrection()), hints);
+            return PrinterCommands.QRCodeMatrixToBytes(code.getMatrix(), plan.getModuleSize());
+        } catch (WriterException e) {
+            throw new IllegalArgumentException("The QR code cannot be encoded : " + plan, e);
+        }
+    }
+
+    /**
+     * Convert the modules of a barcode to a raster image. The first line is packed, then copied for the other lines.
+     *
+     * @param modules     One boolean by module, true for a bar
+     * @param moduleWidth Width of a module in dots
+     * @param heightPx    Height of the bars in dots
+     * @return Bytes contain the image in ESC/POS command
+     */
+    public static byte[] barcodeModulesToBytes(boolean[] modules, int moduleWidth, int heightPx) {
+        int
+                imageWidth = modules.length * moduleWidth,
+                bytesByLine = (imageWidth + 7) / 8,
+                bits = 0;
+
+        byte[] imageBytes = PrinterCommands.initImageCommand(bytesByLine, heightPx);
+        if (heightPx < 1) {
+            return imageBytes;
+        }
+
+        for (int dot = 0; dot < imageWidth; dot++) {
+            bits = (bits << 1) | (modules[dot / moduleWidth] ? 1 : 0);
+            if ((dot & 7) == 7) {
+                imageBytes[8 + (dot >> 3)] = (byte) bits;
+                bits = 0;
+            }
+        }
+        if ((imageWidth & 7) != 0) {
+            imageBytes[8 + bytesByLine - 1] = (byte) (bits << (8 - (imageWidth & 7)));
+        }
+
+        for (int y = 1, i = 8 + bytesByLine; y < heightPx; y++, i += bytesByLine) {
+            System.arraycopy(imageBytes, 8, imageBytes, i, bytesByLine);
+        }
+        return imageBytes;
+    }
+
+    /**
+     * Convert the modules of a QR code to a raster image, each module being printed coefficient dots wide and high.
+     */
+    static byte[] QRCodeMatrixToBytes(ByteMatrix byteMatrix, int coefficient) {
         int
                 width = byteMatrix.getWidth(),
                 height = byteMatrix.getHeight(),
-                coefficient = Math.round((float) size / (float) width),
                 imageWidth = width * coefficient,
                 imageHeight = height * coefficient,
                 bytesByLine = (int) Math.ceil(((float) imageWidth) / 8f),
                 i = 8;
 
-        if (coefficient < 1) {
-            return PrinterCommands.initImageCommand(0, 0);
-        }
-
-        byte[] imageBytes = PrinterCommands.initImageCommand(bytesByLine, imageHeight);
+        byte[]
+                imageBytes = PrinterCommands.initImageCommand(bytesByLine, imageHeight),
+                patterns = PrinterCommands.getQRCodeModulePatterns(coefficient);
+        byte[][] modules = byteMatrix.getArray();
 
         for (int y = 0; y < height; y++) {
-            byte[] lineBytes = new byte[bytesByLine];
-            int j = 0, multipleX = coefficient;
-            boolean isBlack = false;
-            for (int x = -1; x < width;) {
-                StringBuilder stringBinary = new StringBuilder();
+            // 8 modules are printed on coefficient bytes : each group of 8 modules is packed in a byte, then
+            // replaced by its pattern. The bytes of the last group that exceed the line are zeros and are dropped.
+            byte[] moduleRow = modules[y];
+            int lineStart = i;
+            for (int x = 0; x < width; x += 8) {
+                int packedModules = 0;
                 for (int k = 0; k < 8; k++) {
-                    if(multipleX == coefficient) {
-                        isBlack = ++x < width && byteMatrix.get(x, y) == 1;
-                        multipleX = 0;
-                    }
-                    stringBinary.append(isBlack ? "1" : "0");
-                    ++multipleX;
+                    packedModules = (packedModules << 1) | (x + k < width && moduleRow[x + k] == 1 ? 1 : 0);
                 }
-                lineBytes[j++] = (byte) Integer.parseInt(stringBinary.toString(), 2);
+                int length = Math.min(coefficient, lineStart + bytesByLine - i);
+                System.arraycopy(patterns, packedModules * coefficient, imageBytes, i, length);
+                i += length;
             }
 
-            for (int multipleY = 0; multipleY < coefficient; ++multipleY) {
-                System.arraycopy(lineBytes, 0, imageBytes, i, lineBytes.length);
-                i += lineBytes.length;
+            for (int multipleY = 1; multipleY < coefficient; ++multipleY) {
+                System.arraycopy(imageBytes, lineStart, imageBytes, i, bytesByLine);
+                i += bytesByLine;
             }
         }
 
         return imageBytes;
     }
+
+    /**
+     * Get the dots of each group of 8 QR code modules printed coefficient dots wide : the pattern of the modules packed
+     * in the byte m is made of the coefficient bytes starting at m * coefficient.
+     */
+    private static synchronized byte[] getQRCodeModulePatterns(int coefficient) {
+        if (coefficient >= PrinterCommands.qrCodeModulePatterns.length) {
+            byte[][] modulePatterns = new byte[coefficient + 1][];
+            System.arraycopy(PrinterCommands.qrCodeModulePatterns, 0, modulePatterns, 0, PrinterCommands.qrCodeModulePatterns.length);
+            PrinterCommands.qrCodeModulePatterns = modulePatterns;
+        }
+
+        byte[] patterns = PrinterCommands.qrCodeModulePatterns[coefficient];
+        if (patterns != null) {
+            return patterns;
+        }
+
+        patterns = new byte[256 * coefficient];
+        for (int packedModules = 1; packedModules < 256; packedModules++) {
+            int
+                    lowestModule = Integer.numberOfTrailingZeros(packedModules),
+                    offset = packedModules * coefficient,
+                    otherModulesOffset = (packedModules & (packedModules - 1)) * coefficient;
+            // The other modules are already expanded, the lowest module is the last one printed of the group.
+            System.arraycopy(patterns, otherModulesOffset, patterns, offset, coefficient);
+            for (int dot = (7 - lowestModule) * coefficient, end = dot + coefficient; dot < end; dot++) {
+                patterns[offset + (dot >> 3)] |= (byte) (0x80 >>> (dot & 7));
+            }
+        }
+        PrinterCommands.qrCodeModulePatterns[coefficient] = patterns;
+        return patterns;
+    }
+
+    static ErrorCorrectionLevel getQRCodeErrorCorrectionLevel(int errorCorrection) {
+        switch (errorCorrection) {
+            case PrinterCommands.QRCODE_ERROR_CORRECTION_M:
+                return ErrorCorrectionLevel.M;
+            case PrinterCommands.QRCODE_ERROR_CORRECTION_Q:
+                return ErrorCorrectionLevel.Q;
+            case PrinterCommands.QRCODE_ERROR_CORRECTION_H:
+                return ErrorCorrectionLevel.H;
+        }
+        return ErrorCorrectionLevel.L;
+    }
 }
@@ -0,0 +1,762 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import com.dantsu.printerthermal_escpos_bluetooth.flowcontrol.PrinterFlowControl;
+import com.dantsu.printerthermal_escpos_bluetooth.flowcontrol.StatusFlowControl;
+import com.dantsu.printerthermal_escpos_bluetooth.transport.MemoryPrinterTransport;
+import com.dantsu.printerthermal_escpos_bluetooth.transport.PrinterTransport;
+
+public class PrinterConnection {
+    
+    public static final int DEFAULT_PACKET_SIZE = 990;
+    
+    /**
+     * Start a job on a connection that keeps the commands in memory, used to render ESC/POS commands without printer.
+     *
+     * @return PrinterConnection with a started job, to be ended with endJobWithoutSending
+     */
+    public static PrinterConnection startRenderJob() {
+        PrinterConnection connection = new PrinterConnection(new MemoryPrinterTransport());
+        connection.connect();
+        return connection.startJob();
+    }
+    
+    protected PrinterTransport transport;
+    protected OutputStream outputStream = null;
+    protected InputStream inputStream = null;
+    protected PrinterFlowControl flowControl = new StatusFlowControl();
+    protected PrinterBuffer buffer = new PrinterBuffer();
+    protected boolean isJobStarted = false;
+    protected int packetSize = PrinterConnection.DEFAULT_PACKET_SIZE;
+    
+    protected byte[] currentEncoding = null;
+    protected byte[] currentTextSize = null;
+    protected byte[] currentTextBold = null;
+    protected byte[] currentTextUnderline = null;
+    protected byte[] currentAlign = null;
+    
+    /**
+     * Create new instance of PrinterConnection.
+     *
+     * @param transport Transport used to reach the printer (Bluetooth, TCP, memory...)
+     */
+    public PrinterConnection(PrinterTransport transport) {
+        this.transport = transport;
+    }
+    
+    /**
+     * Get the transport used to reach the printer.
+     *
+     * @return PrinterTransport
+     */
+    public PrinterTransport getTransport() {
+        return this.transport;
+    }
+    
+    /**
+     * Check if the transport is connected to the printer.
+     *
+     * @return true if is connected
+     */
+    public boolean isConnected() {
+        return this.transport.isConnected();
+    }
+    
+    public boolean isOpenedStream() {
+        return (this.outputStream != null);
+    }
+    
+    /**
+     * Start the transport connection and open streams with the printer.
+     *
+     * @return return true if success
+     */
+    public boolean connect() {
+        try {
+            if (this.transport.isConnected() || this.transport.connect()) {
+                this.outputStream = this.transport.getOutputStream();
+                this.inputStream = this.transport.getInputStream();
+                this.flowControl.reset();
+                this.resetPrinterState();
+                // The printer may have been turned off, the download graphics area is lost.
+                PrinterStoredImages.removeVolatile(this.transport.getPrinterId());
+                return true;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            this.outputStream = null;
+            this.inputStream = null;
+        }
+        return false;
+    }
+    
+    /**
+     * Close the transport connection and streams with the printer.
+     *
+     * @return return true if success
+     */
+    public boolean disconnect() {
+        this.transport.disconnect();
+        
+        this.buffer.reset();
+        this.isJobStarted = false;
+        this.flowControl.reset();
+        this.resetPrinterState();
+        
+        if (this.inputStream != null) {
+            try {
+                this.inputStream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            this.inputStream = null;
+        }
+        
+        if (!this.isOpenedStream()) {
+            return true;
+        }
+        
+        try {
+            this.outputStream.close();
+            this.outputStream = null;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+    
+    /**
+     * Flushes the opened stream and forces any buffered bytes to be written out.
+     *
+     * @return Fluent interface
+     */
+    public PrinterConnection flush() {
+        if (this.isOpenedStream()) {
+            try {
+                this.outputStream.flush();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return this;
+    }
+    
+    /**
+     * Set the maximum number of bytes sent to the socket by write.
+     *
+     * @param packetSize Number of bytes by packet. 0 to send the whole buffer in one write.
+     * @return Fluent interface
+     */
+    public PrinterConnection setPacketSize(int packetSize) {
+        this.packetSize = packetSize;
+        return this;
+    }
+    
+    /**
+     * Get the maximum number of bytes sent to the socket by write.
+     *
+     * @return int
+     */
+    public int getPacketSize() {
+        return this.packetSize;
+    }
+    
+    /**
+     * Set the way the connection waits for the printer between two sendings.
+     * Use StatusFlowControl (default), XonXoffFlowControl or FixedDelayFlowControl.
+     *
+     * @param flowControl Instance of PrinterFlowControl
+     * @return Fluent interface
+     */
+    public PrinterConnection setFlowControl(PrinterFlowControl flowControl) {
+        this.flowControl = flowControl.reset();
+        return this;
+    }
+    
+    /**
+     * Get the way the connection waits for the printer between two sendings.
+     *
+     * @return PrinterFlowControl
+     */
+    public PrinterFlowControl getFlowControl() {
+        return this.flowControl;
+    }
+    
+    /**
+     * Check if a print job is started.
+     *
+     * @return true if the commands are buffered until endJob is called
+     */
+    public boolean isJobStarted() {
+        return this.isJobStarted;
+    }
+    
+    /**
+     * Start a print job. All the next commands are kept in memory until endJob is called,
+     * then the whole job is sent to the printer in packets of packetSize bytes.
+     *
+     * @return Fluent interface
+     */
+    public PrinterConnection startJob() {
+        this.isJobStarted = true;
+        return this.resetPrinterState();
+    }
+    
+    /**
+     * End the print job and send all the buffered commands to the printer.
+     *
+     * @return Fluent interface
+     */
+    public PrinterConnection endJob() {
+        this.isJobStarted = false;
+        return this.send();
+    }
+    
+    /**
+     * End the print job and send all the buffered commands to the printer. Unlike endJob, the transmission errors are
+     * thrown instead of being printed.
+     *
+     * @return Fluent interface
+     * @throws InterruptedIOException if the thread is interrupted, the rest of the job is not sent
+     * @throws IOException if the printer is not connected or cannot be reached
+     */
+    public PrinterConnection sendJob() throws IOException {
+        this.isJobStarted = false;
+        if (!this.isOpenedStream()) {
+            this.buffer.reset();
+            throw new IOException("The printer is not connected.");
+        }
+        this.sendBuffer();
+        return this;
+    }
+    
+    /**
+     * End the print job and return the buffered commands instead of sending them to the printer.
+     *
+     * @return PrinterBuffer containing the commands of the job
+     */
+    public PrinterBuffer endJobWithoutSending() {
+        PrinterBuffer job = this.buffer.copy();
+        this.buffer.reset();
+        this.isJobStarted = false;
+        return job;
+    }
+    
+    /**
+     * Send the buffered commands to the printer.
+     *
+     * @return Fluent interface
+     */
+    public PrinterConnection send() {
+        if (!this.isOpenedStream()) {
+            this.buffer.reset();
+            return this;
+        }
+        try {
+            this.sendBuffer();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return this;
+    }
+    
+    /**
+     * Send the buffered commands through the flow control and empty the buffer, even if the sending fails.
+     */
+    protected void sendBuffer() throws IOException {
+        try {
+            this.flowControl.send(this.buffer, this.outputStream, this.inputStream, this.packetSize);
+        } finally {
+            this.buffer.reset();
+        }
+    }
+    
+    /**
+     * Mark that the printer may need waitingTime milliseconds to process the buffered commands. The flow control
+     * only waits this time if it cannot get feedback from the printer.
+     * Outside of a print job, the buffered commands are sent. Inside a print job, nothing is sent until endJob is called.
+     *
+     * @param waitingTime Time in milliseconds that the printer may need to process the commands
+     * @return Fluent interface
+     */
+    protected PrinterConnection commit(int waitingTime) {
+        this.buffer.mark(waitingTime);
+        if (this.isJobStarted) {
+            return this;
+        }
+        return this.send();
+    }
+    
+    /**
+     * Forget the text formatting known to be set on the printer. The next text printed will send all its formatting
+     * commands. Call it if other commands than those of this class have been sent to the printer.
+     *
+     * @return Fluent interface
+     */
+    public PrinterConnection resetPrinterState() {
+        this.currentEncoding = null;
+        this.currentTextSize = null;
+        this.currentTextBold = null;
+        this.currentTextUnderline = null;
+        this.currentAlign = null;
+        return this;
+    }
+    
+    /**
+     * Buffer a formatting command only if the printer is not already in this state.
+     *
+     * @param currentCommand Last command of this kind sent to the printer, null if unknown
+     * @param command Command to be sent
+     * @return The command now set on the printer
+     */
+    protected byte[] writeStateCommand(byte[] currentCommand, byte[] command) {
+        if (currentCommand != command && !Arrays.equals(currentCommand, command)) {
+            this.buffer.write(command);
+        }
+        return command;
+    }
+    
+    /**
+     * Buffer the text formatting commands that differ from the current printer state.
+     *
+     * @param textSize Text size. Use PrinterCommands.TEXT_SIZE_... constants
+     * @param textBold Text weight. Use PrinterCommands.TEXT_WEIGHT_... constants
+     * @param textUnderline Text underlining. Use PrinterCommands.TEXT_UNDERLINE_... constants
+     * @return Fluent interface
+     */
+    protected PrinterConnection writeTextFormat(byte[] textSize, byte[] textBold, byte[] textUnderline) {
+        if (this.currentTextSize != textSize && !Arrays.equals(this.currentTextSize, textSize)) {
+            this.buffer.write(textSize);
+            this.currentTextSize = textSize;
+            // ESC ! also sets the emphasized and underline modes
+            this.currentTextBold = null;
+            this.currentTextUnderline = null;
+        }
+        this.currentTextBold = this.writeStateCommand(this.currentTextBold, textBold);
+        this.currentTextUnderline = this.writeStateCommand(this.currentTextUnderline, textUnderline);
+        return this;
+    }
+    
+    /**
+     * Set the alignment of text and barcodes.
+     * Don't works with image.
+     *
+     * @param align Set the alignment of text and barcodes. Use PrinterCommands.TEXT_ALIGN_... constants
+     * @return Fluent interface
+     */
+    public PrinterConnection setAlign(byte[] align) {
+        if (!this.isOpenedStream()) {
+            return this;
+        }
+        this.currentAlign = this.writeStateCommand(this.currentAlign, align);
+        return this.commit(0);
+    }
+    
+    /**
+     * Send raw ESC/POS commands to the connected printer.
+     *
+     * @param bytes Bytes contain ESC/POS commands
+     * @return Fluent interface
+     */
+    public PrinterConnection write(byte[] bytes) {
+        if (!this.isOpenedStream()) {
+            return this;
+        }
+        this.buffer.write(bytes);
+        this.resetPrinterState();
+        return this.commit(0);
+    }
+    
+    /**
+     * Send ESC/POS commands rendered in a buffer to the connected printer, with the waiting times of its marks.
+     *
+     * @param buffer Buffer contain ESC/POS commands
+     * @return Fluent interface
+     */
+    public PrinterConnection write(PrinterBuffer buffer) {
+        if (!this.isOpenedStream()) {
+            return this;
+        }
+        this.buffer.write(buffer);
+        this.resetPrinterState();
+        return this.commit(0);
+    }
+    
+    /**
+     * Print text with the connected printer.
+     *
+     * @param text Text to be printed
+     * @return Fluent interface
+     */
+    public PrinterConnection printText(String text) {
+        return this.printText(text, 0);
+    }
+    
+    /**
+     * Print text with the connected printer.
+     *
+     * @param text Text to be printed
+     * @param maxlength Number of bytes printed
+     * @return Fluent interface
+     */
+    public PrinterConnection printText(String text, int maxlength) {
+        return this.printText(text, null, null, null, maxlength);
+    }
+    
+    /**
+     * Print text with the connected printer.
+     *
+     * @param text Text to be printed
+     * @param textSize Set the text size. Use PrinterCommands.TEXT_SIZE_... constants
+     * @return Fluent interface
+     */
+    public PrinterConnection printText(String text, byte[] textSize) {
+        return this.printText(text, textSize, 0);
+    }
+    
+    /**
+     * Print text with the connected printer.
+     *
+     * @param text Text to be printed
+     * @param textSize Set the text size. Change the text size. Use PrinterCommands.TEXT_SIZE_... constants
+     * @param maxlength Number of bytes printed
+     * @return Fluent interface
+     */
+    public PrinterConnection printText(String text, byte[] textSize, int maxlength) {
+        return this.printText(text, textSize, null, null, maxlength);
+    }
+    
+    /**
+     * Print text with the connected printer.
+     *
+     * @param text Text to be printed
+     * @param textSize Set the text size. Use PrinterCommands.TEXT_SIZE_... constants
+     * @param textBold Set the text weight. Use PrinterCommands.TEXT_WEIGHT_... constants
+     * @return Fluent interface
+     */
+    public PrinterConnection printText(String text, byte[] textSize, byte[] textBold) {
+        return this.printText(text, textSize, textBold, 0);
+    }
+    
+    /**
+     * Print text with the connected printer.
+     *
+     * @param text Text to be printed
+     * @param textSize Set the text size. Use PrinterCommands.TEXT_SIZE_... constants
+     * @param textBold Set the text weight. Use PrinterCommands.TEXT_WEIGHT_... constants
+     * @param maxlength Number of bytes printed
+     * @return Fluent interface
+     */
+    public PrinterConnection printText(String text, byte[] textSize, byte[] textBold, int maxlength) {
+        return this.printText(text, textSize, textBold, null, maxlength);
+    }
+    
+    /**
+     * Print text with the connected printer.
+     *
+     * @param text Text to be printed
+     * @param textSize Set the text size. Use PrinterCommands.TEXT_SIZE_... constants
+     * @param textBold Set the text weight. Use PrinterCommands.TEXT_WEIGHT_... constants
+     * @param textUnderline Set the underlining of the text. Use PrinterCommands.TEXT_UNDERLINE_... constants
+     * @return Fluent interface
+     */
+    public PrinterConnection printText(String text, byte[] textSize, byte[] textBold, byte[] textUnderline) {
+        return this.printText(text, textSize, textBold, textUnderline, 0);
+    }
+    
+    /**
+     * Print text with the connected printer.
+     *
+     * @param text Text to be printed
+     * @param textSize Set the text size. Use PrinterCommands.TEXT_SIZE_... constants
+     * @param textBold Set the text weight. Use PrinterCommands.TEXT_WEIGHT_... constants
+     * @param textUnderline Set the underlining of the text. Use PrinterCommands.TEXT_UNDERLINE_... constants
+     * @param maxlength Number of bytes printed
+     * @return Fluent interface
+     */
+    public PrinterConnection printText(String text, byte[] textSize, byte[] textBold, byte[] textUnderline, int maxlength) {
+        if (!this.isOpenedStream()) {
+            return this;
+        }
+        
+        try {
+            byte[] textBytes = text.getBytes("ISO-8859-1");
+            
+            if (maxlength == 0) {
+                maxlength = textBytes.length;
+            }
+            
+            this.currentEncoding = this.writeStateCommand(this.currentEncoding, PrinterCommands.WESTERN_EUROPE_ENCODING);
+            this.writeTextFormat(
+                textSize != null ? textSize : PrinterCommands.TEXT_SIZE_NORMAL,
+                textBold != null ? textBold : PrinterCommands.TEXT_WEIGHT_NORMAL,
+                textUnderline != null ? textUnderline : PrinterCommands.TEXT_UNDERLINE_OFF
+            );
+            
+            this.buffer.write(textBytes, 0, maxlength);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return this;
+        }
+        
+        return this.commit(0);
+    }
+    
+    /**
+     * Print image with the connected printer.
+     *
+     * @param image Bytes contain the image in ESC/POS command
+     * @return Fluent interface
+     */
+    public PrinterConnection printImage(byte[] image) {
+        if (!this.isOpenedStream()) {
+            return this;
+        }
+        this.buffer.write(image);
+        return this.commit(PrinterCommands.TIME_BETWEEN_TWO_PRINT * 2);
+    }
+    
+    /**
+     * Store an image in the printer memory, to print it later with printStoredImage. The NV graphics area keeps the
+     * image when the printer is turned off, but it supports a limited number of writes : store the image only when
+     * isImageStored returns false.
+     *
+     * @param key           Two characters from 32 to 126 identifying the image
+     * @param image         Bytes contain the image in ESC/POS command, as returned by bitmapToBytes
+     * @param isNonVolatile true to store the image in the NV graphics area, false in the download graphics area
+     * @return Fluent interface
+     */
+    public PrinterConnection storeImage(String key, byte[] image, boolean isNonVolatile) {
+        if (!this.isOpenedStream() || !PrinterCommands.isStoredImageKey(key)) {
+            return this;
+        }
+        byte[] command = PrinterCommands.storeImageCommand(key, image, isNonVolatile);
+        if (command == null) {
+            return this;
+        }
+        
+        int bytesByLine = PrinterCommands.getImageCommandBytesByLine(image, 0), heightPx = 0;
+        for (int offset = 0; offset < image.length; offset += 8 + bytesByLine * PrinterCommands.getImageCommandHeight(image, offset)) {
+            heightPx += PrinterCommands.getImageCommandHeight(image, offset);
+        }
+        
+        this.buffer.write(command);
+        PrinterStoredImages.add(this.transport.getPrinterId(), key, PrinterImageCache.hash(image), isNonVolatile, bytesByLine * 8, heightPx);
+        return this.commit(PrinterCommands.TIME_BETWEEN_TWO_PRINT * (isNonVolatile ? 10 : 2));
+    }
+    
+    /**
+     * Check if an image is known to be stored in the printer memory with this key.
+     *
+     * @param key   Key of the image
+     * @param image Bytes contain the image in ESC/POS command, null to check only the key
+     * @return true if the image does not need to be stored again
+     */
+    public boolean isImageStored(String key, byte[] image) {
+        PrinterStoredImages.StoredImage storedImage = PrinterStoredImages.get(this.transport.getPrinterId(), key);
+        if (storedImage == null) {
+            return false;
+        }
+        return image == null || (storedImage.getHash() != null && storedImage.getHash().equals(PrinterImageCache.hash(image)));
+    }
+    
+    /**
+     * Get the image stored in the printer memory with this key.
+     *
+     * @param key Key of the image
+     * @return StoredImage, or null if no image is known to be stored with this key
+     */
+    public PrinterStoredImages.StoredImage getStoredImage(String key) {
+        return PrinterStoredImages.get(this.transport.getPrinterId(), key);
+    }
+    
+    /**
+     * Print an image stored in the printer memory. Images not stored by this application are looked up in the NV
+     * graphics area.
+     *
+     * @param key Key of the image
+     * @return Fluent interface
+     */
+    public PrinterConnection printStoredImage(String key) {
+        if (!this.isOpenedStream() || !PrinterCommands.isStoredImageKey(key)) {
+            return this;
+        }
+        PrinterStoredImages.StoredImage storedImage = PrinterStoredImages.get(this.transport.getPrinterId(), key);
+        this.buffer.write(PrinterCommands.printStoredImageCommand(key, storedImage == null || storedImage.isNonVolatile()));
+        return this.commit(PrinterCommands.TIME_BETWEEN_TWO_PRINT * 2);
+    }
+    
+    /**
+     * Delete an image stored in the printer memory.
+     *
+     * @param key Key of the image
+     * @return Fluent interface
+     */
+    public PrinterConnection deleteStoredImage(String key) {
+        if (!this.isOpenedStream() || !PrinterCommands.isStoredImageKey(key)) {
+            return this;
+        }
+        PrinterStoredImages.StoredImage storedImage = PrinterStoredImages.get(this.transport.getPrinterId(), key);
+        this.buffer.write(PrinterCommands.deleteStoredImageCommand(key, storedImage == null || storedImage.isNonVolatile()));
+        PrinterStoredImages.remove(this.transport.getPrinterId(), key);
+        return this.commit(PrinterCommands.TIME_BETWEEN_TWO_PRINT);
+    }
+    
+    /**
+     * Print a barcode with the connected printer.
+     *
+     * @param barcodeType Set the barcode type. Use PrinterCommands.BARCODE_... constants
+     * @param barcode String that contains code numbers
+     * @param heightPx dot height of the barcode
+     * @return Fluent interface
+     */
+    public PrinterConnection printBarcode(int barcodeType, String barcode, int heightPx) {
+        if (!this.isOpenedStream()) {
+            return this;
+        }
+        
+        try {
+            return this.printBarcode(
+                new PrinterBarcode(barcodeType, barcode),
+                heightPx,
+                PrinterCommands.BARCODE_WIDTH_DEFAULT,
+                PrinterCommands.BARCODE_TEXT_POSITION_NONE
+            );
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+            return this;
+        }
+    }
+    
+    /**
+     * Print a barcode with the connected printer. The bar width and the text position are restored to the printer
+     * defaults after the barcode.
+     *
+     * @param barcode Barcode validated for the GS k command
+     * @param heightPx dot height of the barcode
+     * @param moduleWidth dot width of the narrowest bar, from 2 to 6
+     * @param textPosition Set the position of the human readable text. Use PrinterCommands.BARCODE_TEXT_POSITION_... constants
+     * @return Fluent interface
+     */
+    public PrinterConnection printBarcode(PrinterBarcode barcode, int heightPx, int moduleWidth, int textPosition) {
+        if (!this.isOpenedStream()) {
+            return this;
+        }
+        
+        if (moduleWidth != PrinterCommands.BARCODE_WIDTH_DEFAULT) {
+            this.buffer.write(new byte[]{0x1D, 0x77, (byte) moduleWidth});
+        }
+        if (textPosition != PrinterCommands.BARCODE_TEXT_POSITION_NONE) {
+            this.buffer.write(new byte[]{0x1D, 0x48, (byte) textPosition});
+        }
+        
+        this.buffer
+            .write(new byte[]{0x1D, 0x68, (byte) heightPx})
+            .write(barcode.getCommand());
+        
+        if (textPosition != PrinterCommands.BARCODE_TEXT_POSITION_NONE) {
+            this.buffer.write(new byte[]{0x1D, 0x48, (byte) PrinterCommands.BARCODE_TEXT_POSITION_NONE});
+        }
+        if (moduleWidth != PrinterCommands.BARCODE_WIDTH_DEFAULT) {
+            this.buffer.write(new byte[]{0x1D, 0x77, (byte) PrinterCommands.BARCODE_WIDTH_DEFAULT});
+        }
+        return this.commit(PrinterCommands.TIME_BETWEEN_TWO_PRINT * 2);
+    }
+
+
+
+    /**
+     * Print a QR code with the connected printer.
+     *
+     * @param qrCodeType Set the barcode type. Use PrinterCommands.QRCODE_... constants
+     * @param text String that contains QR code data
+     * @param size dot size of QR code pixel
+     * @return Fluent interface
+     */
+    public PrinterConnection printQRCode(int qrCodeType, String text, int size) {
+        return this.printQRCode(qrCodeType, text, size, PrinterCommands.QRCODE_ERROR_CORRECTION_L);
+    }
+
+    /**
+     * Print a QR code with the connected printer.
+     *
+     * @param qrCodeType Set the barcode type. Use PrinterCommands.QRCODE_... constants
+     * @param text String that contains QR code data
+     * @param size dot size of QR code pixel
+     * @param errorCorrection Set the error correction level. Use PrinterCommands.QRCODE_ERROR_CORRECTION_... constants
+     * @return Fluent interface
+     */
+    public PrinterConnection printQRCode(int qrCodeType, String text, int size, int errorCorrection) {
+        if (!this.isOpenedStream()) {
+            return this;
+        }
+
+        if(size < 1) {
+            size = 1;
+        } else if(size > 16) {
+            size = 16;
+        }
+
+
+        try {
+
+            this.currentEncoding = this.writeStateCommand(this.currentEncoding, PrinterCommands.WESTERN_EUROPE_ENCODING);
+
+            byte[] textBytes = text.getBytes("ISO-8859-1");
+
+            int
+                    commandLength = textBytes.length + 3,
+                    pL = commandLength % 256,
+                    pH = (int)Math.floor(commandLength / 256);
+
+            /*byte[] qrCodeCommand = new byte[textBytes.length + 7];
+            System.arraycopy(new byte[]{0x1B, 0x5A, 0x00, 0x00, (byte)size, (byte)pL, (byte)pH}, 0, qrCodeCommand, 0, 7);
+            System.arraycopy(textBytes, 0, qrCodeCommand, 7, textBytes.length);
+            this.outputStream.write(qrCodeCommand);*/
+
+            this.buffer
+                .write(new byte[]{0x1D, 0x28, 0x6B, 0x04, 0x00, 0x31, 0x41, (byte)qrCodeType, 0x00})
+                .write(new byte[]{0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x43, (byte)size})
+                .write(new byte[]{0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x45, (byte)errorCorrection})
+                .write(new byte[]{0x1D, 0x28, 0x6B, (byte)pL, (byte)pH, 0x31, 0x50, 0x30})
+                .write(textBytes)
+                .write(new byte[]{0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x51, 0x30});
+        } catch (IOException e) {
+            e.printStackTrace();
+            return this;
+        }
+        return this.commit(PrinterCommands.TIME_BETWEEN_TWO_PRINT * 2);
+    }
+    /**
+     * Forces the transition to a new line with the connected printer.
+     *
+     * @return Fluent interface
+     */
+    public PrinterConnection newLine() {
+        return this.newLine(null);
+    }
+    
+    /**
+     * Forces the transition to a new line and set the alignment of text and barcodes with the connected printer.
+     * @param align Set the alignment of text and barcodes. Use PrinterCommands.TEXT_ALIGN_... constants
+     * @return Fluent interface
+     */
+    public PrinterConnection newLine(byte[] align) {
+        if (!this.isOpenedStream()) {
+            return this;
+        }
+        
+        this.buffer.write(PrinterCommands.LF);
+        this.commit(PrinterCommands.TIME_BETWEEN_TWO_PRINT);
+        if (align != null) {
+            this.currentAlign = this.writeStateCommand(this.currentAlign, align);
+        }
+        
+        return this.commit(0);
+    }
+}
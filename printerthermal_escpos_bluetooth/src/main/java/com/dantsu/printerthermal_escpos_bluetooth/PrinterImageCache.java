@@ -0,0 +1,156 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import com.dantsu.printerthermal_escpos_bluetooth.textparser.PrinterTextParserImg;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class PrinterImageCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1024 * 1024;
+
+    private static PrinterImageCache defaultCache = new PrinterImageCache(PrinterImageCache.DEFAULT_MAX_SIZE);
+
+    /**
+     * Get the cache shared by default by all the Printer instances.
+     *
+     * @return PrinterImageCache
+     */
+    public static PrinterImageCache getDefaultCache() {
+        return PrinterImageCache.defaultCache;
+    }
+
+    /**
+     * Get a SHA-1 hash of the content, to build cache keys that do not keep the content in memory.
+     *
+     * @param content Content to be hashed
+     * @return Hexadecimal hash, or null if SHA-1 is not available
+     */
+    public static String hash(String content) {
+        try {
+            return PrinterImageCache.hash(content.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Get a SHA-1 hash of the content, to build cache keys that do not keep the content in memory.
+     *
+     * @param content Content to be hashed
+     * @return Hexadecimal hash, or null if SHA-1 is not available
+     */
+    public static String hash(byte[] content) {
+        try {
+            return PrinterTextParserImg.bytesToHexadecimalString(MessageDigest.getInstance("SHA-1").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+
+    private LinkedHashMap<String, byte[]> entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+    private int maxSize;
+    private int size = 0;
+    private long nbrHits = 0;
+    private long nbrMisses = 0;
+    private long nbrEvictions = 0;
+
+    /**
+     * Create a new instance of PrinterImageCache, keeping the last used ESC/POS images in memory.
+     *
+     * @param maxSize Maximum number of bytes of all the cached images
+     */
+    public PrinterImageCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get a cached image. The returned array is shared, it must not be modified.
+     *
+     * @param key Key built from the content hash and the parameters of the conversion
+     * @return Bytes contain the image in ESC/POS command, null if the key is not cached
+     */
+    public synchronized byte[] get(String key) {
+        byte[] image = this.entries.get(key);
+        if (image == null) {
+            this.nbrMisses++;
+        } else {
+            this.nbrHits++;
+        }
+        return image;
+    }
+
+    /**
+     * Cache an image, removing the least recently used images if the cache is full. An image larger than the cache
+     * is not cached, and the image previously cached with the same key is removed.
+     *
+     * @param key   Key built from the content hash and the parameters of the conversion
+     * @param image Bytes contain the image in ESC/POS command, it must not be modified after this call
+     * @return Fluent interface
+     */
+    public synchronized PrinterImageCache put(String key, byte[] image) {
+        if (image.length > this.maxSize) {
+            byte[] previousImage = this.entries.remove(key);
+            if (previousImage != null) {
+                this.size -= previousImage.length;
+            }
+            return this;
+        }
+
+        byte[] previousImage = this.entries.put(key, image);
+        if (previousImage != null) {
+            this.size -= previousImage.length;
+        }
+        this.size += image.length;
+
+        Iterator<Map.Entry<String, byte[]>> iterator = this.entries.entrySet().iterator();
+        while (this.size > this.maxSize && iterator.hasNext()) {
+            this.size -= iterator.next().getValue().length;
+            iterator.remove();
+            this.nbrEvictions++;
+        }
+        return this;
+    }
+
+    /**
+     * Remove all the cached images. Counters are kept.
+     *
+     * @return Fluent interface
+     */
+    public synchronized PrinterImageCache clear() {
+        this.entries.clear();
+        this.size = 0;
+        return this;
+    }
+
+    public synchronized int getSize() {
+        return this.size;
+    }
+
+    public synchronized int getMaxSize() {
+        return this.maxSize;
+    }
+
+    public synchronized int getNbrImages() {
+        return this.entries.size();
+    }
+
+    public synchronized long getNbrHits() {
+        return this.nbrHits;
+    }
+
+    public synchronized long getNbrMisses() {
+        return this.nbrMisses;
+    }
+
+    public synchronized long getNbrEvictions() {
+        return this.nbrEvictions;
+    }
+}
@@ -0,0 +1,264 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import java.util.Arrays;
+
+/**
+ * Convert image lines to printed dots, rendering the gray levels with ordered (Bayer) or error diffusion
+ * (Floyd-Steinberg, Atkinson) dithering.
+ * <p>
+ * An instance converts the lines of one image from top to bottom : the error diffusion modes keep the error of the
+ * previous lines. Use copy() to convert another image or another part of the image in parallel.
+ */
+public class PrinterImageDithering {
+
+    public static final float DEFAULT_GAMMA = 1f;
+
+    private static final int[] BAYER_MATRIX = new int[]{
+         0, 32,  8, 40,  2, 34, 10, 42,
+        48, 16, 56, 24, 50, 18, 58, 26,
+        12, 44,  4, 36, 14, 46,  6, 38,
+        60, 28, 52, 20, 62, 30, 54, 22,
+         3, 35, 11, 43,  1, 33,  9, 41,
+        51, 19, 59, 27, 49, 17, 57, 25,
+        15, 47,  7, 39, 13, 45,  5, 37,
+        63, 31, 55, 23, 61, 29, 53, 21
+    };
+
+    /**
+     * Gray levels under which a pixel is printed, for each cell of the 8x8 Bayer matrix.
+     */
+    private static final int[] BAYER_THRESHOLDS = new int[64];
+
+    /**
+     * Luminance contribution of each channel value, in 1/256 gray level. The three weights sum to 256.
+     */
+    private static final int[] LUMINANCE_RED = new int[256];
+    private static final int[] LUMINANCE_GREEN = new int[256];
+    private static final int[] LUMINANCE_BLUE = new int[256];
+
+    static {
+        for (int i = 0; i < 64; i++) {
+            PrinterImageDithering.BAYER_THRESHOLDS[i] = PrinterImageDithering.BAYER_MATRIX[i] * 4 + 2;
+        }
+        for (int i = 0; i < 256; i++) {
+            PrinterImageDithering.LUMINANCE_RED[i] = 77 * i;
+            PrinterImageDithering.LUMINANCE_GREEN[i] = 150 * i;
+            PrinterImageDithering.LUMINANCE_BLUE[i] = 29 * i;
+        }
+    }
+
+
+    private int dithering;
+    private float gamma;
+    private int[] gammaLevels;
+    private int[] lineLevels = new int[0];
+    private int[] errors;
+    private int[] nextErrors;
+    private int[] nextNextErrors;
+
+    /**
+     * Create a new instance of PrinterImageDithering.
+     *
+     * @param dithering Dithering mode. Use PrinterCommands.IMAGE_DITHERING_... constants
+     */
+    public PrinterImageDithering(int dithering) {
+        this(dithering, PrinterImageDithering.DEFAULT_GAMMA);
+    }
+
+    /**
+     * Create a new instance of PrinterImageDithering.
+     *
+     * @param dithering Dithering mode. Use PrinterCommands.IMAGE_DITHERING_... constants
+     * @param gamma     Gamma applied to the gray levels, higher than 1 to lighten the mid tones of printers whose dots
+     *                  spread
+     */
+    public PrinterImageDithering(int dithering, float gamma) {
+        this(dithering, gamma, PrinterImageDithering.initGammaLevels(gamma));
+    }
+
+    private PrinterImageDithering(int dithering, float gamma, int[] gammaLevels) {
+        this.dithering = dithering;
+        this.gamma = gamma;
+        this.gammaLevels = gammaLevels;
+    }
+
+    private static int[] initGammaLevels(float gamma) {
+        int[] gammaLevels = new int[256];
+        double exponent = gamma > 0f ? 1d / gamma : 1d;
+        for (int i = 0; i < 256; i++) {
+            gammaLevels[i] = (int) Math.round(255d * Math.pow(i / 255d, exponent));
+        }
+        return gammaLevels;
+    }
+
+    /**
+     * Get a new instance with the same settings, starting a new image.
+     *
+     * @return PrinterImageDithering
+     */
+    public PrinterImageDithering copy() {
+        return new PrinterImageDithering(this.dithering, this.gamma, this.gammaLevels);
+    }
+
+    public int getDithering() {
+        return this.dithering;
+    }
+
+    public float getGamma() {
+        return this.gamma;
+    }
+
+    /**
+     * Check if the conversion of a line depends on the previous lines. Lines of such images cannot be converted in
+     * parallel without visible seams.
+     *
+     * @return true for the error diffusion modes
+     */
+    public boolean isErrorDiffusion() {
+        return this.dithering == PrinterCommands.IMAGE_DITHERING_FLOYD_STEINBERG || this.dithering == PrinterCommands.IMAGE_DITHERING_ATKINSON;
+    }
+
+    /**
+     * Convert an image line to printed dots, packed one bit per pixel in dest. Lines must be converted in order.
+     *
+     * @param pixels ARGB colors of the line pixels
+     * @param posY   Line index in the image
+     * @param dest   Array receiving the bits
+     * @param offset Index of the first byte of the line in dest
+     */
+    public void lineToBytes(int[] pixels, int posY, byte[] dest, int offset) {
+        int width = pixels.length;
+        if (this.lineLevels.length != width) {
+            this.lineLevels = new int[width];
+            this.errors = new int[width + 4];
+            this.nextErrors = new int[width + 4];
+            this.nextNextErrors = new int[width + 4];
+        }
+
+        int[] levels = this.lineLevels, gammaLevels = this.gammaLevels;
+        for (int posX = 0; posX < width; posX++) {
+            int
+                color = pixels[posX],
+                level = gammaLevels[(
+                    PrinterImageDithering.LUMINANCE_RED[(color >> 16) & 0xff] +
+                    PrinterImageDithering.LUMINANCE_GREEN[(color >> 8) & 0xff] +
+                    PrinterImageDithering.LUMINANCE_BLUE[color & 0xff]
+                ) >> 8],
+                alpha = color >>> 24;
+            if (alpha != 0xff) {
+                // Transparent pixels are blended on the white paper.
+                level = 255 - (255 - level) * alpha / 255;
+            }
+            levels[posX] = level;
+        }
+
+        switch (this.dithering) {
+            case PrinterCommands.IMAGE_DITHERING_BAYER:
+                this.bayerLineToBits(posY, dest, offset);
+                break;
+            case PrinterCommands.IMAGE_DITHERING_FLOYD_STEINBERG:
+                this.floydSteinbergLineToBits(dest, offset);
+                break;
+            case PrinterCommands.IMAGE_DITHERING_ATKINSON:
+                this.atkinsonLineToBits(dest, offset);
+                break;
+            default:
+                this.thresholdLineToBits(pixels, dest, offset);
+                break;
+        }
+    }
+
+    private void thresholdLineToBits(int[] pixels, byte[] dest, int offset) {
+        int bits = 0, width = pixels.length;
+        for (int posX = 0; posX < width; posX++) {
+            bits = (bits << 1) | PrinterCommands.pixelToBit(pixels[posX]);
+            offset = PrinterImageDithering.flushBits(dest, offset, bits, posX, width);
+        }
+    }
+
+    private void bayerLineToBits(int posY, byte[] dest, int offset) {
+        int[] levels = this.lineLevels;
+        int bits = 0, width = levels.length, matrixRow = (posY & 7) << 3;
+        for (int posX = 0; posX < width; posX++) {
+            bits = (bits << 1) | (levels[posX] < PrinterImageDithering.BAYER_THRESHOLDS[matrixRow | (posX & 7)] ? 1 : 0);
+            offset = PrinterImageDithering.flushBits(dest, offset, bits, posX, width);
+        }
+    }
+
+    /**
+     * Floyd-Steinberg : 7/16 of the error to the right pixel, 3/16, 5/16 and 1/16 to the pixels below.
+     * Errors are stored in 1/16 gray level, the index of the pixel posX being posX + 2.
+     */
+    private void floydSteinbergLineToBits(byte[] dest, int offset) {
+        int[] levels = this.lineLevels, errors = this.errors, nextErrors = this.nextErrors;
+        int bits = 0, width = levels.length;
+        for (int posX = 0; posX < width; posX++) {
+            int
+                i = posX + 2,
+                value = levels[posX] + ((errors[i] + 8) >> 4),
+                bit = value < 128 ? 1 : 0,
+                error = bit == 1 ? value : value - 255;
+            errors[i + 1] += error * 7;
+            nextErrors[i - 1] += error * 3;
+            nextErrors[i] += error * 5;
+            nextErrors[i + 1] += error;
+            bits = (bits << 1) | bit;
+            offset = PrinterImageDithering.flushBits(dest, offset, bits, posX, width);
+        }
+        this.rotateErrors();
+    }
+
+    /**
+     * Atkinson : 1/8 of the error to two pixels on the right, three pixels below and one pixel two lines below.
+     * Only 3/4 of the error is spread, which keeps the contrast of the light and dark areas.
+     * Errors are stored in 1/8 gray level, the index of the pixel posX being posX + 2.
+     */
+    private void atkinsonLineToBits(byte[] dest, int offset) {
+        int[] levels = this.lineLevels, errors = this.errors, nextErrors = this.nextErrors, nextNextErrors = this.nextNextErrors;
+        int bits = 0, width = levels.length;
+        for (int posX = 0; posX < width; posX++) {
+            int
+                i = posX + 2,
+                value = levels[posX] + ((errors[i] + 4) >> 3),
+                bit = value < 128 ? 1 : 0,
+                error = bit == 1 ? value : value - 255;
+            errors[i + 1] += error;
+            errors[i + 2] += error;
+            nextErrors[i - 1] += error;
+            nextErrors[i] += error;
+            nextErrors[i + 1] += error;
+            nextNextErrors[i] += error;
+            bits = (bits << 1) | bit;
+            offset = PrinterImageDithering.flushBits(dest, offset, bits, posX, width);
+        }
+        this.rotateErrors();
+    }
+
+    /**
+     * Move the errors of the next lines up by one line.
+     */
+    private void rotateErrors() {
+        int[] errors = this.errors;
+        Arrays.fill(errors, 0);
+        this.errors = this.nextErrors;
+        this.nextErrors = this.nextNextErrors;
+        this.nextNextErrors = errors;
+    }
+
+    /**
+     * Write the bits in dest when a byte is complete or at the end of the line.
+     *
+     * @return Index of the next byte to write
+     */
+    private static int flushBits(byte[] dest, int offset, int bits, int posX, int width) {
+        if ((posX & 7) == 7) {
+            dest[offset] = (byte) bits;
+            return offset + 1;
+        }
+        if (posX == width - 1) {
+            dest[offset] = (byte) (bits << (7 - (posX & 7)));
+            return offset + 1;
+        }
+        return offset;
+    }
+}
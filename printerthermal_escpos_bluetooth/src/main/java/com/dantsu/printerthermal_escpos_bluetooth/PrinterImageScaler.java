@@ -0,0 +1,187 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import java.util.Arrays;
+
+/**
+ * Read the lines of an image shrunk to a maximum width, without creating the shrunk image.
+ * <p>
+ * Each line is computed when it is read : every pixel is the average of the source pixels it covers, weighted by
+ * the covered area (box filter). Only one source line and a few lines of the target width are kept in memory.
+ * Lines are faster to read in order, the last source line being reused. An instance must not be read by several
+ * threads, use copy() to read the lines in parallel.
+ */
+public class PrinterImageScaler implements PrinterImageSource {
+
+    private PrinterImageSource source;
+    private int sourceWidth;
+    private int sourceHeight;
+    private int width;
+    private int height;
+
+    private int[] sourceLine;
+    private int[] columnIndexes;
+    private int[] columnWeights;
+    private int[] lineSums;
+    private long[] columnSums;
+    private int lastSourceY = -1;
+
+    /**
+     * Create a new instance of PrinterImageScaler, reading the lines of the image shrunk to fit maxWidth. The height is
+     * shrunk in the same proportion.
+     *
+     * @param source   Pixels of the image
+     * @param maxWidth Maximum width in dots
+     */
+    public PrinterImageScaler(PrinterImageSource source, int maxWidth) {
+        this.source = source;
+        this.sourceWidth = source.getWidth();
+        this.sourceHeight = source.getHeight();
+        this.width = this.sourceWidth;
+        this.height = this.sourceHeight;
+
+        if (maxWidth > 0 && this.sourceWidth > maxWidth) {
+            this.width = maxWidth;
+            this.height = Math.max(1, Math.round(((float) this.sourceHeight) * ((float) maxWidth) / ((float) this.sourceWidth)));
+        }
+    }
+
+    /**
+     * Get a new instance reading the same lines, to be used by another thread.
+     *
+     * @return PrinterImageScaler
+     */
+    @Override
+    public PrinterImageScaler copy() {
+        return new PrinterImageScaler(this.source.copy(), this.width);
+    }
+
+    public PrinterImageSource getSource() {
+        return this.source;
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    /**
+     * Check if the lines are shrunk.
+     *
+     * @return true if the source image is wider than the lines
+     */
+    public boolean isScaled() {
+        return this.width != this.sourceWidth;
+    }
+
+    /**
+     * Read a line of the shrunk image.
+     *
+     * @param posY   Line index
+     * @param pixels Array of getWidth() ARGB colors receiving the line pixels
+     */
+    @Override
+    public void readLine(int posY, int[] pixels) {
+        if (!this.isScaled()) {
+            this.source.readLine(posY, pixels);
+            return;
+        }
+
+        if (this.sourceLine == null) {
+            this.initColumns();
+        }
+
+        // The line posY covers the source lines from posY * sourceHeight / height to (posY + 1) * sourceHeight / height.
+        // Positions are multiplied by height to stay integers : the source line y covers y * height to (y + 1) * height.
+        long[] columnSums = this.columnSums;
+        long start = (long) posY * this.sourceHeight, end = start + this.sourceHeight;
+        int sourceY = (int) (start / this.height);
+
+        Arrays.fill(columnSums, 0L);
+        while (sourceY < this.sourceHeight && (long) sourceY * this.height < end) {
+            long weight = Math.min(end, (long) (sourceY + 1) * this.height) - Math.max(start, (long) sourceY * this.height);
+            int[] lineSums = this.readSourceLine(sourceY);
+            for (int i = 0; i < columnSums.length; i++) {
+                columnSums[i] += weight * lineSums[i];
+            }
+            sourceY++;
+        }
+
+        // Each pixel sums the source channels weighted by sourceWidth horizontally and by sourceHeight vertically.
+        long divisor = ((long) this.sourceWidth) * this.sourceHeight, half = divisor >> 1;
+        for (int posX = 0, i = 0; posX < this.width; posX++, i += 4) {
+            pixels[posX] =
+                (int) ((columnSums[i] + half) / divisor) << 24 |
+                (int) ((columnSums[i + 1] + half) / divisor) << 16 |
+                (int) ((columnSums[i + 2] + half) / divisor) << 8 |
+                (int) ((columnSums[i + 3] + half) / divisor);
+        }
+    }
+
+    /**
+     * Compute the target pixel of each source column. The source pixel x covers x * width to (x + 1) * width, each
+     * target pixel covers sourceWidth : columnWeights is the part of the source pixel in its target pixel, the rest
+     * being in the next target pixel.
+     */
+    private void initColumns() {
+        this.sourceLine = new int[this.sourceWidth];
+        this.columnIndexes = new int[this.sourceWidth];
+        this.columnWeights = new int[this.sourceWidth];
+        this.lineSums = new int[this.width * 4 + 4];
+        this.columnSums = new long[this.width * 4];
+
+        for (int x = 0; x < this.sourceWidth; x++) {
+            int
+                position = x * this.width,
+                posX = position / this.sourceWidth;
+            this.columnIndexes[x] = posX * 4;
+            this.columnWeights[x] = Math.min(this.width, (posX + 1) * this.sourceWidth - position);
+        }
+    }
+
+    /**
+     * Read a source line and shrink it horizontally.
+     *
+     * @return Channel sums of each target pixel, weighted by the covered part of the source pixels
+     */
+    private int[] readSourceLine(int sourceY) {
+        int[] lineSums = this.lineSums;
+        if (sourceY == this.lastSourceY) {
+            return lineSums;
+        }
+        this.lastSourceY = sourceY;
+        this.source.readLine(sourceY, this.sourceLine);
+
+        int[] sourceLine = this.sourceLine, columnIndexes = this.columnIndexes, columnWeights = this.columnWeights;
+        int width = this.width;
+        Arrays.fill(lineSums, 0);
+
+        for (int x = 0; x < this.sourceWidth; x++) {
+            int
+                color = sourceLine[x],
+                i = columnIndexes[x],
+                weight = columnWeights[x],
+                alpha = color >>> 24,
+                red = (color >> 16) & 0xff,
+                green = (color >> 8) & 0xff,
+                blue = color & 0xff;
+
+            lineSums[i] += weight * alpha;
+            lineSums[i + 1] += weight * red;
+            lineSums[i + 2] += weight * green;
+            lineSums[i + 3] += weight * blue;
+            if (weight != width) {
+                weight = width - weight;
+                lineSums[i + 4] += weight * alpha;
+                lineSums[i + 5] += weight * red;
+                lineSums[i + 6] += weight * green;
+                lineSums[i + 7] += weight * blue;
+            }
+        }
+        return lineSums;
+    }
+}
@@ -0,0 +1,37 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+/**
+ * Pixels of an image to be printed, read line by line as ARGB colors. Implementations are not tied to a platform
+ * image class, so the conversion of images to ESC/POS commands can run outside of Android.
+ */
+public interface PrinterImageSource {
+    /**
+     * Get the image width.
+     *
+     * @return Width in pixels
+     */
+    int getWidth();
+    
+    /**
+     * Get the image height.
+     *
+     * @return Height in pixels
+     */
+    int getHeight();
+    
+    /**
+     * Read a line of the image. Lines are usually read in order, from the top to the bottom.
+     *
+     * @param posY   Line index
+     * @param pixels Array of getWidth() ARGB colors receiving the line pixels
+     */
+    void readLine(int posY, int[] pixels);
+    
+    /**
+     * Get an instance reading the same pixels, to read lines in another thread. Sources without state can return
+     * themselves.
+     *
+     * @return PrinterImageSource
+     */
+    PrinterImageSource copy();
+}
@@ -0,0 +1,134 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import java.util.HashSet;
+
+public class PrinterProfile {
+
+    private boolean isImageCompacted = true;
+    private int verticalMotionUnitsByInch = 0;
+    private boolean isNativeQRCodeSupported = false;
+    private float imageGamma = PrinterImageDithering.DEFAULT_GAMMA;
+    private float qrCodeMinModuleSizeMM = 0.25f;
+    private HashSet<Integer> unsupportedBarcodeTypes = new HashSet<Integer>();
+
+    /**
+     * Create a new instance of PrinterProfile, describing the commands supported by a printer model.
+     * The default profile works with most ESC/POS printers.
+     */
+    public PrinterProfile() {
+    }
+
+    /**
+     * Set if the white margins of the images are removed and the blank image lines are replaced by paper feed
+     * commands (ESC J). Enabled by default.
+     *
+     * @param isImageCompacted false if the printer does not support ESC J
+     * @return Fluent interface
+     */
+    public PrinterProfile setImageCompacted(boolean isImageCompacted) {
+        this.isImageCompacted = isImageCompacted;
+        return this;
+    }
+
+    public boolean isImageCompacted() {
+        return this.isImageCompacted;
+    }
+
+    /**
+     * Set the vertical motion unit used by the paper feed commands. Most printers feed one dot by unit, but some
+     * models use a finer unit, like 1/360 inch.
+     *
+     * @param verticalMotionUnitsByInch Number of motion units by inch, 0 to use the printer DPI
+     * @return Fluent interface
+     */
+    public PrinterProfile setVerticalMotionUnitsByInch(int verticalMotionUnitsByInch) {
+        this.verticalMotionUnitsByInch = verticalMotionUnitsByInch;
+        return this;
+    }
+
+    public int getVerticalMotionUnitsByInch() {
+        return this.verticalMotionUnitsByInch;
+    }
+
+    /**
+     * Set if the printer generates QR codes itself (GS ( k). The qrcode tags are then sent as their data only,
+     * instead of a raster image generated by the library. Disabled by default.
+     *
+     * @param isNativeQRCodeSupported true if the printer supports GS ( k QR code commands
+     * @return Fluent interface
+     */
+    public PrinterProfile setNativeQRCodeSupported(boolean isNativeQRCodeSupported) {
+        this.isNativeQRCodeSupported = isNativeQRCodeSupported;
+        return this;
+    }
+
+    public boolean isNativeQRCodeSupported() {
+        return this.isNativeQRCodeSupported;
+    }
+
+    /**
+     * Set the gamma applied to the gray levels of the dithered images. The dots of some printers spread and make the
+     * mid tones darker than expected, a gamma higher than 1 lightens them.
+     *
+     * @param imageGamma Gamma, 1 to keep the gray levels
+     * @return Fluent interface
+     */
+    public PrinterProfile setImageGamma(float imageGamma) {
+        this.imageGamma = imageGamma;
+        return this;
+    }
+
+    public float getImageGamma() {
+        return this.imageGamma;
+    }
+
+    /**
+     * Set the smallest QR code module that the printer prints readable. QR codes printed as raster images are enlarged
+     * rather than printed with smaller modules. 0.25mm by default.
+     *
+     * @param qrCodeMinModuleSizeMM Module size in millimeters
+     * @return Fluent interface
+     */
+    public PrinterProfile setQRCodeMinModuleSizeMM(float qrCodeMinModuleSizeMM) {
+        this.qrCodeMinModuleSizeMM = qrCodeMinModuleSizeMM;
+        return this;
+    }
+
+    public float getQRCodeMinModuleSizeMM() {
+        return this.qrCodeMinModuleSizeMM;
+    }
+
+    /**
+     * Set if the printer generates a barcode type itself (GS k). Barcodes of unsupported types are printed as raster
+     * images generated by the library. All types are supported by default.
+     *
+     * @param barcodeType Barcode type. Use PrinterCommands.BARCODE_... constants
+     * @param isSupported false if the printer does not support this barcode type
+     * @return Fluent interface
+     */
+    public PrinterProfile setBarcodeSupported(int barcodeType, boolean isSupported) {
+        if (isSupported) {
+            this.unsupportedBarcodeTypes.remove(barcodeType);
+        } else {
+            this.unsupportedBarcodeTypes.add(barcodeType);
+        }
+        return this;
+    }
+
+    public boolean isBarcodeSupported(int barcodeType) {
+        return !this.unsupportedBarcodeTypes.contains(barcodeType);
+    }
+
+    /**
+     * Get the number of paper feed units needed to skip one image line.
+     *
+     * @param printerDpi DPI of the printer
+     * @return float
+     */
+    public float getFeedUnitsByImageLine(int printerDpi) {
+        if (this.verticalMotionUnitsByInch < 1 || printerDpi < 1) {
+            return 1f;
+        }
+        return ((float) this.verticalMotionUnitsByInch) / ((float) printerDpi);
+    }
+}
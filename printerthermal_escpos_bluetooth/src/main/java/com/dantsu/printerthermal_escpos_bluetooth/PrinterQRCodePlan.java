@@ -0,0 +1,263 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import com.google.zxing.qrcode.decoder.Version;
+
+import java.nio.charset.Charset;
+
+/**
+ * Encoding of a QR code printed as a raster image : mode, error correction level, version and module size.
+ * <p>
+ * The mode is the one zxing chooses for the data : numeric, alphanumeric (digits, upper case letters and
+ * " $%*+-./:"), or byte. Data that can be encoded in ISO-8859-1 is sent without ECI header, other data in UTF-8.
+ * The version is the smallest one that can contain the data bits. With QRCODE_ERROR_CORRECTION_AUTO, the error
+ * correction level is the highest one that fits in the version needed by the level L : the QR code is more robust
+ * for the same raster size. The module size is the largest one that keeps the QR code within the requested size, but
+ * never under the minimum readable module size, and reduced under it only to fit the printing width.
+ */
+public class PrinterQRCodePlan {
+
+    private static final String ALPHANUMERIC_CHARACTERS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ $%*+-./:";
+
+    private static final int[] ERROR_CORRECTIONS = new int[]{
+        PrinterCommands.QRCODE_ERROR_CORRECTION_L,
+        PrinterCommands.QRCODE_ERROR_CORRECTION_M,
+        PrinterCommands.QRCODE_ERROR_CORRECTION_Q,
+        PrinterCommands.QRCODE_ERROR_CORRECTION_H
+    };
+
+    /**
+     * Get the mode zxing uses to encode the data.
+     */
+    private static int chooseMode(String data) {
+        boolean hasNumeric = false, hasAlphanumeric = false;
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c >= '0' && c <= '9') {
+                hasNumeric = true;
+            } else if (PrinterQRCodePlan.ALPHANUMERIC_CHARACTERS.indexOf(c) != -1) {
+                hasAlphanumeric = true;
+            } else {
+                return PrinterCommands.QRCODE_MODE_BYTE;
+            }
+        }
+        if (hasAlphanumeric) {
+            return PrinterCommands.QRCODE_MODE_ALPHANUMERIC;
+        }
+        return hasNumeric ? PrinterCommands.QRCODE_MODE_NUMERIC : PrinterCommands.QRCODE_MODE_BYTE;
+    }
+
+    /**
+     * Get the number of bits of the character count, which depends on the mode and the version range.
+     */
+    private static int getCharacterCountBits(int mode, int versionNumber) {
+        int range = versionNumber < 10 ? 0 : (versionNumber < 27 ? 1 : 2);
+        switch (mode) {
+            case PrinterCommands.QRCODE_MODE_NUMERIC:
+                return 10 + range * 2;
+            case PrinterCommands.QRCODE_MODE_ALPHANUMERIC:
+                return 9 + range * 2;
+        }
+        return range == 0 ? 8 : 16;
+    }
+
+
+    private String data;
+    private int mode;
+    private String characterSet;
+    private int nbrDataBits;
+    private int errorCorrection;
+    private int version = 0;
+    private int moduleSize = 0;
+    private int minModuleSize;
+
+    /**
+     * Plan the encoding of a QR code.
+     *
+     * @param data            QR code data
+     * @param size            Maximum QR code width in dots, exceeded only to print readable modules
+     * @param errorCorrection Error correction level. Use PrinterCommands.QRCODE_ERROR_CORRECTION_... constants
+     * @param minModuleSize   Smallest module size in dots that the printer prints readable
+     * @param maxWidth        Maximum QR code width in dots, 0 for no limit
+     */
+    public PrinterQRCodePlan(String data, int size, int errorCorrection, int minModuleSize, int maxWidth) {
+        this.data = data;
+        this.mode = PrinterQRCodePlan.chooseMode(data);
+        this.minModuleSize = Math.max(1, minModuleSize);
+
+        switch (this.mode) {
+            case PrinterCommands.QRCODE_MODE_NUMERIC:
+                this.characterSet = "ISO-8859-1";
+                this.nbrDataBits = (data.length() / 3) * 10 + (data.length() % 3 == 2 ? 7 : (data.length() % 3 == 1 ? 4 : 0));
+                break;
+            case PrinterCommands.QRCODE_MODE_ALPHANUMERIC:
+                this.characterSet = "ISO-8859-1";
+                this.nbrDataBits = (data.length() / 2) * 11 + (data.length() % 2) * 6;
+                break;
+            default:
+                Charset charset = Charset.forName("ISO-8859-1");
+                if (!charset.newEncoder().canEncode(data)) {
+                    charset = Charset.forName("UTF-8");
+                    // ECI header : 4 bits of mode indicator and 8 bits of ECI designator
+                    this.nbrDataBits = 12;
+                }
+                this.characterSet = charset.name();
+                this.nbrDataBits += data.getBytes(charset).length * 8;
+                break;
+        }
+
+        if (errorCorrection == PrinterCommands.QRCODE_ERROR_CORRECTION_AUTO) {
+            this.errorCorrection = PrinterCommands.QRCODE_ERROR_CORRECTION_L;
+            this.version = this.getSmallestVersion(this.errorCorrection);
+            for (int i = PrinterQRCodePlan.ERROR_CORRECTIONS.length - 1; i > 0 && this.version > 0; i--) {
+                if (this.getSmallestVersion(PrinterQRCodePlan.ERROR_CORRECTIONS[i]) == this.version) {
+                    this.errorCorrection = PrinterQRCodePlan.ERROR_CORRECTIONS[i];
+                    break;
+                }
+            }
+        } else {
+            this.errorCorrection = errorCorrection;
+            this.version = this.getSmallestVersion(errorCorrection);
+        }
+
+        if (this.version > 0) {
+            int nbrModules = this.getNbrModules();
+            this.moduleSize = Math.max(this.minModuleSize, size / nbrModules);
+            if (maxWidth > 0 && this.moduleSize * nbrModules > maxWidth) {
+                this.moduleSize = Math.max(1, maxWidth / nbrModules);
+            }
+        }
+    }
+
+    /**
+     * Get the smallest version that can contain the data with this error correction level.
+     *
+     * @return Version number from 1 to 40, 0 if the data is too long
+     */
+    private int getSmallestVersion(int errorCorrection) {
+        for (int versionNumber = 1; versionNumber <= 40; versionNumber++) {
+            Version version = Version.getVersionForNumber(versionNumber);
+            int dataCodewords = version.getTotalCodewords() -
+                version.getECBlocksForLevel(PrinterCommands.getQRCodeErrorCorrectionLevel(errorCorrection)).getTotalECCodewords();
+            if (4 + PrinterQRCodePlan.getCharacterCountBits(this.mode, versionNumber) + this.nbrDataBits <= dataCodewords * 8) {
+                return versionNumber;
+            }
+        }
+        return 0;
+    }
+
+    public String getData() {
+        return this.data;
+    }
+
+    /**
+     * Get the encoding mode of the data.
+     *
+     * @return PrinterCommands.QRCODE_MODE_... constant
+     */
+    public int getMode() {
+        return this.mode;
+    }
+
+    /**
+     * Get the character set of the data in byte mode.
+     *
+     * @return "ISO-8859-1" (no ECI header) or "UTF-8"
+     */
+    public String getCharacterSet() {
+        return this.characterSet;
+    }
+
+    /**
+     * Get the error correction level.
+     *
+     * @return PrinterCommands.QRCODE_ERROR_CORRECTION_... constant, never QRCODE_ERROR_CORRECTION_AUTO
+     */
+    public int getErrorCorrection() {
+        return this.errorCorrection;
+    }
+
+    /**
+     * Get the QR code version.
+     *
+     * @return Version number from 1 to 40, 0 if the data is too long for a QR code
+     */
+    public int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Get the number of modules by side of the QR code.
+     *
+     * @return int
+     */
+    public int getNbrModules() {
+        return this.version > 0 ? 17 + this.version * 4 : 0;
+    }
+
+    /**
+     * Get the size of a module in dots.
+     *
+     * @return int
+     */
+    public int getModuleSize() {
+        return this.moduleSize;
+    }
+
+    /**
+     * Get the printed width (and height) of the QR code in dots.
+     *
+     * @return int
+     */
+    public int getWidthPx() {
+        return this.getNbrModules() * this.moduleSize;
+    }
+
+    /**
+     * Get the number of bytes of the raster image command.
+     *
+     * @return int
+     */
+    public int getNbrRasterBytes() {
+        int widthPx = this.getWidthPx();
+        return 8 + ((widthPx + 7) >> 3) * widthPx;
+    }
+
+    /**
+     * Check if the data fits in a QR code.
+     *
+     * @return true if a version can contain the data
+     */
+    public boolean isEncodable() {
+        return this.version > 0;
+    }
+
+    /**
+     * Check if the modules are not smaller than the minimum readable module size. They can only be smaller when the
+     * QR code would be wider than the printing width.
+     *
+     * @return true if the QR code is readable
+     */
+    public boolean isReadable() {
+        return this.moduleSize >= this.minModuleSize;
+    }
+
+    @Override
+    public String toString() {
+        if (!this.isEncodable()) {
+            return "QR code : " + this.nbrDataBits + " data bits, too long for a QR code";
+        }
+        String mode = "byte " + this.characterSet;
+        switch (this.mode) {
+            case PrinterCommands.QRCODE_MODE_NUMERIC:
+                mode = "numeric";
+                break;
+            case PrinterCommands.QRCODE_MODE_ALPHANUMERIC:
+                mode = "alphanumeric";
+                break;
+        }
+        return "QR code version " + this.version + " (" + this.getNbrModules() + " modules), " + mode + " mode, " +
+            "error correction " + "LMQH".charAt(this.errorCorrection - PrinterCommands.QRCODE_ERROR_CORRECTION_L) + ", " +
+            this.moduleSize + " dots by module" + (this.isReadable() ? "" : " (under " + this.minModuleSize + ")") + ", " +
+            this.getWidthPx() + " dots wide, " + this.getNbrRasterBytes() + " raster bytes";
+    }
+}
@@ -0,0 +1,200 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.dantsu.printerthermal_escpos_bluetooth.textparser.PrinterTextParserLine;
+
+public class PrinterQueue {
+    
+    public interface Callback {
+        /**
+         * Called by the writer thread when the job has been sent to the printer.
+         *
+         * @param printer Printer instance used by the queue
+         */
+        void onPrinted(Printer printer);
+        
+        /**
+         * Called when the job has not been printed. Parsing and transmission failures are reported by the writer
+         * thread, with the exception thrown. Cancelled jobs are reported by the thread that cancelled them (the caller
+         * of Future.cancel, cancelPendingJobs or shutdownNow), with a CancellationException.
+         *
+         * @param printer Printer instance used by the queue
+         * @param error Exception thrown while the job was parsed or printed : IOException if the printer is not
+         *              connected or cannot be reached, CancellationException if the job has been cancelled
+         */
+        void onError(Printer printer, Throwable error);
+    }
+    
+    
+    private Printer printer;
+    private ExecutorService parsingExecutor;
+    private ThreadPoolExecutor writerExecutor;
+    
+    /**
+     * Create a new instance of PrinterQueue. The formatted texts are parsed by as many threads as available processors.
+     *
+     * @param printer Printer instance to be used by the writer thread
+     */
+    public PrinterQueue(Printer printer) {
+        this(printer, Runtime.getRuntime().availableProcessors());
+    }
+    
+    /**
+     * Create a new instance of PrinterQueue.
+     *
+     * @param printer Printer instance to be used by the writer thread
+     * @param nbrParsingThreads Number of threads that parse the formatted texts
+     */
+    public PrinterQueue(Printer printer, int nbrParsingThreads) {
+        this.printer = printer;
+        this.parsingExecutor = Executors.newFixedThreadPool(Math.max(nbrParsingThreads, 1));
+        this.writerExecutor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+    }
+    
+    /**
+     * Get the Printer instance used by the queue.
+     *
+     * @return Printer
+     */
+    public Printer getPrinter() {
+        return this.printer;
+    }
+    
+    /**
+     * Add a formatted text to the queue. Read the README.md for more information about text formatting options.
+     *
+     * @param text Formatted text to be printed.
+     * @return Future completed when the text has been sent to the printer. Cancel it to remove the job from the queue.
+     */
+    public Future<Printer> submit(String text) {
+        return this.submit(text, null);
+    }
+    
+    /**
+     * Add a formatted text to the queue. The text is parsed immediately by a parsing thread, then sent to the printer
+     * by the writer thread after all the previous jobs.
+     *
+     * @param text Formatted text to be printed.
+     * @param callback Called when the job is printed, has failed or is cancelled, can be null
+     * @return Future completed when the text has been sent to the printer. Cancel it to remove the job from the queue
+     *         and stop its parsing. Its get method throws an ExecutionException if the job has not been printed.
+     */
+    public Future<Printer> submit(final String text, final Callback callback) {
+        final Printer printer = this.printer;
+        
+        final Future<PrinterTextParserLine[]> parsing = this.parsingExecutor.submit(new Callable<PrinterTextParserLine[]>() {
+            @Override
+            public PrinterTextParserLine[] call() {
+                return printer.parseFormattedText(text);
+            }
+        });
+        
+        FutureTask<Printer> printing = new FutureTask<Printer>(new Callable<Printer>() {
+            @Override
+            public Printer call() throws Exception {
+                try {
+                    return printer.sendFormattedText(parsing.get());
+                } catch (ExecutionException e) {
+                    throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                }
+            }
+        }) {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                // The parsed lines of a cancelled job are never printed.
+                parsing.cancel(true);
+                return super.cancel(mayInterruptIfRunning);
+            }
+            
+            @Override
+            protected void done() {
+                if (callback == null) {
+                    return;
+                }
+                try {
+                    callback.onPrinted(this.get());
+                } catch (CancellationException e) {
+                    callback.onError(printer, e);
+                } catch (ExecutionException e) {
+                    callback.onError(printer, e.getCause());
+                } catch (InterruptedException e) {
+                    callback.onError(printer, e);
+                }
+            }
+        };
+        
+        this.writerExecutor.execute(printing);
+        return printing;
+    }
+    
+    /**
+     * Get the number of jobs waiting for the writer thread.
+     *
+     * @return int
+     */
+    public int getNbrPendingJobs() {
+        return this.writerExecutor.getQueue().size();
+    }
+    
+    /**
+     * Cancel all the jobs that are not being printed yet.
+     *
+     * @return Fluent interface
+     */
+    public PrinterQueue cancelPendingJobs() {
+        for (Runnable job : this.writerExecutor.getQueue().toArray(new Runnable[0])) {
+            if (job instanceof Future) {
+                ((Future<?>) job).cancel(false);
+            }
+        }
+        this.writerExecutor.purge();
+        return this;
+    }
+    
+    /**
+     * Stop the queue threads once all the submitted jobs are printed. No job can be submitted after.
+     *
+     * @return Fluent interface
+     */
+    public PrinterQueue shutdown() {
+        this.writerExecutor.shutdown();
+        this.parsingExecutor.shutdown();
+        return this;
+    }
+    
+    /**
+     * Cancel the pending jobs and stop the queue threads. No job can be submitted after.
+     *
+     * @return Fluent interface
+     */
+    public PrinterQueue shutdownNow() {
+        this.cancelPendingJobs();
+        this.writerExecutor.shutdownNow();
+        this.parsingExecutor.shutdownNow();
+        return this;
+    }
+    
+    /**
+     * Wait until the queue threads are stopped by shutdown or shutdownNow.
+     *
+     * @param timeout Maximum time to wait
+     * @param unit    Unit of the timeout
+     * @return true if the threads are stopped, false if the timeout elapsed before
+     * @throws InterruptedException if the calling thread is interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long endTime = System.nanoTime() + unit.toNanos(timeout);
+        return this.writerExecutor.awaitTermination(timeout, unit)
+            && this.parsingExecutor.awaitTermination(endTime - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,108 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Remember on the host which images are stored in the memory of each printer, to avoid sending them again.
+ * Images stored in the download graphics area are forgotten at each connection, the printer losing them when it is
+ * turned off. Images stored in the NV graphics area are remembered as long as the application runs.
+ */
+public class PrinterStoredImages {
+
+    public static class StoredImage {
+        private String hash;
+        private boolean isNonVolatile;
+        private int widthPx;
+        private int heightPx;
+
+        private StoredImage(String hash, boolean isNonVolatile, int widthPx, int heightPx) {
+            this.hash = hash;
+            this.isNonVolatile = isNonVolatile;
+            this.widthPx = widthPx;
+            this.heightPx = heightPx;
+        }
+
+        public String getHash() {
+            return this.hash;
+        }
+
+        public boolean isNonVolatile() {
+            return this.isNonVolatile;
+        }
+
+        public int getWidthPx() {
+            return this.widthPx;
+        }
+
+        public int getHeightPx() {
+            return this.heightPx;
+        }
+    }
+
+
+    private static HashMap<String, HashMap<String, StoredImage>> printersImages = new HashMap<String, HashMap<String, StoredImage>>();
+
+    /**
+     * Remember that an image is stored in a printer.
+     *
+     * @param printerId     Identifier of the printer, from PrinterTransport.getPrinterId()
+     * @param key           Key of the image in the printer memory
+     * @param hash          Hash of the image content
+     * @param isNonVolatile true if the image is stored in the NV graphics area
+     * @param widthPx       Image width in dots
+     * @param heightPx      Image height in dots
+     */
+    public static synchronized void add(String printerId, String key, String hash, boolean isNonVolatile, int widthPx, int heightPx) {
+        HashMap<String, StoredImage> images = PrinterStoredImages.printersImages.get(printerId);
+        if (images == null) {
+            images = new HashMap<String, StoredImage>();
+            PrinterStoredImages.printersImages.put(printerId, images);
+        }
+        images.put(key, new StoredImage(hash, isNonVolatile, widthPx, heightPx));
+    }
+
+    /**
+     * Get an image stored in a printer.
+     *
+     * @param printerId Identifier of the printer, from PrinterTransport.getPrinterId()
+     * @param key       Key of the image in the printer memory
+     * @return StoredImage, or null if the image is not known to be stored
+     */
+    public static synchronized StoredImage get(String printerId, String key) {
+        HashMap<String, StoredImage> images = PrinterStoredImages.printersImages.get(printerId);
+        return images == null ? null : images.get(key);
+    }
+
+    /**
+     * Forget an image stored in a printer.
+     *
+     * @param printerId Identifier of the printer, from PrinterTransport.getPrinterId()
+     * @param key       Key of the image in the printer memory
+     */
+    public static synchronized void remove(String printerId, String key) {
+        HashMap<String, StoredImage> images = PrinterStoredImages.printersImages.get(printerId);
+        if (images != null) {
+            images.remove(key);
+        }
+    }
+
+    /**
+     * Forget the images stored in the download graphics area of a printer.
+     *
+     * @param printerId Identifier of the printer, from PrinterTransport.getPrinterId()
+     */
+    public static synchronized void removeVolatile(String printerId) {
+        HashMap<String, StoredImage> images = PrinterStoredImages.printersImages.get(printerId);
+        if (images == null) {
+            return;
+        }
+        Iterator<Map.Entry<String, StoredImage>> iterator = images.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (!iterator.next().getValue().isNonVolatile()) {
+                iterator.remove();
+            }
+        }
+    }
+}
@@ -3,14 +3,21 @@ package com.dantsu.printerthermal_escpos_bluetooth.bluetooth;
 import android.bluetooth.BluetoothDevice;
 
 import java.io.IOException;
-import java.io.OutputStream;
 
 import lib.bluetooth.BluetoothDeviceSocketConnection;
-import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterBarcode;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterBuffer;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterConnection;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterStoredImages;
+import com.dantsu.printerthermal_escpos_bluetooth.flowcontrol.PrinterFlowControl;
 
+/**
+ * Connection to a bluetooth printer. The commands are sent by a PrinterConnection using a BluetoothPrinterTransport,
+ * and the methods of this class delegate to it, so that it stays a BluetoothDeviceSocketConnection.
+ */
 public class BluetoothPrinterSocketConnection extends BluetoothDeviceSocketConnection {
     
-    protected OutputStream outputStream = null;
+    protected PrinterConnection printerConnection;
     
     /**
      * Create new instance of BluetoothPrinterSocketConnection.
@@ -19,51 +26,50 @@ public class BluetoothPrinterSocketConnection extends BluetoothDeviceSocketConne
      */
     public BluetoothPrinterSocketConnection(BluetoothDevice device) {
         super(device);
+        this.printerConnection = new PrinterConnection(new BluetoothPrinterTransport(device));
+    }
+    
+    /**
+     * Get the connection sending the commands to the bluetooth printer.
+     *
+     * @return PrinterConnection
+     */
+    public PrinterConnection getPrinterConnection() {
+        return this.printerConnection;
+    }
+    
+    /**
+     * Check if the bluetooth printer is connected by socket.
+     *
+     * @return true if is connected
+     */
+    @Override
+    public boolean isConnected() {
+        return this.printerConnection.isConnected();
     }
     
     public boolean isOpenedStream() {
-        return (this.outputStream != null);
+        return this.printerConnection.isOpenedStream();
     }
     
     /**
-     * Start socket connection and open stream with the bluetooth device.
+     * Start socket connection and open streams with the bluetooth printer.
      *
      * @return return true if success
      */
     @Override
     public boolean connect() {
-        try {
-            if (super.connect()) {
-                this.outputStream = this.bluetoothSocket.getOutputStream();
-                return true;
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-            this.outputStream = null;
-        }
-        return false;
+        return this.printerConnection.connect();
     }
     
     /**
-     * Close the socket connection and stream with the bluetooth device.
+     * Close the socket connection and streams with the bluetooth printer.
      *
      * @return return true if success
      */
     @Override
     public boolean disconnect() {
-        super.disconnect();
-        
-        if (!this.isOpenedStream()) {
-            return true;
-        }
-        
-        try {
-            this.outputStream.close();
-            this.outputStream = null;
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return false;
+        return this.printerConnection.disconnect();
     }
     
     /**
@@ -72,13 +78,121 @@ public class BluetoothPrinterSocketConnection extends BluetoothDeviceSocketConne
      * @return Fluent interface
      */
     public BluetoothPrinterSocketConnection flush() {
-        if (this.isOpenedStream()) {
-            try {
-                this.outputStream.flush();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
+        this.printerConnection.flush();
+        return this;
+    }
+    
+    /**
+     * Set the maximum number of bytes sent to the socket by write.
+     *
+     * @param packetSize Number of bytes by packet. 0 to send the whole buffer in one write.
+     * @return Fluent interface
+     */
+    public BluetoothPrinterSocketConnection setPacketSize(int packetSize) {
+        this.printerConnection.setPacketSize(packetSize);
+        return this;
+    }
+    
+    /**
+     * Get the maximum number of bytes sent to the socket by write.
+     *
+     * @return int
+     */
+    public int getPacketSize() {
+        return this.printerConnection.getPacketSize();
+    }
+    
+    /**
+     * Set the way the connection waits for the printer between two sendings.
+     * Use StatusFlowControl (default), XonXoffFlowControl or FixedDelayFlowControl.
+     *
+     * @param flowControl Instance of PrinterFlowControl
+     * @return Fluent interface
+     */
+    public BluetoothPrinterSocketConnection setFlowControl(PrinterFlowControl flowControl) {
+        this.printerConnection.setFlowControl(flowControl);
+        return this;
+    }
+    
+    /**
+     * Get the way the connection waits for the printer between two sendings.
+     *
+     * @return PrinterFlowControl
+     */
+    public PrinterFlowControl getFlowControl() {
+        return this.printerConnection.getFlowControl();
+    }
+    
+    /**
+     * Check if a print job is started.
+     *
+     * @return true if the commands are buffered until endJob is called
+     */
+    public boolean isJobStarted() {
+        return this.printerConnection.isJobStarted();
+    }
+    
+    /**
+     * Start a print job. All the next commands are kept in memory until endJob is called,
+     * then the whole job is sent to the printer in packets of packetSize bytes.
+     *
+     * @return Fluent interface
+     */
+    public BluetoothPrinterSocketConnection startJob() {
+        this.printerConnection.startJob();
+        return this;
+    }
+    
+    /**
+     * End the print job and send all the buffered commands to the printer.
+     *
+     * @return Fluent interface
+     */
+    public BluetoothPrinterSocketConnection endJob() {
+        this.printerConnection.endJob();
+        return this;
+    }
+    
+    /**
+     * End the print job and send all the buffered commands to the printer. Unlike endJob, the transmission errors are
+     * thrown instead of being printed.
+     *
+     * @return Fluent interface
+     * @throws InterruptedIOException if the thread is interrupted, the rest of the job is not sent
+     * @throws IOException if the printer is not connected or cannot be reached
+     */
+    public BluetoothPrinterSocketConnection sendJob() throws IOException {
+        this.printerConnection.sendJob();
+        return this;
+    }
+    
+    /**
+     * End the print job and return the buffered commands instead of sending them to the printer.
+     *
+     * @return PrinterBuffer containing the commands of the job
+     */
+    public PrinterBuffer endJobWithoutSending() {
+        return this.printerConnection.endJobWithoutSending();
+    }
+    
+    /**
+     * Send the buffered commands to the printer.
+     *
+     * @return Fluent interface
+     */
+    public BluetoothPrinterSocketConnection send() {
+        this.printerConnection.send();
+        return this;
+    }
+    
+    /**
+     * Forget the text formatting known to be set on the printer. The next text printed will send all its formatting
+     * commands. Call it if other commands than those of this class have been sent to the printer.
+     *
+     * @return Fluent interface
+     */
+    public BluetoothPrinterSocketConnection resetPrinterState() {
+        this.printerConnection.resetPrinterState();
         return this;
     }
     
@@ -90,14 +204,29 @@ public class BluetoothPrinterSocketConnection extends BluetoothDeviceSocketConne
      * @return Fluent interface
      */
     public BluetoothPrinterSocketConnection setAlign(byte[] align) {
-        if (!this.isOpenedStream()) {
-            return this;
-        }
-        try {
-            this.outputStream.write(align);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        this.printerConnection.setAlign(align);
+        return this;
+    }
+    
+    /**
+     * Send raw ESC/POS commands to the connected printer.
+     *
+     * @param bytes Bytes contain ESC/POS commands
+     * @return Fluent interface
+     */
+    public BluetoothPrinterSocketConnection write(byte[] bytes) {
+        this.printerConnection.write(bytes);
+        return this;
+    }
+    
+    /**
+     * Send ESC/POS commands rendered in a buffer to the connected printer, with the waiting times of its marks.
+     *
+     * @param buffer Buffer contain ESC/POS commands
+     * @return Fluent interface
+     */
+    public BluetoothPrinterSocketConnection write(PrinterBuffer buffer) {
+        this.printerConnection.write(buffer);
         return this;
     }
     
@@ -108,7 +237,8 @@ public class BluetoothPrinterSocketConnection extends BluetoothDeviceSocketConne
      * @return Fluent interface
      */
     public BluetoothPrinterSocketConnection printText(String text) {
-        return this.printText(text, 0);
+        this.printerConnection.printText(text);
+        return this;
     }
     
     /**
@@ -119,7 +249,8 @@ public class BluetoothPrinterSocketConnection extends BluetoothDeviceSocketConne
      * @return Fluent interface
      */
     public BluetoothPrinterSocketConnection printText(String text, int maxlength) {
-        return this.printText(text, null, null, null, maxlength);
+        this.printerConnection.printText(text, maxlength);
+        return this;
     }
     
     /**
@@ -130,7 +261,8 @@ public class BluetoothPrinterSocketConnection extends BluetoothDeviceSocketConne
      * @return Fluent interface
      */
     public BluetoothPrinterSocketConnection printText(String text, byte[] textSize) {
-        return this.printText(text, textSize, 0);
+        this.printerConnection.printText(text, textSize);
+        return this;
     }
     
     /**
@@ -142,7 +274,8 @@ public class BluetoothPrinterSocketConnection extends BluetoothDeviceSocketConne
      * @return Fluent interface
      */
     public BluetoothPrinterSocketConnection printText(String text, byte[] textSize, int maxlength) {
-        return this.printText(text, textSize, null, null, maxlength);
+        this.printerConnection.printText(text, textSize, maxlength);
+        return this;
     }
     
     /**
@@ -154,7 +287,8 @@ public class BluetoothPrinterSocketConnection extends BluetoothDeviceSocketConne
      * @return Fluent interface
      */
     public BluetoothPrinterSocketConnection printText(String text, byte[] textSize, byte[] textBold) {
-        return this.printText(text, textSize, textBold, 0);
+        this.printerConnection.printText(text, textSize, textBold);
+        return this;
     }
     
     /**
@@ -167,7 +301,8 @@ public class BluetoothPrinterSocketConnection extends BluetoothDeviceSocketConne
      * @return Fluent interface
      */
     public BluetoothPrinterSocketConnection printText(String text, byte[] textSize, byte[] textBold, int maxlength) {
-        return this.printText(text, textSize, textBold, null, maxlength);
+        this.printerConnection.printText(text, textSize, textBold, maxlength);
+        return this;
     }
     
     /**
@@ -180,7 +315,8 @@ public class BluetoothPrinterSocketConnection extends BluetoothDeviceSocketConne
      * @return Fluent interface
      */
     public BluetoothPrinterSocketConnection printText(String text, byte[] textSize, byte[] textBold, byte[] textUnderline) {
-        return this.printText(text, textSize, textBold, textUnderline, 0);
+        this.printerConnection.printText(text, textSize, textBold, textUnderline);
+        return this;
     }
     
     /**
@@ -194,37 +330,7 @@ public class BluetoothPrinterSocketConnection extends BluetoothDeviceSocketConne
      * @return Fluent interface
      */
     public BluetoothPrinterSocketConnection printText(String text, byte[] textSize, byte[] textBold, byte[] textUnderline, int maxlength) {
-        if (!this.isOpenedStream()) {
-            return this;
-        }
-        
-        try {
-            byte[] textBytes = text.getBytes("ISO-8859-1");
-            
-            if (maxlength == 0) {
-                maxlength = textBytes.length;
-            }
-            
-            this.outputStream.write(PrinterCommands.WESTERN_EUROPE_ENCODING);
-            this.outputStream.write(PrinterCommands.TEXT_SIZE_NORMAL);
-            this.outputStream.write(PrinterCommands.TEXT_WEIGHT_NORMAL);
-            this.outputStream.write(PrinterCommands.TEXT_UNDERLINE_OFF);
-            
-            if (textSize != null) {
-                this.outputStream.write(textSize);
-            }
-            if (textBold != null) {
-                this.outputStream.write(textBold);
-            }
-            if (textUnderline != null) {
-                this.outputStream.write(textUnderline);
-            }
-            
-            this.outputStream.write(textBytes, 0, maxlength);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        
+        this.printerConnection.printText(text, textSize, textBold, textUnderline, maxlength);
         return this;
     }
     
@@ -235,17 +341,66 @@ public class BluetoothPrinterSocketConnection extends BluetoothDeviceSocketConne
      * @return Fluent interface
      */
     public BluetoothPrinterSocketConnection printImage(byte[] image) {
-        if (!this.isOpenedStream()) {
-            return this;
-        }
-        try {
-            this.outputStream.write(image);
-            Thread.sleep(PrinterCommands.TIME_BETWEEN_TWO_PRINT * 2);
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        this.printerConnection.printImage(image);
+        return this;
+    }
+    
+    /**
+     * Store an image in the printer memory, to print it later with printStoredImage. The NV graphics area keeps the
+     * image when the printer is turned off, but it supports a limited number of writes : store the image only when
+     * isImageStored returns false.
+     *
+     * @param key           Two characters from 32 to 126 identifying the image
+     * @param image         Bytes contain the image in ESC/POS command, as returned by bitmapToBytes
+     * @param isNonVolatile true to store the image in the NV graphics area, false in the download graphics area
+     * @return Fluent interface
+     */
+    public BluetoothPrinterSocketConnection storeImage(String key, byte[] image, boolean isNonVolatile) {
+        this.printerConnection.storeImage(key, image, isNonVolatile);
+        return this;
+    }
+    
+    /**
+     * Check if an image is known to be stored in the printer memory with this key.
+     *
+     * @param key   Key of the image
+     * @param image Bytes contain the image in ESC/POS command, null to check only the key
+     * @return true if the image does not need to be stored again
+     */
+    public boolean isImageStored(String key, byte[] image) {
+        return this.printerConnection.isImageStored(key, image);
+    }
+    
+    /**
+     * Get the image stored in the printer memory with this key.
+     *
+     * @param key Key of the image
+     * @return StoredImage, or null if no image is known to be stored with this key
+     */
+    public PrinterStoredImages.StoredImage getStoredImage(String key) {
+        return this.printerConnection.getStoredImage(key);
+    }
+    
+    /**
+     * Print an image stored in the printer memory. Images not stored by this application are looked up in the NV
+     * graphics area.
+     *
+     * @param key Key of the image
+     * @return Fluent interface
+     */
+    public BluetoothPrinterSocketConnection printStoredImage(String key) {
+        this.printerConnection.printStoredImage(key);
+        return this;
+    }
+    
+    /**
+     * Delete an image stored in the printer memory.
+     *
+     * @param key Key of the image
+     * @return Fluent interface
+     */
+    public BluetoothPrinterSocketConnection deleteStoredImage(String key) {
+        this.printerConnection.deleteStoredImage(key);
         return this;
     }
     
@@ -258,88 +413,25 @@ public class BluetoothPrinterSocketConnection extends BluetoothDeviceSocketConne
      * @return Fluent interface
      */
     public BluetoothPrinterSocketConnection printBarcode(int barcodeType, String barcode, int heightPx) {
-        if (!this.isOpenedStream()) {
-            return this;
-        }
-        
-        int barcodeLength = 0;
-        
-        switch (barcodeType) {
-            case PrinterCommands.BARCODE_UPCA:
-                barcodeLength = 11;
-                break;
-            case PrinterCommands.BARCODE_UPCE:
-                barcodeLength = 6;
-                break;
-            case PrinterCommands.BARCODE_EAN13:
-                barcodeLength = 12;
-                break;
-            case PrinterCommands.BARCODE_EAN8:
-                barcodeLength = 7;
-                break;
-        }
-        
-        if (barcodeLength == 0 || barcode.length() < barcodeLength) {
-            return this;
-        }
-    
-        barcode = barcode.substring(0, barcodeLength);
-        
-        try {
-            switch (barcodeType) {
-                case PrinterCommands.BARCODE_UPCE:
-                    String firstChar = barcode.substring(0, 1);
-                    if (!firstChar.equals("0") && !firstChar.equals("1")) {
-                        barcode = "0" + barcode.substring(0, 5);
-                    }
-                    break;
-                case PrinterCommands.BARCODE_UPCA:
-                case PrinterCommands.BARCODE_EAN13:
-                case PrinterCommands.BARCODE_EAN8:
-                    int stringBarcodeLength = barcode.length(), totalBarcodeKey = 0;
-                    for (int i = 0; i < stringBarcodeLength; i++) {
-                        int pos = stringBarcodeLength - 1 - i,
-                            intCode = Integer.parseInt(barcode.substring(pos, pos + 1), 10);
-                        if (i % 2 == 0) {
-                            intCode = 3 * intCode;
-                        }
-                        totalBarcodeKey += intCode;
-                    }
-                    
-                    String barcodeKey = String.valueOf(10 - (totalBarcodeKey % 10));
-                    if (barcodeKey.length() == 2) {
-                        barcodeKey = "0";
-                    }
-                    barcode += barcodeKey;
-                    break;
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-            return this;
-        }
-    
-        barcodeLength = barcode.length();
-        byte[] barcodeCommand = new byte[barcodeLength + 4];
-        System.arraycopy(new byte[]{0x1D, 0x6B, (byte) barcodeType}, 0, barcodeCommand, 0, 3);
-        
-        try {
-            for (int i = 0; i < barcodeLength; i++) {
-                barcodeCommand[i + 3] = (byte) (Integer.parseInt(barcode.substring(i, i + 1), 10) + 48);
-            }
-            
-            this.outputStream.write(new byte[]{0x1D, 0x68, (byte) heightPx});
-            this.outputStream.write(barcodeCommand);
-            Thread.sleep(PrinterCommands.TIME_BETWEEN_TWO_PRINT * 2);
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        this.printerConnection.printBarcode(barcodeType, barcode, heightPx);
         return this;
     }
-
-
-
+    
+    /**
+     * Print a barcode with the connected printer. The bar width and the text position are restored to the printer
+     * defaults after the barcode.
+     *
+     * @param barcode Barcode validated for the GS k command
+     * @param heightPx dot height of the barcode
+     * @param moduleWidth dot width of the narrowest bar, from 2 to 6
+     * @param textPosition Set the position of the human readable text. Use PrinterCommands.BARCODE_TEXT_POSITION_... constants
+     * @return Fluent interface
+     */
+    public BluetoothPrinterSocketConnection printBarcode(PrinterBarcode barcode, int heightPx, int moduleWidth, int textPosition) {
+        this.printerConnection.printBarcode(barcode, heightPx, moduleWidth, textPosition);
+        return this;
+    }
+    
     /**
      * Print a QR code with the connected printer.
      *
@@ -349,59 +441,32 @@ public class BluetoothPrinterSocketConnection extends BluetoothDeviceSocketConne
      * @return Fluent interface
      */
     public BluetoothPrinterSocketConnection printQRCode(int qrCodeType, String text, int size) {
-        if (!this.isOpenedStream()) {
-            return this;
-        }
-
-        if(size < 1) {
-            size = 1;
-        } else if(size > 16) {
-            size = 16;
-        }
-
-
-        try {
-
-            this.outputStream.write(PrinterCommands.WESTERN_EUROPE_ENCODING);
-
-            byte[] textBytes = text.getBytes("ISO-8859-1");
-
-            int
-                    commandLength = textBytes.length + 3,
-                    pL = commandLength % 256,
-                    pH = (int)Math.floor(commandLength / 256);
-
-            /*byte[] qrCodeCommand = new byte[textBytes.length + 7];
-            System.arraycopy(new byte[]{0x1B, 0x5A, 0x00, 0x00, (byte)size, (byte)pL, (byte)pH}, 0, qrCodeCommand, 0, 7);
-            System.arraycopy(textBytes, 0, qrCodeCommand, 7, textBytes.length);
-            this.outputStream.write(qrCodeCommand);*/
-
-            this.outputStream.write(new byte[]{0x1D, 0x28, 0x6B, 0x04, 0x00, 0x31, 0x41, (byte)qrCodeType, 0x00});
-            this.outputStream.write(new byte[]{0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x43, (byte)size});
-            this.outputStream.write(new byte[]{0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x45, (byte)48});
-
-            byte[] qrCodeCommand = new byte[textBytes.length + 8];
-            System.arraycopy(new byte[]{0x1D, 0x28, 0x6B, (byte)pL, (byte)pH, 0x31, 0x50, 0x30}, 0, qrCodeCommand, 0, 8);
-            System.arraycopy(textBytes, 0, qrCodeCommand, 8, textBytes.length);
-            this.outputStream.write(qrCodeCommand);
-
-            this.outputStream.write(new byte[]{0x1D, 0x28, 0x6B, 0x03, 0x00, 0x31, 0x51, 0x30});
-
-            Thread.sleep(PrinterCommands.TIME_BETWEEN_TWO_PRINT * 2);
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+        this.printerConnection.printQRCode(qrCodeType, text, size);
         return this;
     }
+    
+    /**
+     * Print a QR code with the connected printer.
+     *
+     * @param qrCodeType Set the barcode type. Use PrinterCommands.QRCODE_... constants
+     * @param text String that contains QR code data
+     * @param size dot size of QR code pixel
+     * @param errorCorrection Set the error correction level. Use PrinterCommands.QRCODE_ERROR_CORRECTION_... constants
+     * @return Fluent interface
+     */
+    public BluetoothPrinterSocketConnection printQRCode(int qrCodeType, String text, int size, int errorCorrection) {
+        this.printerConnection.printQRCode(qrCodeType, text, size, errorCorrection);
+        return this;
+    }
+    
     /**
      * Forces the transition to a new line with the connected printer.
      *
      * @return Fluent interface
      */
     public BluetoothPrinterSocketConnection newLine() {
-        return this.newLine(null);
+        this.printerConnection.newLine();
+        return this;
     }
     
     /**
@@ -410,22 +475,7 @@ public class BluetoothPrinterSocketConnection extends BluetoothDeviceSocketConne
      * @return Fluent interface
      */
     public BluetoothPrinterSocketConnection newLine(byte[] align) {
-        if (!this.isOpenedStream()) {
-            return this;
-        }
-        
-        try {
-            this.outputStream.write(PrinterCommands.LF);
-            Thread.sleep(PrinterCommands.TIME_BETWEEN_TWO_PRINT);
-            if (align != null) {
-                this.outputStream.write(align);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-        
+        this.printerConnection.newLine(align);
         return this;
     }
 }
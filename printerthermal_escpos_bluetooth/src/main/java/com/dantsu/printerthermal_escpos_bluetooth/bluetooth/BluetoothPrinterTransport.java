@@ -0,0 +1,43 @@
+package com.dantsu.printerthermal_escpos_bluetooth.bluetooth;
+
+import android.bluetooth.BluetoothDevice;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import lib.bluetooth.BluetoothDeviceSocketConnection;
+import com.dantsu.printerthermal_escpos_bluetooth.transport.PrinterTransport;
+
+public class BluetoothPrinterTransport extends BluetoothDeviceSocketConnection implements PrinterTransport {
+    
+    /**
+     * Create new instance of BluetoothPrinterTransport.
+     *
+     * @param device an instance of android.bluetooth.BluetoothDevice
+     */
+    public BluetoothPrinterTransport(BluetoothDevice device) {
+        super(device);
+    }
+    
+    @Override
+    public String getPrinterId() {
+        return "bluetooth:" + this.device.getAddress();
+    }
+    
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        if (!this.isConnected()) {
+            throw new IOException("The bluetooth device is not connected.");
+        }
+        return this.bluetoothSocket.getOutputStream();
+    }
+    
+    @Override
+    public InputStream getInputStream() throws IOException {
+        if (!this.isConnected()) {
+            throw new IOException("The bluetooth device is not connected.");
+        }
+        return this.bluetoothSocket.getInputStream();
+    }
+}
@@ -0,0 +1,55 @@
+package com.dantsu.printerthermal_escpos_bluetooth.flowcontrol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterBuffer;
+
+public class FixedDelayFlowControl extends PrinterFlowControl {
+    
+    /**
+     * Send the content of the buffer to the printer and wait the time set by each mark of the buffer.
+     * This is the historical behaviour, used with printers that do not send any feedback.
+     *
+     * @param buffer Buffer to be sent
+     * @param outputStream Stream to the printer
+     * @param inputStream Not used
+     * @param packetSize Maximum number of bytes written by call to OutputStream.write
+     * @throws IOException if the printer cannot be reached
+     */
+    @Override
+    public void send(PrinterBuffer buffer, OutputStream outputStream, InputStream inputStream, int packetSize) throws IOException {
+        this.send(buffer, 0, outputStream, packetSize);
+    }
+    
+    /**
+     * Send the content of the buffer from offset to the printer and wait the time set by each mark of the buffer.
+     *
+     * @param buffer Buffer to be sent
+     * @param offset Index of the first byte to send
+     * @param outputStream Stream to the printer
+     * @param packetSize Maximum number of bytes written by call to OutputStream.write
+     * @throws InterruptedIOException if the thread is interrupted while waiting, the rest of the buffer is not sent
+     * @throws IOException if the printer cannot be reached
+     */
+    public void send(PrinterBuffer buffer, int offset, OutputStream outputStream, int packetSize) throws IOException {
+        int marksCount = buffer.getMarksCount();
+        
+        for (int i = 0; i < marksCount; i++) {
+            int markOffset = buffer.getMarkOffset(i);
+            if (markOffset < offset || buffer.getMarkWaitingTime(i) == 0) {
+                continue;
+            }
+            buffer.writeTo(outputStream, offset, markOffset - offset, packetSize);
+            outputStream.flush();
+            offset = markOffset;
+            
+            PrinterFlowControl.sleep(buffer.getMarkWaitingTime(i));
+        }
+        
+        buffer.writeTo(outputStream, offset, buffer.size() - offset, packetSize);
+        outputStream.flush();
+    }
+}
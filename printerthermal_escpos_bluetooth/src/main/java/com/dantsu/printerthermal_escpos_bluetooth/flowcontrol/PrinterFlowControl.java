@@ -0,0 +1,90 @@
+package com.dantsu.printerthermal_escpos_bluetooth.flowcontrol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterBuffer;
+
+public abstract class PrinterFlowControl {
+    
+    /**
+     * Read one byte sent by the printer.
+     *
+     * @param inputStream Stream of the bytes sent by the printer
+     * @param timeout Maximum time to wait in milliseconds
+     * @return The byte read, or -1 if nothing has been received before the timeout
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     * @throws IOException if the stream cannot be read
+     */
+    protected static int readByte(InputStream inputStream, int timeout) throws IOException {
+        if (inputStream == null) {
+            return -1;
+        }
+        long endTime = System.currentTimeMillis() + timeout;
+        while (inputStream.available() < 1) {
+            if (System.currentTimeMillis() >= endTime) {
+                return -1;
+            }
+            PrinterFlowControl.sleep(2);
+        }
+        return inputStream.read();
+    }
+    
+    /**
+     * Wait before sending the next bytes. The interrupt status of the thread is restored when it is interrupted, so
+     * that the caller knows the job is cancelled.
+     *
+     * @param time Time to wait in milliseconds
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    protected static void sleep(long time) throws InterruptedIOException {
+        try {
+            Thread.sleep(time);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException exception = new InterruptedIOException("The sending to the printer has been interrupted.");
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+    
+    /**
+     * Skip all the bytes already sent by the printer.
+     *
+     * @param inputStream Stream of the bytes sent by the printer
+     * @throws IOException if the stream cannot be read
+     */
+    protected static void skipAvailableBytes(InputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            return;
+        }
+        int available;
+        while ((available = inputStream.available()) > 0) {
+            inputStream.skip(available);
+        }
+    }
+    
+    
+    /**
+     * Send the content of the buffer to the printer, only when the printer is ready to receive it.
+     *
+     * @param buffer Buffer to be sent
+     * @param outputStream Stream to the printer
+     * @param inputStream Stream of the bytes sent by the printer, can be null
+     * @param packetSize Maximum number of bytes written by call to OutputStream.write
+     * @throws InterruptedIOException if the thread is interrupted, the rest of the buffer is not sent
+     * @throws IOException if the printer cannot be reached
+     */
+    public abstract void send(PrinterBuffer buffer, OutputStream outputStream, InputStream inputStream, int packetSize) throws IOException;
+    
+    /**
+     * Forget everything known about the printer. Called when the connection is opened or closed.
+     *
+     * @return Fluent interface
+     */
+    public PrinterFlowControl reset() {
+        return this;
+    }
+}
@@ -0,0 +1,209 @@
+package com.dantsu.printerthermal_escpos_bluetooth.flowcontrol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterBuffer;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+
+public class StatusFlowControl extends PrinterFlowControl {
+    
+    public static final int DEFAULT_WINDOW_SIZE = 1024;
+    public static final int DEFAULT_MAX_PENDING_WINDOWS = 2;
+    public static final int DEFAULT_PROBE_TIMEOUT = 500;
+    public static final int DEFAULT_STATUS_TIMEOUT = 5000;
+    
+    private int windowSize;
+    private int maxPendingWindows;
+    private int probeTimeout = StatusFlowControl.DEFAULT_PROBE_TIMEOUT;
+    private int statusTimeout = StatusFlowControl.DEFAULT_STATUS_TIMEOUT;
+    
+    private FixedDelayFlowControl fallback = new FixedDelayFlowControl();
+    private Boolean isStatusSupported = null;
+    private int pendingWindows = 0;
+    private int unconfirmedBytes = 0;
+    
+    /**
+     * Create a new instance of StatusFlowControl.
+     */
+    public StatusFlowControl() {
+        this(StatusFlowControl.DEFAULT_WINDOW_SIZE, StatusFlowControl.DEFAULT_MAX_PENDING_WINDOWS);
+    }
+    
+    /**
+     * Create a new instance of StatusFlowControl.
+     *
+     * @param windowSize Number of bytes sent between two status requests
+     * @param maxPendingWindows Number of windows that can be sent before the printer confirms the processing of the first one
+     */
+    public StatusFlowControl(int windowSize, int maxPendingWindows) {
+        this.windowSize = Math.max(windowSize, 1);
+        this.maxPendingWindows = Math.max(maxPendingWindows, 1);
+    }
+    
+    /**
+     * Set the timeouts used to detect if the printer answers status requests.
+     *
+     * @param probeTimeout Maximum time in milliseconds to wait the answer of the real-time status request (DLE EOT)
+     * @param statusTimeout Maximum time in milliseconds to wait the printer processing a window
+     * @return Fluent interface
+     */
+    public StatusFlowControl setTimeouts(int probeTimeout, int statusTimeout) {
+        this.probeTimeout = probeTimeout;
+        this.statusTimeout = statusTimeout;
+        return this;
+    }
+    
+    /**
+     * Check if the printer answers status requests. Return null if it is not checked yet.
+     *
+     * @return Boolean
+     */
+    public Boolean isStatusSupported() {
+        return this.isStatusSupported;
+    }
+    
+    /**
+     * Send a real-time status request (DLE EOT 1) and check the answer.
+     */
+    private boolean probe(OutputStream outputStream, InputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            return false;
+        }
+        PrinterFlowControl.skipAvailableBytes(inputStream);
+        outputStream.write(PrinterCommands.STATUS_REAL_TIME_PRINTER);
+        outputStream.flush();
+        
+        int b = PrinterFlowControl.readByte(inputStream, this.probeTimeout);
+        // The printer status byte is formatted 0xx1xx10
+        return b != -1 && (b & 0x93) == 0x12;
+    }
+    
+    /**
+     * Wait the answer of the oldest status request (GS r 1), which is processed by the printer in order with the data.
+     *
+     * @return false if the printer has not answered before the timeout
+     */
+    private boolean waitWindowProcessed(InputStream inputStream) throws IOException {
+        while (true) {
+            int b = PrinterFlowControl.readByte(inputStream, this.statusTimeout);
+            if (b == -1) {
+                return false;
+            }
+            // Real-time status, XON and XOFF have their bit 4 set, paper sensor status does not.
+            if ((b & 0x10) == 0) {
+                this.pendingWindows--;
+                return true;
+            }
+        }
+    }
+    
+    /**
+     * Get the end of the window starting at offset : the last command end of the buffer that fits in the window, or
+     * the end of the first command if it is larger than the window. Commands are never cut, the status request sent
+     * after a window would be read as a part of the command.
+     *
+     * @param buffer Buffer to be sent
+     * @param offset Index of the first byte of the window
+     * @param maxLength Number of bytes that the window can contain
+     * @return Index of the byte following the window
+     */
+    private static int getWindowEnd(PrinterBuffer buffer, int offset, int maxLength) {
+        int size = buffer.size(), maxEnd = offset + maxLength;
+        if (maxEnd >= size) {
+            return size;
+        }
+        int end = -1;
+        for (int i = 0, marksCount = buffer.getMarksCount(); i < marksCount; i++) {
+            int markOffset = buffer.getMarkOffset(i);
+            if (markOffset <= offset) {
+                continue;
+            }
+            if (markOffset > maxEnd) {
+                return end == -1 ? markOffset : end;
+            }
+            end = markOffset;
+        }
+        return end == -1 ? size : end;
+    }
+    
+    /**
+     * Send a status request (GS r 1) closing the current window.
+     */
+    private void closeWindow(OutputStream outputStream) throws IOException {
+        outputStream.write(PrinterCommands.STATUS_TRANSMIT_PAPER_SENSOR);
+        this.pendingWindows++;
+        this.unconfirmedBytes = 0;
+    }
+    
+    /**
+     * Send the content of the buffer window by window. After each window, a status request processed in order with the
+     * data is sent, and no more than maxPendingWindows are sent before the printer answers. If the printer does not
+     * answer, the fixed delays of the buffer marks are used.
+     * <p>
+     * Windows end on the marks of the buffer, so that the status requests are never sent inside a command. A window
+     * can be filled by several calls : the commands sent outside of a print job do not wait for the printer until
+     * they fill a window.
+     *
+     * @param buffer Buffer to be sent
+     * @param outputStream Stream to the printer
+     * @param inputStream Stream of the bytes sent by the printer
+     * @param packetSize Maximum number of bytes written by call to OutputStream.write
+     * @throws InterruptedIOException if the thread is interrupted while waiting the printer, the rest of the buffer is not sent
+     * @throws IOException if the printer cannot be reached
+     */
+    @Override
+    public void send(PrinterBuffer buffer, OutputStream outputStream, InputStream inputStream, int packetSize) throws IOException {
+        if (this.isStatusSupported == null) {
+            this.isStatusSupported = this.probe(outputStream, inputStream);
+        }
+        
+        int size = buffer.size(), offset = 0;
+        
+        while (offset < size) {
+            if (!this.isStatusSupported) {
+                this.fallback.send(buffer, offset, outputStream, packetSize);
+                return;
+            }
+            
+            while (this.pendingWindows >= this.maxPendingWindows) {
+                if (!this.waitWindowProcessed(inputStream)) {
+                    this.isStatusSupported = false;
+                    this.pendingWindows = 0;
+                    this.unconfirmedBytes = 0;
+                    break;
+                }
+            }
+            
+            if (!this.isStatusSupported) {
+                continue;
+            }
+            
+            int end = StatusFlowControl.getWindowEnd(buffer, offset, this.windowSize - this.unconfirmedBytes);
+            if (this.unconfirmedBytes > 0 && this.unconfirmedBytes + end - offset > this.windowSize) {
+                // The next command does not fit in the window started by the previous calls.
+                this.closeWindow(outputStream);
+                outputStream.flush();
+                continue;
+            }
+            
+            buffer.writeTo(outputStream, offset, end - offset, packetSize);
+            this.unconfirmedBytes += end - offset;
+            if (this.unconfirmedBytes >= this.windowSize) {
+                this.closeWindow(outputStream);
+            }
+            outputStream.flush();
+            offset = end;
+        }
+    }
+    
+    @Override
+    public StatusFlowControl reset() {
+        this.isStatusSupported = null;
+        this.pendingWindows = 0;
+        this.unconfirmedBytes = 0;
+        return this;
+    }
+}
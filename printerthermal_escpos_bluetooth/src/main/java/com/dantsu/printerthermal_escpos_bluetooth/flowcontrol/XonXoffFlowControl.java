@@ -0,0 +1,94 @@
+package com.dantsu.printerthermal_escpos_bluetooth.flowcontrol;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterBuffer;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+
+public class XonXoffFlowControl extends PrinterFlowControl {
+    
+    public static final int DEFAULT_BUSY_TIMEOUT = 30000;
+    
+    private int busyTimeout;
+    private boolean isPaused = false;
+    
+    /**
+     * Create a new instance of XonXoffFlowControl.
+     */
+    public XonXoffFlowControl() {
+        this(XonXoffFlowControl.DEFAULT_BUSY_TIMEOUT);
+    }
+    
+    /**
+     * Create a new instance of XonXoffFlowControl.
+     *
+     * @param busyTimeout Maximum time in milliseconds to wait a XON after the printer sent a XOFF
+     */
+    public XonXoffFlowControl(int busyTimeout) {
+        this.busyTimeout = busyTimeout;
+    }
+    
+    /**
+     * Read the XON / XOFF bytes sent by the printer and wait until the printer accept data.
+     *
+     * @param inputStream Stream of the bytes sent by the printer
+     * @throws InterruptedIOException if the thread is interrupted while the printer is busy
+     * @throws IOException if the printer stays busy longer than busyTimeout
+     */
+    private void waitPrinterReady(InputStream inputStream) throws IOException {
+        if (inputStream == null) {
+            return;
+        }
+        while (inputStream.available() > 0) {
+            this.updateState(inputStream.read());
+        }
+        while (this.isPaused) {
+            int b = PrinterFlowControl.readByte(inputStream, this.busyTimeout);
+            if (b == -1) {
+                this.isPaused = false;
+                throw new IOException("The printer did not send XON after " + this.busyTimeout + "ms.");
+            }
+            this.updateState(b);
+        }
+    }
+    
+    private void updateState(int b) {
+        if (b == PrinterCommands.XOFF) {
+            this.isPaused = true;
+        } else if (b == PrinterCommands.XON) {
+            this.isPaused = false;
+        }
+    }
+    
+    /**
+     * Send the content of the buffer packet by packet, pausing while the printer says its buffer is full (XOFF).
+     *
+     * @param buffer Buffer to be sent
+     * @param outputStream Stream to the printer
+     * @param inputStream Stream of the bytes sent by the printer
+     * @param packetSize Maximum number of bytes written by call to OutputStream.write
+     * @throws InterruptedIOException if the thread is interrupted while waiting the printer, the rest of the buffer is not sent
+     * @throws IOException if the printer cannot be reached
+     */
+    @Override
+    public void send(PrinterBuffer buffer, OutputStream outputStream, InputStream inputStream, int packetSize) throws IOException {
+        int size = buffer.size();
+        if (packetSize < 1) {
+            packetSize = size;
+        }
+        for (int offset = 0; offset < size; offset += packetSize) {
+            this.waitPrinterReady(inputStream);
+            buffer.writeTo(outputStream, offset, Math.min(packetSize, size - offset), packetSize);
+            outputStream.flush();
+        }
+    }
+    
+    @Override
+    public XonXoffFlowControl reset() {
+        this.isPaused = false;
+        return this;
+    }
+}
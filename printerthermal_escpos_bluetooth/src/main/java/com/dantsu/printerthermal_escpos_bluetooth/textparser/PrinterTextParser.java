@@ -1,6 +1,7 @@
 package com.dantsu.printerthermal_escpos_bluetooth.textparser;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Map;
 
 import com.dantsu.printerthermal_escpos_bluetooth.Printer;
 import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
@@ -16,12 +17,26 @@ public class PrinterTextParser {
     public static final String TAGS_BARCODE = "barcode";
     public static final String TAGS_QRCODE = "qrcode";
 
+    public static final String ATTR_IMAGE_KEY = "key";
+    public static final String ATTR_IMAGE_REF = "ref";
+
     public static final String ATTR_BARCODE_HEIGHT = "height";
     public static final String ATTR_BARCODE_TYPE = "type";
     public static final String ATTR_BARCODE_TYPE_EAN8 = "ean8";
     public static final String ATTR_BARCODE_TYPE_EAN13 = "ean13";
     public static final String ATTR_BARCODE_TYPE_UPCA = "upca";
     public static final String ATTR_BARCODE_TYPE_UPCE = "upce";
+    public static final String ATTR_BARCODE_TYPE_ITF = "itf";
+    public static final String ATTR_BARCODE_TYPE_CODE39 = "code39";
+    public static final String ATTR_BARCODE_TYPE_CODABAR = "codabar";
+    public static final String ATTR_BARCODE_TYPE_CODE93 = "code93";
+    public static final String ATTR_BARCODE_TYPE_CODE128 = "code128";
+    public static final String ATTR_BARCODE_WIDTH = "width";
+    public static final String ATTR_BARCODE_TEXT_POSITION = "text";
+    public static final String ATTR_BARCODE_TEXT_POSITION_NONE = "none";
+    public static final String ATTR_BARCODE_TEXT_POSITION_ABOVE = "above";
+    public static final String ATTR_BARCODE_TEXT_POSITION_BELOW = "below";
+    public static final String ATTR_BARCODE_TEXT_POSITION_BOTH = "both";
     
     public static final String TAGS_FORMAT_TEXT_FONT = "font";
     public static final String TAGS_FORMAT_TEXT_BOLD = "b";
@@ -36,8 +51,18 @@ public class PrinterTextParser {
     public static final String ATTR_FORMAT_TEXT_SIZE_MEDIUM = "medium";
 
     public static final String ATTR_QRCODE_SIZE = "size";
+    public static final String ATTR_QRCODE_MODULE = "module";
+    public static final String ATTR_QRCODE_CORRECTION = "correction";
+    public static final String ATTR_QRCODE_CORRECTION_L = "l";
+    public static final String ATTR_QRCODE_CORRECTION_M = "m";
+    public static final String ATTR_QRCODE_CORRECTION_Q = "q";
+    public static final String ATTR_QRCODE_CORRECTION_H = "h";
     
     private static String regexAlignTags;
+    /**
+     * @deprecated The text is no longer split with regular expressions, this pattern is not used by the parser.
+     */
+    @Deprecated
     public static String getRegexAlignTags() {
         if(PrinterTextParser.regexAlignTags == null) {
             StringBuilder regexAlignTags = new StringBuilder();
@@ -50,7 +75,7 @@ public class PrinterTextParser {
     }
     
     public static boolean isTagTextFormat(String tagName) {
-        if (tagName.substring(0, 1).equals("/")) {
+        if (tagName.startsWith("/")) {
             tagName = tagName.substring(1);
         }
         
@@ -62,32 +87,35 @@ public class PrinterTextParser {
         return false;
     }
     
-    public static byte[][] arrayByteDropLast(byte[][] arr) {
-        if (arr.length == 0) {
-            return arr;
+    /**
+     * Push a value on a stack of format indexes, growing the stack if it is full.
+     *
+     * @return The stack, or a larger copy of it
+     */
+    private static int[] push(int[] stack, int size, int value) {
+        if (size == stack.length) {
+            int[] newStack = new int[size * 2];
+            System.arraycopy(stack, 0, newStack, 0, size);
+            stack = newStack;
         }
-        
-        byte[][] newArr = new byte[arr.length - 1][];
-        System.arraycopy(arr, 0, newArr, 0, newArr.length);
-        
-        return newArr;
-    }
-    
-    public static byte[][] arrayBytePush(byte[][] arr, byte[] add) {
-        byte[][] newArr = new byte[arr.length + 1][];
-        System.arraycopy(arr, 0, newArr, 0, arr.length);
-        newArr[arr.length] = add;
-        return newArr;
+        stack[size] = value;
+        return stack;
     }
     
     
     
     
     private Printer printer;
-    private byte[][] textSize = {PrinterCommands.TEXT_SIZE_MEDIUM};
-    private byte[][] textBold = {PrinterCommands.TEXT_WEIGHT_NORMAL};
-    private byte[][] textUnderline = {PrinterCommands.TEXT_UNDERLINE_OFF};
+    private int[] textSizes = {PrinterTextStyle.TEXT_SIZE_MEDIUM, 0, 0, 0};
+    private int[] textWeights = {PrinterTextStyle.TEXT_WEIGHT_NORMAL, 0, 0, 0};
+    private int[] textUnderlines = {PrinterTextStyle.TEXT_UNDERLINE_OFF, 0, 0, 0};
+    private int nbrTextSizes = 1;
+    private int nbrTextWeights = 1;
+    private int nbrTextUnderlines = 1;
+    private PrinterTextStyle textStyle = PrinterTextStyle.DEFAULT;
     private String text = "";
+    private Map<String, ?> attachments = null;
+    private boolean isFormatStateOnly = false;
     
     public PrinterTextParser(Printer printer) {
         this.printer = printer;
@@ -97,72 +125,147 @@ public class PrinterTextParser {
         return printer;
     }
     
+    /**
+     * Copy the text formatting in progress and the attachments of another parser, to continue parsing from the same
+     * state.
+     *
+     * @param textParser Parser to copy
+     * @return Fluent interface
+     */
+    PrinterTextParser copyFormatState(PrinterTextParser textParser) {
+        this.textSizes = textParser.textSizes.clone();
+        this.textWeights = textParser.textWeights.clone();
+        this.textUnderlines = textParser.textUnderlines.clone();
+        this.nbrTextSizes = textParser.nbrTextSizes;
+        this.nbrTextWeights = textParser.nbrTextWeights;
+        this.nbrTextUnderlines = textParser.nbrTextUnderlines;
+        this.textStyle = textParser.textStyle;
+        this.attachments = textParser.attachments;
+        return this;
+    }
+    
+    /**
+     * Only follow the text formatting of the parsed lines, without building their images, barcodes and QR codes.
+     * Used to move the formatting state over lines that are not printed.
+     *
+     * @param isFormatStateOnly true to skip the images, barcodes and QR codes
+     * @return Fluent interface
+     */
+    PrinterTextParser setFormatStateOnly(boolean isFormatStateOnly) {
+        this.isFormatStateOnly = isFormatStateOnly;
+        return this;
+    }
+    
+    boolean isFormatStateOnly() {
+        return this.isFormatStateOnly;
+    }
+    
     public PrinterTextParser setFormattedText(String text) {
         this.text = text;
         return this;
     }
     
+    /**
+     * Set the images referenced in the formatted text by &lt;img ref='name'&gt;&lt;/img&gt;, to pass them without
+     * converting them to hexadecimal strings.
+     *
+     * @param attachments Images by name : byte[] containing an image in ESC/POS command, as returned by
+     *                    Printer.bitmapToBytes, or PrinterImageSource converted while parsing
+     * @return Fluent interface
+     */
+    public PrinterTextParser setAttachments(Map<String, ?> attachments) {
+        this.attachments = attachments;
+        return this;
+    }
+    
+    /**
+     * Get an image referenced in the formatted text.
+     *
+     * @param ref Name of the image
+     * @return byte[] or PrinterImageSource, null if the image is not attached
+     */
+    public Object getAttachment(String ref) {
+        return this.attachments == null ? null : this.attachments.get(ref);
+    }
+    
+    /**
+     * Get the style of the text parsed now, from the formatting tags opened before.
+     *
+     * @return PrinterTextStyle
+     */
+    public PrinterTextStyle getLastTextStyle() {
+        return this.textStyle;
+    }
+    
+    private PrinterTextParser updateTextStyle() {
+        this.textStyle = PrinterTextStyle.get(
+            this.textSizes[this.nbrTextSizes - 1],
+            this.textWeights[this.nbrTextWeights - 1],
+            this.textUnderlines[this.nbrTextUnderlines - 1]
+        );
+        return this;
+    }
+    
     public byte[] getLastTextSize() {
-        return this.textSize[this.textSize.length - 1];
+        return this.textStyle.getTextSize();
     }
     
     public PrinterTextParser addTextSize(byte[] newTextSize) {
-        this.textSize = PrinterTextParser.arrayBytePush(this.textSize, newTextSize);
-        return this;
+        this.textSizes = PrinterTextParser.push(this.textSizes, this.nbrTextSizes++, PrinterTextStyle.getTextSizeIndex(newTextSize));
+        return this.updateTextStyle();
     }
     
     public PrinterTextParser dropLastTextSize() {
-        if (this.textSize.length > 1) {
-            this.textSize = PrinterTextParser.arrayByteDropLast(this.textSize);
+        if (this.nbrTextSizes > 1) {
+            this.nbrTextSizes--;
         }
-        return this;
+        return this.updateTextStyle();
     }
     public PrinterTextParser dropLastTextSize(byte[] isLastByte) {
-        if (Arrays.equals(this.textSize[this.textSize.length - 1], isLastByte)) {
-            this.textSize = PrinterTextParser.arrayByteDropLast(this.textSize);
+        if (this.nbrTextSizes > 1 && this.textSizes[this.nbrTextSizes - 1] == PrinterTextStyle.getTextSizeIndex(isLastByte)) {
+            this.nbrTextSizes--;
         }
-        return this;
+        return this.updateTextStyle();
     }
     
     public byte[] getLastTextBold() {
-        return this.textBold[this.textBold.length - 1];
+        return this.textStyle.getTextBold();
     }
     
     public PrinterTextParser addTextBold(byte[] newTextSize) {
-        this.textBold = PrinterTextParser.arrayBytePush(this.textBold, newTextSize);
-        return this;
+        this.textWeights = PrinterTextParser.push(this.textWeights, this.nbrTextWeights++, PrinterTextStyle.getTextWeightIndex(newTextSize));
+        return this.updateTextStyle();
     }
     
     public PrinterTextParser dropTextBold(byte[] isLastByte) {
-        if (Arrays.equals(this.textBold[this.textBold.length - 1], isLastByte)) {
-            this.textBold = PrinterTextParser.arrayByteDropLast(this.textBold);
+        if (this.nbrTextWeights > 1 && this.textWeights[this.nbrTextWeights - 1] == PrinterTextStyle.getTextWeightIndex(isLastByte)) {
+            this.nbrTextWeights--;
         }
-        return this;
+        return this.updateTextStyle();
     }
     
     public byte[] getLastTextUnderline() {
-        return this.textUnderline[this.textUnderline.length - 1];
+        return this.textStyle.getTextUnderline();
     }
     
     public PrinterTextParser addTextUnderline(byte[] newTextSize) {
-        this.textUnderline = PrinterTextParser.arrayBytePush(this.textUnderline, newTextSize);
-        return this;
+        this.textUnderlines = PrinterTextParser.push(this.textUnderlines, this.nbrTextUnderlines++, PrinterTextStyle.getTextUnderlineIndex(newTextSize));
+        return this.updateTextStyle();
     }
     
     public PrinterTextParser dropLastTextUnderline(byte[] isLastByte) {
-        if (Arrays.equals(this.textUnderline[this.textUnderline.length - 1], isLastByte)) {
-            this.textUnderline = PrinterTextParser.arrayByteDropLast(this.textUnderline);
+        if (this.nbrTextUnderlines > 1 && this.textUnderlines[this.nbrTextUnderlines - 1] == PrinterTextStyle.getTextUnderlineIndex(isLastByte)) {
+            this.nbrTextUnderlines--;
         }
-        return this;
+        return this.updateTextStyle();
     }
     
     public PrinterTextParserLine[] parse() {
-        String[] stringLines = this.text.split("\n|\r\n");
-        PrinterTextParserLine[] lines = new PrinterTextParserLine[stringLines.length];
-        int i = 0;
-        for (String line : stringLines) {
-            lines[i++] = new PrinterTextParserLine(this, line);
+        PrinterTextParserTokenizer tokenizer = new PrinterTextParserTokenizer(this.text);
+        ArrayList<PrinterTextParserLine> lines = new ArrayList<PrinterTextParserLine>();
+        while (tokenizer.nextLine()) {
+            lines.add(new PrinterTextParserLine(this, tokenizer));
         }
-        return lines;
+        return lines.toArray(new PrinterTextParserLine[lines.size()]);
     }
 }
@@ -1,23 +1,46 @@
 package com.dantsu.printerthermal_escpos_bluetooth.textparser;
 
 import java.util.Hashtable;
+import java.util.Map;
 
 import com.dantsu.printerthermal_escpos_bluetooth.Printer;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterBarcode;
 import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterConnection;
 import com.dantsu.printerthermal_escpos_bluetooth.bluetooth.BluetoothPrinterSocketConnection;
 
 public class PrinterTextParserBarcode implements PrinterTextParserElement {
-    
+
     private int length;
     private int height;
+    private int moduleWidth;
+    private int textPosition;
     private byte[] align;
-    private String code;
-    private int barcodeType;
-    
+    private PrinterBarcode barcode;
+    private PrinterTextParserImg image;
+
+    /**
+     * @deprecated Use the constructor taking a Map, kept for the binary compatibility with the version 1.x.
+     */
+    @Deprecated
     public PrinterTextParserBarcode(PrinterTextParserColumn printerTextParserColumn, String textAlign, Hashtable<String, String> barcodeAttributes, String code) {
+        this(printerTextParserColumn, textAlign, (Map<String, String>) barcodeAttributes, code);
+    }
+
+    /**
+     * Create new instance of PrinterTextParserBarcode. The code is validated and completed here, an invalid code is
+     * not printed. The barcode is generated by the printer if the printer profile supports its type, else it is
+     * printed as a raster image.
+     *
+     * @param printerTextParserColumn Parent PrinterTextParserColumn instance.
+     * @param textAlign Set the barcode alignment. Use PrinterTextParser.TAGS_ALIGN_... constants.
+     * @param barcodeAttributes Attributes of the barcode tag : type, height in millimeters, bar width in dots and human readable text position.
+     * @param code Barcode data.
+     */
+    public PrinterTextParserBarcode(PrinterTextParserColumn printerTextParserColumn, String textAlign, Map<String, String> barcodeAttributes, String code) {
         Printer printer = printerTextParserColumn.getLine().getTextParser().getPrinter();
         code = code.trim();
-        
+
         this.align = PrinterCommands.TEXT_ALIGN_LEFT;
         switch (textAlign) {
             case PrinterTextParser.TAGS_ALIGN_CENTER:
@@ -27,19 +50,34 @@ public class PrinterTextParserBarcode implements PrinterTextParserElement {
                 this.align = PrinterCommands.TEXT_ALIGN_RIGHT;
                 break;
         }
-        
-        this.barcodeType = PrinterCommands.BARCODE_EAN13;
+
+        int barcodeType = PrinterCommands.BARCODE_EAN13;
         try {
             if (barcodeAttributes.containsKey(PrinterTextParser.ATTR_BARCODE_TYPE)) {
                 switch (barcodeAttributes.get(PrinterTextParser.ATTR_BARCODE_TYPE)) {
                     case PrinterTextParser.ATTR_BARCODE_TYPE_EAN8:
-                        this.barcodeType = PrinterCommands.BARCODE_EAN8;
+                        barcodeType = PrinterCommands.BARCODE_EAN8;
                         break;
                     case PrinterTextParser.ATTR_BARCODE_TYPE_UPCA:
-                        this.barcodeType = PrinterCommands.BARCODE_UPCA;
+                        barcodeType = PrinterCommands.BARCODE_UPCA;
                         break;
                     case PrinterTextParser.ATTR_BARCODE_TYPE_UPCE:
-                        this.barcodeType = PrinterCommands.BARCODE_UPCE;
+                        barcodeType = PrinterCommands.BARCODE_UPCE;
+                        break;
+                    case PrinterTextParser.ATTR_BARCODE_TYPE_ITF:
+                        barcodeType = PrinterCommands.BARCODE_ITF;
+                        break;
+                    case PrinterTextParser.ATTR_BARCODE_TYPE_CODE39:
+                        barcodeType = PrinterCommands.BARCODE_CODE39;
+                        break;
+                    case PrinterTextParser.ATTR_BARCODE_TYPE_CODABAR:
+                        barcodeType = PrinterCommands.BARCODE_CODABAR;
+                        break;
+                    case PrinterTextParser.ATTR_BARCODE_TYPE_CODE93:
+                        barcodeType = PrinterCommands.BARCODE_CODE93;
+                        break;
+                    case PrinterTextParser.ATTR_BARCODE_TYPE_CODE128:
+                        barcodeType = PrinterCommands.BARCODE_CODE128;
                         break;
                 }
             }
@@ -57,8 +95,65 @@ public class PrinterTextParserBarcode implements PrinterTextParserElement {
         } catch (Exception e) {
             e.printStackTrace();
         }
-        
-        this.code = code;
+
+        this.moduleWidth = PrinterCommands.BARCODE_WIDTH_DEFAULT;
+        try {
+            if (barcodeAttributes.containsKey(PrinterTextParser.ATTR_BARCODE_WIDTH)) {
+                this.moduleWidth = Math.max(1, Math.min(6, Integer.parseInt(barcodeAttributes.get(PrinterTextParser.ATTR_BARCODE_WIDTH))));
+            }
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        this.textPosition = PrinterCommands.BARCODE_TEXT_POSITION_NONE;
+        if (barcodeAttributes.containsKey(PrinterTextParser.ATTR_BARCODE_TEXT_POSITION)) {
+            switch (barcodeAttributes.get(PrinterTextParser.ATTR_BARCODE_TEXT_POSITION)) {
+                case PrinterTextParser.ATTR_BARCODE_TEXT_POSITION_ABOVE:
+                    this.textPosition = PrinterCommands.BARCODE_TEXT_POSITION_ABOVE;
+                    break;
+                case PrinterTextParser.ATTR_BARCODE_TEXT_POSITION_BELOW:
+                    this.textPosition = PrinterCommands.BARCODE_TEXT_POSITION_BELOW;
+                    break;
+                case PrinterTextParser.ATTR_BARCODE_TEXT_POSITION_BOTH:
+                    this.textPosition = PrinterCommands.BARCODE_TEXT_POSITION_BOTH;
+                    break;
+            }
+        }
+
+        try {
+            this.barcode = new PrinterBarcode(barcodeType, code);
+            if (!printer.getProfile().isBarcodeSupported(barcodeType)) {
+                this.image = new PrinterTextParserImg(
+                    printer,
+                    PrinterTextParserImg.alignImage(
+                        printer,
+                        textAlign,
+                        this.barcode.toImageBytes(this.moduleWidth, this.height, printer.getPrintingWidthPx())
+                    )
+                );
+            }
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+            this.barcode = null;
+        }
+    }
+
+    /**
+     * Get the validated barcode.
+     *
+     * @return PrinterBarcode, or null if the code is invalid
+     */
+    public PrinterBarcode getBarcode() {
+        return this.barcode;
+    }
+
+    /**
+     * Check if the barcode is generated by the printer (GS k) or printed as a raster image.
+     *
+     * @return true if the barcode is generated by the printer
+     */
+    public boolean isNative() {
+        return this.image == null;
     }
 
     /**
@@ -74,14 +169,42 @@ public class PrinterTextParserBarcode implements PrinterTextParserElement {
     /**
      * Print barcode
      *
-     * @param printerSocket Bluetooth printer socket connection
+     * @param printerSocket Printer connection
      * @return this Fluent method
      */
     @Override
-    public PrinterTextParserBarcode print(BluetoothPrinterSocketConnection printerSocket) {
-        printerSocket
-                .setAlign(this.align)
-                .printBarcode(this.barcodeType, this.code, this.height);
+    public PrinterTextParserBarcode print(PrinterConnection printerSocket) {
+        if (this.barcode == null) {
+            return this;
+        }
+        if (this.image == null) {
+            printerSocket
+                    .setAlign(this.align)
+                    .printBarcode(this.barcode, this.height, this.moduleWidth, this.textPosition);
+            return this;
+        }
+
+        // The human readable text of the raster barcodes is printed as text lines.
+        if (this.textPosition == PrinterCommands.BARCODE_TEXT_POSITION_ABOVE || this.textPosition == PrinterCommands.BARCODE_TEXT_POSITION_BOTH) {
+            printerSocket
+                    .setAlign(this.align)
+                    .printText(this.barcode.getText())
+                    .newLine();
+        }
+        this.image.print(printerSocket);
+        if (this.textPosition == PrinterCommands.BARCODE_TEXT_POSITION_BELOW || this.textPosition == PrinterCommands.BARCODE_TEXT_POSITION_BOTH) {
+            printerSocket
+                    .setAlign(this.align)
+                    .printText(this.barcode.getText());
+        }
         return this;
     }
+
+    /**
+     * @deprecated Use print(PrinterConnection), kept for the binary compatibility with the version 1.x.
+     */
+    @Deprecated
+    public PrinterTextParserBarcode print(BluetoothPrinterSocketConnection printerSocket) {
+        return this.print(printerSocket.getPrinterConnection());
+    }
 }
@@ -1,14 +1,33 @@
 package com.dantsu.printerthermal_escpos_bluetooth.textparser;
 
-import java.util.Hashtable;
+import java.util.Arrays;
+import java.util.Map;
+
 import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterImageSource;
 
 public class PrinterTextParserColumn {
     
+    /**
+     * Strings of spaces by length, shared by the alignment spaces of all the columns.
+     */
+    private static final String[] SPACES = new String[65];
+    
+    static {
+        char[] spaces = new char[PrinterTextParserColumn.SPACES.length - 1];
+        Arrays.fill(spaces, ' ');
+        for (int i = 0; i < PrinterTextParserColumn.SPACES.length; i++) {
+            PrinterTextParserColumn.SPACES[i] = new String(spaces, 0, i);
+        }
+    }
+    
     private static String generateSpace(int nbrSpace) {
-        StringBuilder str = new StringBuilder();
+        if (nbrSpace < PrinterTextParserColumn.SPACES.length) {
+            return PrinterTextParserColumn.SPACES[nbrSpace];
+        }
+        StringBuilder str = new StringBuilder(nbrSpace);
         for (int i = 0; i < nbrSpace; i++) {
-            str.append(" ");
+            str.append(' ');
         }
         return str.toString();
     }
@@ -21,59 +40,66 @@ public class PrinterTextParserColumn {
      * Create a new instance of PrinterTextParserColumn.
      *
      * @param textParserLine Parent PrinterTextParserLine instance
-     * @param textColumn Text that the column contain
+     * @param tokenizer Tokenizer positioned on the line of the column
+     * @param columnIndex Index of the column in the line
      */
-    public PrinterTextParserColumn(PrinterTextParserLine textParserLine, String textColumn) {
+    public PrinterTextParserColumn(PrinterTextParserLine textParserLine, PrinterTextParserTokenizer tokenizer, int columnIndex) {
         this.textParserLine = textParserLine;
         PrinterTextParser textParser = this.textParserLine.getTextParser();
-        String textAlign = PrinterTextParser.TAGS_ALIGN_LEFT;
-        byte[] textUnderlineStartColumn = textParser.getLastTextUnderline();
-    
-    
-        // =================================================================
-        // Check the column alignment
-        
-        switch (textColumn.substring(0, 3).toUpperCase()) {
-            case "[" + PrinterTextParser.TAGS_ALIGN_LEFT + "]":
-            case "[" + PrinterTextParser.TAGS_ALIGN_CENTER + "]":
-            case "[" + PrinterTextParser.TAGS_ALIGN_RIGHT + "]":
-                textAlign = textColumn.substring(1, 2).toUpperCase();
-                textColumn = textColumn.substring(3);
-                break;
-        }
+        String textAlign = tokenizer.getColumnAlign(columnIndex);
+        PrinterTextStyle textStyleStartColumn = textParser.getLastTextStyle();
         
-        String trimmedTextColumn = textColumn.trim();
+        int firstToken = tokenizer.getColumnFirstToken(columnIndex),
+            lastToken = tokenizer.getColumnLastToken(columnIndex);
         boolean isImgOrBarcodeLine = false;
         
-        if (this.textParserLine.getNbrColumns() == 1 && trimmedTextColumn.indexOf("<") == 0) {
+        if (this.textParserLine.getNbrColumns() == 1) {
             // =================================================================
             // Image or Barcode Lines
-            int openTagIndex = trimmedTextColumn.indexOf("<"),
-                openTagEndIndex = trimmedTextColumn.indexOf(">", openTagIndex + 1) + 1;
+            int openTagToken = firstToken, closeTagToken = lastToken - 1;
+            while (openTagToken < lastToken && tokenizer.isBlankToken(openTagToken)) {
+                openTagToken++;
+            }
+            while (closeTagToken > openTagToken && tokenizer.isBlankToken(closeTagToken)) {
+                closeTagToken--;
+            }
             
-            if(openTagIndex < openTagEndIndex) {
-                PrinterTextParserTag textParserTag = new PrinterTextParserTag(trimmedTextColumn.substring(openTagIndex, openTagEndIndex));
-    
+            if (
+                openTagToken < closeTagToken &&
+                tokenizer.getTokenType(openTagToken) == PrinterTextParserTokenizer.TOKEN_TAG &&
+                tokenizer.getTokenType(closeTagToken) == PrinterTextParserTokenizer.TOKEN_TAG
+            ) {
+                PrinterTextParserTag textParserTag = tokenizer.getTag(openTagToken);
+                
                 switch (textParserTag.getTagName()) {
                     case PrinterTextParser.TAGS_IMAGE:
                     case PrinterTextParser.TAGS_BARCODE:
                     case PrinterTextParser.TAGS_QRCODE:
-                        String closeTag = "</" + textParserTag.getTagName() + ">";
-                        int closeTagPosition = trimmedTextColumn.length() - closeTag.length();
-            
-                        if (trimmedTextColumn.substring(closeTagPosition).equals(closeTag)) {
+                        PrinterTextParserTag closeTag = tokenizer.getTag(closeTagToken);
+                        
+                        if (closeTag.isCloseTag() && closeTag.getTagName().equals(textParserTag.getTagName())) {
+                            isImgOrBarcodeLine = true;
+                            if (textParser.isFormatStateOnly()) {
+                                break;
+                            }
+                            String content = tokenizer.getText().subSequence(tokenizer.getTokenEnd(openTagToken), tokenizer.getTokenStart(closeTagToken)).toString();
                             switch (textParserTag.getTagName()) {
                                 case PrinterTextParser.TAGS_IMAGE:
-                                    this.appendImage(textAlign, trimmedTextColumn.substring(openTagEndIndex, closeTagPosition));
+                                    if (textParserTag.hasAttribute(PrinterTextParser.ATTR_IMAGE_KEY)) {
+                                        this.appendStoredImage(textAlign, textParserTag.getAttribute(PrinterTextParser.ATTR_IMAGE_KEY));
+                                    } else if (textParserTag.hasAttribute(PrinterTextParser.ATTR_IMAGE_REF)) {
+                                        this.appendAttachedImage(textAlign, textParserTag.getAttribute(PrinterTextParser.ATTR_IMAGE_REF));
+                                    } else {
+                                        this.appendImage(textAlign, content);
+                                    }
                                     break;
                                 case PrinterTextParser.TAGS_BARCODE:
-                                    this.appendBarcode(textAlign, textParserTag.getAttributes(), trimmedTextColumn.substring(openTagEndIndex, closeTagPosition));
+                                    this.appendBarcode(textAlign, textParserTag.getAttributesMap(), content);
                                     break;
                                 case PrinterTextParser.TAGS_QRCODE:
-                                    this.appendQRCode(textAlign, textParserTag.getAttributes(), trimmedTextColumn.substring(openTagEndIndex, closeTagPosition));
+                                    this.appendQRCode(textAlign, textParserTag.getAttributesMap(), content);
                                     break;
                             }
-                            isImgOrBarcodeLine = true;
                         }
                         break;
                 }
@@ -84,24 +110,13 @@ public class PrinterTextParserColumn {
             // =================================================================
             // If the tag is for format text
             
-            int offset = 0;
-            while (true) {
-                int openTagIndex = textColumn.indexOf("<", offset), closeTagIndex = -1;
-        
-                if (openTagIndex != -1) {
-                    closeTagIndex = textColumn.indexOf(">", openTagIndex);
-                } else {
-                    openTagIndex = textColumn.length();
-                }
-        
-                this.appendString(textColumn.substring(offset, openTagIndex));
-        
-                if (closeTagIndex == -1) {
-                    break;
+            for (int token = firstToken; token < lastToken; token++) {
+                if (tokenizer.getTokenType(token) == PrinterTextParserTokenizer.TOKEN_TEXT) {
+                    this.appendString(tokenizer.getTokenText(token));
+                    continue;
                 }
                 
-                closeTagIndex++;
-                PrinterTextParserTag textParserTag = new PrinterTextParserTag(textColumn.substring(openTagIndex, closeTagIndex));
+                PrinterTextParserTag textParserTag = tokenizer.getTag(token);
                 
                 if (PrinterTextParser.isTagTextFormat(textParserTag.getTagName())) {
                     if(textParserTag.isCloseTag()) {
@@ -147,10 +162,8 @@ public class PrinterTextParserColumn {
                                 break;
                         }
                     }
-                    offset = closeTagIndex;
                 } else {
-                    this.appendString("<");
-                    offset = openTagIndex + 1;
+                    this.appendString(tokenizer.getTokenText(token));
                 }
             }
             
@@ -205,10 +218,10 @@ public class PrinterTextParserColumn {
             }
     
             if (leftSpace > 0) {
-                this.prependString(PrinterTextParserColumn.generateSpace(leftSpace), PrinterCommands.TEXT_SIZE_MEDIUM, PrinterCommands.TEXT_WEIGHT_NORMAL, textUnderlineStartColumn);
+                this.prependString(PrinterTextParserColumn.generateSpace(leftSpace), textStyleStartColumn.getSpaceStyle());
             }
             if (rightSpace > 0) {
-                this.appendString(PrinterTextParserColumn.generateSpace(rightSpace), PrinterCommands.TEXT_SIZE_MEDIUM, PrinterCommands.TEXT_WEIGHT_NORMAL, textParser.getLastTextUnderline());
+                this.appendString(PrinterTextParserColumn.generateSpace(rightSpace), textParser.getLastTextStyle().getSpaceStyle());
             }
     
             // =================================================================================================
@@ -221,21 +234,19 @@ public class PrinterTextParserColumn {
     }
     
     private PrinterTextParserColumn prependString(String text) {
-        PrinterTextParser textParser = this.textParserLine.getTextParser();
-        return this.prependString(text, textParser.getLastTextSize(), textParser.getLastTextBold(), textParser.getLastTextUnderline());
+        return this.prependString(text, this.textParserLine.getTextParser().getLastTextStyle());
     }
     
-    private PrinterTextParserColumn prependString(String text, byte[] textSize, byte[] textBold, byte[] textUnderline) {
-        return this.prependElement(new PrinterTextParserString(text, textSize, textBold, textUnderline));
+    private PrinterTextParserColumn prependString(String text, PrinterTextStyle textStyle) {
+        return this.prependElement(new PrinterTextParserString(text, textStyle));
     }
     
     private PrinterTextParserColumn appendString(String text) {
-        PrinterTextParser textParser = this.textParserLine.getTextParser();
-        return this.appendString(text, textParser.getLastTextSize(), textParser.getLastTextBold(), textParser.getLastTextUnderline());
+        return this.appendString(text, this.textParserLine.getTextParser().getLastTextStyle());
     }
     
-    private PrinterTextParserColumn appendString(String text, byte[] textSize, byte[] textBold, byte[] textUnderline) {
-        return this.appendElement(new PrinterTextParserString(text, textSize, textBold, textUnderline));
+    private PrinterTextParserColumn appendString(String text, PrinterTextStyle textStyle) {
+        return this.appendElement(new PrinterTextParserString(text, textStyle));
     }
     
     private PrinterTextParserColumn prependImage(String textAlign, String hexString) {
@@ -246,19 +257,31 @@ public class PrinterTextParserColumn {
         return this.appendElement(new PrinterTextParserImg(this, textAlign, hexString));
     }
     
-    private PrinterTextParserColumn prependBarcode(String textAlign, Hashtable<String,String> barcodeAttributes, String code) {
+    private PrinterTextParserColumn appendAttachedImage(String textAlign, String ref) {
+        Object attachment = this.textParserLine.getTextParser().getAttachment(ref);
+        if (attachment instanceof PrinterImageSource) {
+            return this.appendElement(new PrinterTextParserImg(this, textAlign, (PrinterImageSource) attachment));
+        }
+        return this.appendElement(new PrinterTextParserImg(this, textAlign, attachment instanceof byte[] ? (byte[]) attachment : new byte[0]));
+    }
+    
+    private PrinterTextParserColumn appendStoredImage(String textAlign, String key) {
+        return this.appendElement(new PrinterTextParserStoredImg(this, textAlign, key));
+    }
+    
+    private PrinterTextParserColumn prependBarcode(String textAlign, Map<String, String> barcodeAttributes, String code) {
         return this.prependElement(new PrinterTextParserBarcode(this, textAlign, barcodeAttributes, code));
     }
 
-    private PrinterTextParserColumn appendBarcode(String textAlign, Hashtable<String,String> barcodeAttributes, String code) {
+    private PrinterTextParserColumn appendBarcode(String textAlign, Map<String, String> barcodeAttributes, String code) {
         return this.appendElement(new PrinterTextParserBarcode(this, textAlign, barcodeAttributes, code));
     }
 
-    private PrinterTextParserColumn prependQRCode(String textAlign, Hashtable<String,String> qrCodeAttributes, String data) {
+    private PrinterTextParserColumn prependQRCode(String textAlign, Map<String, String> qrCodeAttributes, String data) {
         return this.prependElement(new PrinterTextParserBarcode(this, textAlign, qrCodeAttributes, data));
     }
 
-    private PrinterTextParserColumn appendQRCode(String textAlign, Hashtable<String,String> qrCodeAttributes, String data) {
+    private PrinterTextParserColumn appendQRCode(String textAlign, Map<String, String> qrCodeAttributes, String data) {
         return this.appendElement(new PrinterTextParserQRCode(this, textAlign, qrCodeAttributes, data));
     }
     
@@ -1,8 +1,8 @@
 package com.dantsu.printerthermal_escpos_bluetooth.textparser;
 
-import com.dantsu.printerthermal_escpos_bluetooth.bluetooth.BluetoothPrinterSocketConnection;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterConnection;
 
 public interface PrinterTextParserElement {
     int length();
-    PrinterTextParserElement print(BluetoothPrinterSocketConnection printerSocket);
+    PrinterTextParserElement print(PrinterConnection printerSocket);
 }
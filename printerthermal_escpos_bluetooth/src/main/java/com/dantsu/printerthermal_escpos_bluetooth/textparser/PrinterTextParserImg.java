@@ -5,10 +5,33 @@ import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 
 import com.dantsu.printerthermal_escpos_bluetooth.Printer;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterConnection;
 import com.dantsu.printerthermal_escpos_bluetooth.bluetooth.BluetoothPrinterSocketConnection;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterImageCache;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterImageSource;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterProfile;
+
+import java.util.Arrays;
 
 
 public class PrinterTextParserImg implements PrinterTextParserElement {
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final byte[] HEX_VALUES = PrinterTextParserImg.initHexValues();
+
+    private static byte[] initHexValues() {
+        byte[] hexValues = new byte[128];
+        Arrays.fill(hexValues, (byte) -1);
+        for (int i = 0; i < 10; i++) {
+            hexValues['0' + i] = (byte) i;
+        }
+        for (int i = 0; i < 6; i++) {
+            hexValues['a' + i] = (byte) (10 + i);
+            hexValues['A' + i] = (byte) (10 + i);
+        }
+        return hexValues;
+    }
     
     /**
      * Convert Drawable instance to a hexadecimal string of the image data.
@@ -46,6 +69,17 @@ public class PrinterTextParserImg implements PrinterTextParserElement {
         return PrinterTextParserImg.bytesToHexadecimalString(printer.bitmapToBytes(bitmap));
     }
     
+    /**
+     * Convert an image to a hexadecimal string of the image data.
+     *
+     * @param printer A Printer instance that will print the image.
+     * @param source Pixels of the image to be converted.
+     * @return A hexadecimal string of the image data.
+     */
+    public static String bitmapToHexadecimalString(Printer printer, PrinterImageSource source) {
+        return PrinterTextParserImg.bytesToHexadecimalString(printer.bitmapToBytes(source));
+    }
+    
     /**
      * Convert byte array to a hexadecimal string of the image data.
      *
@@ -53,15 +87,12 @@ public class PrinterTextParserImg implements PrinterTextParserElement {
      * @return A hexadecimal string of the image data.
      */
     public static String bytesToHexadecimalString(byte[] bytes) {
-        StringBuilder imageHexString = new StringBuilder();
-        for (byte aByte : bytes) {
-            String hexString = Integer.toHexString(aByte & 0xFF);
-            if (hexString.length() == 1) {
-                hexString = "0" + hexString;
-            }
-            imageHexString.append(hexString);
+        char[] hexChars = new char[bytes.length * 2];
+        for (int i = 0, j = 0; i < bytes.length; i++) {
+            hexChars[j++] = PrinterTextParserImg.HEX_DIGITS[(bytes[i] >> 4) & 0x0F];
+            hexChars[j++] = PrinterTextParserImg.HEX_DIGITS[bytes[i] & 0x0F];
         }
-        return imageHexString.toString();
+        return new String(hexChars);
     }
     
     /**
@@ -75,9 +106,13 @@ public class PrinterTextParserImg implements PrinterTextParserElement {
         
         try {
             bytes = new byte[hexString.length() / 2];
-            for (int i = 0; i < bytes.length; i++) {
-                int pos = i * 2;
-                bytes[i] = (byte) Integer.parseInt(hexString.substring(pos, pos + 2), 16);
+            for (int i = 0, pos = 0; i < bytes.length; i++, pos += 2) {
+                char high = hexString.charAt(pos), low = hexString.charAt(pos + 1);
+                int value = high < 128 && low < 128 ? (PrinterTextParserImg.HEX_VALUES[high] << 4) | PrinterTextParserImg.HEX_VALUES[low] : -1;
+                if (value < 0) {
+                    throw new NumberFormatException("Invalid hexadecimal characters at index " + pos + " : \"" + high + low + "\"");
+                }
+                bytes[i] = (byte) value;
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -85,11 +120,125 @@ public class PrinterTextParserImg implements PrinterTextParserElement {
         
         return bytes;
     }
-    
-    
+
+    /**
+     * Compact the image commands if the printer profile allows it, then insert white bytes to align each image.
+     *
+     * @param printer A Printer instance that will print the image.
+     * @param textAlign Image alignment. Use PrinterTextParser.TAGS_ALIGN_... constants.
+     * @param image Bytes contain the image in ESC/POS command.
+     * @return Bytes contain the aligned image in ESC/POS command.
+     */
+    public static byte[] alignImage(Printer printer, String textAlign, byte[] image) {
+        PrinterProfile profile = printer.getProfile();
+
+        if (profile.isImageCompacted()) {
+            image = PrinterCommands.compactImageCommands(image, true, profile.getFeedUnitsByImageLine(printer.getPrinterDpi()));
+        }
+
+        // The image can be split in several raster image and paper feed commands, each image is aligned separately.
+        int nbrWhiteBytes = 0, offset = 0;
+        while (PrinterCommands.isImageCommand(image, offset) || PrinterCommands.isFeedCommand(image, offset)) {
+            if (PrinterCommands.isFeedCommand(image, offset)) {
+                offset += 3;
+                continue;
+            }
+            int byteWidth = PrinterCommands.getImageCommandBytesByLine(image, offset);
+            nbrWhiteBytes += PrinterTextParserImg.getNbrWhiteByteToInsert(printer, textAlign, byteWidth) * PrinterCommands.getImageCommandHeight(image, offset);
+            offset += 8 + byteWidth * PrinterCommands.getImageCommandHeight(image, offset);
+        }
+
+        if (nbrWhiteBytes == 0 || offset != image.length) {
+            return image;
+        }
+
+        byte[] newImage = new byte[image.length + nbrWhiteBytes];
+        int newOffset = 0;
+        offset = 0;
+        while (offset < image.length) {
+            if (PrinterCommands.isFeedCommand(image, offset)) {
+                System.arraycopy(image, offset, newImage, newOffset, 3);
+                offset += 3;
+                newOffset += 3;
+                continue;
+            }
+            int byteWidth = PrinterCommands.getImageCommandBytesByLine(image, offset),
+                    height = PrinterCommands.getImageCommandHeight(image, offset),
+                    nbrWhiteByteToInsert = PrinterTextParserImg.getNbrWhiteByteToInsert(printer, textAlign, byteWidth),
+                    newByteWidth = byteWidth + nbrWhiteByteToInsert;
+
+            System.arraycopy(image, offset, newImage, newOffset, 8);
+            newImage[newOffset + 4] = (byte) newByteWidth;
+            newImage[newOffset + 5] = (byte) (newByteWidth >> 8);
+            offset += 8;
+            newOffset += 8;
+            for (int i = 0; i < height; i++) {
+                System.arraycopy(image, offset, newImage, newOffset + nbrWhiteByteToInsert, byteWidth);
+                offset += byteWidth;
+                newOffset += newByteWidth;
+            }
+        }
+        return newImage;
+    }
+
+    /**
+     * Get the cache key of an image converted for a printer with an alignment.
+     *
+     * @param printer A Printer instance that will print the image.
+     * @param textAlign Image alignment. Use PrinterTextParser.TAGS_ALIGN_... constants.
+     * @param contentKey Key identifying the image content.
+     * @return String
+     */
+    public static String getCacheKey(Printer printer, String textAlign, String contentKey) {
+        PrinterProfile profile = printer.getProfile();
+        return contentKey + ":" + printer.getPrinterDpi() + ":" + printer.getPrintingWidthPx() + ":" + textAlign + ":" +
+                (profile.isImageCompacted() ? profile.getFeedUnitsByImageLine(printer.getPrinterDpi()) : 0f);
+    }
+
+    /**
+     * Convert hexadecimal string of the image data to aligned bytes, using the printer image cache.
+     */
+    private static byte[] hexadecimalStringToAlignedImage(Printer printer, String textAlign, String hexadecimalString) {
+        PrinterImageCache imageCache = printer.getImageCache();
+        String hash = imageCache == null ? null : PrinterImageCache.hash(hexadecimalString);
+
+        if (hash == null) {
+            return PrinterTextParserImg.alignImage(printer, textAlign, PrinterTextParserImg.hexadecimalStringToBytes(hexadecimalString));
+        }
+
+        String cacheKey = PrinterTextParserImg.getCacheKey(printer, textAlign, "img:" + hash);
+        byte[] image = imageCache.get(cacheKey);
+        if (image == null) {
+            image = PrinterTextParserImg.alignImage(printer, textAlign, PrinterTextParserImg.hexadecimalStringToBytes(hexadecimalString));
+            imageCache.put(cacheKey, image);
+        }
+        return image;
+    }
+
+    /**
+     * Align the bytes of an image, using the printer image cache.
+     */
+    private static byte[] bytesToAlignedImage(Printer printer, String textAlign, byte[] bytes) {
+        PrinterImageCache imageCache = printer.getImageCache();
+        String hash = imageCache == null ? null : PrinterImageCache.hash(bytes);
+
+        if (hash == null) {
+            return PrinterTextParserImg.alignImage(printer, textAlign, bytes);
+        }
+
+        String cacheKey = PrinterTextParserImg.getCacheKey(printer, textAlign, "bytes:" + hash);
+        byte[] image = imageCache.get(cacheKey);
+        if (image == null) {
+            image = PrinterTextParserImg.alignImage(printer, textAlign, bytes);
+            imageCache.put(cacheKey, image);
+        }
+        return image;
+    }
+
+
     private int length;
     private byte[] image;
-    
+
     /**
      * Create new instance of PrinterTextParserImg.
      *
@@ -98,7 +247,10 @@ public class PrinterTextParserImg implements PrinterTextParserElement {
      * @param hexadecimalString Hexadecimal string of the image data.
      */
     public PrinterTextParserImg(PrinterTextParserColumn printerTextParserColumn, String textAlign, String hexadecimalString) {
-        this(printerTextParserColumn, textAlign, PrinterTextParserImg.hexadecimalStringToBytes(hexadecimalString));
+        this(
+                printerTextParserColumn.getLine().getTextParser().getPrinter(),
+                PrinterTextParserImg.hexadecimalStringToAlignedImage(printerTextParserColumn.getLine().getTextParser().getPrinter(), textAlign, hexadecimalString)
+        );
     }
 
     /**
@@ -109,36 +261,70 @@ public class PrinterTextParserImg implements PrinterTextParserElement {
      * @param image Bytes contain the image in ESC/POS command.
      */
     public PrinterTextParserImg(PrinterTextParserColumn printerTextParserColumn, String textAlign, byte[] image) {
-        Printer printer = printerTextParserColumn.getLine().getTextParser().getPrinter();
+        this(
+                printerTextParserColumn.getLine().getTextParser().getPrinter(),
+                PrinterTextParserImg.bytesToAlignedImage(printerTextParserColumn.getLine().getTextParser().getPrinter(), textAlign, image)
+        );
+    }
 
-        int byteWidth = ((int) image[4] & 0xFF),
-                width = byteWidth * 8,
-                height = ((int) image[6] & 0xFF),
-                nbrByteDiff = (int) Math.floor(((float) (printer.getPrintingWidthPx() - width)) / 8f),
-                nbrWhiteByteToInsert = 0;
+    /**
+     * Create new instance of PrinterTextParserImg. The image is converted without any hexadecimal string.
+     *
+     * @param printerTextParserColumn Parent PrinterTextParserColumn instance.
+     * @param textAlign Set the image alignment. Use PrinterTextParser.TAGS_ALIGN_... constants.
+     * @param source Pixels of the image, shrunk to the printing width if needed.
+     */
+    public PrinterTextParserImg(PrinterTextParserColumn printerTextParserColumn, String textAlign, PrinterImageSource source) {
+        this(
+                printerTextParserColumn.getLine().getTextParser().getPrinter(),
+                PrinterTextParserImg.alignImage(
+                        printerTextParserColumn.getLine().getTextParser().getPrinter(),
+                        textAlign,
+                        printerTextParserColumn.getLine().getTextParser().getPrinter().bitmapToBytes(source)
+                )
+        );
+    }
+
+    /**
+     * Create new instance of PrinterTextParserImg with an image already aligned.
+     *
+     * @param printer A Printer instance that will print the image.
+     * @param alignedImage Bytes contain the aligned image in ESC/POS command.
+     */
+    protected PrinterTextParserImg(Printer printer, byte[] alignedImage) {
+        int maxByteWidth = 0, offset = 0;
+        while (PrinterCommands.isImageCommand(alignedImage, offset) || PrinterCommands.isFeedCommand(alignedImage, offset)) {
+            if (PrinterCommands.isFeedCommand(alignedImage, offset)) {
+                offset += 3;
+                continue;
+            }
+            int byteWidth = PrinterCommands.getImageCommandBytesByLine(alignedImage, offset);
+            maxByteWidth = Math.max(maxByteWidth, byteWidth);
+            offset += 8 + byteWidth * PrinterCommands.getImageCommandHeight(alignedImage, offset);
+        }
+
+        this.length = (int) Math.ceil(((float) (maxByteWidth * 8)) / ((float) printer.getCharSizeWidthPx()));
+        this.image = alignedImage;
+    }
+
+    /**
+     * Get the number of white bytes to insert on the left of each image line to align it.
+     *
+     * @param printer A Printer instance that will print the image.
+     * @param textAlign Image alignment. Use PrinterTextParser.TAGS_ALIGN_... constants.
+     * @param byteWidth Number of bytes of an image line.
+     * @return int
+     */
+    public static int getNbrWhiteByteToInsert(Printer printer, String textAlign, int byteWidth) {
+        int nbrByteDiff = (int) Math.floor(((float) (printer.getPrintingWidthPx() - byteWidth * 8)) / 8f);
 
         switch (textAlign) {
             case PrinterTextParser.TAGS_ALIGN_CENTER:
-                nbrWhiteByteToInsert = Math.round(((float) nbrByteDiff) / 2f);
-                break;
+                return Math.max(0, Math.round(((float) nbrByteDiff) / 2f));
             case PrinterTextParser.TAGS_ALIGN_RIGHT:
-                nbrWhiteByteToInsert = nbrByteDiff;
-                break;
+                return Math.max(0, nbrByteDiff);
         }
-
-        if (nbrWhiteByteToInsert > 0) {
-            int newByteWidth = byteWidth + nbrWhiteByteToInsert;
-            byte[] newImage = new byte[newByteWidth * height + 8];
-            System.arraycopy(image, 0, newImage, 0, 8);
-            newImage[4] = (byte) newByteWidth;
-            for (int i = 0; i < height; i++) {
-                System.arraycopy(image, (byteWidth * i + 8), newImage, (newByteWidth * i + nbrWhiteByteToInsert + 8), byteWidth);
-            }
-            image = newImage;
-        }
-
-        this.length = (int) Math.ceil(((float) (((int) image[4] & 0xFF) * 8)) / ((float) printer.getCharSizeWidthPx()));
-        this.image = image;
+        return 0;
     }
 
     /**
@@ -154,12 +340,20 @@ public class PrinterTextParserImg implements PrinterTextParserElement {
     /**
      * Print image
      *
-     * @param printerSocket Bluetooth printer socket connection
+     * @param printerSocket Printer connection
      * @return this Fluent method
      */
     @Override
-    public PrinterTextParserImg print(BluetoothPrinterSocketConnection printerSocket) {
+    public PrinterTextParserImg print(PrinterConnection printerSocket) {
         printerSocket.printImage(this.image);
         return this;
     }
+
+    /**
+     * @deprecated Use print(PrinterConnection), kept for the binary compatibility with the version 1.x.
+     */
+    @Deprecated
+    public PrinterTextParserImg print(BluetoothPrinterSocketConnection printerSocket) {
+        return this.print(printerSocket.getPrinterConnection());
+    }
 }
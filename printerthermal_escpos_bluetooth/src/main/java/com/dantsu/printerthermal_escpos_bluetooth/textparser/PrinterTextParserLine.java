@@ -1,49 +1,143 @@
 package com.dantsu.printerthermal_escpos_bluetooth.textparser;
 
-import java.util.ArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterConnection;
 
 public class PrinterTextParserLine {
+    
+    /**
+     * Merge the adjacent texts of the columns printed with the same style, the alignment spaces included, to print each
+     * run of text with a single call.
+     *
+     * @param columns Columns of the line
+     * @return Elements to be printed
+     */
+    private static PrinterTextParserElement[] coalesceTextRuns(PrinterTextParserColumn[] columns) {
+        int nbrElements = 0;
+        for (PrinterTextParserColumn column : columns) {
+            nbrElements += column.getElements().length;
+        }
+        PrinterTextParserElement[] elements = new PrinterTextParserElement[nbrElements];
+        nbrElements = 0;
+        for (PrinterTextParserColumn column : columns) {
+            PrinterTextParserElement[] columnElements = column.getElements();
+            System.arraycopy(columnElements, 0, elements, nbrElements, columnElements.length);
+            nbrElements += columnElements.length;
+        }
+        return PrinterTextParserLine.coalesceTextRuns(elements);
+    }
+
+    /**
+     * Merge the adjacent texts printed with the same style. Spaces are merged with the texts of another weight, which
+     * does not change them. The runs are merged in the elements array.
+     *
+     * @param elements Elements of the line
+     * @return Elements to be printed
+     */
+    static PrinterTextParserElement[] coalesceTextRuns(PrinterTextParserElement[] elements) {
+        int nbrElements = elements.length;
+
+        // Runs are merged in place, the merged elements being written before the next run to be read.
+        int nbrRuns = 0;
+        for (int i = 0; i < nbrElements; ) {
+            if (!(elements[i] instanceof PrinterTextParserString)) {
+                elements[nbrRuns++] = elements[i++];
+                continue;
+            }
+
+            PrinterTextParserString first = (PrinterTextParserString) elements[i];
+            PrinterTextStyle runStyle = first.getTextStyle();
+            boolean isRunBlank = first.isBlank();
+            int runEnd = i + 1, runLength = first.getText().length();
+
+            while (runEnd < nbrElements && elements[runEnd] instanceof PrinterTextParserString) {
+                PrinterTextParserString string = (PrinterTextParserString) elements[runEnd];
+                PrinterTextStyle textStyle = string.getTextStyle();
+                if (runStyle != textStyle) {
+                    boolean isBlank = string.isBlank();
+                    if ((!isRunBlank && !isBlank) || !runStyle.isSameSpaceStyle(textStyle)) {
+                        break;
+                    }
+                    if (isRunBlank && !isBlank) {
+                        runStyle = textStyle;
+                        isRunBlank = false;
+                    }
+                } else if (isRunBlank) {
+                    isRunBlank = string.isBlank();
+                }
+                runLength += string.getText().length();
+                runEnd++;
+            }
+
+            if (runEnd == i + 1) {
+                elements[nbrRuns++] = first;
+            } else {
+                StringBuilder runText = new StringBuilder(runLength);
+                for (int j = i; j < runEnd; j++) {
+                    runText.append(((PrinterTextParserString) elements[j]).getText());
+                }
+                elements[nbrRuns++] = new PrinterTextParserString(runText.toString(), runStyle);
+            }
+            i = runEnd;
+        }
+
+        if (nbrRuns == nbrElements) {
+            return elements;
+        }
+        PrinterTextParserElement[] runs = new PrinterTextParserElement[nbrRuns];
+        System.arraycopy(elements, 0, runs, 0, nbrRuns);
+        return runs;
+    }
+    
+    
     private PrinterTextParser textParser;
     private int nbrColumns;
     private int nbrCharColumn;
     private int nbrCharForgetted;
     private int nbrCharColumnExceeded;
     private PrinterTextParserColumn[] columns;
+    private PrinterTextParserElement[] printedElements;
     
     public PrinterTextParserLine(PrinterTextParser textParser, String textLine) {
+        this(textParser, PrinterTextParserTokenizer.tokenizeLine(textLine));
+    }
+    
+    /**
+     * Create a new instance of PrinterTextParserLine from the current line of the tokenizer.
+     *
+     * @param textParser Parent PrinterTextParser instance
+     * @param tokenizer Tokenizer positioned on the line
+     */
+    public PrinterTextParserLine(PrinterTextParser textParser, PrinterTextParserTokenizer tokenizer) {
         this.textParser = textParser;
         int nbrCharactersPerLine = this.getTextParser().getPrinter().getNbrCharactersPerLine();
-    
-        Pattern pattern = Pattern.compile(PrinterTextParser.getRegexAlignTags());
-        Matcher matcher = pattern.matcher(textLine);
-    
-        ArrayList<String> columnsList = new ArrayList<String>();
-        int lastPosition = 0;
         
-        while (matcher.find()) {
-            int startPosition = matcher.start();
-            if(startPosition > 0) {
-                columnsList.add(textLine.substring(lastPosition, startPosition));
-            }
-            lastPosition = startPosition;
-        }
-        columnsList.add(textLine.substring(lastPosition));
-        
-        this.nbrColumns = columnsList.size();
+        this.nbrColumns = tokenizer.getNbrColumns();
         this.nbrCharColumn = (int) Math.floor(((float) nbrCharactersPerLine) / ((float) this.nbrColumns));
         this.nbrCharForgetted = nbrCharactersPerLine - (nbrCharColumn * this.nbrColumns);
         this.nbrCharColumnExceeded = 0;
         this.columns = new PrinterTextParserColumn[this.nbrColumns];
         
-        int i=0;
-        for (String column : columnsList) {
-            this.columns[i++] = new PrinterTextParserColumn(this, column);
+        for (int i = 0; i < this.nbrColumns; i++) {
+            this.columns[i] = new PrinterTextParserColumn(this, tokenizer, i);
         }
+        this.printedElements = PrinterTextParserLine.coalesceTextRuns(this.columns);
     }
     
     
+    /**
+     * Print all the elements of the line, adjacent texts of the same style being merged, then go to a new line.
+     *
+     * @param printerSocket Printer connection
+     * @return this Fluent method
+     */
+    public PrinterTextParserLine print(PrinterConnection printerSocket) {
+        for (PrinterTextParserElement element : this.printedElements) {
+            element.print(printerSocket);
+        }
+        printerSocket.newLine();
+        return this;
+    }
+    
     public PrinterTextParser getTextParser() {
         return this.textParser;
     }
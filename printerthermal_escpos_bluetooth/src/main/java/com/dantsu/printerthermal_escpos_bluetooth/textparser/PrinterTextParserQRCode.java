@@ -2,12 +2,68 @@ package com.dantsu.printerthermal_escpos_bluetooth.textparser;
 
 import com.dantsu.printerthermal_escpos_bluetooth.Printer;
 import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterConnection;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterImageCache;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterQRCodePlan;
 
+import java.nio.charset.Charset;
 import java.util.Hashtable;
+import java.util.Map;
 
-public class PrinterTextParserQRCode extends PrinterTextParserImg {
+public class PrinterTextParserQRCode implements PrinterTextParserElement {
 
-    private static byte[] initConstructor(PrinterTextParserColumn printerTextParserColumn, Hashtable<String, String> qrCodeAttributes, String data) {
+    /**
+     * Convert the QR code data to an aligned raster image, using the printer image cache.
+     */
+    private static byte[] QRCodeDataToAlignedImage(Printer printer, String textAlign, PrinterQRCodePlan plan) {
+        PrinterImageCache imageCache = printer.getImageCache();
+        String hash = imageCache == null ? null : PrinterImageCache.hash(plan.getData());
+
+        if (hash == null) {
+            return PrinterTextParserImg.alignImage(printer, textAlign, PrinterCommands.QRCodeDataToBytes(plan));
+        }
+
+        String cacheKey = PrinterTextParserImg.getCacheKey(
+            printer,
+            textAlign,
+            "qrcode:" + plan.getVersion() + ":" + plan.getModuleSize() + ":" + plan.getErrorCorrection() + ":" + hash
+        );
+        byte[] image = imageCache.get(cacheKey);
+        if (image == null) {
+            image = PrinterTextParserImg.alignImage(printer, textAlign, PrinterCommands.QRCodeDataToBytes(plan));
+            imageCache.put(cacheKey, image);
+        }
+        return image;
+    }
+
+
+    private int length;
+    private byte[] align;
+    private String data;
+    private int moduleSize = 0;
+    private int errorCorrection;
+    private PrinterQRCodePlan plan;
+    private PrinterTextParserImg image;
+
+    /**
+     * @deprecated Use the constructor taking a Map, kept for the binary compatibility with the version 1.x.
+     */
+    @Deprecated
+    public PrinterTextParserQRCode(PrinterTextParserColumn printerTextParserColumn, String textAlign, Hashtable<String, String> qrCodeAttributes, String data) {
+        this(printerTextParserColumn, textAlign, (Map<String, String>) qrCodeAttributes, data);
+    }
+
+    /**
+     * Create new instance of PrinterTextParserQRCode. The QR code is generated by the printer if the printer profile
+     * supports it and the data can be sent in ISO-8859-1, else it is printed as a raster image. Without error correction
+     * attribute, the level is chosen by PrinterQRCodePlan. Data too long for a QR code is not printed.
+     *
+     * @param printerTextParserColumn Parent PrinterTextParserColumn instance.
+     * @param textAlign Set the QR code alignment. Use PrinterTextParser.TAGS_ALIGN_... constants.
+     * @param qrCodeAttributes Attributes of the qrcode tag : size in millimeters, module size in dots (printer generated QR code only) and error correction level.
+     * @param data QR code data.
+     */
+    public PrinterTextParserQRCode(PrinterTextParserColumn printerTextParserColumn, String textAlign, Map<String, String> qrCodeAttributes, String data) {
         Printer printer = printerTextParserColumn.getLine().getTextParser().getPrinter();
         data = data.trim();
 
@@ -20,14 +76,122 @@ public class PrinterTextParserQRCode extends PrinterTextParserImg {
             e.printStackTrace();
         }
 
-        return PrinterCommands.QRCodeDataToBytes(data, size);
-    }
+        int errorCorrection = PrinterCommands.QRCODE_ERROR_CORRECTION_AUTO;
+        if (qrCodeAttributes.containsKey(PrinterTextParser.ATTR_QRCODE_CORRECTION)) {
+            switch (qrCodeAttributes.get(PrinterTextParser.ATTR_QRCODE_CORRECTION)) {
+                case PrinterTextParser.ATTR_QRCODE_CORRECTION_L:
+                    errorCorrection = PrinterCommands.QRCODE_ERROR_CORRECTION_L;
+                    break;
+                case PrinterTextParser.ATTR_QRCODE_CORRECTION_M:
+                    errorCorrection = PrinterCommands.QRCODE_ERROR_CORRECTION_M;
+                    break;
+                case PrinterTextParser.ATTR_QRCODE_CORRECTION_Q:
+                    errorCorrection = PrinterCommands.QRCODE_ERROR_CORRECTION_Q;
+                    break;
+                case PrinterTextParser.ATTR_QRCODE_CORRECTION_H:
+                    errorCorrection = PrinterCommands.QRCODE_ERROR_CORRECTION_H;
+                    break;
+            }
+        }
 
-    public PrinterTextParserQRCode(PrinterTextParserColumn printerTextParserColumn, String textAlign, Hashtable<String, String> qrCodeAttributes, String data) {
-        super(
-                printerTextParserColumn,
-                textAlign,
-                PrinterTextParserQRCode.initConstructor(printerTextParserColumn, qrCodeAttributes, data)
+        this.plan = new PrinterQRCodePlan(
+            data,
+            size,
+            errorCorrection,
+            printer.mmToPx(printer.getProfile().getQRCodeMinModuleSizeMM()),
+            printer.getPrintingWidthPx()
         );
+        this.errorCorrection = this.plan.getErrorCorrection();
+
+        if (printer.getProfile().isNativeQRCodeSupported() && this.plan.isEncodable() && Charset.forName("ISO-8859-1").newEncoder().canEncode(data)) {
+            this.moduleSize = Math.min(16, this.plan.getModuleSize());
+            try {
+                if (this.moduleSize > 0 && qrCodeAttributes.containsKey(PrinterTextParser.ATTR_QRCODE_MODULE)) {
+                    this.moduleSize = Math.max(1, Math.min(16, Integer.parseInt(qrCodeAttributes.get(PrinterTextParser.ATTR_QRCODE_MODULE))));
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        if (this.moduleSize > 0) {
+            this.align = PrinterCommands.TEXT_ALIGN_LEFT;
+            switch (textAlign) {
+                case PrinterTextParser.TAGS_ALIGN_CENTER:
+                    this.align = PrinterCommands.TEXT_ALIGN_CENTER;
+                    break;
+                case PrinterTextParser.TAGS_ALIGN_RIGHT:
+                    this.align = PrinterCommands.TEXT_ALIGN_RIGHT;
+                    break;
+            }
+            this.length = printer.getNbrCharactersPerLine();
+            this.data = data;
+        } else {
+            try {
+                this.image = new PrinterTextParserImg(printer, PrinterTextParserQRCode.QRCodeDataToAlignedImage(printer, textAlign, this.plan));
+                this.length = this.image.length();
+            } catch (IllegalArgumentException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Get the encoding chosen for the QR code. The printer chooses the version of the QR codes it generates, the plan
+     * then only gives the module size sent.
+     *
+     * @return PrinterQRCodePlan
+     */
+    public PrinterQRCodePlan getPlan() {
+        return this.plan;
+    }
+
+    /**
+     * Check if the QR code is generated by the printer (GS ( k) or printed as a raster image.
+     *
+     * @return true if the QR code is generated by the printer
+     */
+    public boolean isNative() {
+        return this.moduleSize > 0;
+    }
+
+    /**
+     * Check if the QR code is printed. Data too long for a QR code is not printed.
+     *
+     * @return true if the QR code is printed
+     */
+    public boolean isPrinted() {
+        return this.moduleSize > 0 || this.image != null;
+    }
+
+    /**
+     * Get the QR code width in char length.
+     *
+     * @return int
+     */
+    @Override
+    public int length() {
+        return this.length;
+    }
+
+    /**
+     * Print QR code
+     *
+     * @param printerSocket Printer connection
+     * @return this Fluent method
+     */
+    @Override
+    public PrinterTextParserQRCode print(PrinterConnection printerSocket) {
+        if (this.image != null) {
+            this.image.print(printerSocket);
+            return this;
+        }
+        if (this.moduleSize == 0) {
+            return this;
+        }
+        printerSocket
+                .setAlign(this.align)
+                .printQRCode(PrinterCommands.QRCODE_2, this.data, this.moduleSize, this.errorCorrection);
+        return this;
     }
 }
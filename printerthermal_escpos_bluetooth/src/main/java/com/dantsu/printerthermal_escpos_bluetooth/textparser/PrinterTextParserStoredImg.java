@@ -0,0 +1,60 @@
+package com.dantsu.printerthermal_escpos_bluetooth.textparser;
+
+import com.dantsu.printerthermal_escpos_bluetooth.Printer;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterConnection;
+
+public class PrinterTextParserStoredImg implements PrinterTextParserElement {
+    
+    private int length;
+    private byte[] align;
+    private String key;
+    
+    /**
+     * Create new instance of PrinterTextParserStoredImg, printing an image stored in the printer memory.
+     *
+     * @param printerTextParserColumn Parent PrinterTextParserColumn instance.
+     * @param textAlign Set the image alignment. Use PrinterTextParser.TAGS_ALIGN_... constants.
+     * @param key Key of the image stored with Printer.storeImage.
+     */
+    public PrinterTextParserStoredImg(PrinterTextParserColumn printerTextParserColumn, String textAlign, String key) {
+        Printer printer = printerTextParserColumn.getLine().getTextParser().getPrinter();
+        
+        this.align = PrinterCommands.TEXT_ALIGN_LEFT;
+        switch (textAlign) {
+            case PrinterTextParser.TAGS_ALIGN_CENTER:
+                this.align = PrinterCommands.TEXT_ALIGN_CENTER;
+                break;
+            case PrinterTextParser.TAGS_ALIGN_RIGHT:
+                this.align = PrinterCommands.TEXT_ALIGN_RIGHT;
+                break;
+        }
+        
+        this.length = printer.getNbrCharactersPerLine();
+        this.key = key;
+    }
+    
+    /**
+     * Get the image width in char length.
+     *
+     * @return int
+     */
+    @Override
+    public int length() {
+        return this.length;
+    }
+    
+    /**
+     * Print the stored image
+     *
+     * @param printerSocket Printer connection
+     * @return this Fluent method
+     */
+    @Override
+    public PrinterTextParserStoredImg print(PrinterConnection printerSocket) {
+        printerSocket
+                .setAlign(this.align)
+                .printStoredImage(this.key);
+        return this;
+    }
+}
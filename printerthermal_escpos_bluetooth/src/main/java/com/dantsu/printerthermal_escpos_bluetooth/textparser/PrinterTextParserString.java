@@ -1,43 +1,65 @@
 package com.dantsu.printerthermal_escpos_bluetooth.textparser;
 
-import java.util.Arrays;
-
-import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterConnection;
 import com.dantsu.printerthermal_escpos_bluetooth.bluetooth.BluetoothPrinterSocketConnection;
 
 public class PrinterTextParserString implements PrinterTextParserElement {
     private String text;
-    private byte[] textSize;
-    private byte[] textBold;
-    private byte[] textUnderline;
+    private PrinterTextStyle textStyle;
     
     public PrinterTextParserString(String text, byte[] textSize, byte[] textBold, byte[] textUnderline) {
+        this(text, PrinterTextStyle.get(textSize, textBold, textUnderline));
+    }
+    
+    public PrinterTextParserString(String text, PrinterTextStyle textStyle) {
         this.text = text;
-        this.textSize = textSize;
-        this.textBold = textBold;
-        this.textUnderline = textUnderline;
+        this.textStyle = textStyle;
+    }
+
+    public String getText() {
+        return this.text;
+    }
+
+    public PrinterTextStyle getTextStyle() {
+        return this.textStyle;
+    }
+
+    /**
+     * Check if the text only contains spaces.
+     *
+     * @return true if the text is made of spaces
+     */
+    public boolean isBlank() {
+        for (int i = 0, length = this.text.length(); i < length; i++) {
+            if (this.text.charAt(i) != ' ') {
+                return false;
+            }
+        }
+        return true;
     }
 
     @Override
     public int length() {
-        int coef = 1;
-        
-        if (Arrays.equals(this.textSize, PrinterCommands.TEXT_SIZE_DOUBLE_WIDTH) || Arrays.equals(this.textSize, PrinterCommands.TEXT_SIZE_BIG)) {
-            coef = 2;
-        }
-        
-        return this.text.length() * coef;
+        return this.text.length() * this.textStyle.getWidthMultiplier();
     }
 
     /**
      * Print text
      *
-     * @param printerSocket Bluetooth printer socket connection
+     * @param printerSocket Printer connection
      * @return this Fluent method
      */
     @Override
-    public PrinterTextParserString print(BluetoothPrinterSocketConnection printerSocket) {
-        printerSocket.printText(this.text, this.textSize, this.textBold, this.textUnderline);
+    public PrinterTextParserString print(PrinterConnection printerSocket) {
+        printerSocket.printText(this.text, this.textStyle.getTextSize(), this.textStyle.getTextBold(), this.textStyle.getTextUnderline());
         return this;
     }
+
+    /**
+     * @deprecated Use print(PrinterConnection), kept for the binary compatibility with the version 1.x.
+     */
+    @Deprecated
+    public PrinterTextParserString print(BluetoothPrinterSocketConnection printerSocket) {
+        return this.print(printerSocket.getPrinterConnection());
+    }
 }
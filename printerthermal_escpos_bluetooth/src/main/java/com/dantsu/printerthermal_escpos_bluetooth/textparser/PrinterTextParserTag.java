@@ -1,72 +1,150 @@
 package com.dantsu.printerthermal_escpos_bluetooth.textparser;
 
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Map;
 
 public class PrinterTextParserTag {
-    
+
+    private static final String[] KNOWN_TAGS = {
+        PrinterTextParser.TAGS_FORMAT_TEXT_FONT,
+        PrinterTextParser.TAGS_FORMAT_TEXT_BOLD,
+        PrinterTextParser.TAGS_FORMAT_TEXT_UNDERLINE,
+        PrinterTextParser.TAGS_IMAGE,
+        PrinterTextParser.TAGS_BARCODE,
+        PrinterTextParser.TAGS_QRCODE
+    };
+
+    /**
+     * Get the tag name contained in text from start to end, in lower case. Known tag names return the
+     * PrinterTextParser.TAGS_... constant without allocating a new String.
+     */
+    private static String readTagName(CharSequence text, int start, int end) {
+        int length = end - start;
+        for (String tag : PrinterTextParserTag.KNOWN_TAGS) {
+            if (tag.length() != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && Character.toLowerCase(text.charAt(start + i)) == tag.charAt(i)) {
+                i++;
+            }
+            if (i == length) {
+                return tag;
+            }
+        }
+        return text.subSequence(start, end).toString().toLowerCase();
+    }
+
+
     private String tagName = "";
-    private Hashtable<String,String> attributes = new Hashtable<String,String>();
+    private Map<String, String> attributes = Collections.emptyMap();
     private int length = 0;
     private boolean isCloseTag = false;
-    
+
     public PrinterTextParserTag(String tag) {
-        tag = tag.trim();
-        
-        if(!tag.substring(0, 1).equals("<") || !tag.substring(tag.length() - 1).equals(">")) {
+        this(tag, 0, tag.length());
+    }
+
+    /**
+     * Create a new instance of PrinterTextParserTag from a part of a text.
+     *
+     * @param text Text that contains the tag
+     * @param start Index of the tag first char
+     * @param end Index following the tag last char
+     */
+    public PrinterTextParserTag(CharSequence text, int start, int end) {
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        if (end - start < 2 || text.charAt(start) != '<' || text.charAt(end - 1) != '>') {
             return;
         }
-        
-        this.length = tag.length();
-        int openTagIndex = tag.indexOf("<"),
-            closeTagIndex = tag.indexOf(">"),
-            nextSpaceIndex = tag.indexOf(" ");
-        
-        if(nextSpaceIndex != -1 && nextSpaceIndex < closeTagIndex) {
-            this.tagName = tag.substring(openTagIndex + 1, nextSpaceIndex).toLowerCase();
-    
-            String attributesString = tag.substring(nextSpaceIndex, closeTagIndex).trim();
-            while (attributesString.contains("='")) {
-                int egalPos = attributesString.indexOf("='"), endPos = attributesString.indexOf("'", egalPos + 2);
-        
-                String attributeName = attributesString.substring(0, egalPos);
-                String attributeValue = attributesString.substring(egalPos + 2, endPos);
-        
-                if(!attributeName.equals("")) {
-                    this.attributes.put(attributeName, attributeValue);
+
+        this.length = end - start;
+        int nameStart = start + 1, closeTagIndex = end - 1;
+
+        if (nameStart < closeTagIndex && text.charAt(nameStart) == '/') {
+            this.isCloseTag = true;
+            nameStart++;
+        }
+
+        int nameEnd = nameStart;
+        while (nameEnd < closeTagIndex && text.charAt(nameEnd) != ' ') {
+            nameEnd++;
+        }
+        this.tagName = PrinterTextParserTag.readTagName(text, nameStart, nameEnd);
+
+        // =================================================================
+        // Attributes : name='value'
+
+        int i = nameEnd;
+        while (i < closeTagIndex) {
+            while (i < closeTagIndex && text.charAt(i) <= ' ') {
+                i++;
+            }
+            int attributeStart = i;
+            while (i + 1 < closeTagIndex && !(text.charAt(i) == '=' && text.charAt(i + 1) == '\'')) {
+                i++;
+            }
+            if (i + 1 >= closeTagIndex) {
+                break;
+            }
+            int attributeNameEnd = i, valueStart = i + 2, valueEnd = valueStart;
+            while (valueEnd < closeTagIndex && text.charAt(valueEnd) != '\'') {
+                valueEnd++;
+            }
+            if (valueEnd >= closeTagIndex) {
+                break;
+            }
+            if (attributeNameEnd > attributeStart) {
+                if (this.attributes.isEmpty()) {
+                    this.attributes = new HashMap<String, String>();
                 }
-        
-                attributesString = attributesString.substring(endPos + 1).trim();
+                this.attributes.put(
+                    text.subSequence(attributeStart, attributeNameEnd).toString(),
+                    text.subSequence(valueStart, valueEnd).toString()
+                );
             }
-        } else {
-            this.tagName = tag.substring(openTagIndex + 1, closeTagIndex).toLowerCase();
-        }
-        
-        
-        if(this.tagName.substring(0, 1).equals("/")) {
-            this.tagName = this.tagName.substring(1);
-            this.isCloseTag = true;
+            i = valueEnd + 1;
         }
     }
-    
+
     public String getTagName() {
         return this.tagName;
     }
-    
+
+    /**
+     * @deprecated Use getAttributesMap(), this method copies the attributes in a new Hashtable.
+     */
+    @Deprecated
     public Hashtable<String, String> getAttributes() {
+        return new Hashtable<String, String>(this.attributes);
+    }
+
+    /**
+     * Get the attributes of the tag. The returned map must not be modified.
+     */
+    public Map<String, String> getAttributesMap() {
         return this.attributes;
     }
-    
+
     public String getAttribute(String key) {
         return this.attributes.get(key);
     }
     public boolean hasAttribute(String key) {
         return this.attributes.containsKey(key);
     }
-    
+
     public int getLength() {
         return this.length;
     }
-    
+
     public boolean isCloseTag() {
         return this.isCloseTag;
     }
@@ -0,0 +1,354 @@
+package com.dantsu.printerthermal_escpos_bluetooth.textparser;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+
+import com.dantsu.printerthermal_escpos_bluetooth.Printer;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterBuffer;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterConnection;
+
+/**
+ * Formatted text compiled once and printed many times with different values.
+ * <p>
+ * Placeholders are written {{name}} and can be used anywhere in a line. A block of lines written between a line
+ * {{#name}} and a line {{/name}} is repeated for each item of the value name, which must be an Iterable of Map.
+ * Inside a block, placeholders are looked up in the item first, then in the enclosing values.
+ * <p>
+ * Lines without placeholder are converted to ESC/POS commands at compile time. Only the lines containing
+ * placeholders are parsed when the template is rendered, starting from the text formatting that was in progress
+ * at compile time. Lines printing a stored image (&lt;img key='..'&gt;) are parsed at compile time and printed on
+ * the connection of each rendering, which knows where the image is stored. Values are inserted as formatted text,
+ * so a value must not open or close a formatting tag.
+ */
+public class PrinterTextParserTemplate {
+
+    public static final String PLACEHOLDER_START = "{{";
+    public static final String PLACEHOLDER_END = "}}";
+    public static final char BLOCK_START = '#';
+    public static final char BLOCK_END = '/';
+
+
+    /**
+     * Get the name of the block opened or closed by the line, or null if the line is not a block delimiter.
+     */
+    private static String readBlockName(String line, char blockChar) {
+        line = line.trim();
+        int nameStart = PrinterTextParserTemplate.PLACEHOLDER_START.length() + 1,
+            nameEnd = line.length() - PrinterTextParserTemplate.PLACEHOLDER_END.length();
+
+        if (
+            nameEnd <= nameStart ||
+            !line.startsWith(PrinterTextParserTemplate.PLACEHOLDER_START) ||
+            !line.endsWith(PrinterTextParserTemplate.PLACEHOLDER_END) ||
+            line.charAt(nameStart - 1) != blockChar
+        ) {
+            return null;
+        }
+        return line.substring(nameStart, nameEnd).trim();
+    }
+
+    /**
+     * Check if a line prints an image stored in the printer memory.
+     */
+    private static boolean hasStoredImage(PrinterTextParserLine line) {
+        for (PrinterTextParserColumn column : line.getColumns()) {
+            for (PrinterTextParserElement element : column.getElements()) {
+                if (element instanceof PrinterTextParserStoredImg) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Look up a value in the scopes, from the innermost to the outermost.
+     */
+    private static Object findValue(ArrayList<Map<?, ?>> scopes, String name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Map<?, ?> scope = scopes.get(i);
+            if (scope.containsKey(name)) {
+                return scope.get(name);
+            }
+        }
+        return null;
+    }
+
+
+    private interface Segment {
+        void render(PrinterConnection connection, ArrayList<Map<?, ?>> scopes);
+    }
+
+    /**
+     * Consecutive lines without placeholder, already converted to ESC/POS commands.
+     */
+    private static class StaticSegment implements Segment {
+        private PrinterBuffer commands;
+
+        private StaticSegment(PrinterBuffer commands) {
+            this.commands = commands;
+        }
+
+        @Override
+        public void render(PrinterConnection connection, ArrayList<Map<?, ?>> scopes) {
+            connection.write(this.commands);
+        }
+    }
+
+    /**
+     * Line printing an image stored in the printer memory. The command depends on the memory area where the
+     * connection stored the image, so the line is printed on the connection of each rendering.
+     */
+    private static class StoredImageSegment implements Segment {
+        private PrinterTextParserLine line;
+
+        private StoredImageSegment(PrinterTextParserLine line) {
+            this.line = line;
+        }
+
+        @Override
+        public void render(PrinterConnection connection, ArrayList<Map<?, ?>> scopes) {
+            this.line.print(connection);
+        }
+    }
+
+    /**
+     * Line containing placeholders, parsed at render time.
+     */
+    private static class VariableSegment implements Segment {
+        private PrinterTextParser formatState;
+        private String[] literals;
+        private String[] names;
+
+        private VariableSegment(PrinterTextParser formatState, String[] literals, String[] names) {
+            this.formatState = formatState;
+            this.literals = literals;
+            this.names = names;
+        }
+
+        private String bind(ArrayList<Map<?, ?>> scopes) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < this.names.length; i++) {
+                line.append(this.literals[i]);
+                if (scopes != null) {
+                    Object value = PrinterTextParserTemplate.findValue(scopes, this.names[i]);
+                    if (value != null) {
+                        line.append(value);
+                    }
+                }
+            }
+            return line.append(this.literals[this.names.length]).toString();
+        }
+
+        @Override
+        public void render(PrinterConnection connection, ArrayList<Map<?, ?>> scopes) {
+            PrinterTextParser textParser = new PrinterTextParser(this.formatState.getPrinter()).copyFormatState(this.formatState);
+            new PrinterTextParserLine(textParser, this.bind(scopes)).print(connection);
+        }
+    }
+
+    /**
+     * Lines repeated for each item of a value.
+     */
+    private static class BlockSegment implements Segment {
+        private String name;
+        private Segment[] segments;
+
+        private BlockSegment(String name, Segment[] segments) {
+            this.name = name;
+            this.segments = segments;
+        }
+
+        @Override
+        public void render(PrinterConnection connection, ArrayList<Map<?, ?>> scopes) {
+            Object items = PrinterTextParserTemplate.findValue(scopes, this.name);
+            if (!(items instanceof Iterable)) {
+                return;
+            }
+            for (Object item : (Iterable<?>) items) {
+                if (!(item instanceof Map)) {
+                    continue;
+                }
+                scopes.add((Map<?, ?>) item);
+                for (Segment segment : this.segments) {
+                    segment.render(connection, scopes);
+                }
+                scopes.remove(scopes.size() - 1);
+            }
+        }
+    }
+
+
+    private Printer printer;
+    private Segment[] segments;
+
+    /**
+     * Compile a formatted text containing placeholders.
+     *
+     * @param printer Printer used to convert the text
+     * @param text    Formatted text with {{name}} placeholders and {{#name}} ... {{/name}} blocks
+     * @throws IllegalArgumentException if a block is not closed, or a block end does not match the opened block
+     */
+    public PrinterTextParserTemplate(Printer printer, String text) {
+        this(printer, text, null);
+    }
+
+    /**
+     * Compile a formatted text containing placeholders and &lt;img ref='name'&gt; images.
+     *
+     * @param printer     Printer used to convert the text
+     * @param text        Formatted text with {{name}} placeholders and {{#name}} ... {{/name}} blocks
+     * @param attachments Images referenced by the text. Read PrinterTextParser.setAttachments.
+     * @throws IllegalArgumentException if a block is not closed, or a block end does not match the opened block
+     */
+    public PrinterTextParserTemplate(Printer printer, String text, Map<String, ?> attachments) {
+        this.printer = printer;
+
+        PrinterTextParserTokenizer tokenizer = new PrinterTextParserTokenizer(text);
+        ArrayList<String> lines = new ArrayList<String>();
+        while (tokenizer.nextLine()) {
+            lines.add(text.substring(tokenizer.getLineStart(), tokenizer.getLineEnd()));
+        }
+
+        int[] lineIndex = {0};
+        this.segments = this.compile(lines, lineIndex, new PrinterTextParser(printer).setAttachments(attachments), null);
+    }
+
+    /**
+     * Compile the lines until the end of the block blockName, or until the end of the text if blockName is null.
+     */
+    private Segment[] compile(ArrayList<String> lines, int[] lineIndex, PrinterTextParser textParser, String blockName) {
+        ArrayList<Segment> segments = new ArrayList<Segment>();
+        PrinterConnection staticConnection = null;
+        boolean isBlockClosed = false;
+
+        while (lineIndex[0] < lines.size()) {
+            String line = lines.get(lineIndex[0]++);
+
+            if (line.contains(PrinterTextParserTemplate.PLACEHOLDER_START)) {
+                String closedBlockName = PrinterTextParserTemplate.readBlockName(line, PrinterTextParserTemplate.BLOCK_END);
+                if (closedBlockName != null) {
+                    if (!closedBlockName.equals(blockName)) {
+                        throw new IllegalArgumentException(
+                            "Template line " + lineIndex[0] + " : {{/" + closedBlockName + "}} does not close " +
+                                (blockName == null ? "any block" : "the block {{#" + blockName + "}}")
+                        );
+                    }
+                    isBlockClosed = true;
+                    break;
+                }
+
+                String openedBlockName = PrinterTextParserTemplate.readBlockName(line, PrinterTextParserTemplate.BLOCK_START);
+                VariableSegment variableSegment = openedBlockName != null ? null : this.compileVariableLine(line, textParser);
+
+                if (openedBlockName != null || variableSegment != null) {
+                    if (staticConnection != null) {
+                        segments.add(new StaticSegment(staticConnection.endJobWithoutSending()));
+                        staticConnection = null;
+                    }
+                    if (openedBlockName != null) {
+                        segments.add(new BlockSegment(openedBlockName, this.compile(lines, lineIndex, textParser, openedBlockName)));
+                    } else {
+                        segments.add(variableSegment);
+                    }
+                    continue;
+                }
+            }
+
+            PrinterTextParserLine parsedLine = new PrinterTextParserLine(textParser, line);
+            if (PrinterTextParserTemplate.hasStoredImage(parsedLine)) {
+                if (staticConnection != null) {
+                    segments.add(new StaticSegment(staticConnection.endJobWithoutSending()));
+                    staticConnection = null;
+                }
+                segments.add(new StoredImageSegment(parsedLine));
+                continue;
+            }
+
+            if (staticConnection == null) {
+                staticConnection = PrinterConnection.startRenderJob();
+            }
+            parsedLine.print(staticConnection);
+        }
+
+        if (blockName != null && !isBlockClosed) {
+            throw new IllegalArgumentException("Template block {{#" + blockName + "}} is not closed by {{/" + blockName + "}}");
+        }
+        if (staticConnection != null) {
+            segments.add(new StaticSegment(staticConnection.endJobWithoutSending()));
+        }
+        return segments.toArray(new Segment[segments.size()]);
+    }
+
+    /**
+     * Split a line around its placeholders and move the parser formatting state to the end of the line.
+     *
+     * @return VariableSegment, or null if the line does not contain a closed placeholder
+     */
+    private VariableSegment compileVariableLine(String line, PrinterTextParser textParser) {
+        ArrayList<String> literals = new ArrayList<String>(), names = new ArrayList<String>();
+        int start = 0, placeholderStart;
+
+        while ((placeholderStart = line.indexOf(PrinterTextParserTemplate.PLACEHOLDER_START, start)) != -1) {
+            int nameStart = placeholderStart + PrinterTextParserTemplate.PLACEHOLDER_START.length(),
+                nameEnd = line.indexOf(PrinterTextParserTemplate.PLACEHOLDER_END, nameStart);
+            if (nameEnd == -1) {
+                break;
+            }
+            literals.add(line.substring(start, placeholderStart));
+            names.add(line.substring(nameStart, nameEnd).trim());
+            start = nameEnd + PrinterTextParserTemplate.PLACEHOLDER_END.length();
+        }
+
+        if (names.isEmpty()) {
+            return null;
+        }
+        literals.add(line.substring(start));
+
+        VariableSegment segment = new VariableSegment(
+            new PrinterTextParser(this.printer).copyFormatState(textParser),
+            literals.toArray(new String[literals.size()]),
+            names.toArray(new String[names.size()])
+        );
+        // Values do not change the formatting, the line parsed without them leaves the parser in the same state.
+        new PrinterTextParserLine(textParser.setFormatStateOnly(true), segment.bind(null));
+        textParser.setFormatStateOnly(false);
+        return segment;
+    }
+
+    public Printer getPrinter() {
+        return this.printer;
+    }
+
+    /**
+     * Print the template with values on a connection, in the job started by the caller. The images stored with
+     * Printer.storeImage are printed from the memory area where this connection stored them.
+     *
+     * @param connection Connection with the printer
+     * @param values     Values of the placeholders and blocks, null to print the template without values
+     * @return Fluent interface
+     */
+    public PrinterTextParserTemplate print(PrinterConnection connection, Map<String, ?> values) {
+        ArrayList<Map<?, ?>> scopes = new ArrayList<Map<?, ?>>();
+        scopes.add(values == null ? Collections.emptyMap() : values);
+
+        for (Segment segment : this.segments) {
+            segment.render(connection, scopes);
+        }
+        return this;
+    }
+
+    /**
+     * Render the template with values to ESC/POS commands, ready to be sent with PrinterConnection.write. Without
+     * printer connection, the images stored with Printer.storeImage are printed from the NV graphics area.
+     *
+     * @param values Values of the placeholders and blocks, null to render the template without values
+     * @return PrinterBuffer containing the commands of the lines
+     */
+    public PrinterBuffer render(Map<String, ?> values) {
+        PrinterConnection connection = PrinterConnection.startRenderJob();
+        this.print(connection, values);
+        return connection.endJobWithoutSending();
+    }
+}
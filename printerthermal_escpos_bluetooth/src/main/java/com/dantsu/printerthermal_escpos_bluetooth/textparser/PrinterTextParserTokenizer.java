@@ -0,0 +1,297 @@
+package com.dantsu.printerthermal_escpos_bluetooth.textparser;
+
+public class PrinterTextParserTokenizer {
+
+    public static final int TOKEN_TEXT = 0;
+    public static final int TOKEN_TAG = 1;
+
+    /**
+     * Create a tokenizer positioned on the first line of textLine.
+     *
+     * @param textLine Formatted text of one line
+     * @return PrinterTextParserTokenizer
+     */
+    public static PrinterTextParserTokenizer tokenizeLine(CharSequence textLine) {
+        PrinterTextParserTokenizer tokenizer = new PrinterTextParserTokenizer(textLine);
+        tokenizer.nextLine();
+        return tokenizer;
+    }
+
+
+    private CharSequence text;
+    private int textLength;
+    private int position = 0;
+    private boolean isFirstLine = true;
+    private int lineStart = 0;
+    private int lineEnd = 0;
+
+    private int nbrColumns = 0;
+    private char[] columnAligns = new char[4];
+    private int[] columnStarts = new int[4];
+    private int[] columnEnds = new int[4];
+    private int[] columnFirstTokens = new int[4];
+
+    private int nbrTokens = 0;
+    private int[] tokenTypes = new int[32];
+    private int[] tokenStarts = new int[32];
+    private int[] tokenEnds = new int[32];
+
+    private int textStart;
+
+    /**
+     * Create a new instance of PrinterTextParserTokenizer.
+     *
+     * @param text Formatted text to be tokenized
+     */
+    public PrinterTextParserTokenizer(CharSequence text) {
+        this.text = text;
+        this.textLength = text.length();
+    }
+
+    public CharSequence getText() {
+        return this.text;
+    }
+
+    /**
+     * Tokenize the next line of the text. Lines are separated by \n or \r\n, and the empty lines at the end of the
+     * text are ignored.
+     *
+     * @return false if there is no more line
+     */
+    public boolean nextLine() {
+        int lineStart = this.position;
+
+        if (this.isFirstLine && this.textLength == 0) {
+            this.isFirstLine = false;
+            this.tokenizeLine(0, 0);
+            return true;
+        }
+        this.isFirstLine = false;
+
+        // Skip the empty lines only if they are the last ones
+        int i = lineStart;
+        while (i < this.textLength) {
+            char c = this.text.charAt(i);
+            if (c == '\n') {
+                i++;
+            } else if (c == '\r' && i + 1 < this.textLength && this.text.charAt(i + 1) == '\n') {
+                i += 2;
+            } else {
+                break;
+            }
+        }
+        if (i >= this.textLength) {
+            this.position = this.textLength;
+            return false;
+        }
+
+        int lineEnd = lineStart, nextPosition = this.textLength;
+        while (lineEnd < this.textLength) {
+            if (this.text.charAt(lineEnd) == '\n') {
+                nextPosition = lineEnd + 1;
+                if (lineEnd > lineStart && this.text.charAt(lineEnd - 1) == '\r') {
+                    lineEnd--;
+                }
+                break;
+            }
+            lineEnd++;
+        }
+
+        this.tokenizeLine(lineStart, lineEnd);
+        this.position = nextPosition;
+        return true;
+    }
+
+    /**
+     * Split the line in columns, text and tags tokens in one pass.
+     */
+    private void tokenizeLine(int lineStart, int lineEnd) {
+        this.lineStart = lineStart;
+        this.lineEnd = lineEnd;
+        this.nbrColumns = 0;
+        this.nbrTokens = 0;
+
+        int i = this.openColumn(lineStart, lineEnd), tagStart = -1;
+
+        while (i < lineEnd) {
+            char c = this.text.charAt(i);
+            if (c == '[' && this.isColumnSeparator(i, lineEnd)) {
+                this.closeColumn(i);
+                i = this.openColumn(i, lineEnd);
+                tagStart = -1;
+                continue;
+            }
+            if (c == '<') {
+                tagStart = i;
+            } else if (c == '>' && tagStart != -1) {
+                if (tagStart > this.textStart) {
+                    this.addToken(PrinterTextParserTokenizer.TOKEN_TEXT, this.textStart, tagStart);
+                }
+                this.addToken(PrinterTextParserTokenizer.TOKEN_TAG, tagStart, i + 1);
+                this.textStart = i + 1;
+                tagStart = -1;
+            }
+            i++;
+        }
+        this.closeColumn(lineEnd);
+    }
+
+    private boolean isColumnSeparator(int i, int lineEnd) {
+        if (i + 2 >= lineEnd || this.text.charAt(i + 2) != ']') {
+            return false;
+        }
+        char align = this.text.charAt(i + 1);
+        return align == 'L' || align == 'C' || align == 'R';
+    }
+
+    private int openColumn(int start, int lineEnd) {
+        if (this.nbrColumns == this.columnAligns.length) {
+            int newLength = this.nbrColumns * 2;
+            char[] columnAligns = new char[newLength];
+            int[] columnStarts = new int[newLength], columnEnds = new int[newLength], columnFirstTokens = new int[newLength];
+            System.arraycopy(this.columnAligns, 0, columnAligns, 0, this.nbrColumns);
+            System.arraycopy(this.columnStarts, 0, columnStarts, 0, this.nbrColumns);
+            System.arraycopy(this.columnEnds, 0, columnEnds, 0, this.nbrColumns);
+            System.arraycopy(this.columnFirstTokens, 0, columnFirstTokens, 0, this.nbrColumns);
+            this.columnAligns = columnAligns;
+            this.columnStarts = columnStarts;
+            this.columnEnds = columnEnds;
+            this.columnFirstTokens = columnFirstTokens;
+        }
+
+        char align = PrinterTextParser.TAGS_ALIGN_LEFT.charAt(0);
+        if (start + 2 < lineEnd && this.text.charAt(start) == '[' && this.text.charAt(start + 2) == ']') {
+            char c = Character.toUpperCase(this.text.charAt(start + 1));
+            if (c == 'L' || c == 'C' || c == 'R') {
+                align = c;
+                start += 3;
+            }
+        }
+
+        this.columnAligns[this.nbrColumns] = align;
+        this.columnStarts[this.nbrColumns] = start;
+        this.columnFirstTokens[this.nbrColumns] = this.nbrTokens;
+        this.textStart = start;
+        return start;
+    }
+
+    private void closeColumn(int end) {
+        if (end > this.textStart) {
+            this.addToken(PrinterTextParserTokenizer.TOKEN_TEXT, this.textStart, end);
+        }
+        this.columnEnds[this.nbrColumns] = end;
+        this.nbrColumns++;
+    }
+
+    private void addToken(int type, int start, int end) {
+        if (this.nbrTokens == this.tokenTypes.length) {
+            int newLength = this.nbrTokens * 2;
+            int[] tokenTypes = new int[newLength], tokenStarts = new int[newLength], tokenEnds = new int[newLength];
+            System.arraycopy(this.tokenTypes, 0, tokenTypes, 0, this.nbrTokens);
+            System.arraycopy(this.tokenStarts, 0, tokenStarts, 0, this.nbrTokens);
+            System.arraycopy(this.tokenEnds, 0, tokenEnds, 0, this.nbrTokens);
+            this.tokenTypes = tokenTypes;
+            this.tokenStarts = tokenStarts;
+            this.tokenEnds = tokenEnds;
+        }
+        this.tokenTypes[this.nbrTokens] = type;
+        this.tokenStarts[this.nbrTokens] = start;
+        this.tokenEnds[this.nbrTokens] = end;
+        this.nbrTokens++;
+    }
+
+
+    public int getLineStart() {
+        return this.lineStart;
+    }
+
+    public int getLineEnd() {
+        return this.lineEnd;
+    }
+
+    public int getNbrColumns() {
+        return this.nbrColumns;
+    }
+
+    /**
+     * Get the alignment of a column of the current line.
+     *
+     * @param column Index of the column
+     * @return PrinterTextParser.TAGS_ALIGN_... constant
+     */
+    public String getColumnAlign(int column) {
+        switch (this.columnAligns[column]) {
+            case 'C':
+                return PrinterTextParser.TAGS_ALIGN_CENTER;
+            case 'R':
+                return PrinterTextParser.TAGS_ALIGN_RIGHT;
+        }
+        return PrinterTextParser.TAGS_ALIGN_LEFT;
+    }
+
+    public int getColumnStart(int column) {
+        return this.columnStarts[column];
+    }
+
+    public int getColumnEnd(int column) {
+        return this.columnEnds[column];
+    }
+
+    public int getColumnFirstToken(int column) {
+        return this.columnFirstTokens[column];
+    }
+
+    public int getColumnLastToken(int column) {
+        return column + 1 < this.nbrColumns ? this.columnFirstTokens[column + 1] : this.nbrTokens;
+    }
+
+    public int getTokenType(int token) {
+        return this.tokenTypes[token];
+    }
+
+    public int getTokenStart(int token) {
+        return this.tokenStarts[token];
+    }
+
+    public int getTokenEnd(int token) {
+        return this.tokenEnds[token];
+    }
+
+    /**
+     * Check if a token contains only whitespaces.
+     *
+     * @param token Index of the token
+     * @return true if the token is a blank text
+     */
+    public boolean isBlankToken(int token) {
+        if (this.tokenTypes[token] != PrinterTextParserTokenizer.TOKEN_TEXT) {
+            return false;
+        }
+        for (int i = this.tokenStarts[token], end = this.tokenEnds[token]; i < end; i++) {
+            if (this.text.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the text of a token.
+     *
+     * @param token Index of the token
+     * @return String
+     */
+    public String getTokenText(int token) {
+        return this.text.subSequence(this.tokenStarts[token], this.tokenEnds[token]).toString();
+    }
+
+    /**
+     * Parse a tag token.
+     *
+     * @param token Index of the token
+     * @return PrinterTextParserTag
+     */
+    public PrinterTextParserTag getTag(int token) {
+        return new PrinterTextParserTag(this.text, this.tokenStarts[token], this.tokenEnds[token]);
+    }
+}
@@ -0,0 +1,239 @@
+package com.dantsu.printerthermal_escpos_bluetooth.textparser;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+
+/**
+ * Immutable text style : size, weight and underline commands. Styles are interned, each combination having a single
+ * instance, so they are compared with == and shared by all the text elements.
+ * <p>
+ * Each command is identified by its index in the list of known commands. The PrinterCommands.TEXT_... constants are
+ * known from the start, other commands are added when they are first used.
+ */
+public class PrinterTextStyle {
+
+    static final int TEXT_SIZE_NORMAL = 0;
+    static final int TEXT_SIZE_MEDIUM = 1;
+    static final int TEXT_SIZE_DOUBLE_HEIGHT = 2;
+    static final int TEXT_SIZE_DOUBLE_WIDTH = 3;
+    static final int TEXT_SIZE_BIG = 4;
+
+    static final int TEXT_WEIGHT_NORMAL = 0;
+    static final int TEXT_WEIGHT_BOLD = 1;
+
+    static final int TEXT_UNDERLINE_OFF = 0;
+    static final int TEXT_UNDERLINE_ON = 1;
+    static final int TEXT_UNDERLINE_LARGE = 2;
+
+    private static volatile byte[][] textSizes = {
+        PrinterCommands.TEXT_SIZE_NORMAL,
+        PrinterCommands.TEXT_SIZE_MEDIUM,
+        PrinterCommands.TEXT_SIZE_DOUBLE_HEIGHT,
+        PrinterCommands.TEXT_SIZE_DOUBLE_WIDTH,
+        PrinterCommands.TEXT_SIZE_BIG
+    };
+    private static volatile byte[][] textWeights = {PrinterCommands.TEXT_WEIGHT_NORMAL, PrinterCommands.TEXT_WEIGHT_BOLD};
+    private static volatile byte[][] textUnderlines = {PrinterCommands.TEXT_UNDERLINE_OFF, PrinterCommands.TEXT_UNDERLINE_ON, PrinterCommands.TEXT_UNDERLINE_LARGE};
+
+    /**
+     * Styles made of the PrinterCommands.TEXT_... constants, by size + 5 * (weight + 2 * underline) index.
+     */
+    private static final PrinterTextStyle[] STYLES = new PrinterTextStyle[5 * 2 * 3];
+
+    /**
+     * Styles using other commands, by packed indexes.
+     */
+    private static final HashMap<Integer, PrinterTextStyle> OTHER_STYLES = new HashMap<Integer, PrinterTextStyle>();
+
+    static {
+        for (int underline = 0; underline < 3; underline++) {
+            for (int weight = 0; weight < 2; weight++) {
+                for (int size = 0; size < 5; size++) {
+                    PrinterTextStyle.STYLES[size + 5 * (weight + 2 * underline)] = new PrinterTextStyle(size, weight, underline);
+                }
+            }
+        }
+    }
+
+    public static final PrinterTextStyle DEFAULT = PrinterTextStyle.get(
+        PrinterTextStyle.TEXT_SIZE_MEDIUM,
+        PrinterTextStyle.TEXT_WEIGHT_NORMAL,
+        PrinterTextStyle.TEXT_UNDERLINE_OFF
+    );
+
+    /**
+     * Get the style of these commands.
+     *
+     * @param textSize Text size. Use PrinterCommands.TEXT_SIZE_... constants
+     * @param textBold Text weight. Use PrinterCommands.TEXT_WEIGHT_... constants
+     * @param textUnderline Text underlining. Use PrinterCommands.TEXT_UNDERLINE_... constants
+     * @return PrinterTextStyle
+     */
+    public static PrinterTextStyle get(byte[] textSize, byte[] textBold, byte[] textUnderline) {
+        return PrinterTextStyle.get(
+            PrinterTextStyle.getTextSizeIndex(textSize),
+            PrinterTextStyle.getTextWeightIndex(textBold),
+            PrinterTextStyle.getTextUnderlineIndex(textUnderline)
+        );
+    }
+
+    /**
+     * Get the style of these command indexes.
+     */
+    static PrinterTextStyle get(int textSize, int textWeight, int textUnderline) {
+        if (textSize < 5 && textWeight < 2 && textUnderline < 3) {
+            return PrinterTextStyle.STYLES[textSize + 5 * (textWeight + 2 * textUnderline)];
+        }
+
+        Integer key = textSize | textWeight << 10 | textUnderline << 20;
+        synchronized (PrinterTextStyle.OTHER_STYLES) {
+            PrinterTextStyle style = PrinterTextStyle.OTHER_STYLES.get(key);
+            if (style == null) {
+                style = new PrinterTextStyle(textSize, textWeight, textUnderline);
+                PrinterTextStyle.OTHER_STYLES.put(key, style);
+            }
+            return style;
+        }
+    }
+
+    static int getTextSizeIndex(byte[] textSize) {
+        int index = PrinterTextStyle.getKnownIndex(PrinterTextStyle.textSizes, textSize);
+        if (index != -1) {
+            return index;
+        }
+        synchronized (PrinterTextStyle.class) {
+            PrinterTextStyle.textSizes = PrinterTextStyle.addCommand(PrinterTextStyle.textSizes, textSize);
+            return PrinterTextStyle.getKnownIndex(PrinterTextStyle.textSizes, textSize);
+        }
+    }
+
+    static int getTextWeightIndex(byte[] textBold) {
+        int index = PrinterTextStyle.getKnownIndex(PrinterTextStyle.textWeights, textBold);
+        if (index != -1) {
+            return index;
+        }
+        synchronized (PrinterTextStyle.class) {
+            PrinterTextStyle.textWeights = PrinterTextStyle.addCommand(PrinterTextStyle.textWeights, textBold);
+            return PrinterTextStyle.getKnownIndex(PrinterTextStyle.textWeights, textBold);
+        }
+    }
+
+    static int getTextUnderlineIndex(byte[] textUnderline) {
+        int index = PrinterTextStyle.getKnownIndex(PrinterTextStyle.textUnderlines, textUnderline);
+        if (index != -1) {
+            return index;
+        }
+        synchronized (PrinterTextStyle.class) {
+            PrinterTextStyle.textUnderlines = PrinterTextStyle.addCommand(PrinterTextStyle.textUnderlines, textUnderline);
+            return PrinterTextStyle.getKnownIndex(PrinterTextStyle.textUnderlines, textUnderline);
+        }
+    }
+
+    /**
+     * Find a command in a list of known commands. The constants are found by reference, without comparing their bytes.
+     *
+     * @return Index of the command, -1 if unknown
+     */
+    private static int getKnownIndex(byte[][] commands, byte[] command) {
+        for (int i = 0; i < commands.length; i++) {
+            if (commands[i] == command) {
+                return i;
+            }
+        }
+        for (int i = 0; i < commands.length; i++) {
+            if (Arrays.equals(commands[i], command)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Add a command to a list of known commands if it is not in it. The list is replaced, not modified, to be read
+     * without lock.
+     */
+    private static byte[][] addCommand(byte[][] commands, byte[] command) {
+        if (PrinterTextStyle.getKnownIndex(commands, command) != -1) {
+            return commands;
+        }
+        byte[][] newCommands = new byte[commands.length + 1][];
+        System.arraycopy(commands, 0, newCommands, 0, commands.length);
+        newCommands[commands.length] = command.clone();
+        return newCommands;
+    }
+
+
+    private int textSizeIndex;
+    private int textWeightIndex;
+    private int textUnderlineIndex;
+    private byte[] textSize;
+    private byte[] textBold;
+    private byte[] textUnderline;
+    private int widthMultiplier;
+
+    private PrinterTextStyle(int textSizeIndex, int textWeightIndex, int textUnderlineIndex) {
+        this.textSizeIndex = textSizeIndex;
+        this.textWeightIndex = textWeightIndex;
+        this.textUnderlineIndex = textUnderlineIndex;
+        this.textSize = PrinterTextStyle.textSizes[textSizeIndex];
+        this.textBold = PrinterTextStyle.textWeights[textWeightIndex];
+        this.textUnderline = PrinterTextStyle.textUnderlines[textUnderlineIndex];
+        // ESC ! n prints double width characters when the bit 5 of n is set.
+        this.widthMultiplier = this.textSize.length == 3 && this.textSize[0] == 0x1B && this.textSize[1] == 0x21 && (this.textSize[2] & 0x20) != 0 ? 2 : 1;
+    }
+
+    int getTextSizeIndex() {
+        return this.textSizeIndex;
+    }
+
+    int getTextWeightIndex() {
+        return this.textWeightIndex;
+    }
+
+    int getTextUnderlineIndex() {
+        return this.textUnderlineIndex;
+    }
+
+    public byte[] getTextSize() {
+        return this.textSize;
+    }
+
+    public byte[] getTextBold() {
+        return this.textBold;
+    }
+
+    public byte[] getTextUnderline() {
+        return this.textUnderline;
+    }
+
+    /**
+     * Get the number of medium sized characters taken by a character of this style.
+     *
+     * @return 2 for double width sizes, else 1
+     */
+    public int getWidthMultiplier() {
+        return this.widthMultiplier;
+    }
+
+    /**
+     * Check if spaces are printed the same with both styles. The weight does not change the spaces, the size and the
+     * underline do.
+     *
+     * @param textStyle Other style
+     * @return true if both styles have the same size and underline
+     */
+    public boolean isSameSpaceStyle(PrinterTextStyle textStyle) {
+        return this.textSizeIndex == textStyle.textSizeIndex && this.textUnderlineIndex == textStyle.textUnderlineIndex;
+    }
+
+    /**
+     * Get the style of the spaces aligning the columns : medium size, normal weight and the underline of this style.
+     *
+     * @return PrinterTextStyle
+     */
+    public PrinterTextStyle getSpaceStyle() {
+        return PrinterTextStyle.get(PrinterTextStyle.TEXT_SIZE_MEDIUM, PrinterTextStyle.TEXT_WEIGHT_NORMAL, this.textUnderlineIndex);
+    }
+}
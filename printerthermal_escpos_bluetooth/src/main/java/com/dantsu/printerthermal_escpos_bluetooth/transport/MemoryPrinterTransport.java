@@ -0,0 +1,175 @@
+package com.dantsu.printerthermal_escpos_bluetooth.transport;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterBuffer;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+
+public class MemoryPrinterTransport implements PrinterTransport {
+    
+    private PrinterBuffer received = new PrinterBuffer();
+    private PrinterBuffer responses = new PrinterBuffer();
+    private int responsesOffset = 0;
+    private boolean isRecording = true;
+    private boolean isAnsweringStatus = true;
+    private long nbrBytesReceived = 0;
+    private boolean isConnected = false;
+    
+    /**
+     * Set if the bytes sent to the transport are kept in memory. When not recorded, they are only counted.
+     *
+     * @param isRecording false to discard the bytes
+     * @return Fluent interface
+     */
+    public MemoryPrinterTransport setRecording(boolean isRecording) {
+        this.isRecording = isRecording;
+        return this;
+    }
+    
+    /**
+     * Set if the transport answers the status requests like a printer does (DLE EOT 1 and GS r 1).
+     *
+     * @param isAnsweringStatus false to behave like a printer that never sends data
+     * @return Fluent interface
+     */
+    public MemoryPrinterTransport setAnsweringStatus(boolean isAnsweringStatus) {
+        this.isAnsweringStatus = isAnsweringStatus;
+        return this;
+    }
+    
+    /**
+     * Add bytes that the printer sends to the host.
+     *
+     * @param bytes Bytes to be read from the input stream
+     * @return Fluent interface
+     */
+    public synchronized MemoryPrinterTransport addResponse(byte[] bytes) {
+        this.responses.write(bytes);
+        return this;
+    }
+    
+    /**
+     * Get the bytes sent to the transport.
+     *
+     * @return byte[]
+     */
+    public synchronized byte[] toByteArray() {
+        return this.received.toByteArray();
+    }
+    
+    /**
+     * Get the number of bytes sent to the transport since the last reset.
+     *
+     * @return long
+     */
+    public synchronized long getNbrBytesReceived() {
+        return this.nbrBytesReceived;
+    }
+    
+    /**
+     * Forget the bytes sent to the transport.
+     *
+     * @return Fluent interface
+     */
+    public synchronized MemoryPrinterTransport reset() {
+        this.received.reset();
+        this.nbrBytesReceived = 0;
+        return this;
+    }
+    
+    @Override
+    public String getPrinterId() {
+        return "memory:" + Integer.toHexString(System.identityHashCode(this));
+    }
+    
+    @Override
+    public boolean isConnected() {
+        return this.isConnected;
+    }
+    
+    @Override
+    public boolean connect() {
+        this.isConnected = true;
+        return true;
+    }
+    
+    @Override
+    public boolean disconnect() {
+        this.isConnected = false;
+        return true;
+    }
+    
+    private synchronized void receive(byte[] bytes, int offset, int length) {
+        if (this.isRecording) {
+            this.received.write(bytes, offset, length);
+        }
+        this.nbrBytesReceived += length;
+        
+        if (this.isAnsweringStatus) {
+            if (MemoryPrinterTransport.isCommand(bytes, offset, length, PrinterCommands.STATUS_REAL_TIME_PRINTER)) {
+                this.responses.write((byte) 0x12);
+            } else if (MemoryPrinterTransport.isCommand(bytes, offset, length, PrinterCommands.STATUS_TRANSMIT_PAPER_SENSOR)) {
+                this.responses.write((byte) 0x00);
+            }
+        }
+    }
+    
+    private static boolean isCommand(byte[] bytes, int offset, int length, byte[] command) {
+        if (length != command.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (bytes[offset + i] != command[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private synchronized int availableResponses() {
+        int available = this.responses.size() - this.responsesOffset;
+        if (available == 0 && this.responsesOffset > 0) {
+            this.responses.reset();
+            this.responsesOffset = 0;
+        }
+        return available;
+    }
+    
+    private synchronized int readResponse() {
+        if (this.availableResponses() == 0) {
+            return -1;
+        }
+        return this.responses.get(this.responsesOffset++) & 0xFF;
+    }
+    
+    @Override
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                this.write(new byte[]{(byte) b}, 0, 1);
+            }
+            
+            @Override
+            public void write(byte[] bytes, int offset, int length) {
+                MemoryPrinterTransport.this.receive(bytes, offset, length);
+            }
+        };
+    }
+    
+    @Override
+    public InputStream getInputStream() {
+        return new InputStream() {
+            @Override
+            public int available() {
+                return MemoryPrinterTransport.this.availableResponses();
+            }
+            
+            @Override
+            public int read() {
+                return MemoryPrinterTransport.this.readResponse();
+            }
+        };
+    }
+}
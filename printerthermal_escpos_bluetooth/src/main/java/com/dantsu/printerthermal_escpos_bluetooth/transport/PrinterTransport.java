@@ -0,0 +1,51 @@
+package com.dantsu.printerthermal_escpos_bluetooth.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public interface PrinterTransport {
+    /**
+     * Get an identifier of the printer, the same for all the transports reaching the same printer.
+     *
+     * @return String
+     */
+    String getPrinterId();
+    
+    /**
+     * Check if the printer is connected.
+     *
+     * @return true if is connected
+     */
+    boolean isConnected();
+    
+    /**
+     * Open the connection with the printer.
+     *
+     * @return return true if success
+     */
+    boolean connect();
+    
+    /**
+     * Close the connection with the printer.
+     *
+     * @return return true if success
+     */
+    boolean disconnect();
+    
+    /**
+     * Get the stream used to send bytes to the connected printer.
+     *
+     * @return OutputStream
+     * @throws IOException if the stream cannot be opened
+     */
+    OutputStream getOutputStream() throws IOException;
+    
+    /**
+     * Get the stream of the bytes sent by the connected printer.
+     *
+     * @return InputStream, or null if the printer cannot send data
+     * @throws IOException if the stream cannot be opened
+     */
+    InputStream getInputStream() throws IOException;
+}
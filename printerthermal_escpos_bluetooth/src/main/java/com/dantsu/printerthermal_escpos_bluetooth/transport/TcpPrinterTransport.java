@@ -0,0 +1,252 @@
+package com.dantsu.printerthermal_escpos_bluetooth.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+public class TcpPrinterTransport implements PrinterTransport {
+    
+    public static final int DEFAULT_PORT = 9100;
+    public static final int DEFAULT_CONNECT_TIMEOUT = 5000;
+    public static final int DEFAULT_WRITE_TIMEOUT = 10000;
+    
+    private String host;
+    private int port;
+    private int connectTimeout = TcpPrinterTransport.DEFAULT_CONNECT_TIMEOUT;
+    private int writeTimeout = TcpPrinterTransport.DEFAULT_WRITE_TIMEOUT;
+    
+    private SocketChannel socketChannel = null;
+    private Selector writeSelector = null;
+    private Selector readSelector = null;
+    
+    /**
+     * Create a new instance of TcpPrinterTransport for a printer listening on the raw port 9100.
+     *
+     * @param host IP address or host name of the printer
+     */
+    public TcpPrinterTransport(String host) {
+        this(host, TcpPrinterTransport.DEFAULT_PORT);
+    }
+    
+    /**
+     * Create a new instance of TcpPrinterTransport.
+     *
+     * @param host IP address or host name of the printer
+     * @param port TCP port of the printer
+     */
+    public TcpPrinterTransport(String host, int port) {
+        this.host = host;
+        this.port = port;
+    }
+    
+    /**
+     * Set the timeouts of the connection.
+     *
+     * @param connectTimeout Maximum time in milliseconds to open the connection
+     * @param writeTimeout Maximum time in milliseconds that a write can be blocked by the printer
+     * @return Fluent interface
+     */
+    public TcpPrinterTransport setTimeouts(int connectTimeout, int writeTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.writeTimeout = writeTimeout;
+        return this;
+    }
+    
+    public String getHost() {
+        return this.host;
+    }
+    
+    public int getPort() {
+        return this.port;
+    }
+    
+    @Override
+    public String getPrinterId() {
+        return "tcp:" + this.host + ":" + this.port;
+    }
+    
+    @Override
+    public boolean isConnected() {
+        return this.socketChannel != null;
+    }
+    
+    /**
+     * Open a non-blocking socket with the printer, waiting connectTimeout at most.
+     *
+     * @return return true if success
+     */
+    @Override
+    public boolean connect() {
+        if (this.isConnected()) {
+            return true;
+        }
+        SocketChannel socketChannel = null;
+        try {
+            socketChannel = SocketChannel.open();
+            socketChannel.configureBlocking(false);
+            socketChannel.socket().setTcpNoDelay(true);
+            
+            if (!socketChannel.connect(new InetSocketAddress(this.host, this.port))) {
+                Selector connectSelector = Selector.open();
+                try {
+                    socketChannel.register(connectSelector, SelectionKey.OP_CONNECT);
+                    if (connectSelector.select(this.connectTimeout) == 0) {
+                        throw new SocketTimeoutException("Connection to " + this.host + ":" + this.port + " timed out.");
+                    }
+                    socketChannel.finishConnect();
+                } finally {
+                    connectSelector.close();
+                }
+            }
+            
+            this.writeSelector = Selector.open();
+            this.readSelector = Selector.open();
+            socketChannel.register(this.writeSelector, SelectionKey.OP_WRITE);
+            socketChannel.register(this.readSelector, SelectionKey.OP_READ);
+            this.socketChannel = socketChannel;
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            this.closeQuietly(socketChannel);
+            this.closeSelectors();
+        }
+        return false;
+    }
+    
+    /**
+     * Close the socket with the printer.
+     *
+     * @return return true if success
+     */
+    @Override
+    public boolean disconnect() {
+        if (!this.isConnected()) {
+            return true;
+        }
+        boolean isClosed = this.closeQuietly(this.socketChannel);
+        this.closeSelectors();
+        this.socketChannel = null;
+        return isClosed;
+    }
+    
+    private boolean closeQuietly(SocketChannel socketChannel) {
+        if (socketChannel == null) {
+            return true;
+        }
+        try {
+            socketChannel.close();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return false;
+    }
+    
+    private void closeSelectors() {
+        try {
+            if (this.writeSelector != null) {
+                this.writeSelector.close();
+            }
+            if (this.readSelector != null) {
+                this.readSelector.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        this.writeSelector = null;
+        this.readSelector = null;
+    }
+    
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        if (!this.isConnected()) {
+            throw new IOException("The printer is not connected.");
+        }
+        final SocketChannel socketChannel = this.socketChannel;
+        final Selector writeSelector = this.writeSelector;
+        
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                this.write(new byte[]{(byte) b}, 0, 1);
+            }
+            
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                ByteBuffer byteBuffer = ByteBuffer.wrap(bytes, offset, length);
+                long endTime = System.currentTimeMillis() + TcpPrinterTransport.this.writeTimeout;
+                
+                while (byteBuffer.hasRemaining()) {
+                    if (socketChannel.write(byteBuffer) > 0) {
+                        continue;
+                    }
+                    long remainingTime = endTime - System.currentTimeMillis();
+                    if (remainingTime <= 0 || writeSelector.select(remainingTime) == 0) {
+                        throw new SocketTimeoutException("The printer did not accept data for " + TcpPrinterTransport.this.writeTimeout + "ms.");
+                    }
+                    writeSelector.selectedKeys().clear();
+                }
+            }
+        };
+    }
+    
+    @Override
+    public InputStream getInputStream() throws IOException {
+        if (!this.isConnected()) {
+            throw new IOException("The printer is not connected.");
+        }
+        final SocketChannel socketChannel = this.socketChannel;
+        final Selector readSelector = this.readSelector;
+        final ByteBuffer byteBuffer = ByteBuffer.allocate(256);
+        byteBuffer.flip();
+        
+        return new InputStream() {
+            private int fill(boolean isBlocking) throws IOException {
+                if (byteBuffer.hasRemaining()) {
+                    return byteBuffer.remaining();
+                }
+                byteBuffer.clear();
+                int nbrBytes = socketChannel.read(byteBuffer);
+                while (nbrBytes == 0 && isBlocking) {
+                    readSelector.select();
+                    readSelector.selectedKeys().clear();
+                    nbrBytes = socketChannel.read(byteBuffer);
+                }
+                byteBuffer.flip();
+                return nbrBytes;
+            }
+            
+            @Override
+            public int available() throws IOException {
+                return Math.max(this.fill(false), 0);
+            }
+            
+            @Override
+            public int read() throws IOException {
+                if (this.fill(true) < 1) {
+                    return -1;
+                }
+                return byteBuffer.get() & 0xFF;
+            }
+            
+            @Override
+            public int read(byte[] bytes, int offset, int length) throws IOException {
+                if (length == 0) {
+                    return 0;
+                }
+                if (this.fill(true) < 1) {
+                    return -1;
+                }
+                length = Math.min(length, byteBuffer.remaining());
+                byteBuffer.get(bytes, offset, length);
+                return length;
+            }
+        };
+    }
+}
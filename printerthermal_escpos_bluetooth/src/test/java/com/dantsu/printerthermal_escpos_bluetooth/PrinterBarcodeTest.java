@@ -0,0 +1,303 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.dantsu.printerthermal_escpos_bluetooth.transport.MemoryPrinterTransport;
+
+import static org.junit.Assert.*;
+
+public class PrinterBarcodeTest {
+
+    private static String text(int type, String code) {
+        return new PrinterBarcode(type, code).getText();
+    }
+
+    /**
+     * Data of the GS k command, without the command, the type and the length or the NUL terminator.
+     */
+    private static byte[] data(int type, String code) {
+        byte[] command = new PrinterBarcode(type, code).getCommand();
+        return type >= 65 ? Arrays.copyOfRange(command, 4, command.length) : Arrays.copyOfRange(command, 3, command.length - 1);
+    }
+
+    private static byte[] bytes(Object... parts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (Object part : parts) {
+            if (part instanceof String) {
+                for (char c : ((String) part).toCharArray()) {
+                    bytes.write(c);
+                }
+            } else {
+                bytes.write((Integer) part);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void assertRejected(int type, String code) {
+        try {
+            new PrinterBarcode(type, code);
+            fail("The barcode " + type + " is not rejected : " + code);
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void getCheckDigit_weightsTheRightmostDigitThree() {
+        assertEquals('1', PrinterBarcode.getCheckDigit("400638133393".toCharArray(), 12));
+        assertEquals('2', PrinterBarcode.getCheckDigit("03600029145".toCharArray(), 11));
+        assertEquals('4', PrinterBarcode.getCheckDigit("9638507".toCharArray(), 7));
+        assertEquals('0', PrinterBarcode.getCheckDigit("0000000".toCharArray(), 7));
+        // Only the first digits are checked.
+        assertEquals('4', PrinterBarcode.getCheckDigit("963850799".toCharArray(), 7));
+    }
+
+    @Test
+    public void productCodes_areTruncatedAndCompletedWithTheirCheckDigit() {
+        assertEquals("4006381333931", PrinterBarcodeTest.text(PrinterCommands.BARCODE_EAN13, "40063813339399"));
+        assertEquals("036000291452", PrinterBarcodeTest.text(PrinterCommands.BARCODE_UPCA, "03600029145"));
+        assertEquals("96385074", PrinterBarcodeTest.text(PrinterCommands.BARCODE_EAN8, "9638507"));
+        assertEquals("123456", PrinterBarcodeTest.text(PrinterCommands.BARCODE_UPCE, "1234567"));
+        assertEquals("023456", PrinterBarcodeTest.text(PrinterCommands.BARCODE_UPCE, "234567"));
+
+        PrinterBarcodeTest.assertRejected(PrinterCommands.BARCODE_EAN13, "40063813339");
+        PrinterBarcodeTest.assertRejected(PrinterCommands.BARCODE_EAN13, "40063813339a");
+        PrinterBarcodeTest.assertRejected(PrinterCommands.BARCODE_EAN8, "963-507");
+        PrinterBarcodeTest.assertRejected(PrinterCommands.BARCODE_UPCE, "12345");
+        PrinterBarcodeTest.assertRejected(PrinterCommands.BARCODE_UPCE, "02345a");
+    }
+
+    @Test
+    public void ITF_getsACheckDigitWhenItsLengthIsOdd() {
+        assertEquals("1234", PrinterBarcodeTest.text(PrinterCommands.BARCODE_ITF, "1234"));
+        assertEquals("1236", PrinterBarcodeTest.text(PrinterCommands.BARCODE_ITF, "123"));
+        PrinterBarcodeTest.assertRejected(PrinterCommands.BARCODE_ITF, "12a4");
+    }
+
+    @Test
+    public void CODE39_isUpperCasedWithoutItsStartAndStopCharacters() {
+        assertEquals("ABC-1. $/+%", PrinterBarcodeTest.text(PrinterCommands.BARCODE_CODE39, "*abc-1. $/+%*"));
+        PrinterBarcodeTest.assertRejected(PrinterCommands.BARCODE_CODE39, "*a");
+        PrinterBarcodeTest.assertRejected(PrinterCommands.BARCODE_CODE39, "AB_C");
+        PrinterBarcodeTest.assertRejected(PrinterCommands.BARCODE_CODE39, "**");
+    }
+
+    @Test
+    public void CODABAR_hasBothStartAndStopCharacters() {
+        assertEquals("A123B", PrinterBarcodeTest.text(PrinterCommands.BARCODE_CODABAR, "a123b"));
+        assertEquals("A1$+-./:2A", PrinterBarcodeTest.text(PrinterCommands.BARCODE_CODABAR, "1$+-./:2"));
+        assertEquals("C12D", PrinterBarcodeTest.text(PrinterCommands.BARCODE_CODABAR, "C12D"));
+
+        PrinterBarcodeTest.assertRejected(PrinterCommands.BARCODE_CODABAR, "A123");
+        PrinterBarcodeTest.assertRejected(PrinterCommands.BARCODE_CODABAR, "123D");
+        PrinterBarcodeTest.assertRejected(PrinterCommands.BARCODE_CODABAR, "12x3");
+        PrinterBarcodeTest.assertRejected(PrinterCommands.BARCODE_CODABAR, "A1B2A");
+    }
+
+    @Test
+    public void CODE128_isSplitInCodeSets() {
+        assertArrayEquals(
+            PrinterBarcodeTest.bytes("{C", 12, 34),
+            PrinterBarcodeTest.data(PrinterCommands.BARCODE_CODE128, "1234")
+        );
+        // The odd digit of a run is printed before the pairs.
+        assertArrayEquals(
+            PrinterBarcodeTest.bytes("{B1{C", 23, 45),
+            PrinterBarcodeTest.data(PrinterCommands.BARCODE_CODE128, "12345")
+        );
+        assertArrayEquals(
+            PrinterBarcodeTest.bytes("{Bab{C", 12, 34, 56, "{Bc"),
+            PrinterBarcodeTest.data(PrinterCommands.BARCODE_CODE128, "ab123456c")
+        );
+        assertArrayEquals(
+            PrinterBarcodeTest.bytes("{A", 9, "A7{C", 89, 1, "{Bb"),
+            PrinterBarcodeTest.data(PrinterCommands.BARCODE_CODE128, "\tA78901b")
+        );
+        // Short digit runs stay in the current code set.
+        assertArrayEquals(
+            PrinterBarcodeTest.bytes("{B123"),
+            PrinterBarcodeTest.data(PrinterCommands.BARCODE_CODE128, "123")
+        );
+        assertArrayEquals(
+            PrinterBarcodeTest.bytes("{B{{a{{"),
+            PrinterBarcodeTest.data(PrinterCommands.BARCODE_CODE128, "{a{")
+        );
+        assertArrayEquals(
+            PrinterBarcodeTest.bytes("{A", 0, "{Bz"),
+            PrinterBarcodeTest.data(PrinterCommands.BARCODE_CODE128, "\0z")
+        );
+
+        byte[] command = new PrinterBarcode(PrinterCommands.BARCODE_CODE128, "12345").getCommand();
+        assertArrayEquals(PrinterBarcodeTest.bytes(0x1D, 0x6B, 73, 7), Arrays.copyOf(command, 4));
+        assertEquals(4 + 7, command.length);
+
+        PrinterBarcodeTest.assertRejected(PrinterCommands.BARCODE_CODE128, "caf\u00e9");
+        PrinterBarcodeTest.assertRejected(PrinterCommands.BARCODE_CODE128, "");
+    }
+
+    @Test
+    public void barcodes_areRejectedOver255Bytes() {
+        char[] code = new char[256];
+        Arrays.fill(code, 'A');
+        new PrinterBarcode(PrinterCommands.BARCODE_CODE93, new String(code, 0, 255));
+        PrinterBarcodeTest.assertRejected(PrinterCommands.BARCODE_CODE93, new String(code));
+        PrinterBarcodeTest.assertRejected(PrinterCommands.BARCODE_CODE93, "\u0080");
+    }
+
+    /**
+     * Decode the data of a CODE128 command, checking that each character belongs to its code set.
+     */
+    private static String decodeCode128(byte[] data) {
+        StringBuilder code = new StringBuilder();
+        char codeSet = 0;
+        for (int i = 0; i < data.length; i++) {
+            int b = data[i] & 0xFF;
+            if (b == '{' && codeSet != 'C' && i + 1 < data.length && data[i + 1] == '{') {
+                code.append('{');
+                i++;
+            } else if (b == '{') {
+                codeSet = (char) data[++i];
+                assertTrue("code set " + codeSet, codeSet == 'A' || codeSet == 'B' || codeSet == 'C');
+            } else if (codeSet == 'C') {
+                assertTrue("code C value " + b, b < 100);
+                code.append((char) ('0' + b / 10)).append((char) ('0' + b % 10));
+            } else {
+                assertTrue("code set before " + b, codeSet == 'A' || codeSet == 'B');
+                assertTrue("code " + codeSet + " character " + b, codeSet == 'A' ? b < 0x60 : b >= 0x20 && b < 0x80);
+                code.append((char) b);
+            }
+        }
+        return code.toString();
+    }
+
+    @Test
+    public void CODE128_commandsDecodeToTheirCode() {
+        Random random = new Random(128);
+        for (int n = 0; n < 20000; n++) {
+            char[] code = new char[1 + random.nextInt(60)];
+            for (int i = 0; i < code.length; i++) {
+                int kind = random.nextInt(4);
+                code[i] = kind < 2 ? (char) ('0' + random.nextInt(10)) : (kind == 2 ? '{' : (char) random.nextInt(0x80));
+            }
+            byte[] command = new PrinterBarcode(PrinterCommands.BARCODE_CODE128, new String(code)).getCommand();
+            assertEquals(command.length - 4, command[3] & 0xFF);
+            assertEquals(new String(code), PrinterBarcodeTest.decodeCode128(Arrays.copyOfRange(command, 4, command.length)));
+        }
+    }
+
+    /**
+     * Barcode commands sent by printBarcode, converted like the version 1.x did : the check digit computed on
+     * substrings parsed by Integer.parseInt, and nothing sent when a character is not a digit.
+     */
+    private static byte[] baselinePrintBarcode(int barcodeType, String barcode, int heightPx) {
+        int barcodeLength = 0;
+
+        switch (barcodeType) {
+            case PrinterCommands.BARCODE_UPCA:
+                barcodeLength = 11;
+                break;
+            case PrinterCommands.BARCODE_UPCE:
+                barcodeLength = 6;
+                break;
+            case PrinterCommands.BARCODE_EAN13:
+                barcodeLength = 12;
+                break;
+            case PrinterCommands.BARCODE_EAN8:
+                barcodeLength = 7;
+                break;
+        }
+
+        if (barcodeLength == 0 || barcode.length() < barcodeLength) {
+            return new byte[0];
+        }
+
+        barcode = barcode.substring(0, barcodeLength);
+
+        try {
+            switch (barcodeType) {
+                case PrinterCommands.BARCODE_UPCE:
+                    String firstChar = barcode.substring(0, 1);
+                    if (!firstChar.equals("0") && !firstChar.equals("1")) {
+                        barcode = "0" + barcode.substring(0, 5);
+                    }
+                    break;
+                case PrinterCommands.BARCODE_UPCA:
+                case PrinterCommands.BARCODE_EAN13:
+                case PrinterCommands.BARCODE_EAN8:
+                    int stringBarcodeLength = barcode.length(), totalBarcodeKey = 0;
+                    for (int i = 0; i < stringBarcodeLength; i++) {
+                        int pos = stringBarcodeLength - 1 - i,
+                            intCode = Integer.parseInt(barcode.substring(pos, pos + 1), 10);
+                        if (i % 2 == 0) {
+                            intCode = 3 * intCode;
+                        }
+                        totalBarcodeKey += intCode;
+                    }
+
+                    String barcodeKey = String.valueOf(10 - (totalBarcodeKey % 10));
+                    if (barcodeKey.length() == 2) {
+                        barcodeKey = "0";
+                    }
+                    barcode += barcodeKey;
+                    break;
+            }
+        } catch (Exception e) {
+            return new byte[0];
+        }
+
+        barcodeLength = barcode.length();
+        byte[] barcodeCommand = new byte[barcodeLength + 4];
+        System.arraycopy(new byte[]{0x1D, 0x6B, (byte) barcodeType}, 0, barcodeCommand, 0, 3);
+
+        try {
+            for (int i = 0; i < barcodeLength; i++) {
+                barcodeCommand[i + 3] = (byte) (Integer.parseInt(barcode.substring(i, i + 1), 10) + 48);
+            }
+        } catch (Exception e) {
+            return new byte[0];
+        }
+
+        byte[] command = new byte[3 + barcodeCommand.length];
+        System.arraycopy(new byte[]{0x1D, 0x68, (byte) heightPx}, 0, command, 0, 3);
+        System.arraycopy(barcodeCommand, 0, command, 3, barcodeCommand.length);
+        return command;
+    }
+
+    @Test
+    public void printBarcode_printsLikeTheBaseline() {
+        Random random = new Random(13);
+        int[] types = {PrinterCommands.BARCODE_EAN13, PrinterCommands.BARCODE_EAN8, PrinterCommands.BARCODE_UPCA, PrinterCommands.BARCODE_UPCE};
+        String others = "a -+.";
+        PrinterConnection connection = new PrinterConnection(new MemoryPrinterTransport());
+        connection.connect();
+        int nbrPrinted = 0, nbrRejected = 0;
+
+        for (int n = 0; n < 20000; n++) {
+            int type = types[random.nextInt(types.length)];
+            char[] code = new char[random.nextInt(15)];
+            for (int i = 0; i < code.length; i++) {
+                code[i] = random.nextInt(40) == 0 ? others.charAt(random.nextInt(others.length())) : (char) ('0' + random.nextInt(10));
+            }
+            int heightPx = 1 + random.nextInt(255);
+
+            byte[] expected = PrinterBarcodeTest.baselinePrintBarcode(type, new String(code), heightPx);
+            if (expected.length == 0) {
+                nbrRejected++;
+            } else {
+                nbrPrinted++;
+            }
+            assertArrayEquals(
+                type + " : " + new String(code),
+                expected,
+                connection.startJob().printBarcode(type, new String(code), heightPx).endJobWithoutSending().toByteArray()
+            );
+        }
+        assertTrue(nbrPrinted >= 1000);
+        assertTrue(nbrRejected >= 1000);
+    }
+}
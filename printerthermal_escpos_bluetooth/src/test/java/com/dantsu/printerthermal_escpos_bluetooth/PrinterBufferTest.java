@@ -0,0 +1,104 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class PrinterBufferTest {
+    
+    /**
+     * Output stream keeping the length of each write call.
+     */
+    static class PacketOutputStream extends ByteArrayOutputStream {
+        ArrayList<Integer> packets = new ArrayList<Integer>();
+        
+        @Override
+        public synchronized void write(byte[] bytes, int offset, int length) {
+            super.write(bytes, offset, length);
+            this.packets.add(length);
+        }
+    }
+    
+    private static byte[] sequence(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+    
+    @Test
+    public void writeTo_splitsInPackets() throws IOException {
+        byte[] bytes = PrinterBufferTest.sequence(2500);
+        PrinterBuffer buffer = new PrinterBuffer(16).write(bytes);
+        PacketOutputStream outputStream = new PacketOutputStream();
+        
+        buffer.writeTo(outputStream, 0, buffer.size(), 990);
+        
+        assertArrayEquals(bytes, outputStream.toByteArray());
+        assertEquals(3, outputStream.packets.size());
+        assertEquals(990, (int) outputStream.packets.get(0));
+        assertEquals(990, (int) outputStream.packets.get(1));
+        assertEquals(520, (int) outputStream.packets.get(2));
+    }
+    
+    @Test
+    public void writeTo_withoutPacketSizeWritesOnce() throws IOException {
+        PrinterBuffer buffer = new PrinterBuffer().write(PrinterBufferTest.sequence(5000));
+        PacketOutputStream outputStream = new PacketOutputStream();
+        
+        buffer.writeTo(outputStream, 1000, 3000, 0);
+        
+        assertEquals(1, outputStream.packets.size());
+        assertEquals(3000, outputStream.size());
+        assertEquals((byte) 1000, outputStream.toByteArray()[0]);
+    }
+    
+    @Test
+    public void write_growsAndKeepsBytes() {
+        PrinterBuffer buffer = new PrinterBuffer(16);
+        for (int i = 0; i < 1000; i++) {
+            buffer.write((byte) i);
+        }
+        assertEquals(1000, buffer.size());
+        assertArrayEquals(PrinterBufferTest.sequence(1000), buffer.toByteArray());
+    }
+    
+    @Test
+    public void mark_mergesMarksAtTheSameOffset() {
+        PrinterBuffer buffer = new PrinterBuffer()
+            .write(new byte[10]).mark(0).mark(100)
+            .write(new byte[10]).mark(50)
+            .mark(-1);
+        
+        assertEquals(2, buffer.getMarksCount());
+        assertEquals(10, buffer.getMarkOffset(0));
+        assertEquals(100, buffer.getMarkWaitingTime(0));
+        assertEquals(20, buffer.getMarkOffset(1));
+        assertEquals(50, buffer.getMarkWaitingTime(1));
+    }
+    
+    @Test
+    public void writeBuffer_shiftsTheMarks() {
+        PrinterBuffer job = new PrinterBuffer().write(new byte[5]).mark(10).write(new byte[5]).mark(0);
+        PrinterBuffer buffer = new PrinterBuffer().write(new byte[3]).mark(0).write(job);
+        
+        assertEquals(13, buffer.size());
+        assertEquals(3, buffer.getMarksCount());
+        assertEquals(8, buffer.getMarkOffset(1));
+        assertEquals(10, buffer.getMarkWaitingTime(1));
+        assertEquals(13, buffer.getMarkOffset(2));
+        
+        PrinterBuffer copy = buffer.copy();
+        assertArrayEquals(buffer.toByteArray(), copy.toByteArray());
+        assertEquals(3, copy.getMarksCount());
+        
+        buffer.reset();
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.getMarksCount());
+    }
+}
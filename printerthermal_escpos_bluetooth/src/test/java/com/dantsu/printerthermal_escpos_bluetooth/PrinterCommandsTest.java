@@ -0,0 +1,428 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PrinterCommandsTest {
+
+    private static final int[] CHANNEL_VALUES = {0, 100, 159, 160, 161, 200, 255};
+
+    /**
+     * Random colors, with channels around IMAGE_WHITE_THRESHOLD and random alpha.
+     */
+    private static int[] randomColors(Random random, int nbrPixels) {
+        int[] colors = new int[nbrPixels];
+        for (int i = 0; i < nbrPixels; i++) {
+            int color = random.nextInt(256) << 24;
+            for (int shift = 0; shift < 24; shift += 8) {
+                color |= PrinterCommandsTest.CHANNEL_VALUES[random.nextInt(PrinterCommandsTest.CHANNEL_VALUES.length)] << shift;
+            }
+            colors[i] = color;
+        }
+        return colors;
+    }
+
+    /**
+     * Raster image command of the lines posY to posY + height, converted like the version 1.x did : a String of
+     * "0" and "1" parsed by Integer.parseInt for each byte. The version 1.x wrote the height on one byte, so a band
+     * of 256 lines was sent with a height of 0 : the height is written here on two bytes.
+     */
+    private static byte[] baselineBitmapToBytes(int[] colors, int bitmapWidth, int posY, int bitmapHeight) {
+        int bytesByLine = (int) Math.ceil(((float) bitmapWidth) / 8f);
+
+        byte[] imageBytes = new byte[8 + bytesByLine * bitmapHeight];
+        System.arraycopy(new byte[]{0x1D, 0x76, 0x30, 0x00, (byte) bytesByLine, 0x00, (byte) bitmapHeight, (byte) (bitmapHeight >> 8)}, 0, imageBytes, 0, 8);
+
+        int i = 8;
+        for (int y = posY; y < posY + bitmapHeight; y++) {
+            for (int j = 0; j < bitmapWidth; j += 8) {
+                StringBuilder stringBinary = new StringBuilder();
+                for (int k = 0; k < 8; k++) {
+                    int posX = j + k;
+                    if (posX < bitmapWidth) {
+                        int color = colors[y * bitmapWidth + posX],
+                            r = (color >> 16) & 0xff,
+                            g = (color >> 8) & 0xff,
+                            b = color & 0xff;
+
+                        if (r > 160 && g > 160 && b > 160) {
+                            stringBinary.append("0");
+                        } else {
+                            stringBinary.append("1");
+                        }
+                    } else {
+                        stringBinary.append("0");
+                    }
+                }
+                imageBytes[i++] = (byte) Integer.parseInt(stringBinary.toString(), 2);
+            }
+        }
+
+        return imageBytes;
+    }
+
+    /**
+     * The version 1.x limited the images to IMAGE_BAND_HEIGHT lines, taller images are now made of one command by
+     * band of IMAGE_BAND_HEIGHT lines.
+     */
+    private static byte[] baselineBandedBitmapToBytes(int[] colors, int bitmapWidth, int bitmapHeight) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int posY = 0;
+        do {
+            int bandHeight = Math.min(PrinterCommands.IMAGE_BAND_HEIGHT, bitmapHeight - posY);
+            byte[] band = PrinterCommandsTest.baselineBitmapToBytes(colors, bitmapWidth, posY, bandHeight);
+            bytes.write(band, 0, band.length);
+            posY += bandHeight;
+        } while (posY < bitmapHeight);
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void bitmapToBytes_convertsLikeTheBaseline() {
+        Random random = new Random(8);
+        int[][] sizes = {{1, 1}, {7, 3}, {8, 1}, {9, 2}, {13, 255}, {16, 256}, {31, 257}, {384, 100}, {573, 513}};
+        for (int[] size : sizes) {
+            int[] colors = PrinterCommandsTest.randomColors(random, size[0] * size[1]);
+            assertArrayEquals(
+                size[0] + "x" + size[1],
+                PrinterCommandsTest.baselineBandedBitmapToBytes(colors, size[0], size[1]),
+                PrinterCommands.bitmapToBytes(new ArrayPrinterImageSource(colors, size[0], size[1]), null)
+            );
+        }
+    }
+
+    @Test
+    public void bitmapToBytes_convertsTheBandsLikeTheBaseline() {
+        Random random = new Random(256);
+        int bitmapWidth = 101, bitmapHeight = 300;
+        int[] colors = PrinterCommandsTest.randomColors(random, bitmapWidth * bitmapHeight);
+        ArrayPrinterImageSource image = new ArrayPrinterImageSource(colors, bitmapWidth, bitmapHeight);
+        int[] bandHeights = {1, 7, 64, 255, 256};
+
+        for (int bandHeight : bandHeights) {
+            for (int posY = 0; posY + bandHeight <= bitmapHeight; posY += bandHeight) {
+                byte[] expected = PrinterCommandsTest.baselineBitmapToBytes(colors, bitmapWidth, posY, bandHeight);
+                assertArrayEquals(
+                    "band " + posY + "+" + bandHeight,
+                    expected,
+                    PrinterCommands.bitmapToBytes(image, posY, bandHeight, 0, null)
+                );
+            }
+        }
+
+        // White bytes inserted on the left of each line move the image to the right.
+        int bytesByLine = (bitmapWidth + 7) / 8;
+        byte[] expected = PrinterCommandsTest.baselineBitmapToBytes(colors, bitmapWidth, 10, 20),
+            band = PrinterCommands.bitmapToBytes(image, 10, 20, 3, null);
+        assertEquals(8 + (bytesByLine + 3) * 20, band.length);
+        assertEquals(bytesByLine + 3, band[4]);
+        assertEquals(20, band[6]);
+        for (int y = 0; y < 20; y++) {
+            int offset = 8 + y * (bytesByLine + 3);
+            assertArrayEquals(new byte[3], Arrays.copyOfRange(band, offset, offset + 3));
+            assertArrayEquals(
+                Arrays.copyOfRange(expected, 8 + y * bytesByLine, 8 + (y + 1) * bytesByLine),
+                Arrays.copyOfRange(band, offset + 3, offset + 3 + bytesByLine)
+            );
+        }
+    }
+
+    @Test
+    public void bitmapToBytes_convertsTheStripesLikeTheBaseline() throws Exception {
+        Random random = new Random(576);
+        final AtomicInteger nbrTasks = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            protected void beforeExecute(Thread thread, Runnable task) {
+                nbrTasks.incrementAndGet();
+            }
+        };
+        try {
+            int[][] sizes = {{576, 256}, {573, 300}, {576, 777}, {640, 1024}};
+            for (int[] size : sizes) {
+                int[] colors = PrinterCommandsTest.randomColors(random, size[0] * size[1]);
+                byte[] expected = PrinterCommandsTest.baselineBandedBitmapToBytes(colors, size[0], size[1]);
+                for (int nbrStripes = 2; nbrStripes <= 5; nbrStripes++) {
+                    nbrTasks.set(0);
+                    assertArrayEquals(
+                        size[0] + "x" + size[1] + " in " + nbrStripes + " stripes",
+                        expected,
+                        PrinterCommands.bitmapToBytes(new ArrayPrinterImageSource(colors, size[0], size[1]), null, executor, nbrStripes)
+                    );
+                    assertEquals(Math.min(nbrStripes, size[1] / PrinterCommands.IMAGE_PARALLEL_MIN_STRIPE_HEIGHT), nbrTasks.get());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void bitmapToBytes_convertsInTheCallingThreadBelowTheParallelThreshold() {
+        final AtomicInteger nbrTasks = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(4, 4, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>()) {
+            @Override
+            protected void beforeExecute(Thread thread, Runnable task) {
+                nbrTasks.incrementAndGet();
+            }
+        };
+        try {
+            int[] colors = PrinterCommandsTest.randomColors(new Random(640), 640 * 1024);
+            assertArrayEquals(
+                PrinterCommandsTest.baselineBandedBitmapToBytes(colors, 640, 1024),
+                PrinterCommands.bitmapToBytes(new ArrayPrinterImageSource(colors, 640, 1024), null, executor)
+            );
+            assertEquals(0, nbrTasks.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void bitmapToBytes_convertsInTheCallingThreadWhenTheExecutorRejectsTheStripes() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        executor.shutdown();
+        int[] colors = PrinterCommandsTest.randomColors(new Random(576), 576 * 512);
+        assertArrayEquals(
+            PrinterCommandsTest.baselineBandedBitmapToBytes(colors, 576, 512),
+            PrinterCommands.bitmapToBytes(new ArrayPrinterImageSource(colors, 576, 512), null, executor, 4)
+        );
+    }
+
+    @Test
+    public void bitmapToBytes_throwsTheStripeFailure() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            PrinterCommands.bitmapToBytes(
+                new ArrayPrinterImageSource(new int[576 * 512], 576, 512) {
+                    @Override
+                    public ArrayPrinterImageSource copy() {
+                        throw new IllegalStateException("Stripe failure");
+                    }
+                },
+                null,
+                executor,
+                4
+            );
+            fail("The stripe failure is not thrown");
+        } catch (IllegalStateException e) {
+            assertEquals("Stripe failure", e.getMessage());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void bitmapToBytes_stopsWhenInterrupted() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Thread.currentThread().interrupt();
+            PrinterCommands.bitmapToBytes(new ArrayPrinterImageSource(new int[576 * 512], 576, 512), null, executor, 4);
+            fail("The conversion is not interrupted");
+        } catch (CancellationException e) {
+            assertTrue(Thread.interrupted());
+        } finally {
+            Thread.interrupted();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Raster image of QR code modules, converted like the version 1.x did : a String of "0" and "1" parsed by
+     * Integer.parseInt for each byte.
+     * <p>
+     * When the line width (width * coefficient) is a multiple of 8, the version 1.x wrote one byte more than
+     * bytesByLine in lineBytes and failed with an ArrayIndexOutOfBoundsException : the last module ends a byte, and
+     * the loop condition x &lt; width is still true. QR codes have an odd number of modules, so it only happened with
+     * coefficients multiple of 8. lineBytes has here an extra byte, which is not copied in the image. The height is
+     * written on two bytes, like in baselineBitmapToBytes.
+     */
+    private static byte[] baselineQRCodeMatrixToBytes(ByteMatrix byteMatrix, int coefficient) {
+        int
+            width = byteMatrix.getWidth(),
+            height = byteMatrix.getHeight(),
+            imageWidth = width * coefficient,
+            imageHeight = height * coefficient,
+            bytesByLine = (int) Math.ceil(((float) imageWidth) / 8f),
+            i = 8;
+
+        byte[] imageBytes = new byte[8 + bytesByLine * imageHeight];
+        System.arraycopy(new byte[]{0x1D, 0x76, 0x30, 0x00, (byte) bytesByLine, 0x00, (byte) imageHeight, (byte) (imageHeight >> 8)}, 0, imageBytes, 0, 8);
+
+        for (int y = 0; y < height; y++) {
+            byte[] lineBytes = new byte[bytesByLine + 1];
+            int j = 0, multipleX = coefficient;
+            boolean isBlack = false;
+            for (int x = -1; x < width;) {
+                StringBuilder stringBinary = new StringBuilder();
+                for (int k = 0; k < 8; k++) {
+                    if (multipleX == coefficient) {
+                        isBlack = ++x < width && byteMatrix.get(x, y) == 1;
+                        multipleX = 0;
+                    }
+                    stringBinary.append(isBlack ? "1" : "0");
+                    ++multipleX;
+                }
+                lineBytes[j++] = (byte) Integer.parseInt(stringBinary.toString(), 2);
+            }
+
+            for (int multipleY = 0; multipleY < coefficient; ++multipleY) {
+                System.arraycopy(lineBytes, 0, imageBytes, i, bytesByLine);
+                i += bytesByLine;
+            }
+        }
+
+        return imageBytes;
+    }
+
+    private static ByteMatrix randomByteMatrix(Random random, int width, int height) {
+        ByteMatrix byteMatrix = new ByteMatrix(width, height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                byteMatrix.set(x, y, random.nextInt(2));
+            }
+        }
+        return byteMatrix;
+    }
+
+    @Test
+    public void QRCodeMatrixToBytes_convertsLikeTheBaseline() {
+        Random random = new Random(21);
+        // 21, 25 and 177 modules are the versions 1, 2 and 40. 8 and 16 modules make lines ending with a full byte.
+        int[] widths = {21, 25, 177, 8, 16, 3};
+        int nbrPartialLastBytes = 0, nbrFullLastBytes = 0;
+        for (int width : widths) {
+            ByteMatrix byteMatrix = PrinterCommandsTest.randomByteMatrix(random, width, width);
+            for (int coefficient = 1; coefficient <= (width > 100 ? 3 : 17); coefficient++) {
+                if ((width * coefficient) % 8 == 0) {
+                    nbrFullLastBytes++;
+                } else {
+                    nbrPartialLastBytes++;
+                }
+                assertArrayEquals(
+                    width + " modules of " + coefficient + " dots",
+                    PrinterCommandsTest.baselineQRCodeMatrixToBytes(byteMatrix, coefficient),
+                    PrinterCommands.QRCodeMatrixToBytes(byteMatrix, coefficient)
+                );
+            }
+        }
+        assertTrue(nbrFullLastBytes >= 10);
+        assertTrue(nbrPartialLastBytes >= 10);
+    }
+
+    /**
+     * Raster image command of the lines, each line having the same number of bytes.
+     */
+    private static byte[] imageCommand(byte[]... lines) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        int bytesByLine = lines.length == 0 ? 0 : lines[0].length;
+        bytes.write(new byte[]{0x1D, 0x76, 0x30, 0x00, (byte) bytesByLine, (byte) (bytesByLine >> 8), (byte) lines.length, (byte) (lines.length >> 8)}, 0, 8);
+        for (byte[] line : lines) {
+            bytes.write(line, 0, line.length);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[][] repeatLine(byte[] line, int nbrLines) {
+        byte[][] lines = new byte[nbrLines][];
+        Arrays.fill(lines, line);
+        return lines;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            bytes.write(part, 0, part.length);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] feedCommand(int units) {
+        return new byte[]{0x1B, 0x4A, (byte) units};
+    }
+
+    @Test
+    public void compactImageCommands_replacesTheBlankLinesByFeedCommands() {
+        byte[]
+            blank = {0, 0, 0, 0},
+            first = {0, 0x18, 0, 0},
+            second = {0, (byte) 0x81, 0x40, 0};
+        ArrayList<byte[]> lines = new ArrayList<byte[]>();
+        lines.addAll(Arrays.asList(PrinterCommandsTest.repeatLine(blank, 3)));
+        lines.addAll(Arrays.asList(PrinterCommandsTest.repeatLine(first, 2)));
+        lines.addAll(Arrays.asList(PrinterCommandsTest.repeatLine(blank, 20)));
+        lines.addAll(Arrays.asList(PrinterCommandsTest.repeatLine(second, 2)));
+        lines.addAll(Arrays.asList(PrinterCommandsTest.repeatLine(blank, 16)));
+        byte[] image = PrinterCommandsTest.imageCommand(lines.toArray(new byte[lines.size()][]));
+
+        assertArrayEquals(
+            PrinterCommandsTest.concat(
+                PrinterCommandsTest.feedCommand(6),
+                PrinterCommandsTest.imageCommand(new byte[]{0x18, 0}, new byte[]{0x18, 0}),
+                PrinterCommandsTest.feedCommand(40),
+                PrinterCommandsTest.imageCommand(new byte[]{(byte) 0x81, 0x40}, new byte[]{(byte) 0x81, 0x40}),
+                PrinterCommandsTest.feedCommand(32)
+            ),
+            PrinterCommands.compactImageCommands(image, true, 2f)
+        );
+        assertArrayEquals(
+            PrinterCommandsTest.concat(
+                PrinterCommandsTest.feedCommand(6),
+                PrinterCommandsTest.imageCommand(first, first),
+                PrinterCommandsTest.feedCommand(40),
+                PrinterCommandsTest.imageCommand(second, second),
+                PrinterCommandsTest.feedCommand(32)
+            ),
+            PrinterCommands.compactImageCommands(image, false, 2f)
+        );
+    }
+
+    @Test
+    public void compactImageCommands_splitsTheFeedsLongerThan255Units() {
+        byte[] image = PrinterCommandsTest.concat(
+            PrinterCommandsTest.feedCommand(10),
+            PrinterCommandsTest.imageCommand(PrinterCommandsTest.repeatLine(new byte[]{0}, 200))
+        );
+
+        assertArrayEquals(
+            PrinterCommandsTest.concat(
+                PrinterCommandsTest.feedCommand(255),
+                PrinterCommandsTest.feedCommand(255),
+                PrinterCommandsTest.feedCommand(100)
+            ),
+            PrinterCommands.compactImageCommands(image, true, 3f)
+        );
+    }
+
+    @Test
+    public void compactImageCommands_keepsTheBandsThatDoNotChange() {
+        byte[]
+            line = {(byte) 0x80, 0, 0, 0x01},
+            blank = {0, 0, 0, 0},
+            image = PrinterCommandsTest.concat(
+                PrinterCommandsTest.imageCommand(line, blank, blank, line),
+                PrinterCommandsTest.imageCommand(line, line)
+            );
+
+        // Two blank lines cost less than a feed command and a new image command.
+        assertArrayEquals(image, PrinterCommands.compactImageCommands(image, true, 2f));
+
+        byte[] text = PrinterCommandsTest.concat(PrinterCommandsTest.imageCommand(line, blank), new byte[]{0x0A});
+        assertSame(text, PrinterCommands.compactImageCommands(text, true, 2f));
+    }
+}
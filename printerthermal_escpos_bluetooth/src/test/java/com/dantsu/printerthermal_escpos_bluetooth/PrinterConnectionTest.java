@@ -0,0 +1,154 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.dantsu.printerthermal_escpos_bluetooth.flowcontrol.FixedDelayFlowControl;
+import com.dantsu.printerthermal_escpos_bluetooth.transport.MemoryPrinterTransport;
+
+import static org.junit.Assert.*;
+
+public class PrinterConnectionTest {
+    
+    private MemoryPrinterTransport transport;
+    private PrinterConnection connection;
+    
+    private static byte[] bytes(Object... parts) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (Object part : parts) {
+            if (part instanceof String) {
+                bytes.write(((String) part).getBytes("ISO-8859-1"));
+            } else if (part instanceof Byte) {
+                bytes.write((Byte) part);
+            } else {
+                bytes.write((byte[]) part);
+            }
+        }
+        return bytes.toByteArray();
+    }
+    
+    @Before
+    public void setUp() {
+        this.transport = new MemoryPrinterTransport();
+        this.connection = new PrinterConnection(this.transport);
+        this.connection.connect();
+    }
+    
+    @Test
+    public void printText_sendsOnlyTheChangedFormatting() throws IOException {
+        PrinterBuffer job = this.connection
+            .startJob()
+            .printText("a", PrinterCommands.TEXT_SIZE_MEDIUM, PrinterCommands.TEXT_WEIGHT_NORMAL, PrinterCommands.TEXT_UNDERLINE_OFF)
+            .printText("b", PrinterCommands.TEXT_SIZE_MEDIUM, PrinterCommands.TEXT_WEIGHT_NORMAL, PrinterCommands.TEXT_UNDERLINE_OFF)
+            .printText("c", PrinterCommands.TEXT_SIZE_MEDIUM, PrinterCommands.TEXT_WEIGHT_BOLD, PrinterCommands.TEXT_UNDERLINE_OFF)
+            .printText("d", PrinterCommands.TEXT_SIZE_MEDIUM, PrinterCommands.TEXT_WEIGHT_BOLD, new byte[]{0x1B, 0x2D, 0x01})
+            .endJobWithoutSending();
+        
+        assertArrayEquals(
+            PrinterConnectionTest.bytes(
+                PrinterCommands.WESTERN_EUROPE_ENCODING,
+                PrinterCommands.TEXT_SIZE_MEDIUM, PrinterCommands.TEXT_WEIGHT_NORMAL, PrinterCommands.TEXT_UNDERLINE_OFF, "a",
+                "b",
+                PrinterCommands.TEXT_WEIGHT_BOLD, "c",
+                PrinterCommands.TEXT_UNDERLINE_ON, "d"
+            ),
+            job.toByteArray()
+        );
+    }
+    
+    @Test
+    public void printText_resendsWeightAndUnderlineAfterASizeChange() throws IOException {
+        PrinterBuffer job = this.connection
+            .startJob()
+            .printText("a", PrinterCommands.TEXT_SIZE_MEDIUM, PrinterCommands.TEXT_WEIGHT_BOLD, PrinterCommands.TEXT_UNDERLINE_ON)
+            .printText("b", PrinterCommands.TEXT_SIZE_BIG, PrinterCommands.TEXT_WEIGHT_BOLD, PrinterCommands.TEXT_UNDERLINE_ON)
+            .endJobWithoutSending();
+        
+        // ESC ! resets the emphasized and underline modes.
+        assertArrayEquals(
+            PrinterConnectionTest.bytes(
+                PrinterCommands.WESTERN_EUROPE_ENCODING,
+                PrinterCommands.TEXT_SIZE_MEDIUM, PrinterCommands.TEXT_WEIGHT_BOLD, PrinterCommands.TEXT_UNDERLINE_ON, "a",
+                PrinterCommands.TEXT_SIZE_BIG, PrinterCommands.TEXT_WEIGHT_BOLD, PrinterCommands.TEXT_UNDERLINE_ON, "b"
+            ),
+            job.toByteArray()
+        );
+    }
+    
+    @Test
+    public void write_forgetsThePrinterState() throws IOException {
+        byte[] raw = new byte[]{0x1B, 0x40};
+        PrinterBuffer job = this.connection
+            .startJob()
+            .setAlign(PrinterCommands.TEXT_ALIGN_CENTER)
+            .printText("a")
+            .write(raw)
+            .setAlign(PrinterCommands.TEXT_ALIGN_CENTER)
+            .printText("b")
+            .endJobWithoutSending();
+        
+        byte[] text = PrinterConnectionTest.bytes(
+            PrinterCommands.WESTERN_EUROPE_ENCODING,
+            PrinterCommands.TEXT_SIZE_NORMAL, PrinterCommands.TEXT_WEIGHT_NORMAL, PrinterCommands.TEXT_UNDERLINE_OFF
+        );
+        assertArrayEquals(
+            PrinterConnectionTest.bytes(
+                PrinterCommands.TEXT_ALIGN_CENTER, text, "a",
+                raw,
+                PrinterCommands.TEXT_ALIGN_CENTER, text, "b"
+            ),
+            job.toByteArray()
+        );
+    }
+    
+    @Test
+    public void newLine_sendsTheAlignmentOnlyWhenItChanges() throws IOException {
+        PrinterBuffer job = this.connection
+            .startJob()
+            .newLine(PrinterCommands.TEXT_ALIGN_RIGHT)
+            .newLine(PrinterCommands.TEXT_ALIGN_RIGHT)
+            .newLine(PrinterCommands.TEXT_ALIGN_LEFT)
+            .endJobWithoutSending();
+        
+        assertArrayEquals(
+            PrinterConnectionTest.bytes(
+                PrinterCommands.LF, PrinterCommands.TEXT_ALIGN_RIGHT,
+                PrinterCommands.LF,
+                PrinterCommands.LF, PrinterCommands.TEXT_ALIGN_LEFT
+            ),
+            job.toByteArray()
+        );
+    }
+    
+    @Test
+    public void startJob_forgetsThePrinterState() throws IOException {
+        this.connection.startJob().setAlign(PrinterCommands.TEXT_ALIGN_RIGHT).endJobWithoutSending();
+        PrinterBuffer job = this.connection.startJob().setAlign(PrinterCommands.TEXT_ALIGN_RIGHT).endJobWithoutSending();
+        
+        assertArrayEquals(PrinterCommands.TEXT_ALIGN_RIGHT, job.toByteArray());
+    }
+    
+    @Test
+    public void endJob_sendsTheJobToTheTransport() throws IOException {
+        this.connection
+            .setFlowControl(new FixedDelayFlowControl())
+            .startJob()
+            .printText("Hello")
+            .newLine();
+        assertEquals(0, this.transport.getNbrBytesReceived());
+        
+        this.connection.endJob();
+        
+        assertArrayEquals(
+            PrinterConnectionTest.bytes(
+                PrinterCommands.WESTERN_EUROPE_ENCODING,
+                PrinterCommands.TEXT_SIZE_NORMAL, PrinterCommands.TEXT_WEIGHT_NORMAL, PrinterCommands.TEXT_UNDERLINE_OFF, "Hello",
+                PrinterCommands.LF
+            ),
+            this.transport.toByteArray()
+        );
+    }
+}
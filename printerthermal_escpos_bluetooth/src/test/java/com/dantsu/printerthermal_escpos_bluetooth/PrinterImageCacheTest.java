@@ -0,0 +1,98 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class PrinterImageCacheTest {
+
+    @Test
+    public void put_evictsTheLeastRecentlyUsedImages() {
+        byte[] a = new byte[40], b = new byte[40], c = new byte[40];
+        PrinterImageCache cache = new PrinterImageCache(100).put("a", a).put("b", b);
+        assertSame(a, cache.get("a"));
+
+        cache.put("c", c);
+
+        assertEquals(2, cache.getNbrImages());
+        assertEquals(80, cache.getSize());
+        assertNull(cache.get("b"));
+        assertSame(a, cache.get("a"));
+        assertSame(c, cache.get("c"));
+        assertEquals(1, cache.getNbrEvictions());
+    }
+
+    @Test
+    public void put_evictsUntilTheImagesFitTheMaxSize() {
+        PrinterImageCache cache = new PrinterImageCache(100)
+            .put("a", new byte[30])
+            .put("b", new byte[30])
+            .put("c", new byte[30]);
+        assertEquals(90, cache.getSize());
+
+        byte[] d = new byte[80];
+        cache.put("d", d);
+
+        assertEquals(1, cache.getNbrImages());
+        assertEquals(80, cache.getSize());
+        assertSame(d, cache.get("d"));
+        assertEquals(3, cache.getNbrEvictions());
+
+        byte[] e = new byte[100];
+        cache.put("e", e);
+        assertEquals(100, cache.getSize());
+        assertSame(e, cache.get("e"));
+    }
+
+    @Test
+    public void put_ignoresTheImagesLargerThanTheMaxSize() {
+        byte[] a = new byte[40];
+        PrinterImageCache cache = new PrinterImageCache(100).put("a", a).put("b", new byte[101]);
+
+        assertEquals(1, cache.getNbrImages());
+        assertEquals(40, cache.getSize());
+        assertNull(cache.get("b"));
+        assertSame(a, cache.get("a"));
+        assertEquals(0, cache.getNbrEvictions());
+
+        cache.put("a", new byte[101]);
+        assertEquals(0, cache.getNbrImages());
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void put_replacesTheSizeOfAnExistingKey() {
+        byte[] b = new byte[60];
+        PrinterImageCache cache = new PrinterImageCache(100).put("a", new byte[40]).put("b", new byte[20]);
+
+        cache.put("b", b);
+
+        assertEquals(2, cache.getNbrImages());
+        assertEquals(100, cache.getSize());
+        assertSame(b, cache.get("b"));
+        assertEquals(0, cache.getNbrEvictions());
+
+        cache.put("b", new byte[10]);
+        assertEquals(50, cache.getSize());
+    }
+
+    @Test
+    public void get_countsTheHitsAndTheMisses() {
+        PrinterImageCache cache = new PrinterImageCache(100).put("a", new byte[10]);
+
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+
+        assertEquals(2, cache.getNbrHits());
+        assertEquals(1, cache.getNbrMisses());
+
+        cache.clear();
+        assertEquals(0, cache.getNbrImages());
+        assertEquals(0, cache.getSize());
+        assertNull(cache.get("a"));
+        assertEquals(2, cache.getNbrHits());
+        assertEquals(2, cache.getNbrMisses());
+    }
+}
@@ -0,0 +1,194 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PrinterImageDitheringTest {
+
+    private static int gray(int level) {
+        return 0xff000000 | (level << 16) | (level << 8) | level;
+    }
+
+    /**
+     * Image of 8 pixels wide lines, one byte by line.
+     */
+    private static byte[] convert(PrinterImageDithering dithering, int[][] lines) {
+        byte[] bytes = new byte[lines.length];
+        for (int y = 0; y < lines.length; y++) {
+            dithering.lineToBytes(lines[y], y, bytes, y);
+        }
+        return bytes;
+    }
+
+    private static int[][] uniformImage(int color, int width, int height) {
+        int[][] lines = new int[height][width];
+        for (int[] line : lines) {
+            Arrays.fill(line, color);
+        }
+        return lines;
+    }
+
+    private static int countDots(byte[] bytes) {
+        int nbrDots = 0;
+        for (byte b : bytes) {
+            nbrDots += Integer.bitCount(b & 0xff);
+        }
+        return nbrDots;
+    }
+
+    /**
+     * Bytes of an image line, converted like the version 1.x did : a String of "0" and "1" parsed by
+     * Integer.parseInt for each byte.
+     */
+    private static byte[] baselineLineToBytes(int[] pixels) {
+        byte[] bytes = new byte[(pixels.length + 7) / 8];
+        int i = 0;
+        for (int j = 0; j < pixels.length; j += 8) {
+            StringBuilder stringBinary = new StringBuilder();
+            for (int k = 0; k < 8; k++) {
+                int posX = j + k;
+                if (posX < pixels.length) {
+                    int color = pixels[posX],
+                        r = (color >> 16) & 0xff,
+                        g = (color >> 8) & 0xff,
+                        b = color & 0xff;
+                    stringBinary.append(r > 160 && g > 160 && b > 160 ? "0" : "1");
+                } else {
+                    stringBinary.append("0");
+                }
+            }
+            bytes[i++] = (byte) Integer.parseInt(stringBinary.toString(), 2);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void lineToBytes_thresholdConvertsLikeTheBaseline() {
+        Random random = new Random(160);
+        int[] channelValues = {0, 100, 159, 160, 161, 200, 255};
+        PrinterImageDithering dithering = new PrinterImageDithering(PrinterCommands.IMAGE_DITHERING_NONE);
+        for (int width = 1; width <= 33; width++) {
+            int[] pixels = new int[width];
+            for (int x = 0; x < width; x++) {
+                int color = random.nextInt(256) << 24;
+                for (int shift = 0; shift < 24; shift += 8) {
+                    color |= channelValues[random.nextInt(channelValues.length)] << shift;
+                }
+                pixels[x] = color;
+            }
+            byte[] bytes = new byte[(width + 7) / 8];
+            dithering.lineToBytes(pixels, width, bytes, 0);
+            assertArrayEquals("width " + width, PrinterImageDitheringTest.baselineLineToBytes(pixels), bytes);
+        }
+    }
+
+    @Test
+    public void lineToBytes_bayerPrintsHalfOfTheMiddleGray() {
+        byte[] bytes = PrinterImageDitheringTest.convert(
+            new PrinterImageDithering(PrinterCommands.IMAGE_DITHERING_BAYER),
+            PrinterImageDitheringTest.uniformImage(PrinterImageDitheringTest.gray(128), 8, 8)
+        );
+        assertArrayEquals(new byte[]{0x55, (byte) 0xaa, 0x55, (byte) 0xaa, 0x55, (byte) 0xaa, 0x55, (byte) 0xaa}, bytes);
+    }
+
+    @Test
+    public void lineToBytes_bayerPrintsTheBlackAndNotTheWhite() {
+        assertEquals(64, PrinterImageDitheringTest.countDots(PrinterImageDitheringTest.convert(
+            new PrinterImageDithering(PrinterCommands.IMAGE_DITHERING_BAYER),
+            PrinterImageDitheringTest.uniformImage(PrinterImageDitheringTest.gray(0), 8, 8)
+        )));
+        assertEquals(0, PrinterImageDitheringTest.countDots(PrinterImageDitheringTest.convert(
+            new PrinterImageDithering(PrinterCommands.IMAGE_DITHERING_BAYER),
+            PrinterImageDitheringTest.uniformImage(PrinterImageDitheringTest.gray(255), 8, 8)
+        )));
+    }
+
+    @Test
+    public void lineToBytes_weightsTheChannelsByLuminance() {
+        // Gray levels 76 (red), 149 (green), 28 (blue) and 127 (half transparent black) : the Bayer matrix prints
+        // the cells whose threshold 4 * m + 2 is higher than the level.
+        int[] colors = {0xffff0000, 0xff00ff00, 0xff0000ff, 0x80000000, 0x00000000, 0xffffffff};
+        int[] nbrDots = {45, 27, 57, 32, 0, 0};
+        for (int i = 0; i < colors.length; i++) {
+            assertEquals(
+                Integer.toHexString(colors[i]),
+                nbrDots[i],
+                PrinterImageDitheringTest.countDots(PrinterImageDitheringTest.convert(
+                    new PrinterImageDithering(PrinterCommands.IMAGE_DITHERING_BAYER),
+                    PrinterImageDitheringTest.uniformImage(colors[i], 8, 8)
+                ))
+            );
+        }
+    }
+
+    @Test
+    public void lineToBytes_appliesTheGamma() {
+        // 255 * (128 / 255) ^ (1 / 2.2) = 186 : the 17 cells of threshold 190 and more are printed.
+        assertEquals(17, PrinterImageDitheringTest.countDots(PrinterImageDitheringTest.convert(
+            new PrinterImageDithering(PrinterCommands.IMAGE_DITHERING_BAYER, 2.2f),
+            PrinterImageDitheringTest.uniformImage(PrinterImageDitheringTest.gray(128), 8, 8)
+        )));
+        assertEquals(32, PrinterImageDitheringTest.countDots(PrinterImageDitheringTest.convert(
+            new PrinterImageDithering(PrinterCommands.IMAGE_DITHERING_BAYER, 1f),
+            PrinterImageDitheringTest.uniformImage(PrinterImageDitheringTest.gray(128), 8, 8)
+        )));
+    }
+
+    @Test
+    public void lineToBytes_floydSteinbergDiffusesTheError() {
+        assertArrayEquals(
+            new byte[]{(byte) 0xb6, (byte) 0xdb, 0x55, (byte) 0xda},
+            PrinterImageDitheringTest.convert(
+                new PrinterImageDithering(PrinterCommands.IMAGE_DITHERING_FLOYD_STEINBERG),
+                PrinterImageDitheringTest.uniformImage(PrinterImageDitheringTest.gray(96), 8, 4)
+            )
+        );
+        int[] gradient = new int[8];
+        for (int x = 0; x < 8; x++) {
+            gradient[x] = PrinterImageDitheringTest.gray(x * 32 + 16);
+        }
+        assertArrayEquals(
+            new byte[]{(byte) 0xe8, (byte) 0xd2, (byte) 0xe8, (byte) 0xd4},
+            PrinterImageDitheringTest.convert(
+                new PrinterImageDithering(PrinterCommands.IMAGE_DITHERING_FLOYD_STEINBERG),
+                new int[][]{gradient, gradient, gradient, gradient}
+            )
+        );
+    }
+
+    @Test
+    public void lineToBytes_atkinsonDiffusesThreeQuartersOfTheError() {
+        // The diffused error is rounded to a gray level : the sixth pixel of the first line reaches 96 + 32 = 128.
+        assertArrayEquals(
+            new byte[]{(byte) 0xfb, (byte) 0x9b, (byte) 0xe6, 0x7d},
+            PrinterImageDitheringTest.convert(
+                new PrinterImageDithering(PrinterCommands.IMAGE_DITHERING_ATKINSON),
+                PrinterImageDitheringTest.uniformImage(PrinterImageDitheringTest.gray(96), 8, 4)
+            )
+        );
+        int[] gradient = new int[8];
+        for (int x = 0; x < 8; x++) {
+            gradient[x] = PrinterImageDitheringTest.gray(x * 32 + 16);
+        }
+        assertArrayEquals(
+            new byte[]{(byte) 0xe0, (byte) 0xf8, (byte) 0xc8, (byte) 0xe0},
+            PrinterImageDitheringTest.convert(
+                new PrinterImageDithering(PrinterCommands.IMAGE_DITHERING_ATKINSON),
+                new int[][]{gradient, gradient, gradient, gradient}
+            )
+        );
+    }
+
+    @Test
+    public void copy_startsANewImage() {
+        PrinterImageDithering dithering = new PrinterImageDithering(PrinterCommands.IMAGE_DITHERING_FLOYD_STEINBERG);
+        int[][] image = PrinterImageDitheringTest.uniformImage(PrinterImageDitheringTest.gray(96), 8, 4);
+        byte[] expected = PrinterImageDitheringTest.convert(dithering.copy(), image);
+        PrinterImageDitheringTest.convert(dithering, image);
+        assertArrayEquals(expected, PrinterImageDitheringTest.convert(dithering.copy(), image));
+    }
+}
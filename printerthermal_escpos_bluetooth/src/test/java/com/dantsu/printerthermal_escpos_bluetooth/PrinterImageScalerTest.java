@@ -0,0 +1,133 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PrinterImageScalerTest {
+
+    private static int[] randomColors(Random random, int nbrPixels) {
+        int[] colors = new int[nbrPixels];
+        for (int i = 0; i < nbrPixels; i++) {
+            colors[i] = random.nextInt();
+        }
+        return colors;
+    }
+
+    private static int[] readLines(PrinterImageSource image) {
+        int width = image.getWidth();
+        int[] pixels = new int[width * image.getHeight()], line = new int[width];
+        for (int y = 0; y < image.getHeight(); y++) {
+            image.readLine(y, line);
+            System.arraycopy(line, 0, pixels, y * width, width);
+        }
+        return pixels;
+    }
+
+    /**
+     * Get the part of the source pixel covering [index * targetSize, (index + 1) * targetSize) in the target pixel
+     * covering [posX * sourceSize, (posX + 1) * sourceSize).
+     */
+    private static long getOverlap(int index, int targetSize, int posX, int sourceSize) {
+        return Math.max(0L, Math.min((long) (index + 1) * targetSize, (long) (posX + 1) * sourceSize) - Math.max((long) index * targetSize, (long) posX * sourceSize));
+    }
+
+    /**
+     * Shrink the image by weighting every source pixel by the area it covers in each target pixel.
+     */
+    private static int[] boxFilter(int[] colors, int sourceWidth, int sourceHeight, int width, int height) {
+        int[] pixels = new int[width * height];
+        long divisor = (long) sourceWidth * sourceHeight;
+        for (int posY = 0; posY < height; posY++) {
+            for (int posX = 0; posX < width; posX++) {
+                long[] sums = new long[4];
+                for (int y = 0; y < sourceHeight; y++) {
+                    long weightY = PrinterImageScalerTest.getOverlap(y, height, posY, sourceHeight);
+                    for (int x = 0; weightY > 0 && x < sourceWidth; x++) {
+                        long weight = weightY * PrinterImageScalerTest.getOverlap(x, width, posX, sourceWidth);
+                        int color = colors[y * sourceWidth + x];
+                        for (int channel = 0; channel < 4; channel++) {
+                            sums[channel] += weight * ((color >>> (24 - channel * 8)) & 0xff);
+                        }
+                    }
+                }
+                int color = 0;
+                for (int channel = 0; channel < 4; channel++) {
+                    color |= (int) ((sums[channel] + divisor / 2) / divisor) << (24 - channel * 8);
+                }
+                pixels[posY * width + posX] = color;
+            }
+        }
+        return pixels;
+    }
+
+    @Test
+    public void readLine_keepsTheImagesNarrowerThanTheMaxWidth() {
+        int[] colors = PrinterImageScalerTest.randomColors(new Random(1), 30 * 7);
+        int[] maxWidths = {0, 30, 576};
+        for (int maxWidth : maxWidths) {
+            PrinterImageScaler scaler = new PrinterImageScaler(new ArrayPrinterImageSource(colors, 30, 7), maxWidth);
+            assertFalse(scaler.isScaled());
+            assertEquals(30, scaler.getWidth());
+            assertEquals(7, scaler.getHeight());
+            assertArrayEquals(colors, PrinterImageScalerTest.readLines(scaler));
+        }
+    }
+
+    @Test
+    public void readLine_averagesTheBlocksOfAnExactMultiple() {
+        int[] colors = {
+            0xff000000, 0xff646464, 0xffffffff, 0x00ffffff,
+            0xffc8c8c8, 0xffffffff, 0xffffffff, 0x00ffffff
+        };
+        PrinterImageScaler scaler = new PrinterImageScaler(new ArrayPrinterImageSource(colors, 4, 2), 2);
+        assertTrue(scaler.isScaled());
+        assertEquals(2, scaler.getWidth());
+        assertEquals(1, scaler.getHeight());
+        // (0 + 100 + 200 + 255) / 4 = 138.75, and (255 + 0 + 255 + 0) / 4 = 127.5 for the alpha.
+        assertArrayEquals(new int[]{0xff8b8b8b, 0x80ffffff}, PrinterImageScalerTest.readLines(scaler));
+
+        int[] randomColors = PrinterImageScalerTest.randomColors(new Random(2), 40 * 12);
+        assertArrayEquals(
+            PrinterImageScalerTest.boxFilter(randomColors, 40, 12, 10, 3),
+            PrinterImageScalerTest.readLines(new PrinterImageScaler(new ArrayPrinterImageSource(randomColors, 40, 12), 10))
+        );
+    }
+
+    @Test
+    public void readLine_weightsTheSourcePixelsSplitByANonIntegerRatio() {
+        // Each target pixel covers one source pixel and a half : 2/3 of the first pixel and 1/3 of the second one.
+        int[] colors = {0xff000000, 0xffffffff, 0xff000000};
+        PrinterImageScaler scaler = new PrinterImageScaler(new ArrayPrinterImageSource(colors, 3, 1), 2);
+        assertEquals(1, scaler.getHeight());
+        assertArrayEquals(new int[]{0xff555555, 0xff555555}, PrinterImageScalerTest.readLines(scaler));
+
+        Random random = new Random(3);
+        int[][] sizes = {{5, 3, 3}, {7, 5, 4}, {100, 37, 64}, {577, 13, 576}};
+        for (int[] size : sizes) {
+            int[] randomColors = PrinterImageScalerTest.randomColors(random, size[0] * size[1]);
+            PrinterImageScaler randomScaler = new PrinterImageScaler(new ArrayPrinterImageSource(randomColors, size[0], size[1]), size[2]);
+            assertEquals(Math.max(1, Math.round((float) size[1] * size[2] / size[0])), randomScaler.getHeight());
+            assertArrayEquals(
+                size[0] + "x" + size[1] + " to " + size[2],
+                PrinterImageScalerTest.boxFilter(randomColors, size[0], size[1], size[2], randomScaler.getHeight()),
+                PrinterImageScalerTest.readLines(randomScaler)
+            );
+        }
+    }
+
+    @Test
+    public void readLine_readsTheLinesInAnyOrder() {
+        int[] colors = PrinterImageScalerTest.randomColors(new Random(4), 50 * 20);
+        PrinterImageScaler scaler = new PrinterImageScaler(new ArrayPrinterImageSource(colors, 50, 20), 15);
+        int[] expected = PrinterImageScalerTest.readLines(scaler.copy()), line = new int[15];
+        for (int y = scaler.getHeight() - 1; y >= 0; y--) {
+            scaler.readLine(y, line);
+            for (int x = 0; x < 15; x++) {
+                assertEquals(expected[y * 15 + x], line[x]);
+            }
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.qrcode.encoder.Encoder;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+
+import static org.junit.Assert.*;
+
+public class PrinterQRCodePlanTest {
+
+    private static final int[] ERROR_CORRECTIONS = {
+        PrinterCommands.QRCODE_ERROR_CORRECTION_L,
+        PrinterCommands.QRCODE_ERROR_CORRECTION_M,
+        PrinterCommands.QRCODE_ERROR_CORRECTION_Q,
+        PrinterCommands.QRCODE_ERROR_CORRECTION_H
+    };
+
+    private static String repeat(String pattern, int length) {
+        StringBuilder data = new StringBuilder(length);
+        while (data.length() < length) {
+            data.append(pattern.charAt(data.length() % pattern.length()));
+        }
+        return data.toString();
+    }
+
+    /**
+     * Version chosen by zxing for the data, without the version hint.
+     */
+    private static int getZxingVersion(PrinterQRCodePlan plan) throws Exception {
+        EnumMap<EncodeHintType, Object> hints = new EnumMap<EncodeHintType, Object>(EncodeHintType.class);
+        if (!plan.getCharacterSet().equals("ISO-8859-1")) {
+            hints.put(EncodeHintType.CHARACTER_SET, plan.getCharacterSet());
+        }
+        return Encoder.encode(plan.getData(), PrinterCommands.getQRCodeErrorCorrectionLevel(plan.getErrorCorrection()), hints)
+            .getVersion()
+            .getVersionNumber();
+    }
+
+    @Test
+    public void mode_isChosenLikeZxing() {
+        assertEquals(PrinterCommands.QRCODE_MODE_NUMERIC, new PrinterQRCodePlan("0123456789", 100, PrinterCommands.QRCODE_ERROR_CORRECTION_L, 2, 0).getMode());
+        assertEquals(PrinterCommands.QRCODE_MODE_ALPHANUMERIC, new PrinterQRCodePlan("HELLO WORLD $%*+-./:", 100, PrinterCommands.QRCODE_ERROR_CORRECTION_L, 2, 0).getMode());
+        assertEquals(PrinterCommands.QRCODE_MODE_ALPHANUMERIC, new PrinterQRCodePlan("0123A", 100, PrinterCommands.QRCODE_ERROR_CORRECTION_L, 2, 0).getMode());
+
+        PrinterQRCodePlan plan = new PrinterQRCodePlan("Hello", 100, PrinterCommands.QRCODE_ERROR_CORRECTION_L, 2, 0);
+        assertEquals(PrinterCommands.QRCODE_MODE_BYTE, plan.getMode());
+        assertEquals("ISO-8859-1", plan.getCharacterSet());
+
+        plan = new PrinterQRCodePlan("caf\u00e9", 100, PrinterCommands.QRCODE_ERROR_CORRECTION_L, 2, 0);
+        assertEquals(PrinterCommands.QRCODE_MODE_BYTE, plan.getMode());
+        assertEquals("ISO-8859-1", plan.getCharacterSet());
+
+        plan = new PrinterQRCodePlan("5 \u20ac", 100, PrinterCommands.QRCODE_ERROR_CORRECTION_L, 2, 0);
+        assertEquals(PrinterCommands.QRCODE_MODE_BYTE, plan.getMode());
+        assertEquals("UTF-8", plan.getCharacterSet());
+    }
+
+    @Test
+    public void version_fitsTheDataBitsOfTheVersion1() {
+        // Capacities of the version 1 with the level L : 41 digits, 25 alphanumeric characters, 17 bytes, and 16
+        // bytes after the 12 bits of the UTF-8 ECI header, 5 euro signs of 3 bytes.
+        String[] patterns = {"7", "A", "a", "\u20ac"};
+        int[] capacities = {41, 25, 17, 5};
+        for (int i = 0; i < patterns.length; i++) {
+            assertEquals(patterns[i], 1, new PrinterQRCodePlan(PrinterQRCodePlanTest.repeat(patterns[i], capacities[i]), 100, PrinterCommands.QRCODE_ERROR_CORRECTION_L, 2, 0).getVersion());
+            assertEquals(patterns[i], 2, new PrinterQRCodePlan(PrinterQRCodePlanTest.repeat(patterns[i], capacities[i] + 1), 100, PrinterCommands.QRCODE_ERROR_CORRECTION_L, 2, 0).getVersion());
+        }
+    }
+
+    @Test
+    public void version_isTheOneZxingChooses() throws Exception {
+        String[] patterns = {"0123456789", "HELLO WORLD 42", "https://dantsu.com/?q=", "caf\u00e9 5 \u20ac"};
+        for (String pattern : patterns) {
+            for (int length = 1; length <= 1300; length += 37) {
+                String data = PrinterQRCodePlanTest.repeat(pattern, length);
+                for (int errorCorrection : PrinterQRCodePlanTest.ERROR_CORRECTIONS) {
+                    PrinterQRCodePlan plan = new PrinterQRCodePlan(data, 100, errorCorrection, 2, 0);
+                    if (plan.isEncodable()) {
+                        assertEquals(plan.toString(), PrinterQRCodePlanTest.getZxingVersion(plan), plan.getVersion());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void errorCorrection_autoChoosesTheHighestLevelOfTheSameVersion() {
+        // Version 1 contains 25 (L), 20 (M), 16 (Q) or 10 (H) alphanumeric characters.
+        PrinterQRCodePlan plan = new PrinterQRCodePlan("HELLO WORLD", 100, PrinterCommands.QRCODE_ERROR_CORRECTION_AUTO, 2, 0);
+        assertEquals(1, plan.getVersion());
+        assertEquals(PrinterCommands.QRCODE_ERROR_CORRECTION_Q, plan.getErrorCorrection());
+
+        plan = new PrinterQRCodePlan("HELLO", 100, PrinterCommands.QRCODE_ERROR_CORRECTION_AUTO, 2, 0);
+        assertEquals(PrinterCommands.QRCODE_ERROR_CORRECTION_H, plan.getErrorCorrection());
+
+        plan = new PrinterQRCodePlan(PrinterQRCodePlanTest.repeat("A", 25), 100, PrinterCommands.QRCODE_ERROR_CORRECTION_AUTO, 2, 0);
+        assertEquals(1, plan.getVersion());
+        assertEquals(PrinterCommands.QRCODE_ERROR_CORRECTION_L, plan.getErrorCorrection());
+
+        plan = new PrinterQRCodePlan(PrinterQRCodePlanTest.repeat("A", 26), 100, PrinterCommands.QRCODE_ERROR_CORRECTION_AUTO, 2, 0);
+        assertEquals(2, plan.getVersion());
+    }
+
+    @Test
+    public void moduleSize_fitsTheRequestedSize() {
+        // Version 1 : 21 modules.
+        PrinterQRCodePlan plan = new PrinterQRCodePlan("HELLO WORLD", 220, PrinterCommands.QRCODE_ERROR_CORRECTION_L, 2, 0);
+        assertEquals(21, plan.getNbrModules());
+        assertEquals(10, plan.getModuleSize());
+        assertEquals(210, plan.getWidthPx());
+        assertEquals(8 + 27 * 210, plan.getNbrRasterBytes());
+        assertTrue(plan.isReadable());
+
+        plan = new PrinterQRCodePlan("HELLO WORLD", 30, PrinterCommands.QRCODE_ERROR_CORRECTION_L, 3, 0);
+        assertEquals(3, plan.getModuleSize());
+        assertTrue(plan.isReadable());
+    }
+
+    @Test
+    public void moduleSize_isCappedByTheMaxWidth() {
+        PrinterQRCodePlan plan = new PrinterQRCodePlan("HELLO WORLD", 220, PrinterCommands.QRCODE_ERROR_CORRECTION_L, 2, 100);
+        assertEquals(4, plan.getModuleSize());
+        assertTrue(plan.getWidthPx() <= 100);
+        assertTrue(plan.isReadable());
+
+        plan = new PrinterQRCodePlan("HELLO WORLD", 220, PrinterCommands.QRCODE_ERROR_CORRECTION_L, 5, 100);
+        assertEquals(4, plan.getModuleSize());
+        assertFalse(plan.isReadable());
+
+        plan = new PrinterQRCodePlan("HELLO WORLD", 220, PrinterCommands.QRCODE_ERROR_CORRECTION_L, 2, 10);
+        assertEquals(1, plan.getModuleSize());
+    }
+
+    @Test
+    public void isEncodable_notWhenTheDataIsTooLong() {
+        char[] data = new char[3000];
+        Arrays.fill(data, 'a');
+        PrinterQRCodePlan plan = new PrinterQRCodePlan(new String(data), 220, PrinterCommands.QRCODE_ERROR_CORRECTION_AUTO, 2, 0);
+        assertFalse(plan.isEncodable());
+        assertEquals(0, plan.getVersion());
+        assertEquals(0, plan.getModuleSize());
+        assertEquals(PrinterCommands.QRCODE_ERROR_CORRECTION_L, plan.getErrorCorrection());
+
+        try {
+            PrinterCommands.QRCodeDataToBytes(plan);
+            fail("A QR code is converted from data too long");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void QRCodeDataToBytes_convertsThePlannedVersion() {
+        PrinterQRCodePlan plan = new PrinterQRCodePlan("https://dantsu.com/caf\u00e9 5 \u20ac", 200, PrinterCommands.QRCODE_ERROR_CORRECTION_AUTO, 2, 0);
+        byte[] image = PrinterCommands.QRCodeDataToBytes(plan);
+        assertEquals(plan.getNbrRasterBytes(), image.length);
+        assertEquals(plan.getWidthPx(), PrinterCommands.getImageCommandHeight(image, 0));
+    }
+}
@@ -0,0 +1,294 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import com.dantsu.printerthermal_escpos_bluetooth.flowcontrol.PrinterFlowControl;
+import com.dantsu.printerthermal_escpos_bluetooth.textparser.PrinterTextParserLine;
+import com.dantsu.printerthermal_escpos_bluetooth.transport.MemoryPrinterTransport;
+
+import static org.junit.Assert.*;
+
+public class PrinterQueueTest {
+
+    /**
+     * Flow control holding the jobs until it is opened, and failing when the printer is unreachable.
+     */
+    private static class GatedFlowControl extends PrinterFlowControl {
+        private CountDownLatch opened = new CountDownLatch(1);
+        private CountDownLatch sending = new CountDownLatch(1);
+        private volatile boolean isUnreachable = false;
+
+        @Override
+        public void send(PrinterBuffer buffer, OutputStream outputStream, InputStream inputStream, int packetSize) throws IOException {
+            this.sending.countDown();
+            try {
+                this.opened.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Sending interrupted");
+            }
+            if (this.isUnreachable) {
+                throw new IOException("Printer unreachable");
+            }
+            buffer.writeTo(outputStream, 0, buffer.size(), packetSize);
+        }
+    }
+
+    /**
+     * Printer recording the parsed texts. The texts starting with "slow" are parsed once releaseSlowParsing is called.
+     */
+    private static class RecordingPrinter extends Printer {
+        private List<String> parsedTexts = Collections.synchronizedList(new ArrayList<String>());
+        private CountDownLatch slowParsing = new CountDownLatch(1);
+        private CountDownLatch lastParsing = new CountDownLatch(1);
+
+        private RecordingPrinter(PrinterConnection connection) {
+            super(connection, 203, 48f, 32);
+        }
+
+        @Override
+        public PrinterTextParserLine[] parseFormattedText(String text) {
+            if (text.startsWith("[L]slow")) {
+                try {
+                    this.slowParsing.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            PrinterTextParserLine[] lines = super.parseFormattedText(text);
+            this.parsedTexts.add(text);
+            if (text.startsWith("[L]last")) {
+                this.lastParsing.countDown();
+            }
+            return lines;
+        }
+    }
+
+    private static class RecordingCallback implements PrinterQueue.Callback {
+        private CountDownLatch called = new CountDownLatch(1);
+        private volatile boolean isPrinted = false;
+        private volatile Throwable error = null;
+        private volatile Thread thread = null;
+
+        @Override
+        public void onPrinted(Printer printer) {
+            this.isPrinted = true;
+            this.thread = Thread.currentThread();
+            this.called.countDown();
+        }
+
+        @Override
+        public void onError(Printer printer, Throwable error) {
+            this.error = error;
+            this.thread = Thread.currentThread();
+            this.called.countDown();
+        }
+
+        private RecordingCallback await() throws InterruptedException {
+            assertTrue(this.called.await(5, TimeUnit.SECONDS));
+            return this;
+        }
+    }
+
+    private MemoryPrinterTransport transport;
+    private GatedFlowControl flowControl;
+    private RecordingPrinter printer;
+    private PrinterQueue queue;
+
+    @Before
+    public void setUp() {
+        this.transport = new MemoryPrinterTransport();
+        this.flowControl = new GatedFlowControl();
+        PrinterConnection connection = new PrinterConnection(this.transport);
+        connection.connect();
+        connection.setFlowControl(this.flowControl);
+        this.printer = new RecordingPrinter(connection);
+        this.queue = new PrinterQueue(this.printer, 4);
+    }
+
+    @After
+    public void tearDown() {
+        this.flowControl.opened.countDown();
+        this.printer.slowParsing.countDown();
+        this.queue.shutdownNow();
+    }
+
+    private String received() throws UnsupportedEncodingException {
+        return new String(this.transport.toByteArray(), "ISO-8859-1");
+    }
+
+    @Test
+    public void submit_printsTheJobsInOrder() throws Exception {
+        this.flowControl.opened.countDown();
+        ArrayList<Future<Printer>> jobs = new ArrayList<Future<Printer>>();
+        jobs.add(this.queue.submit("[L]slow job 0"));
+        for (int i = 1; i < 10; i++) {
+            jobs.add(this.queue.submit("[L]job " + i));
+        }
+        // The next jobs are parsed before the first one.
+        while (this.printer.parsedTexts.size() < 3) {
+            Thread.sleep(1);
+        }
+        this.printer.slowParsing.countDown();
+
+        for (Future<Printer> job : jobs) {
+            assertSame(this.printer, job.get(5, TimeUnit.SECONDS));
+        }
+        String received = this.received();
+        for (int i = 1; i < 10; i++) {
+            assertTrue(received.indexOf("job " + (i - 1)) < received.indexOf("job " + i));
+        }
+    }
+
+    @Test
+    public void submit_parsesWhileTheWriterSends() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        Future<Printer> first = this.queue.submit("[L]first", callback);
+        assertTrue(this.flowControl.sending.await(5, TimeUnit.SECONDS));
+
+        Future<Printer> last = this.queue.submit("[L]last");
+        assertTrue(this.printer.lastParsing.await(5, TimeUnit.SECONDS));
+        assertFalse(first.isDone());
+        assertFalse(last.isDone());
+        assertEquals(0, this.transport.getNbrBytesReceived());
+
+        this.flowControl.opened.countDown();
+        last.get(5, TimeUnit.SECONDS);
+        assertTrue(callback.await().isPrinted);
+        assertNotSame(Thread.currentThread(), callback.thread);
+        assertTrue(this.received().indexOf("first") < this.received().indexOf("last"));
+    }
+
+    @Test
+    public void cancel_stopsTheParsingOfThePendingJob() throws Exception {
+        PrinterQueue queue = new PrinterQueue(this.printer, 1);
+        try {
+            this.flowControl.opened.countDown();
+            Future<Printer> slow = queue.submit("[L]slow");
+            RecordingCallback callback = new RecordingCallback();
+            Future<Printer> cancelled = queue.submit("[L]cancelled", callback);
+
+            assertTrue(cancelled.cancel(false));
+            assertTrue(callback.await().error instanceof CancellationException);
+            assertSame(Thread.currentThread(), callback.thread);
+
+            this.printer.slowParsing.countDown();
+            slow.get(5, TimeUnit.SECONDS);
+            queue.shutdown();
+            assertTrue(queue.awaitTermination(5, TimeUnit.SECONDS));
+
+            assertEquals(Collections.singletonList("[L]slow"), this.printer.parsedTexts);
+            assertEquals(-1, this.received().indexOf("cancelled"));
+        } finally {
+            queue.shutdownNow();
+        }
+    }
+
+    @Test
+    public void cancelPendingJobs_removesTheJobsNotPrintedYet() throws Exception {
+        Future<Printer> first = this.queue.submit("[L]first");
+        assertTrue(this.flowControl.sending.await(5, TimeUnit.SECONDS));
+        RecordingCallback secondCallback = new RecordingCallback(), thirdCallback = new RecordingCallback();
+        Future<Printer> second = this.queue.submit("[L]second", secondCallback);
+        Future<Printer> third = this.queue.submit("[L]third", thirdCallback);
+        assertEquals(2, this.queue.getNbrPendingJobs());
+
+        this.queue.cancelPendingJobs();
+
+        assertEquals(0, this.queue.getNbrPendingJobs());
+        assertTrue(second.isCancelled());
+        assertTrue(third.isCancelled());
+        assertTrue(secondCallback.await().error instanceof CancellationException);
+        assertTrue(thirdCallback.await().error instanceof CancellationException);
+        assertFalse(first.isDone());
+
+        this.flowControl.opened.countDown();
+        first.get(5, TimeUnit.SECONDS);
+        String received = this.received();
+        assertTrue(received.contains("first"));
+        assertFalse(received.contains("second"));
+        assertFalse(received.contains("third"));
+    }
+
+    @Test
+    public void shutdown_printsTheSubmittedJobs() throws Exception {
+        Future<Printer> first = this.queue.submit("[L]first"), second = this.queue.submit("[L]second");
+        this.queue.shutdown();
+        this.flowControl.opened.countDown();
+
+        assertTrue(this.queue.awaitTermination(5, TimeUnit.SECONDS));
+        assertTrue(first.isDone() && !first.isCancelled());
+        assertTrue(second.isDone() && !second.isCancelled());
+        assertTrue(this.received().contains("second"));
+        try {
+            this.queue.submit("[L]third");
+            fail("A job is submitted after the shutdown");
+        } catch (RejectedExecutionException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void shutdownNow_interruptsThePrintedJob() throws Exception {
+        RecordingCallback firstCallback = new RecordingCallback(), secondCallback = new RecordingCallback();
+        this.queue.submit("[L]first", firstCallback);
+        assertTrue(this.flowControl.sending.await(5, TimeUnit.SECONDS));
+        Future<Printer> second = this.queue.submit("[L]second", secondCallback);
+
+        this.queue.shutdownNow();
+
+        assertTrue(second.isCancelled());
+        assertTrue(secondCallback.await().error instanceof CancellationException);
+        assertTrue(firstCallback.await().error instanceof InterruptedIOException);
+        assertTrue(this.queue.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(0, this.transport.getNbrBytesReceived());
+    }
+
+    @Test
+    public void submit_reportsTheTransmissionErrors() throws Exception {
+        this.flowControl.isUnreachable = true;
+        this.flowControl.opened.countDown();
+        RecordingCallback callback = new RecordingCallback();
+        Future<Printer> job = this.queue.submit("[L]lost", callback);
+
+        try {
+            job.get(5, TimeUnit.SECONDS);
+            fail("The transmission error is not thrown");
+        } catch (ExecutionException e) {
+            assertEquals("Printer unreachable", e.getCause().getMessage());
+        }
+        assertEquals("Printer unreachable", callback.await().error.getMessage());
+        assertFalse(callback.isPrinted);
+        assertNotSame(Thread.currentThread(), callback.thread);
+    }
+
+    @Test
+    public void submit_reportsTheMissingConnection() throws Exception {
+        PrinterQueue queue = new PrinterQueue(new Printer(203, 48f, 32), 1);
+        try {
+            RecordingCallback callback = new RecordingCallback();
+            queue.submit("[L]lost", callback);
+            assertTrue(callback.await().error instanceof IOException);
+            assertFalse(callback.isPrinted);
+        } finally {
+            queue.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.dantsu.printerthermal_escpos_bluetooth;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import com.dantsu.printerthermal_escpos_bluetooth.textparser.PrinterTextParser;
+import com.dantsu.printerthermal_escpos_bluetooth.transport.MemoryPrinterTransport;
+
+import static org.junit.Assert.*;
+
+public class PrinterTest {
+
+    /**
+     * Black image failing when a line is read.
+     */
+    private static class FailingImageSource implements PrinterImageSource {
+        private int failingLine;
+        private Throwable failure;
+
+        private FailingImageSource(int failingLine, Throwable failure) {
+            this.failingLine = failingLine;
+            this.failure = failure;
+        }
+
+        @Override
+        public int getWidth() {
+            return 64;
+        }
+
+        @Override
+        public int getHeight() {
+            return 600;
+        }
+
+        @Override
+        public void readLine(int posY, int[] pixels) {
+            if (posY == this.failingLine) {
+                if (this.failure instanceof Error) {
+                    throw (Error) this.failure;
+                }
+                throw (RuntimeException) this.failure;
+            }
+            Arrays.fill(pixels, 0xFF000000);
+        }
+
+        @Override
+        public PrinterImageSource copy() {
+            return this;
+        }
+    }
+
+    private MemoryPrinterTransport transport;
+    private Printer printer;
+
+    @Before
+    public void setUp() {
+        this.transport = new MemoryPrinterTransport();
+        this.printer = new Printer(new PrinterConnection(this.transport), 203, 48f, 32);
+    }
+
+    @Test
+    public void printBitmap_printsAllTheBands() {
+        this.printer.printBitmap(new FailingImageSource(-1, null), PrinterTextParser.TAGS_ALIGN_LEFT);
+        // 3 bands of 256, 256 and 88 lines of 8 bytes.
+        assertTrue(this.transport.getNbrBytesReceived() >= 3 * 8 + 600 * 8);
+    }
+
+    @Test
+    public void printBitmap_throwsTheConversionError() {
+        OutOfMemoryError error = new OutOfMemoryError("test");
+        try {
+            this.printer.printBitmap(new FailingImageSource(300, error), PrinterTextParser.TAGS_ALIGN_LEFT);
+            fail("The conversion error is not thrown");
+        } catch (OutOfMemoryError e) {
+            assertSame(error, e);
+        }
+        // The first band was printed before the failure.
+        assertTrue(this.transport.getNbrBytesReceived() >= 8 + 256 * 8);
+        assertTrue(this.transport.getNbrBytesReceived() < 2 * (8 + 256 * 8));
+    }
+
+    @Test
+    public void printBitmap_throwsTheConversionException() {
+        IllegalStateException exception = new IllegalStateException("test");
+        try {
+            this.printer.printBitmap(new FailingImageSource(0, exception), PrinterTextParser.TAGS_ALIGN_LEFT);
+            fail("The conversion exception is not thrown");
+        } catch (IllegalStateException e) {
+            assertSame(exception, e);
+        }
+        assertEquals(0, this.transport.getNbrBytesReceived());
+    }
+}
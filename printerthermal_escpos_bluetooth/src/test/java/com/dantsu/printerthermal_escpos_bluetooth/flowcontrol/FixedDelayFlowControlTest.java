@@ -0,0 +1,51 @@
+package com.dantsu.printerthermal_escpos_bluetooth.flowcontrol;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterBuffer;
+import com.dantsu.printerthermal_escpos_bluetooth.transport.MemoryPrinterTransport;
+
+import static org.junit.Assert.*;
+
+public class FixedDelayFlowControlTest {
+    
+    @Test
+    public void send_waitsTheTimeOfTheMarks() throws IOException {
+        MemoryPrinterTransport transport = new MemoryPrinterTransport();
+        PrinterBuffer buffer = new PrinterBuffer()
+            .write(new byte[100]).mark(30)
+            .write(new byte[100]).mark(0)
+            .write(new byte[100]).mark(40)
+            .write(new byte[100]);
+        
+        long start = System.currentTimeMillis();
+        new FixedDelayFlowControl().send(buffer, transport.getOutputStream(), transport.getInputStream(), 64);
+        
+        assertTrue(System.currentTimeMillis() - start >= 70);
+        assertArrayEquals(buffer.toByteArray(), transport.toByteArray());
+    }
+    
+    @Test
+    public void send_stopsWhenInterrupted() throws IOException {
+        MemoryPrinterTransport transport = new MemoryPrinterTransport();
+        PrinterBuffer buffer = new PrinterBuffer()
+            .write(new byte[100]).mark(10000)
+            .write(new byte[100]);
+        
+        Thread.currentThread().interrupt();
+        long start = System.currentTimeMillis();
+        try {
+            new FixedDelayFlowControl().send(buffer, transport.getOutputStream(), transport.getInputStream(), 0);
+            fail("The interruption is not thrown");
+        } catch (InterruptedIOException e) {
+            // Expected.
+        }
+        
+        assertTrue(Thread.interrupted());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(100, transport.getNbrBytesReceived());
+    }
+}
@@ -0,0 +1,198 @@
+package com.dantsu.printerthermal_escpos_bluetooth.flowcontrol;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterBuffer;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterConnection;
+import com.dantsu.printerthermal_escpos_bluetooth.transport.MemoryPrinterTransport;
+
+import static org.junit.Assert.*;
+
+public class StatusFlowControlTest {
+    
+    private static final byte DATA = 0x55;
+    
+    /**
+     * Printer answering the status requests, which checks that the host never sends data while too many status
+     * requests are waiting to be read.
+     */
+    static class PacedPrinter {
+        MemoryPrinterTransport transport = new MemoryPrinterTransport();
+        OutputStream transportOutputStream = this.transport.getOutputStream();
+        InputStream transportInputStream = this.transport.getInputStream();
+        ArrayList<Integer> windows = new ArrayList<Integer>();
+        int maxPendingWindows;
+        int pendingRequests = 0;
+        int window = 0;
+        
+        PacedPrinter(int maxPendingWindows) {
+            this.maxPendingWindows = maxPendingWindows;
+        }
+        
+        OutputStream getOutputStream() {
+            return new OutputStream() {
+                @Override
+                public void write(int b) throws IOException {
+                    this.write(new byte[]{(byte) b}, 0, 1);
+                }
+                
+                @Override
+                public void write(byte[] bytes, int offset, int length) throws IOException {
+                    if (length == 3 && bytes[offset] == 0x1D && bytes[offset + 1] == 0x72) {
+                        PacedPrinter.this.pendingRequests++;
+                        PacedPrinter.this.windows.add(PacedPrinter.this.window);
+                        PacedPrinter.this.window = 0;
+                    } else if (length > 0 && bytes[offset] == StatusFlowControlTest.DATA) {
+                        assertTrue(PacedPrinter.this.pendingRequests < PacedPrinter.this.maxPendingWindows);
+                        PacedPrinter.this.window += length;
+                    }
+                    PacedPrinter.this.transportOutputStream.write(bytes, offset, length);
+                }
+            };
+        }
+        
+        InputStream getInputStream() {
+            return new InputStream() {
+                @Override
+                public int available() throws IOException {
+                    return PacedPrinter.this.transportInputStream.available();
+                }
+                
+                @Override
+                public int read() throws IOException {
+                    int b = PacedPrinter.this.transportInputStream.read();
+                    if (b == 0x00) {
+                        PacedPrinter.this.pendingRequests--;
+                    }
+                    return b;
+                }
+            };
+        }
+    }
+    
+    private static PrinterBuffer commands(int... lengths) {
+        PrinterBuffer buffer = new PrinterBuffer();
+        for (int length : lengths) {
+            byte[] command = new byte[length];
+            java.util.Arrays.fill(command, StatusFlowControlTest.DATA);
+            buffer.write(command).mark(0);
+        }
+        return buffer;
+    }
+    
+    @Test
+    public void send_endsWindowsOnCommands() throws IOException {
+        PacedPrinter printer = new PacedPrinter(2);
+        StatusFlowControl flowControl = new StatusFlowControl(1024, 2);
+        PrinterBuffer buffer = StatusFlowControlTest.commands(300, 5000, 600, 600, 10);
+        
+        flowControl.send(buffer, printer.getOutputStream(), printer.getInputStream(), 990);
+        
+        assertEquals(Boolean.TRUE, flowControl.isStatusSupported());
+        // The image larger than the window is sent whole, the last window waits for the next commands.
+        assertEquals("[300, 5000, 600]", printer.windows.toString());
+        assertEquals(610, printer.window);
+    }
+    
+    @Test
+    public void send_neverSendsTheStatusRequestInsideACommand() throws IOException {
+        PacedPrinter printer = new PacedPrinter(1);
+        StatusFlowControl flowControl = new StatusFlowControl(1000, 1);
+        int[] lengths = new int[200];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = 1 + (i * 37) % 250;
+        }
+        
+        flowControl.send(StatusFlowControlTest.commands(lengths), printer.getOutputStream(), printer.getInputStream(), 990);
+        
+        int command = 0, windowLength = 0;
+        for (int window : printer.windows) {
+            while (windowLength < window) {
+                windowLength += lengths[command++];
+            }
+            assertEquals(window, windowLength);
+            assertTrue(window <= 1000);
+            windowLength = 0;
+        }
+    }
+    
+    @Test
+    public void send_batchesTheCommandsSentOutsideOfAJob() {
+        MemoryPrinterTransport transport = new MemoryPrinterTransport();
+        PrinterConnection connection = new PrinterConnection(transport);
+        connection.connect();
+        
+        for (int i = 0; i < 10; i++) {
+            connection.setAlign(i % 2 == 0 ? PrinterCommands.TEXT_ALIGN_LEFT : PrinterCommands.TEXT_ALIGN_RIGHT).printText("Line " + i).newLine();
+        }
+        
+        byte[] received = transport.toByteArray();
+        int statusRequests = 0;
+        for (int i = 0; i + 1 < received.length; i++) {
+            if (received[i] == 0x1D && received[i + 1] == 0x72) {
+                statusRequests++;
+            }
+        }
+        assertEquals(0, statusRequests);
+        assertEquals(0x10, received[0]);
+    }
+    
+    @Test
+    public void send_fallsBackToFixedDelaysWithoutAnswer() throws IOException {
+        MemoryPrinterTransport transport = new MemoryPrinterTransport().setAnsweringStatus(false);
+        StatusFlowControl flowControl = new StatusFlowControl().setTimeouts(10, 10);
+        PrinterBuffer buffer = StatusFlowControlTest.commands(2000, 2000);
+        
+        flowControl.send(buffer, transport.getOutputStream(), transport.getInputStream(), 990);
+        
+        assertEquals(Boolean.FALSE, flowControl.isStatusSupported());
+        assertEquals(PrinterCommands.STATUS_REAL_TIME_PRINTER.length + buffer.size(), transport.getNbrBytesReceived());
+        
+        flowControl.reset();
+        assertNull(flowControl.isStatusSupported());
+    }
+    
+    @Test
+    public void send_stopsWhenInterrupted() throws IOException {
+        MemoryPrinterTransport transport = new MemoryPrinterTransport();
+        final InputStream transportInputStream = transport.getInputStream();
+        // Printer answering the real-time status request only, the host waits the end of the first window.
+        InputStream inputStream = new InputStream() {
+            private boolean isProbed = false;
+            
+            @Override
+            public int available() throws IOException {
+                return this.isProbed ? 0 : transportInputStream.available();
+            }
+            
+            @Override
+            public int read() throws IOException {
+                this.isProbed = true;
+                return transportInputStream.read();
+            }
+        };
+        StatusFlowControl flowControl = new StatusFlowControl(100, 1);
+        PrinterBuffer buffer = StatusFlowControlTest.commands(100, 100, 100);
+        
+        Thread.currentThread().interrupt();
+        long start = System.currentTimeMillis();
+        try {
+            flowControl.send(buffer, transport.getOutputStream(), inputStream, 990);
+            fail("The interruption is not thrown");
+        } catch (InterruptedIOException e) {
+            // Expected.
+        }
+        
+        assertTrue(Thread.interrupted());
+        assertTrue(System.currentTimeMillis() - start < StatusFlowControl.DEFAULT_STATUS_TIMEOUT);
+        assertEquals(Boolean.TRUE, flowControl.isStatusSupported());
+        assertTrue(transport.getNbrBytesReceived() < buffer.size());
+    }
+}
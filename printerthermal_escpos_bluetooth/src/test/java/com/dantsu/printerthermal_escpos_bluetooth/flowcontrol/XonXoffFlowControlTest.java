@@ -0,0 +1,77 @@
+package com.dantsu.printerthermal_escpos_bluetooth.flowcontrol;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterBuffer;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+import com.dantsu.printerthermal_escpos_bluetooth.transport.MemoryPrinterTransport;
+
+import static org.junit.Assert.*;
+
+public class XonXoffFlowControlTest {
+    
+    @Test
+    public void send_pausesUntilXon() throws IOException {
+        final MemoryPrinterTransport transport = new MemoryPrinterTransport();
+        PrinterBuffer buffer = new PrinterBuffer().write(new byte[300]);
+        transport.addResponse(new byte[]{PrinterCommands.XOFF});
+        
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                transport.addResponse(new byte[]{PrinterCommands.XON});
+            }
+        }).start();
+        
+        long start = System.currentTimeMillis();
+        new XonXoffFlowControl(5000).send(buffer, transport.getOutputStream(), transport.getInputStream(), 100);
+        
+        assertTrue(System.currentTimeMillis() - start >= 90);
+        assertEquals(300, transport.getNbrBytesReceived());
+    }
+    
+    @Test
+    public void send_sendsWithoutPauseAfterXon() throws IOException {
+        MemoryPrinterTransport transport = new MemoryPrinterTransport();
+        transport.addResponse(new byte[]{PrinterCommands.XOFF, PrinterCommands.XON});
+        
+        new XonXoffFlowControl(5000).send(new PrinterBuffer().write(new byte[300]), transport.getOutputStream(), transport.getInputStream(), 100);
+        
+        assertEquals(300, transport.getNbrBytesReceived());
+    }
+    
+    @Test(expected = IOException.class)
+    public void send_failsWhenThePrinterStaysBusy() throws IOException {
+        MemoryPrinterTransport transport = new MemoryPrinterTransport();
+        transport.addResponse(new byte[]{PrinterCommands.XOFF});
+        
+        new XonXoffFlowControl(50).send(new PrinterBuffer().write(new byte[300]), transport.getOutputStream(), transport.getInputStream(), 100);
+    }
+    
+    @Test
+    public void send_stopsWhenInterrupted() throws IOException {
+        MemoryPrinterTransport transport = new MemoryPrinterTransport();
+        transport.addResponse(new byte[]{PrinterCommands.XOFF});
+        
+        Thread.currentThread().interrupt();
+        long start = System.currentTimeMillis();
+        try {
+            new XonXoffFlowControl(10000).send(new PrinterBuffer().write(new byte[300]), transport.getOutputStream(), transport.getInputStream(), 100);
+            fail("The interruption is not thrown");
+        } catch (InterruptedIOException e) {
+            // Expected.
+        }
+        
+        assertTrue(Thread.interrupted());
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(0, transport.getNbrBytesReceived());
+    }
+}
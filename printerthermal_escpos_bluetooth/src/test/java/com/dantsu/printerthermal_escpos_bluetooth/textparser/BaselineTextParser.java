@@ -0,0 +1,313 @@
+package com.dantsu.printerthermal_escpos_bluetooth.textparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+
+/**
+ * Regex parser of the formatted text of the version 1.x, kept as a reference for the tests of the tokenizer. It only
+ * handles the text lines : images, barcodes and QR codes are not supported. Like the original, it throws an exception
+ * on the texts it cannot parse (lines shorter than 3 chars without alignment tag, unterminated attribute values...).
+ */
+class BaselineTextParser {
+    
+    /**
+     * Parsed text element : a text and its formatting commands.
+     */
+    static class Element {
+        String text;
+        byte[] textSize;
+        byte[] textBold;
+        byte[] textUnderline;
+        
+        Element(String text, byte[] textSize, byte[] textBold, byte[] textUnderline) {
+            this.text = text;
+            this.textSize = textSize;
+            this.textBold = textBold;
+            this.textUnderline = textUnderline;
+        }
+        
+        int length() {
+            int coef = 1;
+            if (Arrays.equals(this.textSize, PrinterCommands.TEXT_SIZE_DOUBLE_WIDTH) || Arrays.equals(this.textSize, PrinterCommands.TEXT_SIZE_BIG)) {
+                coef = 2;
+            }
+            return this.text.length() * coef;
+        }
+    }
+    
+    private static String generateSpace(int nbrSpace) {
+        StringBuilder str = new StringBuilder();
+        for (int i = 0; i < nbrSpace; i++) {
+            str.append(" ");
+        }
+        return str.toString();
+    }
+    
+    
+    private int nbrCharactersPerLine;
+    private ArrayList<byte[]> textSize = new ArrayList<byte[]>();
+    private ArrayList<byte[]> textBold = new ArrayList<byte[]>();
+    private ArrayList<byte[]> textUnderline = new ArrayList<byte[]>();
+    
+    private int nbrColumns;
+    private int nbrCharColumn;
+    private int nbrCharForgetted;
+    private int nbrCharColumnExceeded;
+    
+    BaselineTextParser(int nbrCharactersPerLine) {
+        this.nbrCharactersPerLine = nbrCharactersPerLine;
+        this.textSize.add(PrinterCommands.TEXT_SIZE_MEDIUM);
+        this.textBold.add(PrinterCommands.TEXT_WEIGHT_NORMAL);
+        this.textUnderline.add(PrinterCommands.TEXT_UNDERLINE_OFF);
+    }
+    
+    private static byte[] last(ArrayList<byte[]> stack) {
+        return stack.get(stack.size() - 1);
+    }
+    
+    private static void dropLast(ArrayList<byte[]> stack, byte[] isLastByte) {
+        if (Arrays.equals(BaselineTextParser.last(stack), isLastByte)) {
+            stack.remove(stack.size() - 1);
+        }
+    }
+    
+    /**
+     * Parse the formatted text.
+     *
+     * @return Elements of each column of each line
+     */
+    ArrayList<ArrayList<ArrayList<Element>>> parse(String text) {
+        ArrayList<ArrayList<ArrayList<Element>>> lines = new ArrayList<ArrayList<ArrayList<Element>>>();
+        for (String line : text.split("\n|\r\n")) {
+            lines.add(this.parseLine(line));
+        }
+        return lines;
+    }
+    
+    private ArrayList<ArrayList<Element>> parseLine(String textLine) {
+        Matcher matcher = Pattern.compile("\\[L\\]|\\[C\\]|\\[R\\]").matcher(textLine);
+        ArrayList<String> columnsList = new ArrayList<String>();
+        int lastPosition = 0;
+        while (matcher.find()) {
+            int startPosition = matcher.start();
+            if (startPosition > 0) {
+                columnsList.add(textLine.substring(lastPosition, startPosition));
+            }
+            lastPosition = startPosition;
+        }
+        columnsList.add(textLine.substring(lastPosition));
+        
+        this.nbrColumns = columnsList.size();
+        this.nbrCharColumn = (int) Math.floor(((float) this.nbrCharactersPerLine) / ((float) this.nbrColumns));
+        this.nbrCharForgetted = this.nbrCharactersPerLine - (this.nbrCharColumn * this.nbrColumns);
+        this.nbrCharColumnExceeded = 0;
+        
+        ArrayList<ArrayList<Element>> columns = new ArrayList<ArrayList<Element>>();
+        for (String column : columnsList) {
+            columns.add(this.parseColumn(column));
+        }
+        return columns;
+    }
+    
+    private ArrayList<Element> parseColumn(String textColumn) {
+        ArrayList<Element> elements = new ArrayList<Element>();
+        String textAlign = PrinterTextParser.TAGS_ALIGN_LEFT;
+        byte[] textUnderlineStartColumn = BaselineTextParser.last(this.textUnderline);
+        
+        switch (textColumn.substring(0, 3).toUpperCase()) {
+            case "[L]":
+            case "[C]":
+            case "[R]":
+                textAlign = textColumn.substring(1, 2).toUpperCase();
+                textColumn = textColumn.substring(3);
+                break;
+        }
+        
+        String trimmedTextColumn = textColumn.trim();
+        if (this.nbrColumns == 1 && trimmedTextColumn.indexOf("<") == 0) {
+            int openTagEndIndex = trimmedTextColumn.indexOf(">", 1) + 1;
+            if (0 < openTagEndIndex) {
+                // Only the image, barcode and QR code tags are looked for here.
+                new Tag(trimmedTextColumn.substring(0, openTagEndIndex));
+            }
+        }
+        
+        int offset = 0;
+        while (true) {
+            int openTagIndex = textColumn.indexOf("<", offset), closeTagIndex = -1;
+            if (openTagIndex != -1) {
+                closeTagIndex = textColumn.indexOf(">", openTagIndex);
+            } else {
+                openTagIndex = textColumn.length();
+            }
+            
+            elements.add(this.newString(textColumn.substring(offset, openTagIndex)));
+            
+            if (closeTagIndex == -1) {
+                break;
+            }
+            
+            closeTagIndex++;
+            Tag tag = new Tag(textColumn.substring(openTagIndex, closeTagIndex));
+            
+            if (PrinterTextParser.isTagTextFormat(tag.tagName)) {
+                if (tag.isCloseTag) {
+                    switch (tag.tagName) {
+                        case PrinterTextParser.TAGS_FORMAT_TEXT_BOLD:
+                            BaselineTextParser.dropLast(this.textBold, PrinterCommands.TEXT_WEIGHT_BOLD);
+                            break;
+                        case PrinterTextParser.TAGS_FORMAT_TEXT_UNDERLINE:
+                            BaselineTextParser.dropLast(this.textUnderline, PrinterCommands.TEXT_UNDERLINE_LARGE);
+                            break;
+                        case PrinterTextParser.TAGS_FORMAT_TEXT_FONT:
+                            if (this.textSize.size() > 1) {
+                                this.textSize.remove(this.textSize.size() - 1);
+                            }
+                            break;
+                    }
+                } else {
+                    switch (tag.tagName) {
+                        case PrinterTextParser.TAGS_FORMAT_TEXT_BOLD:
+                            this.textBold.add(PrinterCommands.TEXT_WEIGHT_BOLD);
+                            break;
+                        case PrinterTextParser.TAGS_FORMAT_TEXT_UNDERLINE:
+                            this.textUnderline.add(PrinterCommands.TEXT_UNDERLINE_LARGE);
+                            break;
+                        case PrinterTextParser.TAGS_FORMAT_TEXT_FONT:
+                            if (tag.attributes.containsKey(PrinterTextParser.ATTR_FORMAT_TEXT_SIZE)) {
+                                switch (tag.attributes.get(PrinterTextParser.ATTR_FORMAT_TEXT_SIZE)) {
+                                    case PrinterTextParser.ATTR_FORMAT_TEXT_SIZE_SMALL:
+                                        this.textSize.add(PrinterCommands.TEXT_SIZE_NORMAL);
+                                        break;
+                                    case PrinterTextParser.ATTR_FORMAT_TEXT_SIZE_MEDIUM:
+                                        this.textSize.add(PrinterCommands.TEXT_SIZE_MEDIUM);
+                                        break;
+                                    case PrinterTextParser.ATTR_FORMAT_TEXT_SIZE_TALL:
+                                        this.textSize.add(PrinterCommands.TEXT_SIZE_DOUBLE_HEIGHT);
+                                        break;
+                                    case PrinterTextParser.ATTR_FORMAT_TEXT_SIZE_WIDE:
+                                        this.textSize.add(PrinterCommands.TEXT_SIZE_DOUBLE_WIDTH);
+                                        break;
+                                    case PrinterTextParser.ATTR_FORMAT_TEXT_SIZE_BIG:
+                                        this.textSize.add(PrinterCommands.TEXT_SIZE_BIG);
+                                        break;
+                                }
+                            }
+                            break;
+                    }
+                }
+                offset = closeTagIndex;
+            } else {
+                elements.add(this.newString("<"));
+                offset = openTagIndex + 1;
+            }
+        }
+        
+        int nbrCharColumn = this.nbrCharColumn,
+            nbrCharForgetted = this.nbrCharForgetted,
+            nbrCharColumnExceeded = this.nbrCharColumnExceeded,
+            nbrCharTextWithoutTag = 0,
+            leftSpace = 0,
+            rightSpace = 0;
+        
+        for (Element element : elements) {
+            nbrCharTextWithoutTag += element.length();
+        }
+        
+        switch (textAlign) {
+            case PrinterTextParser.TAGS_ALIGN_LEFT:
+                rightSpace = nbrCharColumn - nbrCharTextWithoutTag;
+                break;
+            case PrinterTextParser.TAGS_ALIGN_CENTER:
+                leftSpace = (int) Math.floor((((float) nbrCharColumn) - ((float) nbrCharTextWithoutTag)) / 2f);
+                rightSpace = nbrCharColumn - nbrCharTextWithoutTag - leftSpace;
+                break;
+            case PrinterTextParser.TAGS_ALIGN_RIGHT:
+                leftSpace = nbrCharColumn - nbrCharTextWithoutTag;
+                break;
+        }
+        
+        if (nbrCharForgetted > 0) {
+            nbrCharForgetted -= 1;
+            rightSpace++;
+        }
+        
+        if (nbrCharColumnExceeded < 0) {
+            leftSpace += nbrCharColumnExceeded;
+            nbrCharColumnExceeded = 0;
+            if (leftSpace < 1) {
+                rightSpace += leftSpace - 1;
+                leftSpace = 1;
+            }
+        }
+        
+        if (leftSpace < 0) {
+            nbrCharColumnExceeded += leftSpace;
+            leftSpace = 0;
+        }
+        if (rightSpace < 0) {
+            nbrCharColumnExceeded += rightSpace;
+            rightSpace = 0;
+        }
+        
+        if (leftSpace > 0) {
+            elements.add(0, new Element(BaselineTextParser.generateSpace(leftSpace), PrinterCommands.TEXT_SIZE_MEDIUM, PrinterCommands.TEXT_WEIGHT_NORMAL, textUnderlineStartColumn));
+        }
+        if (rightSpace > 0) {
+            elements.add(new Element(BaselineTextParser.generateSpace(rightSpace), PrinterCommands.TEXT_SIZE_MEDIUM, PrinterCommands.TEXT_WEIGHT_NORMAL, BaselineTextParser.last(this.textUnderline)));
+        }
+        
+        this.nbrCharForgetted = nbrCharForgetted;
+        this.nbrCharColumnExceeded = nbrCharColumnExceeded;
+        return elements;
+    }
+    
+    private Element newString(String text) {
+        return new Element(text, BaselineTextParser.last(this.textSize), BaselineTextParser.last(this.textBold), BaselineTextParser.last(this.textUnderline));
+    }
+    
+    /**
+     * Tag parser of the version 1.x.
+     */
+    static class Tag {
+        String tagName = "";
+        Hashtable<String, String> attributes = new Hashtable<String, String>();
+        boolean isCloseTag = false;
+        
+        Tag(String tag) {
+            tag = tag.trim();
+            if (!tag.substring(0, 1).equals("<") || !tag.substring(tag.length() - 1).equals(">")) {
+                return;
+            }
+            int openTagIndex = tag.indexOf("<"),
+                closeTagIndex = tag.indexOf(">"),
+                nextSpaceIndex = tag.indexOf(" ");
+            
+            if (nextSpaceIndex != -1 && nextSpaceIndex < closeTagIndex) {
+                this.tagName = tag.substring(openTagIndex + 1, nextSpaceIndex).toLowerCase();
+                String attributesString = tag.substring(nextSpaceIndex, closeTagIndex).trim();
+                while (attributesString.contains("='")) {
+                    int egalPos = attributesString.indexOf("='"), endPos = attributesString.indexOf("'", egalPos + 2);
+                    String attributeName = attributesString.substring(0, egalPos);
+                    String attributeValue = attributesString.substring(egalPos + 2, endPos);
+                    if (!attributeName.equals("")) {
+                        this.attributes.put(attributeName, attributeValue);
+                    }
+                    attributesString = attributesString.substring(endPos + 1).trim();
+                }
+            } else {
+                this.tagName = tag.substring(openTagIndex + 1, closeTagIndex).toLowerCase();
+            }
+            
+            if (this.tagName.substring(0, 1).equals("/")) {
+                this.tagName = this.tagName.substring(1);
+                this.isCloseTag = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.dantsu.printerthermal_escpos_bluetooth.textparser;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PrinterTextParserImgTest {
+
+    /**
+     * Hexadecimal string converted like the version 1.x did : Integer.toHexString for each byte.
+     */
+    private static String baselineBytesToHexadecimalString(byte[] bytes) {
+        StringBuilder imageHexString = new StringBuilder();
+        for (byte aByte : bytes) {
+            String hexString = Integer.toHexString(aByte & 0xFF);
+            if (hexString.length() == 1) {
+                hexString = "0" + hexString;
+            }
+            imageHexString.append(hexString);
+        }
+        return imageHexString.toString();
+    }
+
+    /**
+     * Bytes converted like the version 1.x did : Integer.parseInt for each pair of characters, the bytes after an
+     * invalid pair being left to 0.
+     */
+    private static byte[] baselineHexadecimalStringToBytes(String hexString) {
+        byte[] bytes = new byte[hexString.length() / 2];
+        try {
+            for (int i = 0; i < bytes.length; i++) {
+                int pos = i * 2;
+                bytes[i] = (byte) Integer.parseInt(hexString.substring(pos, pos + 2), 16);
+            }
+        } catch (NumberFormatException e) {
+            // The baseline printed the stack trace.
+        }
+        return bytes;
+    }
+
+    @Test
+    public void bytesToHexadecimalString_roundTripsEveryByte() {
+        byte[] bytes = new byte[256];
+        for (int i = 0; i < 256; i++) {
+            bytes[i] = (byte) i;
+        }
+        String hexString = PrinterTextParserImg.bytesToHexadecimalString(bytes);
+        assertEquals(PrinterTextParserImgTest.baselineBytesToHexadecimalString(bytes), hexString);
+        assertArrayEquals(bytes, PrinterTextParserImg.hexadecimalStringToBytes(hexString));
+        assertEquals("", PrinterTextParserImg.bytesToHexadecimalString(new byte[0]));
+    }
+
+    @Test
+    public void hexadecimalStringToBytes_readsBothCases() {
+        assertArrayEquals(new byte[]{0x0a, 0x1b, (byte) 0xcd, (byte) 0xef}, PrinterTextParserImg.hexadecimalStringToBytes("0a1bcdef"));
+        assertArrayEquals(new byte[]{0x0a, 0x1b, (byte) 0xcd, (byte) 0xef}, PrinterTextParserImg.hexadecimalStringToBytes("0A1BCDEF"));
+        assertArrayEquals(new byte[]{0x0a, 0x1b, (byte) 0xcd, (byte) 0xef}, PrinterTextParserImg.hexadecimalStringToBytes("0a1BcDeF"));
+
+        Random random = new Random(16);
+        String digits = "0123456789abcdefABCDEF";
+        for (int length = 0; length < 64; length += 2) {
+            StringBuilder hexString = new StringBuilder();
+            for (int i = 0; i < length; i++) {
+                hexString.append(digits.charAt(random.nextInt(digits.length())));
+            }
+            assertArrayEquals(
+                hexString.toString(),
+                PrinterTextParserImgTest.baselineHexadecimalStringToBytes(hexString.toString()),
+                PrinterTextParserImg.hexadecimalStringToBytes(hexString.toString())
+            );
+        }
+    }
+
+    @Test
+    public void hexadecimalStringToBytes_ignoresTheLastCharacterOfAnOddLength() {
+        assertArrayEquals(new byte[]{0x0a, 0x1b}, PrinterTextParserImg.hexadecimalStringToBytes("0a1bc"));
+        assertArrayEquals(new byte[0], PrinterTextParserImg.hexadecimalStringToBytes("f"));
+        assertArrayEquals(
+            PrinterTextParserImgTest.baselineHexadecimalStringToBytes("0a1bc"),
+            PrinterTextParserImg.hexadecimalStringToBytes("0a1bc")
+        );
+    }
+
+    @Test
+    public void hexadecimalStringToBytes_stopsAtTheFirstInvalidPair() {
+        String[] hexStrings = {"0a1bzz2c", "g0", "0a 1b", "0a\u00e91b", "0x0a"};
+        for (String hexString : hexStrings) {
+            assertArrayEquals(
+                hexString,
+                PrinterTextParserImgTest.baselineHexadecimalStringToBytes(hexString),
+                PrinterTextParserImg.hexadecimalStringToBytes(hexString)
+            );
+        }
+        assertArrayEquals(new byte[]{0x0a, 0x1b, 0, 0}, PrinterTextParserImg.hexadecimalStringToBytes("0a1bzz2c"));
+    }
+}
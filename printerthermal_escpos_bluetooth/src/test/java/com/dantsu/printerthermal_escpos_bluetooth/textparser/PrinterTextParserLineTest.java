@@ -0,0 +1,126 @@
+package com.dantsu.printerthermal_escpos_bluetooth.textparser;
+
+import org.junit.Test;
+
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterConnection;
+
+import static org.junit.Assert.*;
+
+public class PrinterTextParserLineTest {
+
+    private static final PrinterTextStyle NORMAL = PrinterTextStyle.get(
+        PrinterCommands.TEXT_SIZE_NORMAL, PrinterCommands.TEXT_WEIGHT_NORMAL, PrinterCommands.TEXT_UNDERLINE_OFF
+    );
+    private static final PrinterTextStyle BOLD = PrinterTextStyle.get(
+        PrinterCommands.TEXT_SIZE_NORMAL, PrinterCommands.TEXT_WEIGHT_BOLD, PrinterCommands.TEXT_UNDERLINE_OFF
+    );
+    private static final PrinterTextStyle UNDERLINED = PrinterTextStyle.get(
+        PrinterCommands.TEXT_SIZE_NORMAL, PrinterCommands.TEXT_WEIGHT_NORMAL, PrinterCommands.TEXT_UNDERLINE_LARGE
+    );
+    private static final PrinterTextStyle BIG = PrinterTextStyle.get(
+        PrinterCommands.TEXT_SIZE_BIG, PrinterCommands.TEXT_WEIGHT_NORMAL, PrinterCommands.TEXT_UNDERLINE_OFF
+    );
+
+    private static PrinterTextParserElement[] coalesce(PrinterTextParserElement... elements) {
+        return PrinterTextParserLine.coalesceTextRuns(elements);
+    }
+
+    private static PrinterTextParserString text(String text, PrinterTextStyle textStyle) {
+        return new PrinterTextParserString(text, textStyle);
+    }
+
+    private static void assertRun(String text, PrinterTextStyle textStyle, PrinterTextParserElement element) {
+        assertEquals(text, ((PrinterTextParserString) element).getText());
+        assertSame(textStyle, ((PrinterTextParserString) element).getTextStyle());
+    }
+
+    @Test
+    public void coalesceTextRuns_mergesTheTextsOfTheSameStyle() {
+        PrinterTextParserElement[] runs = PrinterTextParserLineTest.coalesce(
+            PrinterTextParserLineTest.text("Total", PrinterTextParserLineTest.BOLD),
+            PrinterTextParserLineTest.text(" : ", PrinterTextParserLineTest.BOLD),
+            PrinterTextParserLineTest.text("9.99e", PrinterTextParserLineTest.BOLD)
+        );
+        assertEquals(1, runs.length);
+        PrinterTextParserLineTest.assertRun("Total : 9.99e", PrinterTextParserLineTest.BOLD, runs[0]);
+    }
+
+    @Test
+    public void coalesceTextRuns_mergesTheSpacesWithTheTextsOfAnotherWeight() {
+        PrinterTextParserElement[] runs = PrinterTextParserLineTest.coalesce(
+            PrinterTextParserLineTest.text("   ", PrinterTextParserLineTest.NORMAL),
+            PrinterTextParserLineTest.text("  ", PrinterTextParserLineTest.BOLD),
+            PrinterTextParserLineTest.text("Total", PrinterTextParserLineTest.BOLD),
+            PrinterTextParserLineTest.text("    ", PrinterTextParserLineTest.NORMAL)
+        );
+        assertEquals(1, runs.length);
+        PrinterTextParserLineTest.assertRun("     Total    ", PrinterTextParserLineTest.BOLD, runs[0]);
+
+        runs = PrinterTextParserLineTest.coalesce(
+            PrinterTextParserLineTest.text("  ", PrinterTextParserLineTest.BOLD),
+            PrinterTextParserLineTest.text(" ", PrinterTextParserLineTest.NORMAL)
+        );
+        assertEquals(1, runs.length);
+        PrinterTextParserLineTest.assertRun("   ", PrinterTextParserLineTest.BOLD, runs[0]);
+    }
+
+    @Test
+    public void coalesceTextRuns_keepsTheTextsOfAnotherWeight() {
+        PrinterTextParserElement[] runs = PrinterTextParserLineTest.coalesce(
+            PrinterTextParserLineTest.text("Total", PrinterTextParserLineTest.NORMAL),
+            PrinterTextParserLineTest.text("9.99e", PrinterTextParserLineTest.BOLD)
+        );
+        assertEquals(2, runs.length);
+        PrinterTextParserLineTest.assertRun("Total", PrinterTextParserLineTest.NORMAL, runs[0]);
+        PrinterTextParserLineTest.assertRun("9.99e", PrinterTextParserLineTest.BOLD, runs[1]);
+    }
+
+    @Test
+    public void coalesceTextRuns_keepsTheRunsThatOnlyDifferByTheUnderline() {
+        PrinterTextParserElement[] runs = PrinterTextParserLineTest.coalesce(
+            PrinterTextParserLineTest.text("  ", PrinterTextParserLineTest.NORMAL),
+            PrinterTextParserLineTest.text("  ", PrinterTextParserLineTest.UNDERLINED),
+            PrinterTextParserLineTest.text("Total", PrinterTextParserLineTest.UNDERLINED),
+            PrinterTextParserLineTest.text("9.99e", PrinterTextParserLineTest.NORMAL)
+        );
+        assertEquals(3, runs.length);
+        PrinterTextParserLineTest.assertRun("  ", PrinterTextParserLineTest.NORMAL, runs[0]);
+        PrinterTextParserLineTest.assertRun("  Total", PrinterTextParserLineTest.UNDERLINED, runs[1]);
+        PrinterTextParserLineTest.assertRun("9.99e", PrinterTextParserLineTest.NORMAL, runs[2]);
+    }
+
+    @Test
+    public void coalesceTextRuns_keepsTheSpacesOfAnotherSize() {
+        PrinterTextParserElement[] runs = PrinterTextParserLineTest.coalesce(
+            PrinterTextParserLineTest.text("  ", PrinterTextParserLineTest.BIG),
+            PrinterTextParserLineTest.text("  ", PrinterTextParserLineTest.NORMAL)
+        );
+        assertEquals(2, runs.length);
+    }
+
+    @Test
+    public void coalesceTextRuns_stopsTheRunsAtTheOtherElements() {
+        PrinterTextParserElement image = new PrinterTextParserElement() {
+            @Override
+            public int length() {
+                return 0;
+            }
+
+            @Override
+            public PrinterTextParserElement print(PrinterConnection printerSocket) {
+                return this;
+            }
+        };
+        PrinterTextParserElement[] runs = PrinterTextParserLineTest.coalesce(
+            PrinterTextParserLineTest.text("a", PrinterTextParserLineTest.NORMAL),
+            PrinterTextParserLineTest.text("b", PrinterTextParserLineTest.NORMAL),
+            image,
+            PrinterTextParserLineTest.text("c", PrinterTextParserLineTest.NORMAL)
+        );
+        assertEquals(3, runs.length);
+        PrinterTextParserLineTest.assertRun("ab", PrinterTextParserLineTest.NORMAL, runs[0]);
+        assertSame(image, runs[1]);
+        PrinterTextParserLineTest.assertRun("c", PrinterTextParserLineTest.NORMAL, runs[2]);
+    }
+}
@@ -0,0 +1,71 @@
+package com.dantsu.printerthermal_escpos_bluetooth.textparser;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import com.dantsu.printerthermal_escpos_bluetooth.Printer;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterProfile;
+
+import static org.junit.Assert.*;
+
+public class PrinterTextParserQRCodeTest {
+
+    private static final String TOO_LONG_DATA;
+
+    static {
+        // More bytes than a version 40 QR code with the level L can contain.
+        char[] data = new char[3000];
+        Arrays.fill(data, 'a');
+        TOO_LONG_DATA = new String(data);
+    }
+
+    private static PrinterTextParserQRCode parseQRCode(boolean isNativeQRCodeSupported, String data) {
+        Printer printer = new Printer(203, 48f, 32)
+            .setProfile(new PrinterProfile().setNativeQRCodeSupported(isNativeQRCodeSupported));
+        PrinterTextParserLine[] lines = printer.parseFormattedText("[C]<qrcode size='20'>" + data + "</qrcode>");
+        for (PrinterTextParserColumn column : lines[0].getColumns()) {
+            for (PrinterTextParserElement element : column.getElements()) {
+                if (element instanceof PrinterTextParserQRCode) {
+                    return (PrinterTextParserQRCode) element;
+                }
+            }
+        }
+        fail("No QR code parsed");
+        return null;
+    }
+
+    @Test
+    public void isNative_whenTheProfileSupportsTheISO88591Data() {
+        PrinterTextParserQRCode qrCode = PrinterTextParserQRCodeTest.parseQRCode(true, "https://dantsu.com/caf\u00e9");
+        assertTrue(qrCode.getPlan().isEncodable());
+        assertTrue(qrCode.isPrinted());
+        assertTrue(qrCode.isNative());
+    }
+
+    @Test
+    public void isNative_notWhenTheProfileDoesNotSupportIt() {
+        PrinterTextParserQRCode qrCode = PrinterTextParserQRCodeTest.parseQRCode(false, "https://dantsu.com/caf\u00e9");
+        assertTrue(qrCode.getPlan().isEncodable());
+        assertTrue(qrCode.isPrinted());
+        assertFalse(qrCode.isNative());
+    }
+
+    @Test
+    public void isNative_notWhenTheDataIsNotISO88591() {
+        PrinterTextParserQRCode qrCode = PrinterTextParserQRCodeTest.parseQRCode(true, "5 \u20ac");
+        assertTrue(qrCode.getPlan().isEncodable());
+        assertTrue(qrCode.isPrinted());
+        assertEquals("UTF-8", qrCode.getPlan().getCharacterSet());
+        assertFalse(qrCode.isNative());
+    }
+
+    @Test
+    public void isNative_notWhenTheDataIsTooLong() {
+        PrinterTextParserQRCode qrCode = PrinterTextParserQRCodeTest.parseQRCode(true, PrinterTextParserQRCodeTest.TOO_LONG_DATA);
+        assertFalse(qrCode.getPlan().isEncodable());
+        assertFalse(qrCode.isNative());
+        assertFalse(qrCode.isPrinted());
+        assertEquals(0, qrCode.length());
+    }
+}
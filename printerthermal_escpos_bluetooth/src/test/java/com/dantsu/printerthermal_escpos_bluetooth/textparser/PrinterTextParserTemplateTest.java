@@ -0,0 +1,136 @@
+package com.dantsu.printerthermal_escpos_bluetooth.textparser;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.dantsu.printerthermal_escpos_bluetooth.ArrayPrinterImageSource;
+import com.dantsu.printerthermal_escpos_bluetooth.Printer;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterConnection;
+import com.dantsu.printerthermal_escpos_bluetooth.transport.MemoryPrinterTransport;
+
+import static org.junit.Assert.*;
+
+public class PrinterTextParserTemplateTest {
+
+    private static final String TEMPLATE =
+        "[C]<b>ORDER {{number}}</b>\n" +
+        "[L]\n" +
+        "{{#items}}\n" +
+        "[L]{{name}}[R]<font size='big'>{{price}}e</font>\n" +
+        "{{/items}}\n" +
+        "[L]<u>Total[R]{{total}}e</u>";
+
+    private Printer printer = new Printer(203, 48f, 32);
+
+    /**
+     * Remove the ESC t, ESC !, ESC E, ESC - and ESC a commands that do not change the printer state. Segments
+     * rendered separately send the formatting again, the printed result is the same.
+     */
+    private static byte[] withoutRedundantCommands(byte[] commands) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        Map<Byte, Byte> state = new HashMap<Byte, Byte>();
+        for (int i = 0; i < commands.length; i++) {
+            if (commands[i] == 0x1B && i + 2 < commands.length && "t!E-a".indexOf(commands[i + 1]) != -1) {
+                Byte previous = state.put(commands[i + 1], commands[i + 2]);
+                if (previous == null || previous != commands[i + 2]) {
+                    result.write(commands, i, 3);
+                }
+                i += 2;
+            } else {
+                result.write(commands[i]);
+            }
+        }
+        return result.toByteArray();
+    }
+
+    private static Map<String, Object> item(String name, String price) {
+        Map<String, Object> item = new HashMap<String, Object>();
+        item.put("name", name);
+        item.put("price", price);
+        return item;
+    }
+
+    @Test
+    public void render_printsLikeTheFormattedText() {
+        ArrayList<Map<String, Object>> items = new ArrayList<Map<String, Object>>();
+        items.add(PrinterTextParserTemplateTest.item("Coffee", "2.50"));
+        items.add(PrinterTextParserTemplateTest.item("Croissant", "1.20"));
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("number", 42);
+        values.put("items", items);
+        values.put("total", "3.70");
+
+        String text =
+            "[C]<b>ORDER 42</b>\n" +
+            "[L]\n" +
+            "[L]Coffee[R]<font size='big'>2.50e</font>\n" +
+            "[L]Croissant[R]<font size='big'>1.20e</font>\n" +
+            "[L]<u>Total[R]3.70e</u>";
+
+        PrinterTextParserTemplate template = this.printer.compileTemplate(PrinterTextParserTemplateTest.TEMPLATE);
+        assertArrayEquals(
+            PrinterTextParserTemplateTest.withoutRedundantCommands(this.printer.renderFormattedText(text).toByteArray()),
+            PrinterTextParserTemplateTest.withoutRedundantCommands(this.printer.renderTemplate(template, values).toByteArray())
+        );
+    }
+
+    @Test
+    public void render_acceptsNullValues() {
+        PrinterTextParserTemplate template = this.printer.compileTemplate(PrinterTextParserTemplateTest.TEMPLATE);
+        String text =
+            "[C]<b>ORDER </b>\n" +
+            "[L]\n" +
+            "[L]<u>Total[R]e</u>";
+        assertArrayEquals(
+            PrinterTextParserTemplateTest.withoutRedundantCommands(this.printer.renderFormattedText(text).toByteArray()),
+            PrinterTextParserTemplateTest.withoutRedundantCommands(this.printer.renderTemplate(template, null).toByteArray())
+        );
+    }
+
+    private static int indexOf(byte[] bytes, byte[] sequence) {
+        for (int i = 0; i + sequence.length <= bytes.length; i++) {
+            if (Arrays.equals(sequence, Arrays.copyOfRange(bytes, i, i + sequence.length))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Test
+    public void print_printsTheStoredImagesFromTheAreaOfTheConnection() {
+        MemoryPrinterTransport transport = new MemoryPrinterTransport();
+        Printer printer = new Printer(new PrinterConnection(transport), 203, 48f, 32);
+        PrinterTextParserTemplate template = printer.compileTemplate("[C]<img key='DL'></img>\n[L]{{name}}\n[C]<img key='NV'></img>");
+
+        printer
+            .storeImage("DL", new ArrayPrinterImageSource(new byte[64], 8, 8), false)
+            .storeImage("NV", new ArrayPrinterImageSource(new byte[64], 8, 8), true)
+            .printTemplate(template, null);
+
+        byte[] bytes = transport.toByteArray();
+        assertTrue(PrinterTextParserTemplateTest.indexOf(bytes, PrinterCommands.printStoredImageCommand("DL", false)) != -1);
+        assertEquals(-1, PrinterTextParserTemplateTest.indexOf(bytes, PrinterCommands.printStoredImageCommand("DL", true)));
+        assertTrue(PrinterTextParserTemplateTest.indexOf(bytes, PrinterCommands.printStoredImageCommand("NV", true)) != -1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compile_rejectsABlockEndWithoutBlock() {
+        this.printer.compileTemplate("[L]a\n{{/items}}\n[L]b");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compile_rejectsAMismatchedBlockEnd() {
+        this.printer.compileTemplate("{{#items}}\n[L]{{name}}\n{{/item}}");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void compile_rejectsAnUnclosedBlock() {
+        this.printer.compileTemplate("{{#items}}\n[L]{{name}}");
+    }
+}
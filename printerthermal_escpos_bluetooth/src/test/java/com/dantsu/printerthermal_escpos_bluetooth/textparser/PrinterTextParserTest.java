@@ -0,0 +1,236 @@
+package com.dantsu.printerthermal_escpos_bluetooth.textparser;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import com.dantsu.printerthermal_escpos_bluetooth.Printer;
+import com.dantsu.printerthermal_escpos_bluetooth.PrinterCommands;
+
+import static org.junit.Assert.*;
+
+public class PrinterTextParserTest {
+    
+    private static final int NBR_CHARACTERS_PER_LINE = 32;
+    
+    private static final String[] MARKUP_PARTS = {
+        "[L]", "[C]", "[R]", "[l]", "[c]", "[X]", "[L", "L]",
+        "<b>", "</b>", "<B>", "<u>", "</u>", "<U>", "</U>",
+        "<font size='big'>", "<font size='tall'>", "<font size='wide'>", "<FONT size='small'>", "<font size='medium'>",
+        "<font size=\"big\">", "<font>", "<font color='red' size='wide'>", "<font  size='tall' >", "</font>",
+        "<x>", "</x>", "u>", ">", "<a<b>",
+        "a", "bc", "  ", "Hello", "\u00e9", "9.99e", "\r",
+        "\n", "\r\n", "\n\n"
+    };
+    
+    private static Printer printer = new Printer(203, 48f, PrinterTextParserTest.NBR_CHARACTERS_PER_LINE);
+    
+    private static String styleName(byte[] textSize, byte[] textBold, byte[] textUnderline) {
+        String size = "?";
+        if (Arrays.equals(textSize, PrinterCommands.TEXT_SIZE_NORMAL)) {
+            size = "small";
+        } else if (Arrays.equals(textSize, PrinterCommands.TEXT_SIZE_MEDIUM)) {
+            size = "medium";
+        } else if (Arrays.equals(textSize, PrinterCommands.TEXT_SIZE_DOUBLE_HEIGHT)) {
+            size = "tall";
+        } else if (Arrays.equals(textSize, PrinterCommands.TEXT_SIZE_DOUBLE_WIDTH)) {
+            size = "wide";
+        } else if (Arrays.equals(textSize, PrinterCommands.TEXT_SIZE_BIG)) {
+            size = "big";
+        }
+        return size + (Arrays.equals(textBold, PrinterCommands.TEXT_WEIGHT_BOLD) ? ",b" : "") + (Arrays.equals(textUnderline, PrinterCommands.TEXT_UNDERLINE_OFF) ? "" : ",u");
+    }
+    
+    /**
+     * Describe a line as its runs of text of the same style, so that the descriptions do not depend on how the text
+     * is split in elements.
+     */
+    private static void describeRun(StringBuilder description, String[] lastStyle, String style, String text) {
+        if (text.isEmpty()) {
+            return;
+        }
+        if (!style.equals(lastStyle[0])) {
+            description.append('{').append(style).append('}');
+            lastStyle[0] = style;
+        }
+        description.append(text);
+    }
+    
+    static String describe(PrinterTextParserLine[] lines) {
+        StringBuilder description = new StringBuilder();
+        for (PrinterTextParserLine line : lines) {
+            String[] lastStyle = {null};
+            for (PrinterTextParserColumn column : line.getColumns()) {
+                for (PrinterTextParserElement element : column.getElements()) {
+                    PrinterTextStyle textStyle = ((PrinterTextParserString) element).getTextStyle();
+                    PrinterTextParserTest.describeRun(
+                        description,
+                        lastStyle,
+                        PrinterTextParserTest.styleName(textStyle.getTextSize(), textStyle.getTextBold(), textStyle.getTextUnderline()),
+                        ((PrinterTextParserString) element).getText()
+                    );
+                }
+            }
+            description.append('\n');
+        }
+        return description.toString();
+    }
+    
+    static String describe(ArrayList<ArrayList<ArrayList<BaselineTextParser.Element>>> lines) {
+        StringBuilder description = new StringBuilder();
+        for (ArrayList<ArrayList<BaselineTextParser.Element>> line : lines) {
+            String[] lastStyle = {null};
+            for (ArrayList<BaselineTextParser.Element> column : line) {
+                for (BaselineTextParser.Element element : column) {
+                    PrinterTextParserTest.describeRun(
+                        description,
+                        lastStyle,
+                        PrinterTextParserTest.styleName(element.textSize, element.textBold, element.textUnderline),
+                        element.text
+                    );
+                }
+            }
+            description.append('\n');
+        }
+        return description.toString();
+    }
+    
+    private static String parse(String text) {
+        return PrinterTextParserTest.describe(PrinterTextParserTest.printer.parseFormattedText(text));
+    }
+    
+    private static String parseBaseline(String text) {
+        return PrinterTextParserTest.describe(new BaselineTextParser(PrinterTextParserTest.NBR_CHARACTERS_PER_LINE).parse(text));
+    }
+    
+    private static void assertSameAsBaseline(String text) {
+        assertEquals(text, PrinterTextParserTest.parseBaseline(text), PrinterTextParserTest.parse(text));
+    }
+    
+    private static String spaces(int nbrSpaces) {
+        char[] spaces = new char[nbrSpaces];
+        Arrays.fill(spaces, ' ');
+        return new String(spaces);
+    }
+    
+    @Test
+    public void parse_emptyText() {
+        // The version 1.x failed on lines shorter than an alignment tag, they are now left aligned.
+        assertEquals(PrinterTextParserTest.parse("[L]"), PrinterTextParserTest.parse(""));
+        assertEquals("{medium}" + PrinterTextParserTest.spaces(32) + "\n", PrinterTextParserTest.parse(""));
+        assertEquals(PrinterTextParserTest.parse("[L]ab"), PrinterTextParserTest.parse("ab"));
+    }
+    
+    @Test
+    public void parse_emptyLines() {
+        PrinterTextParserTest.assertSameAsBaseline("\n");
+        PrinterTextParserTest.assertSameAsBaseline("\r\n");
+        PrinterTextParserTest.assertSameAsBaseline("\n\r\n\n");
+        assertEquals(0, PrinterTextParserTest.printer.parseFormattedText("\n").length);
+        assertEquals(0, PrinterTextParserTest.printer.parseFormattedText("\r\n").length);
+    }
+    
+    @Test
+    public void parse_trailingEmptyLinesAreIgnored() {
+        PrinterTextParserTest.assertSameAsBaseline("[L]a\n");
+        PrinterTextParserTest.assertSameAsBaseline("[L]a\n\n\n");
+        PrinterTextParserTest.assertSameAsBaseline("[L]a\r\n\r\n");
+        PrinterTextParserTest.assertSameAsBaseline("[L]a\n[C]b\r\n\n");
+        assertEquals(1, PrinterTextParserTest.printer.parseFormattedText("[L]a\n\r\n\n").length);
+        // Empty lines between two lines are printed.
+        assertEquals(3, PrinterTextParserTest.printer.parseFormattedText("[L]a\n\n[L]b").length);
+    }
+    
+    @Test
+    public void parse_lineEndings() {
+        PrinterTextParserTest.assertSameAsBaseline("[L]a\r\n[R]b\n[C]c");
+        // A carriage return alone is a char of the line.
+        PrinterTextParserTest.assertSameAsBaseline("[L]a\rb");
+    }
+    
+    @Test
+    public void parse_columns() {
+        PrinterTextParserTest.assertSameAsBaseline("[L]left");
+        PrinterTextParserTest.assertSameAsBaseline("[C]center");
+        PrinterTextParserTest.assertSameAsBaseline("[R]right");
+        PrinterTextParserTest.assertSameAsBaseline("[L]Some text[R]Some other text");
+        PrinterTextParserTest.assertSameAsBaseline("[L]Some[C]text[R]here");
+        PrinterTextParserTest.assertSameAsBaseline("[L][R]TOTAL PRICE :[R]34.98e");
+        PrinterTextParserTest.assertSameAsBaseline("[l]lower case alignment[c]is text");
+        PrinterTextParserTest.assertSameAsBaseline("[L]a[X]b[L]c[R]");
+        PrinterTextParserTest.assertSameAsBaseline("[C]<font size='big'>ORDER N\u00b0045</font>[R]too long for the column");
+        PrinterTextParserTest.assertSameAsBaseline("[L]1[L]2[L]3[L]4[L]5[L]6[L]7[L]8[L]9");
+    }
+    
+    @Test
+    public void parse_tags() {
+        PrinterTextParserTest.assertSameAsBaseline("[L]<b>BEAUTIFUL SHIRT</b>[R]9.99e");
+        PrinterTextParserTest.assertSameAsBaseline("[C]<u><font size='big'>ORDER</font></u>");
+        PrinterTextParserTest.assertSameAsBaseline("[L]<B>upper case</B> <U>tags</U>");
+        PrinterTextParserTest.assertSameAsBaseline("[L]<b>bold\n[L]still bold</b> normal");
+        PrinterTextParserTest.assertSameAsBaseline("[L]<u>underline[R]across columns</u>");
+    }
+    
+    @Test
+    public void parse_unclosedAndMismatchedTags() {
+        PrinterTextParserTest.assertSameAsBaseline("[L]<b>never closed");
+        PrinterTextParserTest.assertSameAsBaseline("[L]</b>closed before<b>opened");
+        PrinterTextParserTest.assertSameAsBaseline("[L]<b><u>crossed</b>tags</u>");
+        PrinterTextParserTest.assertSameAsBaseline("[L]<font size='big'><b>a</font>b</b>c</font>d");
+        PrinterTextParserTest.assertSameAsBaseline("[L]<font>no size</font>popped");
+        PrinterTextParserTest.assertSameAsBaseline("[L]<x>unknown</x> tags");
+        PrinterTextParserTest.assertSameAsBaseline("[L]a<b<b>c");
+    }
+    
+    @Test
+    public void parse_textTheBaselineLost() {
+        // The version 1.x failed on a tag with an empty name.
+        assertEquals("{medium}1 < 2 and 3 > 2" + PrinterTextParserTest.spaces(17) + "\n", PrinterTextParserTest.parse("[L]1 < 2 and 3 > 2"));
+        // The version 1.x dropped the end of the column after a '<' without '>'.
+        assertEquals("{medium}" + PrinterTextParserTest.spaces(32) + "\n", PrinterTextParserTest.parseBaseline("[L]<b no end"));
+        assertEquals("{medium}<b no end" + PrinterTextParserTest.spaces(23) + "\n", PrinterTextParserTest.parse("[L]<b no end"));
+        assertEquals("{medium}x <b" + PrinterTextParserTest.spaces(28) + "\n", PrinterTextParserTest.parse("[L]x <b"));
+    }
+    
+    @Test
+    public void parse_attributes() {
+        PrinterTextParserTest.assertSameAsBaseline("[L]<font size='wide'>single quotes</font>");
+        PrinterTextParserTest.assertSameAsBaseline("[L]<font size=\"wide\">double quotes are not attributes</font>");
+        PrinterTextParserTest.assertSameAsBaseline("[L]<font color='red' size='tall'>two attributes</font>");
+        PrinterTextParserTest.assertSameAsBaseline("[L]<font  size='small' >spaces</font>");
+        PrinterTextParserTest.assertSameAsBaseline("[L]<FONT size='big'>upper case tag</FONT>");
+        PrinterTextParserTest.assertSameAsBaseline("[L]<font size='BIG'>values are case sensitive</font>");
+        
+        PrinterTextParserTag tag = new PrinterTextParserTag("<font size='big' data=\"x\">");
+        assertEquals("font", tag.getTagName());
+        assertEquals("big", tag.getAttribute("size"));
+        assertFalse(tag.hasAttribute("data"));
+    }
+    
+    @Test
+    public void parse_randomMarkupsLikeTheBaseline() {
+        Random random = new Random(20200118);
+        int nbrCompared = 0;
+        for (int i = 0; i < 3000; i++) {
+            StringBuilder text = new StringBuilder();
+            for (int j = random.nextInt(40); j > 0; j--) {
+                text.append(PrinterTextParserTest.MARKUP_PARTS[random.nextInt(PrinterTextParserTest.MARKUP_PARTS.length)]);
+            }
+            String markup = text.toString();
+            
+            String baseline;
+            try {
+                baseline = PrinterTextParserTest.parseBaseline(markup);
+            } catch (RuntimeException e) {
+                // The version 1.x failed on this text, the new parser only has to accept it.
+                PrinterTextParserTest.parse(markup);
+                continue;
+            }
+            assertEquals(markup, baseline, PrinterTextParserTest.parse(markup));
+            nbrCompared++;
+        }
+        assertTrue(nbrCompared > 500);
+    }
+}
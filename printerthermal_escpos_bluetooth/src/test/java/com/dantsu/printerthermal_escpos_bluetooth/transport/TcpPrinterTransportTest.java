@@ -0,0 +1,134 @@
+package com.dantsu.printerthermal_escpos_bluetooth.transport;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class TcpPrinterTransportTest {
+    
+    private ServerSocket serverSocket;
+    private TcpPrinterTransport transport;
+    
+    @Before
+    public void setUp() throws IOException {
+        this.serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        this.serverSocket.setSoTimeout(5000);
+        this.transport = new TcpPrinterTransport("127.0.0.1", this.serverSocket.getLocalPort()).setTimeouts(5000, 5000);
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        this.transport.disconnect();
+        this.serverSocket.close();
+    }
+    
+    /**
+     * Read all the bytes sent to the printer until the transport closes the connection.
+     */
+    private static Thread readAll(final Socket printer, final ByteArrayOutputStream received) {
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                byte[] bytes = new byte[4096];
+                try {
+                    InputStream inputStream = printer.getInputStream();
+                    int length;
+                    while ((length = inputStream.read(bytes)) != -1) {
+                        received.write(bytes, 0, length);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+        reader.start();
+        return reader;
+    }
+    
+    @Test
+    public void connect_sendsAndReceivesUntilDisconnected() throws Exception {
+        assertFalse(this.transport.isConnected());
+        assertTrue(this.transport.connect());
+        assertTrue(this.transport.isConnected());
+        assertEquals("tcp:127.0.0.1:" + this.serverSocket.getLocalPort(), this.transport.getPrinterId());
+        
+        Socket printer = this.serverSocket.accept();
+        try {
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            Thread reader = TcpPrinterTransportTest.readAll(printer, received);
+            
+            // Larger than the socket buffers, so that the writes wait for the printer.
+            byte[] bytes = new byte[4 * 1024 * 1024];
+            new Random(9100).nextBytes(bytes);
+            OutputStream outputStream = this.transport.getOutputStream();
+            outputStream.write(bytes, 0, 10);
+            outputStream.write(bytes, 10, bytes.length - 10);
+            outputStream.flush();
+            
+            printer.getOutputStream().write(new byte[]{0x12, 0x00});
+            InputStream inputStream = this.transport.getInputStream();
+            assertEquals(0x12, inputStream.read());
+            assertEquals(0x00, inputStream.read());
+            assertEquals(0, inputStream.available());
+            
+            assertTrue(this.transport.disconnect());
+            assertFalse(this.transport.isConnected());
+            reader.join(5000);
+            assertFalse(reader.isAlive());
+            assertArrayEquals(bytes, received.toByteArray());
+        } finally {
+            printer.close();
+        }
+    }
+    
+    @Test
+    public void connect_failsWithoutPrinter() throws IOException {
+        int port = this.serverSocket.getLocalPort();
+        this.serverSocket.close();
+        TcpPrinterTransport transport = new TcpPrinterTransport("127.0.0.1", port).setTimeouts(1000, 1000);
+        
+        assertFalse(transport.connect());
+        assertFalse(transport.isConnected());
+        try {
+            transport.getOutputStream();
+            fail("A stream is opened without connection");
+        } catch (IOException e) {
+            // Expected.
+        }
+    }
+    
+    @Test
+    public void write_timesOutWhenThePrinterDoesNotRead() throws IOException {
+        this.transport.setTimeouts(5000, 200);
+        assertTrue(this.transport.connect());
+        Socket printer = this.serverSocket.accept();
+        try {
+            OutputStream outputStream = this.transport.getOutputStream();
+            byte[] bytes = new byte[1024 * 1024];
+            long start = System.currentTimeMillis();
+            try {
+                for (int i = 0; i < 256; i++) {
+                    outputStream.write(bytes);
+                }
+                fail("The write does not time out");
+            } catch (SocketTimeoutException e) {
+                // Expected.
+            }
+            assertTrue(System.currentTimeMillis() - start < 5000);
+        } finally {
+            printer.close();
+        }
+    }
+}